@@ -5,11 +5,10 @@
  * authorization.
  * </p>
  */
-// Note: authorizeRole(accessType)
 package edu.fgcu.secrel;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This class contains methods for (un)authorizing roles to invoke services in
@@ -25,36 +24,79 @@ public class Authorizations {
 	 *
 	 * @param roleId the id of the role
 	 * @param serviceId the id of the service
-	 * @param accessType I do not know the purpose of this parameter
+	 * @param accessType the modes granted, a non-empty mask of the constants of
+	 *            {@link Right}
 	 */
 	public static void authorizeRole(Integer roleId, Integer serviceId, int accessType) {
-		// check if a roleId is null
-		if (roleId == null)
-		    // throw exception
-		    throw new NullPointerException("Role id cannot be null.");
-		// check if role exists
-		if (!SecRelSystem.roleIds.containsKey(roleId))
-			throw new IllegalArgumentException("Role with that id does not exist.");
-		// check if a serviceId is null
-		if (serviceId == null)
-		    // throw exception
-		    throw new NullPointerException("Service id cannot be null.");
-		// check if service exists
-		if (!SecRelSystem.serviceIds.containsKey(serviceId))
-			throw new IllegalArgumentException("Service with that id does not exist.");
-		// create Right instance
-		Right right = new Right(roleId, serviceId, accessType);
-		// construct mapping rows
-		long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
-		long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
-		// check if rows exist
-		if (SecRelSystem.serviceForwardMap.containsKey(forwardRow)
-		        || SecRelSystem.serviceBackwardMap.containsKey(backwardRow))
-			throw new IllegalStateException(
-			        "Role is already authorized to invoke that Service: " + forwardRow + ", " + backwardRow);
-		// add rows to system
-		SecRelSystem.serviceForwardMap.put(forwardRow, right);
-		SecRelSystem.serviceBackwardMap.put(backwardRow, right);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a roleId is null
+			if (roleId == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleIds.containsKey(roleId))
+				throw new IllegalArgumentException("Role with that id does not exist.");
+			// check if a serviceId is null
+			if (serviceId == null)
+			    // throw exception
+			    throw new NullPointerException("Service id cannot be null.");
+			// check if service exists
+			if (!SecRelSystem.serviceIds.containsKey(serviceId))
+				throw new IllegalArgumentException("Service with that id does not exist.");
+			// check if the access type is valid
+			if (accessType == 0 || (accessType & ~Right.ALL) != 0)
+				throw new IllegalArgumentException("Access type must be a non-empty mask of access types.");
+			PolicyVersion policy = SecRelSystem.policy();
+			// construct mapping rows
+			long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
+			long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
+			// check if rows exist
+			if (policy.serviceForwardMap.contains(forwardRow)
+			        || policy.serviceBackwardMap.contains(backwardRow))
+				throw new IllegalStateException(
+				        "Role is already authorized to invoke that Service: " + forwardRow + ", " + backwardRow);
+			// add rows to system
+			SecRelSystem.addAuthorization(roleId, serviceId, accessType);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Authorizes the specified role to invoke the specified service until the
+	 * specified time. The authorization is removed within a tick of the
+	 * expiry wheel after that time.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param accessType the modes granted, a non-empty mask of the constants of
+	 *            {@link Right}
+	 * @param expiresAt the time in milliseconds since the epoch
+	 */
+	public static void authorizeRole(Integer roleId, Integer serviceId, int accessType, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a roleId is null
+			if (roleId == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if a serviceId is null
+			if (serviceId == null)
+			    // throw exception
+			    throw new NullPointerException("Service id cannot be null.");
+			// check if the expiry has passed
+			if (expiresAt <= System.currentTimeMillis())
+				throw new IllegalArgumentException("Expiry must be in the future.");
+			// delegate to permanent version
+			authorizeRole(roleId, serviceId, accessType);
+			// schedule expiry
+			SecRelSystem.scheduleAuthorizationExpiry(roleId, serviceId, expiresAt);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -62,36 +104,44 @@ public class Authorizations {
 	 *
 	 * @param role the Role instance
 	 * @param service the Service instance
-	 * @param accessType I do not know the purpose of this parameter
+	 * @param accessType the modes granted, a non-empty mask of the constants of
+	 *            {@link Right}
 	 */
 	public static void authorizeRole(Role role, Service service, int accessType) {
-		// check if a role is null
-		if (role == null)
-		    // throw exception
-		    throw new NullPointerException("Role id cannot be null.");
-		if (!SecRelSystem.roleIds.containsKey(role.getId()))
-			throw new IllegalArgumentException("Role does not exist.");
-		// check if a service is null
-		if (service == null)
-		    // throw exception
-		    throw new NullPointerException("Service id cannot be null.");
-		if (!SecRelSystem.serviceIds.containsKey(service.getId()))
-			throw new IllegalArgumentException("Service does not exist.");
-		Integer roleId = role.getId();
-		Integer serviceId = service.getId();
-		// create Right instance
-		Right right = new Right(roleId, serviceId, accessType);
-		// construct mapping rows
-		long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
-		long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
-		// check if rows exist
-		if (SecRelSystem.serviceForwardMap.containsKey(forwardRow)
-		        || SecRelSystem.serviceBackwardMap.containsKey(backwardRow))
-			throw new IllegalStateException(
-			        "Role is already authorized to invoke that Service: " + forwardRow + ", " + backwardRow);
-		// add rows to system
-		SecRelSystem.serviceForwardMap.put(forwardRow, right);
-		SecRelSystem.serviceBackwardMap.put(backwardRow, right);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a role is null
+			if (role == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			if (!SecRelSystem.roleIds.containsKey(role.getId()))
+				throw new IllegalArgumentException("Role does not exist.");
+			// check if a service is null
+			if (service == null)
+			    // throw exception
+			    throw new NullPointerException("Service id cannot be null.");
+			if (!SecRelSystem.serviceIds.containsKey(service.getId()))
+				throw new IllegalArgumentException("Service does not exist.");
+			// check if the access type is valid
+			if (accessType == 0 || (accessType & ~Right.ALL) != 0)
+				throw new IllegalArgumentException("Access type must be a non-empty mask of access types.");
+			Integer roleId = role.getId();
+			Integer serviceId = service.getId();
+			PolicyVersion policy = SecRelSystem.policy();
+			// construct mapping rows
+			long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
+			long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
+			// check if rows exist
+			if (policy.serviceForwardMap.contains(forwardRow)
+			        || policy.serviceBackwardMap.contains(backwardRow))
+				throw new IllegalStateException(
+				        "Role is already authorized to invoke that Service: " + forwardRow + ", " + backwardRow);
+			// add rows to system
+			SecRelSystem.addAuthorization(roleId, serviceId, accessType);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -99,69 +149,166 @@ public class Authorizations {
 	 *
 	 * @param roleName the name of the role
 	 * @param serviceName the name of the service
-	 * @param accessType I do not know the purpose of this parameterI do not
-	 *            know the purpose of this parameter
+	 * @param accessType the modes granted, a non-empty mask of the constants of
+	 *            {@link Right}
 	 */
 	public static void authorizeRole(String roleName, String serviceName, int accessType) {
-		// check if a roleName is null
-		if (roleName == null)
-		    // throw exception
-		    throw new NullPointerException("Role name cannot be null.");
-		if (!SecRelSystem.roleNames.containsKey(roleName))
-			throw new IllegalArgumentException("Role with that name does not exist.");
-		// check if a serviceName is null
-		if (serviceName == null)
-		    // throw exception
-		    throw new NullPointerException("Service name cannot be null.");
-		if (!SecRelSystem.serviceNames.containsKey(serviceName))
-			throw new IllegalArgumentException("Service with that name does not exist.");
-		Integer roleId = SecRelSystem.roleNames.get(roleName);
-		Integer serviceId = SecRelSystem.serviceNames.get(serviceName);
-		// create Right instance
-		Right right = new Right(roleId, serviceId, accessType);
-		// construct mapping rows
-		long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
-		long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
-		// check if rows exist
-		if (SecRelSystem.serviceForwardMap.containsKey(forwardRow)
-		        || SecRelSystem.serviceBackwardMap.containsKey(backwardRow))
-			throw new IllegalStateException(
-			        "Role is already authorized to invoke that Service: " + forwardRow + ", " + backwardRow);
-		// add rows to system
-		SecRelSystem.serviceForwardMap.put(forwardRow, right);
-		SecRelSystem.serviceBackwardMap.put(backwardRow, right);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a roleName is null
+			if (roleName == null)
+			    // throw exception
+			    throw new NullPointerException("Role name cannot be null.");
+			if (!SecRelSystem.roleNames.containsKey(roleName))
+				throw new IllegalArgumentException("Role with that name does not exist.");
+			// check if a serviceName is null
+			if (serviceName == null)
+			    // throw exception
+			    throw new NullPointerException("Service name cannot be null.");
+			if (!SecRelSystem.serviceNames.containsKey(serviceName))
+				throw new IllegalArgumentException("Service with that name does not exist.");
+			// check if the access type is valid
+			if (accessType == 0 || (accessType & ~Right.ALL) != 0)
+				throw new IllegalArgumentException("Access type must be a non-empty mask of access types.");
+			Integer roleId = SecRelSystem.roleNames.get(roleName);
+			Integer serviceId = SecRelSystem.serviceNames.get(serviceName);
+			PolicyVersion policy = SecRelSystem.policy();
+			// construct mapping rows
+			long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
+			long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
+			// check if rows exist
+			if (policy.serviceForwardMap.contains(forwardRow)
+			        || policy.serviceBackwardMap.contains(backwardRow))
+				throw new IllegalStateException(
+				        "Role is already authorized to invoke that Service: " + forwardRow + ", " + backwardRow);
+			// add rows to system
+			SecRelSystem.addAuthorization(roleId, serviceId, accessType);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Makes the authorization of the specified role for the specified service
+	 * permanent by cancelling its expiry, if it has one.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 */
+	public static void clearExpiry(int roleId, int serviceId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the authorization exists
+			if (!Authorizations.isAuthorizedFor(roleId, serviceId))
+				throw new IllegalArgumentException("Role is not authorized to invoke that Service.");
+			// cancel expiry
+			SecRelSystem.cancelAuthorizationExpiry(roleId, serviceId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Returns the number of roles authorized to invoke the service with the
+	 * specified ID. The count is maintained with the authorizations, so this
+	 * takes constant time and allocates nothing.
+	 *
+	 * @param serviceId the id of the service
+	 * @return the number of roles authorized to invoke the service
+	 */
+	public static int countAuthorizedRoles(int serviceId) {
+		// check if service exists
+		if (!SecRelSystem.serviceIds.contains(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		return SecRelSystem.policy().serviceRoles.get(serviceId).cardinality();
+	}
+
+	/**
+	 * Returns the time at which the authorization of the specified role for
+	 * the specified service expires.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @return the time in milliseconds since the epoch, or -1 if the
+	 *         authorization is permanent
+	 */
+	public static long getExpiry(int roleId, int serviceId) {
+		// check if the authorization exists
+		if (!Authorizations.isAuthorizedFor(roleId, serviceId))
+			throw new IllegalArgumentException("Role is not authorized to invoke that Service.");
+		return SecRelSystem.getAuthorizationExpiry(roleId, serviceId);
+	}
+
+	/**
+	 * Returns a page of the ids of the roles authorized to invoke the service
+	 * with the specified ID, in increasing order.
+	 * The first page is requested with {@link IdPage#FIRST} and each
+	 * following page with the cursor of the previous one.
+	 *
+	 * @param serviceId the id of the service
+	 * @param after the cursor, the ids of the page are greater than it
+	 * @param limit the largest number of ids in the page
+	 * @return the page
+	 */
+	public static IdPage getAuthorizedRolePage(int serviceId, int after, int limit) {
+		// check if service exists
+		if (!SecRelSystem.serviceIds.contains(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		return IdPage.of(SecRelSystem.policy().serviceRoles.get(serviceId), after, limit);
 	}
 
 	/**
 	 * Returns the roles authorized to invoke the service with the specified ID.
+	 * The set is a read only view that reads the current authorizations
+	 * whenever it is used, so it copies nothing and follows later changes.
 	 *
 	 * @param serviceId the id of the service
 	 * @return the roles authorized to invoke the service
 	 */
 	public static NavigableSet<Role> getAuthorizedRoles(Integer serviceId) {
-		// retrieve role ids
-		Integer[] ids = SecRelSystem.getAuthorizedIds(serviceId);
-		// convert to list
-		List<Integer> roles = Arrays.asList(ids);
-		// stream into Role set
-		return roles.stream().map(id -> new Role(id)).collect(Collectors.toCollection(TreeSet::new));
+		// check if a serviceId is null
+		if (serviceId == null)
+		    // throw exception
+		    throw new NullPointerException("Service id cannot be null.");
+		return new RelationView<>(Role.class, policy -> policy.serviceRoles, serviceId, Role::new);
+	}
+
+	/**
+	 * Returns a page of the ids of the services the role with the specified
+	 * ID is authorized to invoke, in increasing order.
+	 * The first page is requested with {@link IdPage#FIRST} and each
+	 * following page with the cursor of the previous one.
+	 *
+	 * @param roleId the id of the role
+	 * @param after the cursor, the ids of the page are greater than it
+	 * @param limit the largest number of ids in the page
+	 * @return the page
+	 */
+	public static IdPage getAuthorizedServicePage(int roleId, int after, int limit) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return IdPage.of(SecRelSystem.policy().roleServices.get(roleId), after, limit);
 	}
 
 	/**
 	 * Returns the services the role with the specified ID is authorized to
-	 * invoke.
+	 * invoke. The set is a read only view that reads the current
+	 * authorizations whenever it is used, so it copies nothing and follows
+	 * later changes.
 	 *
 	 * @param roleId the id of the role
 	 * @return the services the role is authorized to invoke
 	 */
 	public static NavigableSet<Service> getAuthorizedServices(Integer roleId) {
-		// retrieve service ids
-		Integer[] ids = SecRelSystem.getServiceIds(roleId);
-		// convert to list
-		List<Integer> services = Arrays.asList(ids);
-		// stream into Service set
-		return services.stream().map(id -> SecRelSystem.serviceIds.get(id))
-		        .collect(Collectors.toCollection(TreeSet::new));
+		// check if a roleId is null
+		if (roleId == null)
+		    // throw exception
+		    throw new NullPointerException("Role id cannot be null.");
+		return new RelationView<>(Service.class, policy -> policy.roleServices, roleId,
+				id -> SecRelSystem.serviceIds.get(id));
 	}
 
 	/**
@@ -171,14 +318,13 @@ public class Authorizations {
 	 * @return the rights associated with this role
 	 */
 	public static Set<Right> getRoleRights(Integer roleId) {
-		// retrieves the service ids
-		Integer[] ids = SecRelSystem.getServiceIds(roleId);
-		// convert to list
-		List<Integer> services = Arrays.asList(ids);
-		// stream into Right set
-		return services.stream()
-		        .map(id -> SecRelSystem.serviceForwardMap.get(SecRelSystem.serviceForwardRow(roleId, id)))
-		        .collect(Collectors.toCollection(HashSet::new));
+		Set<Right> rights = new HashSet<>();
+		// create a Right for each row of the forward map corresponding to this
+		// role
+		for (RowStore.Cursor c = SecRelSystem.policy().serviceForwardMap.cursor(roleId.longValue() << 32,
+		        roleId.longValue() + 1 << 32); c.next();)
+			rights.add(new Right(roleId, (int) c.key(), c.value()));
+		return rights;
 	}
 
 	/**
@@ -188,14 +334,13 @@ public class Authorizations {
 	 * @return the rights associated with this service
 	 */
 	public static Set<Right> getServiceRights(Integer serviceId) {
-		// retrieve the role ids
-		Integer[] ids = SecRelSystem.getAuthorizedIds(serviceId);
-		// convert to list
-		List<Integer> roles = Arrays.asList(ids);
-		// stream into Right set
-		return roles.stream()
-		        .map(id -> SecRelSystem.serviceForwardMap.get(SecRelSystem.serviceForwardRow(id, serviceId)))
-		        .collect(Collectors.toCollection(HashSet::new));
+		Set<Right> rights = new HashSet<>();
+		// create a Right for each row of the backward map corresponding to
+		// this service
+		for (RowStore.Cursor c = SecRelSystem.policy().serviceBackwardMap.cursor(serviceId.longValue() << 32,
+		        serviceId.longValue() + 1 << 32); c.next();)
+			rights.add(new Right((int) c.key(), serviceId, c.value()));
+		return rights;
 	}
 
 	/**
@@ -218,15 +363,32 @@ public class Authorizations {
 		if (serviceId == null)
 		    // throw exception
 		    throw new NullPointerException("Service id cannot be null.");
+		return Authorizations.isAuthorizedFor(roleId.intValue(), serviceId.intValue());
+	}
+
+	/**
+	 * Returns whether the specified role is authorized to invoke the specified
+	 * service. Unlike {@link #isAuthorizedFor(Integer, Integer)}, this method
+	 * boxes nothing and allocates nothing.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @return true if the role is authorized to invoke the service
+	 */
+	public static boolean isAuthorizedFor(int roleId, int serviceId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
 		// check if service exists
-		if (!SecRelSystem.serviceIds.containsKey(serviceId))
+		if (!SecRelSystem.serviceIds.contains(serviceId))
 			throw new IllegalArgumentException("Service with that id does not exist.");
+		PolicyVersion policy = SecRelSystem.policy();
 		// construct mapping rows
 		long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
 		long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
 		// check existence of mapping rows
-		return SecRelSystem.serviceForwardMap.containsKey(forwardRow)
-		        && SecRelSystem.serviceBackwardMap.containsKey(backwardRow);
+		return policy.serviceForwardMap.contains(forwardRow)
+		        && policy.serviceBackwardMap.contains(backwardRow);
 	}
 
 	/**
@@ -255,11 +417,12 @@ public class Authorizations {
 		// construct mapping rows
 		Integer roleId = role.getId();
 		Integer serviceId = service.getId();
+		PolicyVersion policy = SecRelSystem.policy();
 		long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
 		long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
 		// check existence of mapping rows
-		return SecRelSystem.serviceForwardMap.containsKey(forwardRow)
-		        && SecRelSystem.serviceBackwardMap.containsKey(backwardRow);
+		return policy.serviceForwardMap.contains(forwardRow)
+		        && policy.serviceBackwardMap.contains(backwardRow);
 	}
 
 	/**
@@ -288,11 +451,224 @@ public class Authorizations {
 		// construct mapping rows
 		Integer roleId = SecRelSystem.roleNames.get(roleName);
 		Integer serviceId = SecRelSystem.serviceNames.get(serviceName);
+		PolicyVersion policy = SecRelSystem.policy();
 		long forwardRow = SecRelSystem.serviceForwardRow(roleId, serviceId);
 		long backwardRow = SecRelSystem.serviceBackwardRow(roleId, serviceId);
 		// check existence of mapping rows
-		return SecRelSystem.serviceForwardMap.containsKey(forwardRow)
-		        && SecRelSystem.serviceBackwardMap.containsKey(backwardRow);
+		return policy.serviceForwardMap.contains(forwardRow)
+		        && policy.serviceBackwardMap.contains(backwardRow);
+	}
+
+	/**
+	 * <p>
+	 * Returns whether the specified user may invoke the specified service,
+	 * that is whether any of its roles is authorized for it with an access
+	 * type holding {@link Right#INVOKE}. This is the decision made by the
+	 * reference monitors, read from the decision cache or, on a miss, from the
+	 * modes of the permission matrix, which already hold the union of the
+	 * access types of every role of the user, so no role is visited.
+	 * </p>
+	 * <p>
+	 * Ids are checked against the entity tables and the decision is read
+	 * without boxing, so a check allocates nothing once the decision is
+	 * cached.
+	 * </p>
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @return true if the user may invoke the service
+	 */
+	public static boolean isPermitted(int userId, int serviceId) {
+		// check if user exists
+		if (!SecRelSystem.userIds.contains(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		// check if service exists
+		if (!SecRelSystem.serviceIds.contains(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		return SecRelSystem.isPermitted(userId, serviceId);
+	}
+
+	/**
+	 * Returns whether the user with the specified ID holds every mode of the
+	 * specified mask for the service with the specified ID, through any of
+	 * its roles or the roles they inherit.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param mode the requested modes, a mask of the constants of
+	 *            {@link Right}
+	 * @return true if the user holds the modes
+	 */
+	public static boolean isPermitted(int userId, int serviceId, int mode) {
+		// check if user exists
+		if (!SecRelSystem.userIds.contains(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		// check if service exists
+		if (!SecRelSystem.serviceIds.contains(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		// check if the mode is valid
+		if (mode == 0 || (mode & ~Right.ALL) != 0)
+			throw new IllegalArgumentException("Mode must be a non-empty mask of access types.");
+		return SecRelSystem.isPermitted(userId, serviceId, mode);
+	}
+
+	/**
+	 * Changes the access type of an existing authorization. The modes of the
+	 * members of the role and of the roles inheriting it follow the change.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param accessType the modes granted, a non-empty mask of the constants of
+	 *            {@link Right}
+	 */
+	public static void setAccessType(int roleId, int serviceId, int accessType) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if role exists
+			if (!SecRelSystem.roleIds.contains(roleId))
+				throw new IllegalArgumentException("Role with that id does not exist.");
+			// check if service exists
+			if (!SecRelSystem.serviceIds.contains(serviceId))
+				throw new IllegalArgumentException("Service with that id does not exist.");
+			// check if the access type is valid
+			if (accessType == 0 || (accessType & ~Right.ALL) != 0)
+				throw new IllegalArgumentException("Access type must be a non-empty mask of access types.");
+			// update both mapping rows
+			if (!SecRelSystem.setAccessType(roleId, serviceId, accessType))
+				throw new IllegalArgumentException("Role is not authorized to invoke that Service.");
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Sets the time at which the authorization of the specified role for the
+	 * specified service expires. This replaces any earlier expiry, so it also
+	 * extends or shortens one, and gives a permanent authorization an expiry.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param expiresAt the time in milliseconds since the epoch
+	 */
+	public static void setExpiry(int roleId, int serviceId, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the authorization exists
+			if (!Authorizations.isAuthorizedFor(roleId, serviceId))
+				throw new IllegalArgumentException("Role is not authorized to invoke that Service.");
+			// check if the expiry has passed
+			if (expiresAt <= System.currentTimeMillis())
+				throw new IllegalArgumentException("Expiry must be in the future.");
+			// schedule expiry
+			SecRelSystem.scheduleAuthorizationExpiry(roleId, serviceId, expiresAt);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Returns the ids of the roles authorized to invoke the service with the
+	 * specified ID in increasing order.
+	 * The stream reads the current version of the relations and reports its
+	 * exact size; a parallel stream splits it between chunks of 65536 ids.
+	 *
+	 * @param serviceId the id of the service
+	 * @return the ids
+	 */
+	public static IntStream streamAuthorizedRoles(int serviceId) {
+		// check if service exists
+		if (!SecRelSystem.serviceIds.contains(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		return SecRelSystem.policy().serviceRoles.get(serviceId).stream();
+	}
+
+	/**
+	 * Returns the ids of the services the role with the specified ID is
+	 * authorized to invoke in increasing order.
+	 * The stream reads the current version of the relations and reports its
+	 * exact size; a parallel stream splits it between chunks of 65536 ids.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids
+	 */
+	public static IntStream streamAuthorizedServices(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.policy().roleServices.get(roleId).stream();
+	}
+
+	/**
+	 * Authorizes the specified role to invoke the specified service unless it
+	 * already is. Unlike {@link #authorizeRole(Integer, Integer, int)}, this
+	 * method reports missing entities and existing authorizations with a
+	 * status instead of an exception. An invalid access type is a programming
+	 * error rather than an expected condition and is still reported with an
+	 * exception.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param accessType the modes granted, a non-empty mask of the constants of
+	 *            {@link Right}
+	 * @return OK, NO_SUCH_ROLE, NO_SUCH_SERVICE or ALREADY_EXISTS
+	 */
+	public static Status tryAuthorizeRole(int roleId, int serviceId, int accessType) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the access type is valid
+			if (accessType == 0 || (accessType & ~Right.ALL) != 0)
+				throw new IllegalArgumentException("Access type must be a non-empty mask of access types.");
+			// check if role exists
+			if (!SecRelSystem.roleIds.contains(roleId))
+				return Status.NO_SUCH_ROLE;
+			// check if service exists
+			if (!SecRelSystem.serviceIds.contains(serviceId))
+				return Status.NO_SUCH_SERVICE;
+			PolicyVersion policy = SecRelSystem.policy();
+			// check if rows exist
+			if (policy.serviceForwardMap.contains(SecRelSystem.serviceForwardRow(roleId, serviceId))
+			        || policy.serviceBackwardMap.contains(SecRelSystem.serviceBackwardRow(roleId, serviceId)))
+				return Status.ALREADY_EXISTS;
+			// add rows to system
+			SecRelSystem.addAuthorization(roleId, serviceId, accessType);
+			return Status.OK;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Authorizes the specified role to invoke the specified service until the
+	 * specified time unless it already is. An existing authorization keeps
+	 * its expiry. A time that has passed is a programming error rather than
+	 * an expected condition and is still reported with an exception.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param accessType the modes granted, a non-empty mask of the constants of
+	 *            {@link Right}
+	 * @param expiresAt the time in milliseconds since the epoch
+	 * @return OK, NO_SUCH_ROLE, NO_SUCH_SERVICE or ALREADY_EXISTS
+	 */
+	public static Status tryAuthorizeRole(int roleId, int serviceId, int accessType, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the expiry has passed
+			if (expiresAt <= System.currentTimeMillis())
+				throw new IllegalArgumentException("Expiry must be in the future.");
+			// delegate to permanent version
+			Status status = Authorizations.tryAuthorizeRole(roleId, serviceId, accessType);
+			// schedule expiry
+			if (status == Status.OK)
+				SecRelSystem.scheduleAuthorizationExpiry(roleId, serviceId, expiresAt);
+			return status;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -0,0 +1,226 @@
+/**
+ * This file defines the BitmapIndex class. The BitmapIndex class maps entity
+ * ids to IdBitmaps of related entity ids.
+ */
+package edu.fgcu.secrel;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The BitmapIndex class is one direction of a relation held as one IdBitmap
+ * per entity, e.g. the users of every role. The bitmaps are kept in pages of
+ * an array indexed by the entity id; entities without related ids share an
+ * empty bitmap.
+ * </p>
+ * <p>
+ * The index is copy-on-write in the same way as {@link LongBTree}: the page
+ * table, the pages and the bitmaps are only modified by the index whose edit
+ * token they carry. {@link #snapshot()} returns a read only index sharing all
+ * of them, and the next modification of an entity copies the page table, one
+ * page and one bitmap.
+ * </p>
+ * <p>
+ * This class is not thread safe; its snapshots are.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class BitmapIndex {
+
+	/**
+	 * A page of bitmaps.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Page {
+
+		/**
+		 * The bitmaps of the page, null for entities without related ids.
+		 */
+		final IdBitmap[] rows;
+
+		/**
+		 * The edit token of the index that may modify this page.
+		 */
+		final Object edit;
+
+		/**
+		 * Constructs a page.
+		 *
+		 * @param rows the bitmaps
+		 * @param edit the edit token
+		 */
+		Page(IdBitmap[] rows, Object edit) {
+			this.rows = rows;
+			this.edit = edit;
+		}
+	}
+
+	/**
+	 * The bitmap returned for entities without related ids. It is never
+	 * modified.
+	 */
+	static final IdBitmap EMPTY = new IdBitmap();
+
+	/**
+	 * The number of bits of an id selecting the bitmap within a page.
+	 */
+	private static final int PAGE_BITS = 10;
+
+	/**
+	 * The pages indexed by the high bits of the entity id.
+	 */
+	private Page[] pages;
+
+	/**
+	 * The edit token of the index that may modify the page table.
+	 */
+	private Object pagesEdit;
+
+	/**
+	 * The token marking the pages and bitmaps this index may modify, or null
+	 * if the index is a read only snapshot.
+	 */
+	private Object edit;
+
+	/**
+	 * Constructs an empty index.
+	 */
+	BitmapIndex() {
+		edit = pagesEdit = new Object();
+		pages = new Page[1];
+	}
+
+	/**
+	 * Constructs a read only index sharing the pages of another index.
+	 *
+	 * @param other the index
+	 */
+	private BitmapIndex(BitmapIndex other) {
+		pages = other.pages;
+	}
+
+	/**
+	 * Adds a related id to the bitmap of the entity.
+	 *
+	 * @param id the id of the entity
+	 * @param related the related id
+	 * @return true if the related id was not already present
+	 */
+	boolean add(int id, int related) {
+		if (get(id).contains(related))
+			return false;
+		IdBitmap[] rows = ownedPage(id).rows;
+		int i = id & (1 << BitmapIndex.PAGE_BITS) - 1;
+		if (rows[i] == null)
+			rows[i] = new IdBitmap(edit);
+		else if (rows[i].edit != edit)
+			rows[i] = rows[i].copy(edit);
+		return rows[i].add(related);
+	}
+
+	/**
+	 * Removes every bitmap.
+	 */
+	void clear() {
+		checkWritable();
+		pages = new Page[1];
+		pagesEdit = edit;
+	}
+
+	/**
+	 * Removes the bitmap of the entity.
+	 *
+	 * @param id the id of the entity
+	 */
+	void clear(int id) {
+		if (get(id) != BitmapIndex.EMPTY)
+			ownedPage(id).rows[id & (1 << BitmapIndex.PAGE_BITS) - 1] = null;
+	}
+
+	/**
+	 * Returns the bitmap of the entity.
+	 *
+	 * @param id the id of the entity
+	 * @return the bitmap, empty if there are no related ids
+	 */
+	IdBitmap get(int id) {
+		if (id < 0)
+			return BitmapIndex.EMPTY;
+		Page[] pages = this.pages;
+		int p = id >>> BitmapIndex.PAGE_BITS;
+		Page page = p < pages.length ? pages[p] : null;
+		IdBitmap row = page == null ? null : page.rows[id & (1 << BitmapIndex.PAGE_BITS) - 1];
+		return row == null ? BitmapIndex.EMPTY : row;
+	}
+
+	/**
+	 * Removes a related id from the bitmap of the entity.
+	 *
+	 * @param id the id of the entity
+	 * @param related the related id
+	 * @return true if the related id was present
+	 */
+	boolean remove(int id, int related) {
+		IdBitmap row = get(id);
+		if (!row.contains(related))
+			return false;
+		IdBitmap[] rows = ownedPage(id).rows;
+		int i = id & (1 << BitmapIndex.PAGE_BITS) - 1;
+		if (row.cardinality() == 1)
+			rows[i] = null;
+		else {
+			if (row.edit != edit)
+				rows[i] = row.copy(edit);
+			rows[i].remove(related);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a read only index holding the current bitmaps. The snapshot
+	 * shares the pages and bitmaps of this index, which copies them before
+	 * its next modification.
+	 *
+	 * @return the snapshot
+	 */
+	BitmapIndex snapshot() {
+		if (edit != null)
+			edit = new Object();
+		return new BitmapIndex(this);
+	}
+
+	/**
+	 * Throws an exception if this index is a read only snapshot.
+	 */
+	private void checkWritable() {
+		if (edit == null)
+			throw new IllegalStateException("Snapshot cannot be modified.");
+	}
+
+	/**
+	 * Returns the page of the entity, first copying the page table and the
+	 * page if this index may not modify them.
+	 *
+	 * @param id the id of the entity
+	 * @return the page
+	 */
+	private Page ownedPage(int id) {
+		checkWritable();
+		int p = id >>> BitmapIndex.PAGE_BITS;
+		if (pagesEdit != edit || p >= pages.length) {
+			pages = Arrays.copyOf(pages, Math.max(p + 1, pagesEdit != edit ? pages.length : pages.length * 2));
+			pagesEdit = edit;
+		}
+		Page page = pages[p];
+		if (page == null)
+			page = pages[p] = new Page(new IdBitmap[1 << BitmapIndex.PAGE_BITS], edit);
+		else if (page.edit != edit)
+			page = pages[p] = new Page(page.rows.clone(), edit);
+		return page;
+	}
+
+}
@@ -0,0 +1,622 @@
+/**
+ * This file defines the BulkLoader class. The BulkLoader class cold-loads the
+ * users, roles, services, memberships and authorizations of the SecRelSystem
+ * from line oriented files.
+ */
+package edu.fgcu.secrel;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * The BulkLoader class loads a whole directory into an empty SecRelSystem far
+ * faster than calls to createUser and assignRole. Entities are created in
+ * file order. Membership and authorization lines are parsed into packed rows
+ * by parallel chunks. The rows are sorted in parallel and the forward and
+ * backward stores are built bottom-up in one pass each with
+ * {@link LongBTree#build(long[], int[], int, boolean)}. The stores replace the
+ * empty relations of the system at once, so readers observe either no
+ * relation or all of them. If loading fails, the entities already created are
+ * removed again.
+ * </p>
+ * <p>
+ * Every file holds one record per line in UTF-8; blank lines and lines
+ * starting with # are skipped and fields are separated by tabs:
+ * </p>
+ * <ul>
+ * <li>users and roles: the name of the entity;</li>
+ * <li>services: the fully qualified class name of a Service with a public no
+ * argument constructor, which is instantiated and registered;</li>
+ * <li>memberships: the name of a user and the name of a role;</li>
+ * <li>authorizations: the name of a role, the name of a service and
+ * optionally the access type, {@link Right#INVOKE} by default.</li>
+ * </ul>
+ * <p>
+ * Duplicate membership and authorization lines are collapsed; duplicate
+ * authorizations must agree on the access type. The loader can also be run
+ * from the command line; see {@link #main(String[])}.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public final class BulkLoader {
+
+	/**
+	 * The number of entities and rows loaded.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	public static final class Counts {
+
+		/**
+		 * The number of users created.
+		 */
+		public final int users;
+
+		/**
+		 * The number of roles created.
+		 */
+		public final int roles;
+
+		/**
+		 * The number of services registered.
+		 */
+		public final int services;
+
+		/**
+		 * The number of distinct memberships loaded.
+		 */
+		public final int memberships;
+
+		/**
+		 * The number of distinct authorizations loaded.
+		 */
+		public final int authorizations;
+
+		/**
+		 * Constructs the counts of a load.
+		 *
+		 * @param users the number of users
+		 * @param roles the number of roles
+		 * @param services the number of services
+		 * @param memberships the number of memberships
+		 * @param authorizations the number of authorizations
+		 */
+		Counts(int users, int roles, int services, int memberships, int authorizations) {
+			this.users = users;
+			this.roles = roles;
+			this.services = services;
+			this.memberships = memberships;
+			this.authorizations = authorizations;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d users, %d roles, %d services, %d memberships, %d authorizations", users, roles,
+					services, memberships, authorizations);
+		}
+	}
+
+	/**
+	 * Parses one line of a relation file into a row.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	@FunctionalInterface
+	private interface RowParser {
+
+		/**
+		 * Parses a line and appends its row.
+		 *
+		 * @param line the line, neither blank nor a comment
+		 * @param out the rows to append to
+		 * @throws IllegalArgumentException if the line is malformed
+		 */
+		void parse(String line, Rows out);
+	}
+
+	/**
+	 * A growable list of packed rows with an optional value column.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Rows {
+
+		/**
+		 * The keys of the rows.
+		 */
+		long[] keys;
+
+		/**
+		 * The values of the rows or null if the rows have no values.
+		 */
+		int[] values;
+
+		/**
+		 * The number of rows.
+		 */
+		int size;
+
+		/**
+		 * Constructs an empty list.
+		 *
+		 * @param capacity the initial capacity
+		 * @param withValues whether the rows carry a value
+		 */
+		Rows(int capacity, boolean withValues) {
+			keys = new long[Math.max(capacity, 16)];
+			values = withValues ? new int[keys.length] : null;
+		}
+
+		/**
+		 * Appends a row.
+		 *
+		 * @param key the key
+		 * @param value the value, ignored if the rows have no values
+		 */
+		void add(long key, int value) {
+			reserve(1);
+			keys[size] = key;
+			if (values != null)
+				values[size] = value;
+			size++;
+		}
+
+		/**
+		 * Appends the rows of another list.
+		 *
+		 * @param other the rows
+		 */
+		void addAll(Rows other) {
+			reserve(other.size);
+			System.arraycopy(other.keys, 0, keys, size, other.size);
+			if (values != null)
+				System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+
+		/**
+		 * Grows the arrays to hold more rows.
+		 *
+		 * @param more the number of rows to add
+		 */
+		private void reserve(int more) {
+			if (size + more <= keys.length)
+				return;
+			int capacity = Math.max(size + more, keys.length + (keys.length >> 1));
+			keys = Arrays.copyOf(keys, capacity);
+			if (values != null)
+				values = Arrays.copyOf(values, capacity);
+		}
+	}
+
+	/**
+	 * The number of lines parsed by one task.
+	 */
+	private static final int CHUNK_LINES = 1 << 14;
+
+	/**
+	 * Parses the access type of an authorization.
+	 *
+	 * @param field the field holding the access type
+	 * @return the access type
+	 * @throws IllegalArgumentException if the field is not a non-empty mask of
+	 *             the constants of {@link Right}
+	 */
+	private static int accessType(String field) {
+		int accessType = Integer.parseInt(field);
+		// check if the access type is valid
+		if (accessType == 0 || (accessType & ~Right.ALL) != 0)
+			throw new IllegalArgumentException("Access type must be a non-empty mask of access types.");
+		return accessType;
+	}
+
+	/**
+	 * Builds the forward and backward stores of a relation from parsed rows.
+	 * The rows are sorted in parallel and collapsed, then the backward keys
+	 * are obtained by swapping the halves of the forward keys and sorted in
+	 * turn.
+	 *
+	 * @param rows the forward rows in file order
+	 * @param name the name of the relation for error messages
+	 * @return the forward and the backward store
+	 */
+	private static LongBTree[] build(Rows rows, String name) {
+		boolean withValues = rows.values != null;
+		long[] forward = Arrays.copyOf(rows.keys, rows.size);
+		Arrays.parallelSort(forward);
+		int size = 0;
+		for (int i = 0; i < forward.length; i++)
+			if (size == 0 || forward[size - 1] != forward[i])
+				forward[size++] = forward[i];
+		long[] backward = new long[size];
+		int[] forwardValues = withValues ? new int[size] : null;
+		int[] backwardValues = withValues ? new int[size] : null;
+		final int distinct = size;
+		IntStream.range(0, distinct).parallel().forEach(i -> backward[i] = BulkLoader.swap(forward[i]));
+		Arrays.parallelSort(backward);
+		if (withValues) {
+			IntStream.range(0, rows.size).parallel().forEach(
+					i -> forwardValues[Arrays.binarySearch(forward, 0, distinct, rows.keys[i])] = rows.values[i]);
+			// check if duplicate rows disagree on their value
+			OptionalInt conflict = IntStream.range(0, rows.size).parallel()
+					.filter(i -> forwardValues[Arrays.binarySearch(forward, 0, distinct, rows.keys[i])] != rows.values[i])
+					.findAny();
+			if (conflict.isPresent()) {
+				long key = rows.keys[conflict.getAsInt()];
+				throw new IllegalArgumentException(String.format("Conflicting values for the %s (%d, %d).", name,
+						(int) (key >> 32), (int) key));
+			}
+			IntStream.range(0, distinct).parallel().forEach(i -> backwardValues[i] = forwardValues[Arrays
+					.binarySearch(forward, 0, distinct, BulkLoader.swap(backward[i]))]);
+		}
+		return new LongBTree[] { LongBTree.build(forward, forwardValues, distinct, withValues),
+				LongBTree.build(backward, backwardValues, distinct, withValues) };
+	}
+
+	/**
+	 * Throws an exception if loaded assignments would give a user two roles
+	 * sharing a static separation of duty constraint, directly or through the
+	 * role hierarchy. The rows are sorted by user, so the roles of each user
+	 * are collected in one pass and checked against the conflict masks once.
+	 *
+	 * @param forward the user to role rows
+	 * @throws IllegalStateException if a user would hold conflicting roles
+	 */
+	static void checkRoleConflicts(RowStore forward) {
+		ConflictSets conflicts = SecRelSystem.getStaticConflicts();
+		if (conflicts.isEmpty())
+			return;
+		RoleHierarchy hierarchy = SecRelSystem.policy().hierarchy;
+		int user = -1;
+		IdBitmap roles = new IdBitmap();
+		for (RowStore.Cursor c = forward.cursor(Long.MIN_VALUE, Long.MAX_VALUE);;) {
+			boolean next = c.next();
+			if (!next || (int) (c.key() >> 32) != user) {
+				// check if the roles of the previous user conflict
+				if (user >= 0 && conflicts.conflicts(BitmapIndex.EMPTY, hierarchy.closure(roles)))
+					throw new IllegalStateException("The User \"" + SecRelSystem.userNames.name(user)
+							+ "\" cannot hold Roles sharing a static constraint.");
+				if (!next)
+					return;
+				user = (int) (c.key() >> 32);
+				roles = new IdBitmap();
+			}
+			roles.add((int) c.key());
+		}
+	}
+
+	/**
+	 * Throws an exception if loaded assignments would give a role more
+	 * members than its limit allows.
+	 *
+	 * @param backward the role to user rows
+	 * @throws IllegalStateException if a role would exceed its limit
+	 */
+	static void checkRoleLimits(RowStore backward) {
+		int role = -1, members = 0;
+		for (RowStore.Cursor c = backward.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			if ((int) (c.key() >> 32) != role) {
+				role = (int) (c.key() >> 32);
+				members = 0;
+			}
+			int limit = SecRelSystem.getRoleLimit(role);
+			// check if the role exceeds its limit
+			if (++members > limit && limit > 0)
+				throw new IllegalStateException("The Role \"" + SecRelSystem.roleNames.name(role)
+						+ "\" cannot have more than " + limit + " members.");
+		}
+	}
+
+	/**
+	 * Returns the location of a line for error messages.
+	 *
+	 * @param path the path of the file
+	 * @param line the line number, starting at 1
+	 * @return the location
+	 */
+	private static String location(Path path, long line) {
+		return path.getFileName() + ":" + line + ": ";
+	}
+
+	/**
+	 * Loads the files into the system. Each path may be null if there is
+	 * nothing of that kind to load. The system must have no memberships or
+	 * authorizations, and the names in the files must not exist yet. The
+	 * write lock of the system is held during the whole load; readers keep
+	 * reading the published relations.
+	 *
+	 * @param users the file of user names
+	 * @param roles the file of role names
+	 * @param services the file of service class names
+	 * @param memberships the file of memberships
+	 * @param authorizations the file of authorizations
+	 * @return the number of entities and rows loaded
+	 * @throws IOException if a file cannot be read
+	 * @throws IllegalArgumentException if a line is malformed or refers to an
+	 *             entity that does not exist
+	 * @throws IllegalStateException if the system has memberships or
+	 *             authorizations, or if the memberships exceed the limit of
+	 *             a role or give a user roles sharing a static constraint
+	 */
+	public static Counts load(Path users, Path roles, Path services, Path memberships, Path authorizations)
+			throws IOException {
+		BitSet createdUsers = new BitSet(), createdRoles = new BitSet(), createdServices = new BitSet();
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion policy = SecRelSystem.policy();
+			// check if the system has rows
+			if (!policy.memberForwardMap.isEmpty() || !policy.serviceForwardMap.isEmpty())
+				throw new IllegalStateException("Relations must be empty to bulk load.");
+			BulkLoader.readLines(users, (name, line) -> {
+				// check if a user with that name already exists
+				if (SecRelSystem.userNames.containsKey(name))
+					throw new IllegalArgumentException(
+							BulkLoader.location(users, line) + "A User with the name \"" + name + "\" already exists.");
+				int id = SecRelSystem.userIds.allocate();
+				SecRelSystem.userIds.put(id, new User(id));
+				SecRelSystem.userNames.put(name, id);
+				createdUsers.set(id);
+			});
+			BulkLoader.readLines(roles, (name, line) -> {
+				// check if a role with that name already exists
+				if (SecRelSystem.roleNames.containsKey(name))
+					throw new IllegalArgumentException(
+							BulkLoader.location(roles, line) + "A Role with the name \"" + name + "\" already exists.");
+				int id = SecRelSystem.roleIds.allocate();
+				SecRelSystem.roleIds.put(id, new Role(id));
+				SecRelSystem.roleNames.put(name, id);
+				createdRoles.set(id);
+			});
+			BulkLoader.readLines(services, (className, line) -> {
+				Service service;
+				try {
+					service = Class.forName(className).asSubclass(Service.class).getConstructor().newInstance();
+				}
+				catch (ReflectiveOperationException | ClassCastException e) {
+					throw new IllegalArgumentException(
+							BulkLoader.location(services, line) + "Cannot instantiate the Service " + className + ".", e);
+				}
+				try {
+					Services.registerService(service);
+				}
+				catch (IllegalArgumentException | IllegalStateException e) {
+					throw new IllegalArgumentException(BulkLoader.location(services, line) + e.getMessage(), e);
+				}
+				createdServices.set(service.getId());
+			});
+			Rows memberRows = BulkLoader.parse(memberships, false, (record, out) -> {
+				String[] fields = BulkLoader.split(record, 2, 2);
+				out.add(SecRelSystem.memberForwardRow(BulkLoader.resolve(SecRelSystem.userNames, fields[0], "User"),
+						BulkLoader.resolve(SecRelSystem.roleNames, fields[1], "Role")), 0);
+			});
+			Rows serviceRows = BulkLoader.parse(authorizations, true, (record, out) -> {
+				String[] fields = BulkLoader.split(record, 2, 3);
+				out.add(SecRelSystem.serviceForwardRow(BulkLoader.resolve(SecRelSystem.roleNames, fields[0], "Role"),
+						BulkLoader.resolve(SecRelSystem.serviceNames, fields[1], "Service")),
+						fields.length == 3 ? BulkLoader.accessType(fields[2]) : Right.INVOKE);
+			});
+			LongBTree[] member = BulkLoader.build(memberRows, "membership");
+			LongBTree[] service = BulkLoader.build(serviceRows, "authorization");
+			BulkLoader.checkRoleLimits(member[1]);
+			BulkLoader.checkRoleConflicts(member[0]);
+			SecRelSystem.installRelations(member[0], member[1], service[0], service[1]);
+			return new Counts(createdUsers.cardinality(), createdRoles.cardinality(), createdServices.cardinality(),
+					member[0].size(), service[0].size());
+		}
+		catch (IOException | RuntimeException | Error e) {
+			// remove the entities created before the failure
+			for (int id = createdServices.nextSetBit(0); id >= 0; id = createdServices.nextSetBit(id + 1))
+				Services.removeService(id);
+			for (int id = createdRoles.nextSetBit(0); id >= 0; id = createdRoles.nextSetBit(id + 1))
+				Roles.removeRole(id);
+			for (int id = createdUsers.nextSetBit(0); id >= 0; id = createdUsers.nextSetBit(id + 1))
+				Users.removeUser(id);
+			throw e;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Loads files from the command line and prints the counts and the elapsed
+	 * time. The arguments are the users, roles, services, memberships and
+	 * authorizations files, in that order; - stands for no file. With
+	 * <code>-store file</code> before them, the loaded rows are written to a
+	 * relation store, which must not hold rows yet, and checkpointed.
+	 * </p>
+	 *
+	 * <pre>
+	 * java edu.fgcu.secrel.BulkLoader [-store file] users roles services memberships authorizations
+	 * </pre>
+	 *
+	 * @param args the arguments
+	 * @throws IOException if a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		int first = args.length > 0 && args[0].equals("-store") ? 2 : 0;
+		// check the number of arguments
+		if (args.length != first + 5) {
+			System.err.println("usage: java edu.fgcu.secrel.BulkLoader [-store file] "
+					+ "users roles services memberships authorizations");
+			System.exit(2);
+		}
+		Path[] paths = new Path[5];
+		for (int i = 0; i < 5; i++)
+			paths[i] = args[first + i].equals("-") ? null : Paths.get(args[first + i]);
+		long start = System.nanoTime();
+		if (first > 0)
+			SecRelSystem.openRelationStore(Paths.get(args[1]));
+		Counts counts = BulkLoader.load(paths[0], paths[1], paths[2], paths[3], paths[4]);
+		if (first > 0)
+			SecRelSystem.closeRelationStore();
+		System.out.printf("Loaded %s in %d ms.%n", counts, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	/**
+	 * Parses the rows of a relation file by chunks of lines on the common
+	 * fork join pool. A bounded number of chunks is in flight so that the
+	 * file is never held in memory as lines; the rows are appended in file
+	 * order.
+	 *
+	 * @param path the path of the file or null
+	 * @param withValues whether the rows carry a value
+	 * @param parser the parser of a line
+	 * @return the rows
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if a line is malformed
+	 */
+	private static Rows parse(Path path, boolean withValues, RowParser parser) throws IOException {
+		Rows rows = new Rows(0, withValues);
+		if (path == null)
+			return rows;
+		int window = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+		Deque<CompletableFuture<Rows>> pending = new ArrayDeque<>();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			long firstLine = 1;
+			for (boolean more = true; more;) {
+				String[] lines = new String[BulkLoader.CHUNK_LINES];
+				int n = 0;
+				while (n < lines.length && (lines[n] = reader.readLine()) != null)
+					n++;
+				more = n == lines.length;
+				if (n == 0)
+					break;
+				final int count = n;
+				final long offset = firstLine;
+				pending.add(CompletableFuture.supplyAsync(() -> {
+					Rows chunk = new Rows(count, withValues);
+					for (int i = 0; i < count; i++) {
+						String record = lines[i].trim();
+						if (record.isEmpty() || record.charAt(0) == '#')
+							continue;
+						try {
+							parser.parse(record, chunk);
+						}
+						catch (IllegalArgumentException e) {
+							throw new IllegalArgumentException(BulkLoader.location(path, offset + i) + e.getMessage(),
+									e);
+						}
+					}
+					return chunk;
+				}));
+				firstLine += n;
+				if (pending.size() >= window)
+					rows.addAll(BulkLoader.join(pending.poll()));
+			}
+			while (!pending.isEmpty())
+				rows.addAll(BulkLoader.join(pending.poll()));
+		}
+		finally {
+			for (CompletableFuture<Rows> chunk : pending)
+				chunk.cancel(false);
+		}
+		return rows;
+	}
+
+	/**
+	 * Waits for a parsed chunk and rethrows the failure of its task.
+	 *
+	 * @param chunk the chunk
+	 * @return the rows of the chunk
+	 */
+	private static Rows join(CompletableFuture<Rows> chunk) {
+		try {
+			return chunk.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the records of an entity file in order.
+	 *
+	 * @param path the path of the file or null
+	 * @param consumer receives each record and its line number
+	 * @throws IOException if the file cannot be read
+	 */
+	private static void readLines(Path path, ObjLongConsumer<String> consumer) throws IOException {
+		if (path == null)
+			return;
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			long line = 0;
+			for (String record; (record = reader.readLine()) != null;) {
+				line++;
+				record = record.trim();
+				if (!record.isEmpty() && record.charAt(0) != '#')
+					consumer.accept(record, line);
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of a name.
+	 *
+	 * @param names the names of the entities
+	 * @param name the name
+	 * @param type the type of the entities for error messages
+	 * @return the id
+	 * @throws IllegalArgumentException if the name does not exist
+	 */
+	private static int resolve(NameDictionary names, String name, String type) {
+		Integer id = names.get(name);
+		// check if the entity exists
+		if (id == null)
+			throw new IllegalArgumentException(type + " with the name \"" + name + "\" does not exist.");
+		return id;
+	}
+
+	/**
+	 * Splits a record into its tab separated fields.
+	 *
+	 * @param record the record
+	 * @param min the minimum number of fields
+	 * @param max the maximum number of fields
+	 * @return the fields
+	 * @throws IllegalArgumentException if the record has too few or too many
+	 *             fields
+	 */
+	private static String[] split(String record, int min, int max) {
+		String[] fields = record.split("\t", -1);
+		// check the number of fields
+		if (fields.length < min || fields.length > max)
+			throw new IllegalArgumentException(
+					String.format("Expected %d to %d tab separated fields but found %d.", min, max, fields.length));
+		for (int i = 0; i < fields.length; i++)
+			fields[i] = fields[i].trim();
+		return fields;
+	}
+
+	/**
+	 * Swaps the 32 bit halves of a packed row, turning a forward row into the
+	 * matching backward row and back.
+	 *
+	 * @param row the row
+	 * @return the swapped row
+	 */
+	private static long swap(long row) {
+		return row << 32 | row >>> 32;
+	}
+
+	/**
+	 * Prevents instantiation of the BulkLoader class.
+	 */
+	private BulkLoader() {
+	}
+
+}
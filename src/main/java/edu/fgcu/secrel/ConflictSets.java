@@ -0,0 +1,197 @@
+/**
+ * This file defines the ConflictSets class. The ConflictSets class holds the
+ * separation of duty constraints of one kind, compiled into per-role conflict
+ * masks.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+/**
+ * <p>
+ * The ConflictSets class holds named sets of mutually exclusive roles, e.g.
+ * payment-initiator and payment-approver, of which a user may hold at most
+ * one. Whenever the constraints change they are compiled into a conflict mask
+ * per role: the bitmap of every role sharing a constraint with it. Checking a
+ * role against the roles a user already holds is then one intersection of
+ * two bitmaps, however many constraints there are. A user holds a role
+ * through the hierarchy as well, so the callers pass the closures of the
+ * roles held and added, see {@link RoleHierarchy#closure(IdBitmap)}.
+ * </p>
+ * <p>
+ * Instances are immutable. The SecRelSystem holds one instance for the static
+ * constraints, checked on assignment, and one for the dynamic constraints,
+ * checked on activation, and replaces them as constraints are added and
+ * removed, so readers never lock.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class ConflictSets {
+
+	/**
+	 * The instance holding no constraints.
+	 */
+	static final ConflictSets EMPTY = new ConflictSets(new TreeMap<>());
+
+	/**
+	 * The roles of each constraint, sorted, indexed by constraint name.
+	 */
+	private final SortedMap<String, int[]> constraints;
+
+	/**
+	 * The roles conflicting with each role, indexed by role id.
+	 */
+	private final IdBitmap[] masks;
+
+	/**
+	 * Constructs an instance from its constraints and compiles the conflict
+	 * masks.
+	 *
+	 * @param constraints the roles of each constraint, which is not copied
+	 */
+	private ConflictSets(SortedMap<String, int[]> constraints) {
+		this.constraints = constraints;
+		int length = 0;
+		for (int[] roles : constraints.values())
+			length = Math.max(length, roles[roles.length - 1] + 1);
+		masks = new IdBitmap[length];
+		for (int[] roles : constraints.values())
+			for (int roleId : roles)
+				for (int other : roles)
+					if (other != roleId) {
+						if (masks[roleId] == null)
+							masks[roleId] = new IdBitmap();
+						masks[roleId].add(other);
+					}
+	}
+
+	/**
+	 * Returns whether a role conflicts with any of the roles of a bitmap.
+	 *
+	 * @param roles the ids of the roles held
+	 * @param roleId the id of the role to add
+	 * @return true if the role shares a constraint with a held role
+	 */
+	boolean conflicts(IdBitmap roles, int roleId) {
+		IdBitmap mask = mask(roleId);
+		return mask != BitmapIndex.EMPTY && IdBitmap.intersects(mask, roles);
+	}
+
+	/**
+	 * Returns whether adding roles to the roles held would leave two roles of
+	 * a constraint among them. Each added role is checked against the union,
+	 * so two added roles conflicting with each other are found as well.
+	 *
+	 * @param roles the ids of the roles held
+	 * @param added the ids of the roles to add
+	 * @return true if an added role shares a constraint with a held or added
+	 *         role
+	 */
+	boolean conflicts(IdBitmap roles, IdBitmap added) {
+		if (masks.length == 0)
+			return false;
+		IdBitmap union = IdBitmap.or(roles, added);
+		for (int roleId = added.nextId(0); roleId >= 0 && roleId < masks.length; roleId = added.nextId(roleId + 1))
+			if (conflicts(union, roleId))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns whether a constraint exists.
+	 *
+	 * @param name the name of the constraint
+	 * @return true if the constraint exists
+	 */
+	boolean contains(String name) {
+		return constraints.containsKey(name);
+	}
+
+	/**
+	 * Returns whether no constraint exists.
+	 *
+	 * @return true if there are no constraints
+	 */
+	boolean isEmpty() {
+		return constraints.isEmpty();
+	}
+
+	/**
+	 * Returns the roles conflicting with a role.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the conflicting roles
+	 */
+	IdBitmap mask(int roleId) {
+		return roleId >= 0 && roleId < masks.length && masks[roleId] != null ? masks[roleId] : BitmapIndex.EMPTY;
+	}
+
+	/**
+	 * Returns the names of the constraints in order.
+	 *
+	 * @return the names
+	 */
+	Set<String> names() {
+		return Collections.unmodifiableSet(constraints.keySet());
+	}
+
+	/**
+	 * Returns the roles of a constraint.
+	 *
+	 * @param name the name of the constraint
+	 * @return a copy of the sorted ids of the roles, or null if the constraint
+	 *         does not exist
+	 */
+	int[] roles(String name) {
+		int[] roles = constraints.get(name);
+		return roles == null ? null : roles.clone();
+	}
+
+	/**
+	 * Returns an instance holding these constraints and another one.
+	 *
+	 * @param name the name of the constraint
+	 * @param roleIds the sorted, distinct ids of at least two roles
+	 * @return the new instance
+	 */
+	ConflictSets with(String name, int[] roleIds) {
+		SortedMap<String, int[]> constraints = new TreeMap<>(this.constraints);
+		constraints.put(name, roleIds.clone());
+		return new ConflictSets(constraints);
+	}
+
+	/**
+	 * Returns an instance holding these constraints but one.
+	 *
+	 * @param name the name of the constraint
+	 * @return the new instance
+	 */
+	ConflictSets without(String name) {
+		SortedMap<String, int[]> constraints = new TreeMap<>(this.constraints);
+		constraints.remove(name);
+		return new ConflictSets(constraints);
+	}
+
+	/**
+	 * Returns an instance holding these constraints without a role. A
+	 * constraint left with fewer than two roles is dropped.
+	 *
+	 * @param roleId the id of the role
+	 * @return the new instance, or this instance if no constraint holds the
+	 *         role
+	 */
+	ConflictSets withoutRole(int roleId) {
+		if (mask(roleId) == BitmapIndex.EMPTY)
+			return this;
+		SortedMap<String, int[]> constraints = new TreeMap<>();
+		for (Map.Entry<String, int[]> e : this.constraints.entrySet()) {
+			int[] roles = Arrays.stream(e.getValue()).filter(id -> id != roleId).toArray();
+			if (roles.length >= 2)
+				constraints.put(e.getKey(), roles);
+		}
+		return new ConflictSets(constraints);
+	}
+
+}
@@ -0,0 +1,239 @@
+/**
+ * <p>
+ * This file defines the Constraints class. The Constraints class contains
+ * methods to manipulate the separation of duty constraints of the
+ * SecRelSystem.
+ * </p>
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+/**
+ * <p>
+ * This class contains methods for creating and removing the separation of
+ * duty constraints of the SecRelSystem. A constraint is a named set of
+ * mutually exclusive roles, e.g. payment-initiator and payment-approver, of
+ * which a user may hold at most one.
+ * </p>
+ * <p>
+ * A static constraint is checked when a user is assigned to a role: the
+ * assignment is refused if the user would then hold two roles of the
+ * constraint. A user holds the roles it is assigned to and the roles those
+ * inherit, so adding an inheritance edge that would give a member of the
+ * senior role two roles of a constraint is refused as well. A dynamic
+ * constraint allows the assignments and is checked when a role is activated
+ * instead, against the active roles and the roles they inherit; an
+ * inheritance edge or a new dynamic constraint that would give an open
+ * session two active roles of a constraint is refused likewise. Constraints
+ * are compiled into a conflict mask per role when they change, so a check is
+ * one bitmap intersection per role checked however many constraints exist.
+ * </p>
+ * <p>
+ * Static and dynamic constraints share one namespace. Removing a role removes
+ * it from every constraint, and a constraint left with a single role is
+ * removed.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public class Constraints {
+
+	/**
+	 * Creates a dynamic separation of duty constraint. The constraint is
+	 * refused if an open session already has more than one of the roles
+	 * active, directly or through the hierarchy.
+	 *
+	 * @param name the name of the constraint
+	 * @param roleIds the ids of the mutually exclusive roles
+	 */
+	public static void createDynamicConstraint(String name, int... roleIds) {
+		SecRelSystem.beginWrite();
+		try {
+			int[] roles = Constraints.validate(name, roleIds);
+			ConflictSets conflicts = SecRelSystem.getDynamicConflicts().with(name, roles);
+			// check if a session already holds two of the roles
+			for (int roleId : roles) {
+				IdBitmap role = new IdBitmap();
+				role.add(roleId);
+				if (SecRelSystem.hasDynamicConflict(conflicts, roleId, role))
+					throw new IllegalStateException("A Session already holds more than one Role of the constraint.");
+			}
+			// add constraint to system
+			SecRelSystem.setDynamicConflicts(conflicts);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Creates a static separation of duty constraint.
+	 *
+	 * @param name the name of the constraint
+	 * @param roleIds the ids of the mutually exclusive roles
+	 */
+	public static void createStaticConstraint(String name, int... roleIds) {
+		SecRelSystem.beginWrite();
+		try {
+			int[] roles = Constraints.validate(name, roleIds);
+			IdBitmap[] holders = new IdBitmap[roles.length];
+			for (int i = 0; i < roles.length; i++)
+				holders[i] = SecRelSystem.getRoleHolders(roles[i]);
+			// check if a user already holds two of the roles
+			for (int i = 0; i < roles.length; i++)
+				for (int j = i + 1; j < roles.length; j++)
+					if (IdBitmap.intersects(holders[i], holders[j]))
+						throw new IllegalStateException("A User already holds more than one Role of the constraint.");
+			// add constraint to system
+			SecRelSystem.setStaticConflicts(SecRelSystem.getStaticConflicts().with(name, roles));
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Returns the roles of the constraint with the specified name.
+	 *
+	 * @param name the name of the constraint
+	 * @return the ids of the roles in increasing order
+	 */
+	public static int[] getConstraintRoles(String name) {
+		// check if a name is null
+		if (name == null)
+			// throw exception
+			throw new NullPointerException("Constraint name cannot be null.");
+		int[] roles = SecRelSystem.getStaticConflicts().roles(name);
+		if (roles == null)
+			roles = SecRelSystem.getDynamicConflicts().roles(name);
+		// check if constraint exists
+		if (roles == null)
+			throw new IllegalArgumentException("Constraint with that name does not exist.");
+		return roles;
+	}
+
+	/**
+	 * Returns the names of the dynamic constraints in order.
+	 *
+	 * @return the names
+	 */
+	public static Set<String> getDynamicConstraints() {
+		return SecRelSystem.getDynamicConflicts().names();
+	}
+
+	/**
+	 * Returns the roles sharing a dynamic constraint with the role with the
+	 * specified id.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the conflicting roles
+	 */
+	public static IdBitmap getDynamicConflicts(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.getDynamicConflicts().mask(roleId);
+	}
+
+	/**
+	 * Returns the names of the static constraints in order.
+	 *
+	 * @return the names
+	 */
+	public static Set<String> getStaticConstraints() {
+		return SecRelSystem.getStaticConflicts().names();
+	}
+
+	/**
+	 * Returns the roles sharing a static constraint with the role with the
+	 * specified id.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the conflicting roles
+	 */
+	public static IdBitmap getStaticConflicts(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.getStaticConflicts().mask(roleId);
+	}
+
+	/**
+	 * Returns whether a constraint with the specified name exists.
+	 *
+	 * @param name the name of the constraint
+	 * @return true if the constraint exists
+	 */
+	public static boolean hasConstraint(String name) {
+		// check if a name is null
+		if (name == null)
+			// throw exception
+			throw new NullPointerException("Constraint name cannot be null.");
+		return SecRelSystem.getStaticConflicts().contains(name) || SecRelSystem.getDynamicConflicts().contains(name);
+	}
+
+	/**
+	 * Removes the constraint with the specified name.
+	 *
+	 * @param name the name of the constraint
+	 */
+	public static void removeConstraint(String name) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a name is null
+			if (name == null)
+				// throw exception
+				throw new NullPointerException("Constraint name cannot be null.");
+			// remove constraint from system
+			if (SecRelSystem.getStaticConflicts().contains(name))
+				SecRelSystem.setStaticConflicts(SecRelSystem.getStaticConflicts().without(name));
+			else if (SecRelSystem.getDynamicConflicts().contains(name))
+				SecRelSystem.setDynamicConflicts(SecRelSystem.getDynamicConflicts().without(name));
+			else
+				throw new IllegalArgumentException("Constraint with that name does not exist.");
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Validates the arguments of a new constraint. The caller must hold the
+	 * write lock.
+	 *
+	 * @param name the name of the constraint
+	 * @param roleIds the ids of the roles
+	 * @return the sorted, distinct ids of the roles
+	 */
+	private static int[] validate(String name, int[] roleIds) {
+		// check if a name is null
+		if (name == null)
+			// throw exception
+			throw new NullPointerException("Constraint name cannot be null.");
+		// check if roleIds is null
+		if (roleIds == null)
+			// throw exception
+			throw new NullPointerException("Role ids cannot be null.");
+		// check if the name is taken
+		if (Constraints.hasConstraint(name))
+			throw new IllegalStateException("Constraint with that name already exists.");
+		int[] roles = Arrays.stream(roleIds).sorted().distinct().toArray();
+		// check if roles exist
+		for (int roleId : roles)
+			if (!SecRelSystem.roleIds.contains(roleId))
+				throw new IllegalArgumentException("Role with that id does not exist.");
+		// check if the constraint excludes anything
+		if (roles.length < 2)
+			throw new IllegalArgumentException("A constraint needs at least two Roles.");
+		return roles;
+	}
+
+	/**
+	 * Prevents instantiation of the Constraints class.
+	 */
+	private Constraints() {
+	}
+
+}
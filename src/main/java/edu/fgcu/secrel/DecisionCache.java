@@ -0,0 +1,354 @@
+/**
+ * This file defines the DecisionCache class. The DecisionCache class caches
+ * the authorization decisions of the reference monitors.
+ */
+package edu.fgcu.secrel;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ * The DecisionCache class is a bounded, concurrent cache of authorization
+ * decisions keyed by the pair of a user id and a service id packed in a long.
+ * The cache is direct mapped: each pair hashes to a single slot and a new
+ * decision replaces whatever decision held the slot.
+ * </p>
+ * <p>
+ * Every decision is stored with the epochs of its user and its service and is
+ * only served while both epochs are unchanged. The writer of the system
+ * invalidates the decisions of a user or a service by bumping its epoch once
+ * the change is published, so a decision computed from an older version of
+ * the policy is never served after the new version is visible. Epochs are
+ * kept in stripes indexed by the low bits of the id. A user or service loses
+ * its assignments when it is removed, which bumps its epoch, so a recycled id
+ * never inherits the decisions of its predecessor. Changes affecting every
+ * pair bump a generation shared by all entries.
+ * </p>
+ * <p>
+ * The cache counts hits, misses, evictions of valid decisions by other pairs
+ * and invalidations of decisions found with stale epochs.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public final class DecisionCache {
+
+	/**
+	 * Computes an authorization decision on a cache miss.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	@FunctionalInterface
+	interface Decider {
+
+		/**
+		 * Determines if the user may invoke the service.
+		 *
+		 * @param userId the id of the user
+		 * @param serviceId the id of the service
+		 * @return true if the user may invoke the service
+		 */
+		boolean isPermitted(int userId, int serviceId);
+	}
+
+	/**
+	 * A cached decision.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Entry {
+
+		/**
+		 * The user id in the 32 most significant bits and the service id in
+		 * the 32 least significant bits.
+		 */
+		final long key;
+
+		/**
+		 * The epochs of the user and the service when the decision was
+		 * computed.
+		 */
+		final long epochs;
+
+		/**
+		 * The decision.
+		 */
+		final boolean permitted;
+
+		/**
+		 * Constructs an entry.
+		 *
+		 * @param key the pair of ids
+		 * @param epochs the epochs
+		 * @param permitted the decision
+		 */
+		Entry(long key, long epochs, boolean permitted) {
+			this.key = key;
+			this.epochs = epochs;
+			this.permitted = permitted;
+		}
+	}
+
+	/**
+	 * The number of epoch stripes of the users and of the services.
+	 */
+	private static final int EPOCH_STRIPES = 1 << 14;
+
+	/**
+	 * The slots of the cache.
+	 */
+	private final AtomicReferenceArray<Entry> slots;
+
+	/**
+	 * The epochs of the users by stripe.
+	 */
+	private final AtomicIntegerArray userEpochs = new AtomicIntegerArray(DecisionCache.EPOCH_STRIPES);
+
+	/**
+	 * The epochs of the services by stripe.
+	 */
+	private final AtomicIntegerArray serviceEpochs = new AtomicIntegerArray(DecisionCache.EPOCH_STRIPES);
+
+	/**
+	 * The epoch shared by every pair, added to the epoch of the user.
+	 */
+	private volatile int generation;
+
+	/**
+	 * The user stripes to bump at the next publication. Only the writer
+	 * accesses it.
+	 */
+	private final BitSet pendingUsers = new BitSet();
+
+	/**
+	 * The service stripes to bump at the next publication. Only the writer
+	 * accesses it.
+	 */
+	private final BitSet pendingServices = new BitSet();
+
+	/**
+	 * Whether to bump the generation at the next publication. Only the writer
+	 * accesses it.
+	 */
+	private boolean pendingAll;
+
+	/**
+	 * The number of decisions served from the cache.
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * The number of decisions computed.
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * The number of valid decisions replaced by the decision of another pair.
+	 */
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * The number of decisions found with stale epochs.
+	 */
+	private final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * Constructs a cache.
+	 *
+	 * @param capacity the number of slots, rounded up to a power of two
+	 */
+	DecisionCache(int capacity) {
+		// check if capacity is in range
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Cache capacity must be between 1 and 2^30.");
+		slots = new AtomicReferenceArray<>(Integer.highestOneBit(capacity - 1 << 1 | 1));
+	}
+
+	/**
+	 * Returns the current epochs of a pair.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @return the epochs
+	 */
+	private long epochs(int userId, int serviceId) {
+		int user = userEpochs.get(userId & DecisionCache.EPOCH_STRIPES - 1) + generation;
+		int service = serviceEpochs.get(serviceId & DecisionCache.EPOCH_STRIPES - 1);
+		return (long) user << 32 | service & 0xffffffffL;
+	}
+
+	/**
+	 * Returns the number of decisions replaced by the decision of another
+	 * pair while still valid.
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the number of decisions served from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the fraction of lookups served from the cache.
+	 *
+	 * @return the hit ratio, or 0 if there were no lookups
+	 */
+	public double getHitRatio() {
+		long hits = this.hits.sum(), lookups = hits + misses.sum();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Returns the number of decisions found in the cache whose user or
+	 * service has changed since.
+	 *
+	 * @return the number of invalidations
+	 */
+	public long getInvalidationCount() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * Returns the number of decisions computed because the cache did not hold
+	 * a valid one.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Invalidates every decision at the next publication. Must be called by
+	 * the writer.
+	 */
+	void invalidateAll() {
+		pendingAll = true;
+	}
+
+	/**
+	 * Invalidates the decisions of a service at the next publication. Must be
+	 * called by the writer.
+	 *
+	 * @param serviceId the id of the service
+	 */
+	void invalidateService(int serviceId) {
+		pendingServices.set(serviceId & DecisionCache.EPOCH_STRIPES - 1);
+	}
+
+	/**
+	 * Invalidates the decisions of a user at the next publication. Must be
+	 * called by the writer.
+	 *
+	 * @param userId the id of the user
+	 */
+	void invalidateUser(int userId) {
+		pendingUsers.set(userId & DecisionCache.EPOCH_STRIPES - 1);
+	}
+
+	/**
+	 * Returns the cached decision of a pair, computing and caching it if the
+	 * cache holds no valid decision.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param decider computes the decision from the published policy
+	 * @return true if the user may invoke the service
+	 */
+	boolean isPermitted(int userId, int serviceId, Decider decider) {
+		long key = (long) userId << 32 | serviceId & 0xffffffffL;
+		// read the epochs before the policy so a concurrent change is caught
+		long epochs = epochs(userId, serviceId);
+		int slot = slot(key);
+		Entry entry = slots.get(slot);
+		if (entry != null && entry.key == key) {
+			if (entry.epochs == epochs) {
+				hits.increment();
+				return entry.permitted;
+			}
+			invalidations.increment();
+		}
+		else if (entry != null && entry.epochs == epochs(userId(entry.key), serviceId(entry.key)))
+			evictions.increment();
+		misses.increment();
+		boolean permitted = decider.isPermitted(userId, serviceId);
+		slots.set(slot, new Entry(key, epochs, permitted));
+		return permitted;
+	}
+
+	/**
+	 * Bumps the epochs invalidated since the last publication. Must be called
+	 * by the writer after the change is published.
+	 */
+	void publish() {
+		for (int i = pendingUsers.nextSetBit(0); i >= 0; i = pendingUsers.nextSetBit(i + 1))
+			userEpochs.incrementAndGet(i);
+		for (int i = pendingServices.nextSetBit(0); i >= 0; i = pendingServices.nextSetBit(i + 1))
+			serviceEpochs.incrementAndGet(i);
+		if (pendingAll)
+			generation++;
+		pendingUsers.clear();
+		pendingServices.clear();
+		pendingAll = false;
+	}
+
+	/**
+	 * Resets the statistics of the cache.
+	 */
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+		invalidations.reset();
+	}
+
+	/**
+	 * Returns the service id of a key.
+	 *
+	 * @param key the key
+	 * @return the service id
+	 */
+	private static int serviceId(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * Returns the slot of a key.
+	 *
+	 * @param key the key
+	 * @return the slot
+	 */
+	private int slot(long key) {
+		long hash = key * 0x9e3779b97f4a7c15L;
+		return (int) (hash >>> 32) & slots.length() - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DecisionCache(hits=%d, misses=%d, hitRatio=%.3f, evictions=%d, invalidations=%d)",
+				getHitCount(), getMissCount(), getHitRatio(), getEvictionCount(), getInvalidationCount());
+	}
+
+	/**
+	 * Returns the user id of a key.
+	 *
+	 * @param key the key
+	 * @return the user id
+	 */
+	private static int userId(long key) {
+		return (int) (key >>> 32);
+	}
+
+}
@@ -0,0 +1,35 @@
+/**
+ * <p>
+ * This file defines the Entity interface.
+ * </p>
+ * <p>
+ * The Entity interface is used as a super type for the User, Role and Service
+ * types. The need for this is little but may become useful if further
+ * extensions include classes treated similarly to the Service class or if the
+ * Service class proves to be too abstract and more granularity is needed.
+ * </p>
+ */
+package edu.fgcu.secrel;
+
+/**
+ * Required by verifyCompositeMap for extensibility.
+ *
+ * @author lngibson
+ *
+ */
+interface Entity {
+	
+	/**
+	 * Returns the id of this entity.
+	 *
+	 * @return this entity's id
+	 */
+	Integer getId();
+	
+	/**
+	 * Returns the name of this entity.
+	 *
+	 * @return this entity's name
+	 */
+	String getName();
+}
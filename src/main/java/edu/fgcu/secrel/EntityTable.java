@@ -0,0 +1,393 @@
+/**
+ * This file defines the EntityTable class. The EntityTable class maps dense
+ * entity ids to users, roles or services.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * <p>
+ * The EntityTable class maps the ids of one type of entity to their values,
+ * e.g. the names of the users. The values are held in pages of an array
+ * indexed directly by the id, with a liveness bitmap, so checking whether an
+ * id exists is two array reads rather than a tree descent.
+ * </p>
+ * <p>
+ * Ids are allocated by {@link #allocate()} without locking: the ids of
+ * removed entities are recycled from a lock-free free-list and new ids are
+ * taken from a counter once the free-list is empty. Ids therefore stay dense,
+ * and per-entity metadata can be kept in arrays indexed by id.
+ * </p>
+ * <p>
+ * Reads are lock-free and may run concurrently with modifications. The map
+ * view iterates the live ids in ascending order.
+ * </p>
+ *
+ * @author lngibson
+ *
+ * @param <T> the type of the values
+ */
+final class EntityTable<T> extends AbstractMap<Integer, T> {
+
+	/**
+	 * A page of the table.
+	 *
+	 * @author lngibson
+	 *
+	 * @param <T> the type of the values
+	 */
+	private static final class Page<T> {
+
+		/**
+		 * The values, null for ids without an entity.
+		 */
+		final AtomicReferenceArray<T> values = new AtomicReferenceArray<>(1 << EntityTable.PAGE_BITS);
+
+		/**
+		 * The bits of the ids with an entity.
+		 */
+		final AtomicLongArray live = new AtomicLongArray(1 << EntityTable.PAGE_BITS - 6);
+
+		/**
+		 * The bits of the ids in the free-list.
+		 */
+		final AtomicLongArray free = new AtomicLongArray(1 << EntityTable.PAGE_BITS - 6);
+
+		/**
+		 * The id following each id in the free-list, or -1.
+		 */
+		final AtomicIntegerArray next = new AtomicIntegerArray(1 << EntityTable.PAGE_BITS);
+	}
+
+	/**
+	 * The number of bits of an id selecting the entry within a page.
+	 */
+	private static final int PAGE_BITS = 14;
+
+	/**
+	 * The pages indexed by the high bits of the id, created on demand.
+	 */
+	private final AtomicReferenceArray<Page<T>> pages = new AtomicReferenceArray<>(
+			1 << 31 - EntityTable.PAGE_BITS);
+
+	/**
+	 * The id following every id ever allocated or stored.
+	 */
+	private final AtomicInteger limit = new AtomicInteger();
+
+	/**
+	 * The head of the free-list: a stamp in the 32 most significant bits,
+	 * incremented by every change, and the first id plus one, 0 if the list
+	 * is empty, in the 32 least significant bits.
+	 */
+	private final AtomicLong freeHead = new AtomicLong();
+
+	/**
+	 * The number of entities.
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Returns an unused id, recycling the id of a removed entity if possible.
+	 * The id has no entity until a value is stored with {@link #put}.
+	 *
+	 * @return the id
+	 * @throws IllegalStateException if every id is in use
+	 */
+	int allocate() {
+		for (;;) {
+			long head = freeHead.get();
+			int id = (int) head - 1;
+			if (id < 0)
+				break;
+			Page<T> page = pages.get(id >>> EntityTable.PAGE_BITS);
+			int next = page.next.get(id & (1 << EntityTable.PAGE_BITS) - 1);
+			if (freeHead.compareAndSet(head, (head >>> 32) + 1 << 32 | next + 1 & 0xffffffffL)) {
+				EntityTable.clearBit(page.free, id);
+				// skip ids stored explicitly while in the free-list
+				if (!contains(id))
+					return id;
+			}
+		}
+		int id = limit.getAndIncrement();
+		// check if ids are exhausted
+		if (id < 0)
+			throw new IllegalStateException("Entity ids are exhausted.");
+		page(id);
+		return id;
+	}
+
+	/**
+	 * Clears a bit of a page.
+	 *
+	 * @param bits the bits of the page
+	 * @param id the id
+	 * @return true if the bit was set
+	 */
+	private static boolean clearBit(AtomicLongArray bits, int id) {
+		int i = (id & (1 << EntityTable.PAGE_BITS) - 1) >>> 6;
+		long mask = 1L << id;
+		for (;;) {
+			long word = bits.get(i);
+			if ((word & mask) == 0)
+				return false;
+			if (bits.compareAndSet(i, word, word & ~mask))
+				return true;
+		}
+	}
+
+	/**
+	 * Sets a bit of a page.
+	 *
+	 * @param bits the bits of the page
+	 * @param id the id
+	 * @return true if the bit was clear
+	 */
+	private static boolean setBit(AtomicLongArray bits, int id) {
+		int i = (id & (1 << EntityTable.PAGE_BITS) - 1) >>> 6;
+		long mask = 1L << id;
+		for (;;) {
+			long word = bits.get(i);
+			if ((word & mask) != 0)
+				return false;
+			if (bits.compareAndSet(i, word, word | mask))
+				return true;
+		}
+	}
+
+	/**
+	 * Returns whether the id has an entity.
+	 *
+	 * @param id the id
+	 * @return true if the id has an entity
+	 */
+	boolean contains(int id) {
+		if (id < 0)
+			return false;
+		Page<T> page = pages.get(id >>> EntityTable.PAGE_BITS);
+		return page != null
+				&& (page.live.get((id & (1 << EntityTable.PAGE_BITS) - 1) >>> 6) & 1L << id) != 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		// check if key is null, which the map does not permit
+		if (key == null)
+			throw new NullPointerException("Entity id cannot be null.");
+		return key instanceof Integer && contains((Integer) key);
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, T>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, T>>() {
+
+			@Override
+			public Iterator<Map.Entry<Integer, T>> iterator() {
+				PrimitiveIterator.OfInt ids = EntityTable.this.ids();
+				return new Iterator<Map.Entry<Integer, T>>() {
+
+					/**
+					 * The id of the last entry returned.
+					 */
+					private int last = -1;
+
+					@Override
+					public boolean hasNext() {
+						return ids.hasNext();
+					}
+
+					@Override
+					public Map.Entry<Integer, T> next() {
+						last = ids.nextInt();
+						return new AbstractMap.SimpleImmutableEntry<>(last, get(last));
+					}
+
+					@Override
+					public void remove() {
+						// check if next has been called
+						if (last < 0)
+							throw new IllegalStateException();
+						EntityTable.this.remove(last);
+						last = -1;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return EntityTable.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Returns the value of the id.
+	 *
+	 * @param id the id
+	 * @return the value or null if the id has no entity
+	 */
+	T get(int id) {
+		if (id < 0)
+			return null;
+		Page<T> page = pages.get(id >>> EntityTable.PAGE_BITS);
+		return page == null ? null : page.values.get(id & (1 << EntityTable.PAGE_BITS) - 1);
+	}
+
+	@Override
+	public T get(Object key) {
+		// check if key is null, which the map does not permit
+		if (key == null)
+			throw new NullPointerException("Entity id cannot be null.");
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	/**
+	 * Returns an iterator over the ids with an entity in ascending order.
+	 *
+	 * @return the iterator
+	 */
+	PrimitiveIterator.OfInt ids() {
+		return new PrimitiveIterator.OfInt() {
+
+			/**
+			 * The next id with an entity, or -1.
+			 */
+			private int next = nextId(0);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public int nextInt() {
+				// check if there is a next id
+				if (next < 0)
+					throw new NoSuchElementException();
+				int out = next;
+				next = out == Integer.MAX_VALUE ? -1 : nextId(out + 1);
+				return out;
+			}
+		};
+	}
+
+	/**
+	 * Returns the first id with an entity not less than from.
+	 *
+	 * @param from the first id to consider
+	 * @return the id or -1 if there is none
+	 */
+	int nextId(int from) {
+		int limit = this.limit.get();
+		for (int id = from; id < limit && id >= 0;) {
+			Page<T> page = pages.get(id >>> EntityTable.PAGE_BITS);
+			if (page == null) {
+				id = (id >>> EntityTable.PAGE_BITS) + 1 << EntityTable.PAGE_BITS;
+				continue;
+			}
+			int i = (id & (1 << EntityTable.PAGE_BITS) - 1) >>> 6;
+			long word = page.live.get(i) & -1L << id;
+			if (word != 0)
+				return (id & ~63) + Long.numberOfTrailingZeros(word);
+			id = (id | 63) + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the page of an id, creating it if needed.
+	 *
+	 * @param id the id
+	 * @return the page
+	 */
+	private Page<T> page(int id) {
+		int p = id >>> EntityTable.PAGE_BITS;
+		Page<T> page = pages.get(p);
+		if (page == null) {
+			pages.compareAndSet(p, null, new Page<>());
+			page = pages.get(p);
+		}
+		return page;
+	}
+
+	/**
+	 * Stores the value of an id, normally one returned by
+	 * {@link #allocate()}.
+	 *
+	 * @param id the id
+	 * @param value the value
+	 * @return the previous value or null
+	 */
+	@Override
+	public T put(Integer id, T value) {
+		// check if arguments are null
+		if (id == null || value == null)
+			throw new NullPointerException("Entity id and value cannot be null.");
+		// check if id is negative
+		if (id < 0)
+			throw new IllegalArgumentException("Entity id cannot be negative.");
+		Page<T> page = page(id);
+		limit.accumulateAndGet(id + 1, Math::max);
+		T old = page.values.getAndSet(id & (1 << EntityTable.PAGE_BITS) - 1, value);
+		if (EntityTable.setBit(page.live, id))
+			size.incrementAndGet();
+		return old;
+	}
+
+	/**
+	 * Removes the entity of an id and recycles the id.
+	 *
+	 * @param key the id
+	 * @return the removed value or null
+	 */
+	@Override
+	public T remove(Object key) {
+		if (!containsKey(key))
+			return null;
+		int id = (Integer) key;
+		Page<T> page = pages.get(id >>> EntityTable.PAGE_BITS);
+		if (!EntityTable.clearBit(page.live, id))
+			return null;
+		size.decrementAndGet();
+		T old = page.values.getAndSet(id & (1 << EntityTable.PAGE_BITS) - 1, null);
+		recycle(page, id);
+		return old;
+	}
+
+	/**
+	 * Pushes an id on the free-list unless it is already there.
+	 *
+	 * @param page the page of the id
+	 * @param id the id
+	 */
+	private void recycle(Page<T> page, int id) {
+		if (EntityTable.setBit(page.free, id))
+			for (;;) {
+				long head = freeHead.get();
+				page.next.set(id & (1 << EntityTable.PAGE_BITS) - 1, (int) head - 1);
+				if (freeHead.compareAndSet(head, (head >>> 32) + 1 << 32 | id + 1 & 0xffffffffL))
+					break;
+			}
+	}
+
+	/**
+	 * Returns an id obtained from {@link #allocate()} but not used to the
+	 * free-list.
+	 *
+	 * @param id the id
+	 */
+	void release(int id) {
+		// check if the id is in use
+		if (contains(id))
+			throw new IllegalStateException("Entity id is in use.");
+		recycle(page(id), id);
+	}
+
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+}
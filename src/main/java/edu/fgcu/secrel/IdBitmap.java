@@ -0,0 +1,994 @@
+/**
+ * This file defines the IdBitmap class. The IdBitmap class is the compressed
+ * set of ids used by the SecRelSystem to index its relations.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.*;
+
+/**
+ * <p>
+ * The IdBitmap class is a compressed bitmap of non-negative int ids in the
+ * style of a roaring bitmap. Ids are partitioned by their 16 most significant
+ * bits into chunks. A chunk holding at most 4096 ids is stored as a sorted
+ * char array, a denser chunk is stored as a 65536 bit bitmap. This keeps both
+ * a role with ten members and a role with a million members compact, and lets
+ * the set operations work a chunk at a time.
+ * </p>
+ * <p>
+ * The set operations {@link #and(IdBitmap, IdBitmap)},
+ * {@link #or(IdBitmap, IdBitmap)} and {@link #andNot(IdBitmap, IdBitmap)}
+ * return new bitmaps; the cardinality variants count the result without
+ * building it. Instances can only be modified by the SecRelSystem, so the
+ * bitmaps handed out by {@link Queries} are read only.
+ * </p>
+ * <p>
+ * Like {@link LongBTree}, a bitmap is copy-on-write: it only modifies the
+ * chunks carrying its own edit token. {@link #copy(Object)} returns a bitmap
+ * sharing every chunk, so a published bitmap is never modified and a new
+ * version of it costs one chunk copy per modified chunk.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public final class IdBitmap {
+
+	/**
+	 * A chunk stored as a sorted array of the 16 least significant bits of its
+	 * ids.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class ArrayChunk extends Chunk {
+
+		/**
+		 * The sorted low bits.
+		 */
+		char[] values;
+
+		/**
+		 * Constructs a chunk from sorted values.
+		 *
+		 * @param values the sorted values, which may be longer than
+		 *            cardinality
+		 * @param cardinality the number of values
+		 */
+		ArrayChunk(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Chunk add(char v) {
+			int i = Arrays.binarySearch(values, 0, cardinality, v);
+			if (i >= 0)
+				return this;
+			if (cardinality == IdBitmap.ARRAY_MAX)
+				return toBitmap().add(v);
+			i = -i - 1;
+			if (cardinality == values.length)
+				values = Arrays.copyOf(values, Math.min(IdBitmap.ARRAY_MAX, Math.max(4, cardinality * 2)));
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = v;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		boolean contains(char v) {
+			return Arrays.binarySearch(values, 0, cardinality, v) >= 0;
+		}
+
+		@Override
+		Chunk copy() {
+			return new ArrayChunk(Arrays.copyOf(values, cardinality), cardinality);
+		}
+
+		@Override
+		int next(int from) {
+			int i = Arrays.binarySearch(values, 0, cardinality, (char) from);
+			if (i < 0)
+				i = -i - 1;
+			return i < cardinality ? values[i] : -1;
+		}
+
+		@Override
+		int prev(int from) {
+			int i = Arrays.binarySearch(values, 0, cardinality, (char) from);
+			if (i < 0)
+				i = -i - 2;
+			return i >= 0 ? values[i] : -1;
+		}
+
+		@Override
+		Chunk remove(char v) {
+			int i = Arrays.binarySearch(values, 0, cardinality, v);
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		/**
+		 * Returns a bitmap chunk with the same values.
+		 *
+		 * @return the bitmap chunk
+		 */
+		BitmapChunk toBitmap() {
+			long[] words = new long[IdBitmap.WORDS];
+			for (int i = 0; i < cardinality; i++)
+				words[values[i] >>> 6] |= 1L << values[i];
+			return new BitmapChunk(words, cardinality);
+		}
+	}
+
+	/**
+	 * A chunk stored as a 65536 bit bitmap.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class BitmapChunk extends Chunk {
+
+		/**
+		 * The bits.
+		 */
+		final long[] words;
+
+		/**
+		 * Constructs a chunk from its words.
+		 *
+		 * @param words the words
+		 * @param cardinality the number of set bits
+		 */
+		BitmapChunk(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Chunk add(char v) {
+			long before = words[v >>> 6];
+			words[v >>> 6] = before | 1L << v;
+			if (before != words[v >>> 6])
+				cardinality++;
+			return this;
+		}
+
+		@Override
+		boolean contains(char v) {
+			return (words[v >>> 6] & 1L << v) != 0;
+		}
+
+		@Override
+		Chunk copy() {
+			return new BitmapChunk(words.clone(), cardinality);
+		}
+
+		@Override
+		int next(int from) {
+			int w = from >>> 6;
+			if (w >= IdBitmap.WORDS)
+				return -1;
+			long word = words[w] & -1L << from;
+			while (word == 0) {
+				if (++w == IdBitmap.WORDS)
+					return -1;
+				word = words[w];
+			}
+			return w << 6 | Long.numberOfTrailingZeros(word);
+		}
+
+		@Override
+		int prev(int from) {
+			int w = from >>> 6;
+			long word = words[w] & -1L >>> 63 - (from & 63);
+			while (word == 0) {
+				if (--w < 0)
+					return -1;
+				word = words[w];
+			}
+			return w << 6 | 63 - Long.numberOfLeadingZeros(word);
+		}
+
+		@Override
+		Chunk remove(char v) {
+			long before = words[v >>> 6];
+			words[v >>> 6] = before & ~(1L << v);
+			if (before != words[v >>> 6] && --cardinality <= IdBitmap.ARRAY_MAX)
+				return IdBitmap.toChunk(words, cardinality);
+			return this;
+		}
+	}
+
+	/**
+	 * A chunk of at most 65536 ids sharing their 16 most significant bits.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private abstract static class Chunk {
+
+		/**
+		 * The number of ids in this chunk.
+		 */
+		int cardinality;
+
+		/**
+		 * The edit token of the bitmap that may modify this chunk.
+		 */
+		Object edit;
+
+		/**
+		 * Adds the value to this chunk.
+		 *
+		 * @param v the 16 least significant bits of the id
+		 * @return the chunk now holding the values, this or a converted chunk
+		 */
+		abstract Chunk add(char v);
+
+		/**
+		 * Returns whether this chunk contains the value.
+		 *
+		 * @param v the 16 least significant bits of the id
+		 * @return true if the value is present
+		 */
+		abstract boolean contains(char v);
+
+		/**
+		 * Returns a deep copy of this chunk.
+		 *
+		 * @return the copy
+		 */
+		abstract Chunk copy();
+
+		/**
+		 * Returns the smallest value not less than from.
+		 *
+		 * @param from the lower bound, 0 to 65535
+		 * @return the value or -1 if there is none
+		 */
+		abstract int next(int from);
+
+		/**
+		 * Returns the largest value not greater than from.
+		 *
+		 * @param from the upper bound, 0 to 65535
+		 * @return the value or -1 if there is none
+		 */
+		abstract int prev(int from);
+
+		/**
+		 * Removes the value from this chunk.
+		 *
+		 * @param v the 16 least significant bits of the id
+		 * @return the chunk now holding the values, this or a converted chunk
+		 */
+		abstract Chunk remove(char v);
+	}
+
+	/**
+	 * A spliterator over the ids of a range of chunks. It splits at chunk
+	 * boundaries, so the size of every part is known exactly from the
+	 * cardinalities of its chunks.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private final class IdSpliterator implements Spliterator.OfInt {
+
+		/**
+		 * The index of the chunk holding the next id.
+		 */
+		private int chunk;
+
+		/**
+		 * The 16 least significant bits of the next id to look for in the
+		 * chunk, 65536 once the chunk is exhausted.
+		 */
+		private int value;
+
+		/**
+		 * The index of the chunk following the range.
+		 */
+		private final int end;
+
+		/**
+		 * The number of ids not yet returned.
+		 */
+		private long remaining;
+
+		/**
+		 * Constructs a spliterator over a range of chunks.
+		 *
+		 * @param chunk the index of the first chunk
+		 * @param value the first value to look for in the first chunk
+		 * @param end the index of the chunk following the range
+		 * @param remaining the number of ids in the range
+		 */
+		IdSpliterator(int chunk, int value, int end, long remaining) {
+			this.chunk = chunk;
+			this.value = value;
+			this.end = end;
+			this.remaining = remaining;
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL
+					| Spliterator.SIZED | Spliterator.SUBSIZED;
+		}
+
+		@Override
+		public long estimateSize() {
+			return remaining;
+		}
+
+		@Override
+		public void forEachRemaining(IntConsumer action) {
+			for (; chunk < end; chunk++, value = 0) {
+				int high = keys[chunk] << 16;
+				for (int v = value > 0xffff ? -1 : chunks[chunk].next(value); v >= 0; v = v == 0xffff ? -1
+						: chunks[chunk].next(v + 1))
+					action.accept(high | v);
+			}
+			remaining = 0;
+		}
+
+		@Override
+		public Comparator<? super Integer> getComparator() {
+			return null;
+		}
+
+		@Override
+		public boolean tryAdvance(IntConsumer action) {
+			for (; chunk < end; chunk++, value = 0) {
+				int v = value > 0xffff ? -1 : chunks[chunk].next(value);
+				if (v >= 0) {
+					value = v + 1;
+					remaining--;
+					action.accept(keys[chunk] << 16 | v);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator.OfInt trySplit() {
+			int mid = chunk + end >>> 1;
+			if (mid == chunk)
+				return null;
+			long suffix = 0;
+			for (int i = mid; i < end; i++)
+				suffix += chunks[i].cardinality;
+			Spliterator.OfInt prefix = new IdSpliterator(chunk, value, mid, remaining - suffix);
+			chunk = mid;
+			value = 0;
+			remaining = suffix;
+			return prefix;
+		}
+	}
+
+	/**
+	 * The largest number of values stored in an array chunk.
+	 */
+	private static final int ARRAY_MAX = 4096;
+
+	/**
+	 * The number of words in a bitmap chunk.
+	 */
+	private static final int WORDS = 1024;
+
+	/**
+	 * The 16 most significant bits of the ids of each chunk, sorted.
+	 */
+	private char[] keys;
+
+	/**
+	 * The chunks, parallel to keys.
+	 */
+	private Chunk[] chunks;
+
+	/**
+	 * The number of chunks.
+	 */
+	private int size;
+
+	/**
+	 * The number of ids, maintained by every modification so that counting a
+	 * bitmap does not visit its chunks.
+	 */
+	private int cardinality;
+
+	/**
+	 * The token marking the chunks this bitmap may modify.
+	 */
+	final Object edit;
+
+	/**
+	 * Constructs an empty bitmap.
+	 */
+	IdBitmap() {
+		this(new Object());
+	}
+
+	/**
+	 * Constructs an empty bitmap owned by an edit token.
+	 *
+	 * @param edit the edit token
+	 */
+	IdBitmap(Object edit) {
+		this(new char[4], new Chunk[4], 0, 0, edit);
+	}
+
+	/**
+	 * Constructs a bitmap from its chunks.
+	 *
+	 * @param keys the chunk keys
+	 * @param chunks the chunks
+	 * @param size the number of chunks
+	 * @param cardinality the number of ids
+	 * @param edit the edit token
+	 */
+	private IdBitmap(char[] keys, Chunk[] chunks, int size, int cardinality, Object edit) {
+		this.keys = keys;
+		this.chunks = chunks;
+		this.size = size;
+		this.cardinality = cardinality;
+		this.edit = edit;
+	}
+
+	/**
+	 * Returns the ids present in both bitmaps.
+	 *
+	 * @param a the first bitmap
+	 * @param b the second bitmap
+	 * @return the intersection
+	 */
+	public static IdBitmap and(IdBitmap a, IdBitmap b) {
+		IdBitmap out = new IdBitmap();
+		for (int i = 0, j = 0; i < a.size && j < b.size;)
+			if (a.keys[i] < b.keys[j])
+				i++;
+			else if (a.keys[i] > b.keys[j])
+				j++;
+			else {
+				Chunk c = IdBitmap.and(a.chunks[i], b.chunks[j]);
+				if (c.cardinality > 0)
+					out.append(a.keys[i], c);
+				i++;
+				j++;
+			}
+		return out;
+	}
+
+	/**
+	 * Returns the number of ids present in both bitmaps.
+	 *
+	 * @param a the first bitmap
+	 * @param b the second bitmap
+	 * @return the cardinality of the intersection
+	 */
+	public static int andCardinality(IdBitmap a, IdBitmap b) {
+		int n = 0;
+		for (int i = 0, j = 0; i < a.size && j < b.size;)
+			if (a.keys[i] < b.keys[j])
+				i++;
+			else if (a.keys[i] > b.keys[j])
+				j++;
+			else
+				n += IdBitmap.andCardinality(a.chunks[i++], b.chunks[j++]);
+		return n;
+	}
+
+	/**
+	 * Returns the ids present in the first bitmap but not in the second.
+	 *
+	 * @param a the first bitmap
+	 * @param b the second bitmap
+	 * @return the difference
+	 */
+	public static IdBitmap andNot(IdBitmap a, IdBitmap b) {
+		IdBitmap out = new IdBitmap();
+		for (int i = 0, j = 0; i < a.size;)
+			if (j == b.size || a.keys[i] < b.keys[j])
+				out.append(a.keys[i], a.chunks[i++].copy());
+			else if (a.keys[i] > b.keys[j])
+				j++;
+			else {
+				Chunk c = IdBitmap.andNot(a.chunks[i], b.chunks[j]);
+				if (c.cardinality > 0)
+					out.append(a.keys[i], c);
+				i++;
+				j++;
+			}
+		return out;
+	}
+
+	/**
+	 * Returns the number of ids present in the first bitmap but not in the
+	 * second.
+	 *
+	 * @param a the first bitmap
+	 * @param b the second bitmap
+	 * @return the cardinality of the difference
+	 */
+	public static int andNotCardinality(IdBitmap a, IdBitmap b) {
+		return a.cardinality() - IdBitmap.andCardinality(a, b);
+	}
+
+	/**
+	 * Returns whether an id is present in both bitmaps. Unlike
+	 * {@link #andCardinality(IdBitmap, IdBitmap)}, this stops at the first
+	 * common id.
+	 *
+	 * @param a the first bitmap
+	 * @param b the second bitmap
+	 * @return true if the intersection is not empty
+	 */
+	public static boolean intersects(IdBitmap a, IdBitmap b) {
+		for (int i = 0, j = 0; i < a.size && j < b.size;)
+			if (a.keys[i] < b.keys[j])
+				i++;
+			else if (a.keys[i] > b.keys[j])
+				j++;
+			else if (IdBitmap.intersects(a.chunks[i++], b.chunks[j++]))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the ids present in either bitmap.
+	 *
+	 * @param a the first bitmap
+	 * @param b the second bitmap
+	 * @return the union
+	 */
+	public static IdBitmap or(IdBitmap a, IdBitmap b) {
+		IdBitmap out = new IdBitmap();
+		int i = 0, j = 0;
+		while (i < a.size || j < b.size)
+			if (j == b.size || i < a.size && a.keys[i] < b.keys[j])
+				out.append(a.keys[i], a.chunks[i++].copy());
+			else if (i == a.size || a.keys[i] > b.keys[j])
+				out.append(b.keys[j], b.chunks[j++].copy());
+			else
+				out.append(a.keys[i], IdBitmap.or(a.chunks[i++], b.chunks[j++]));
+		return out;
+	}
+
+	/**
+	 * Returns the number of ids present in either bitmap.
+	 *
+	 * @param a the first bitmap
+	 * @param b the second bitmap
+	 * @return the cardinality of the union
+	 */
+	public static int orCardinality(IdBitmap a, IdBitmap b) {
+		return a.cardinality() + b.cardinality() - IdBitmap.andCardinality(a, b);
+	}
+
+	/**
+	 * Returns the intersection of two chunks.
+	 *
+	 * @param a the first chunk
+	 * @param b the second chunk
+	 * @return the intersection
+	 */
+	private static Chunk and(Chunk a, Chunk b) {
+		if (a instanceof BitmapChunk && b instanceof BitmapChunk) {
+			long[] x = ((BitmapChunk) a).words, y = ((BitmapChunk) b).words, words = new long[IdBitmap.WORDS];
+			int n = 0;
+			for (int w = 0; w < IdBitmap.WORDS; w++)
+				n += Long.bitCount(words[w] = x[w] & y[w]);
+			return IdBitmap.toChunk(words, n);
+		}
+		if (a instanceof BitmapChunk)
+			return IdBitmap.and(b, a);
+		// a is an array chunk, keep its values present in b
+		ArrayChunk array = (ArrayChunk) a;
+		char[] values = new char[array.cardinality];
+		int n = 0;
+		if (b instanceof ArrayChunk) {
+			ArrayChunk other = (ArrayChunk) b;
+			for (int i = 0, j = 0; i < array.cardinality && j < other.cardinality;)
+				if (array.values[i] < other.values[j])
+					i++;
+				else if (array.values[i] > other.values[j])
+					j++;
+				else {
+					values[n++] = array.values[i++];
+					j++;
+				}
+		}
+		else
+			for (int i = 0; i < array.cardinality; i++)
+				if (b.contains(array.values[i]))
+					values[n++] = array.values[i];
+		return new ArrayChunk(values, n);
+	}
+
+	/**
+	 * Returns the cardinality of the intersection of two chunks.
+	 *
+	 * @param a the first chunk
+	 * @param b the second chunk
+	 * @return the cardinality of the intersection
+	 */
+	private static int andCardinality(Chunk a, Chunk b) {
+		int n = 0;
+		if (a instanceof BitmapChunk && b instanceof BitmapChunk) {
+			long[] x = ((BitmapChunk) a).words, y = ((BitmapChunk) b).words;
+			for (int w = 0; w < IdBitmap.WORDS; w++)
+				n += Long.bitCount(x[w] & y[w]);
+			return n;
+		}
+		if (a instanceof BitmapChunk)
+			return IdBitmap.andCardinality(b, a);
+		ArrayChunk array = (ArrayChunk) a;
+		for (int i = 0; i < array.cardinality; i++)
+			if (b.contains(array.values[i]))
+				n++;
+		return n;
+	}
+
+	/**
+	 * Returns the difference of two chunks.
+	 *
+	 * @param a the first chunk
+	 * @param b the second chunk
+	 * @return the difference
+	 */
+	private static Chunk andNot(Chunk a, Chunk b) {
+		if (a instanceof BitmapChunk) {
+			long[] words = ((BitmapChunk) a).words.clone();
+			if (b instanceof BitmapChunk) {
+				long[] y = ((BitmapChunk) b).words;
+				for (int w = 0; w < IdBitmap.WORDS; w++)
+					words[w] &= ~y[w];
+			}
+			else {
+				ArrayChunk other = (ArrayChunk) b;
+				for (int i = 0; i < other.cardinality; i++)
+					words[other.values[i] >>> 6] &= ~(1L << other.values[i]);
+			}
+			int n = 0;
+			for (long word : words)
+				n += Long.bitCount(word);
+			return IdBitmap.toChunk(words, n);
+		}
+		ArrayChunk array = (ArrayChunk) a;
+		char[] values = new char[array.cardinality];
+		int n = 0;
+		for (int i = 0; i < array.cardinality; i++)
+			if (!b.contains(array.values[i]))
+				values[n++] = array.values[i];
+		return new ArrayChunk(values, n);
+	}
+
+	/**
+	 * Returns whether two chunks have a common id.
+	 *
+	 * @param a the first chunk
+	 * @param b the second chunk
+	 * @return true if the intersection is not empty
+	 */
+	private static boolean intersects(Chunk a, Chunk b) {
+		if (a instanceof BitmapChunk && b instanceof BitmapChunk) {
+			long[] x = ((BitmapChunk) a).words, y = ((BitmapChunk) b).words;
+			for (int w = 0; w < IdBitmap.WORDS; w++)
+				if ((x[w] & y[w]) != 0)
+					return true;
+			return false;
+		}
+		if (a instanceof BitmapChunk)
+			return IdBitmap.intersects(b, a);
+		ArrayChunk array = (ArrayChunk) a;
+		for (int i = 0; i < array.cardinality; i++)
+			if (b.contains(array.values[i]))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the union of two chunks.
+	 *
+	 * @param a the first chunk
+	 * @param b the second chunk
+	 * @return the union
+	 */
+	private static Chunk or(Chunk a, Chunk b) {
+		if (a instanceof ArrayChunk && b instanceof ArrayChunk
+				&& a.cardinality + b.cardinality <= IdBitmap.ARRAY_MAX) {
+			ArrayChunk x = (ArrayChunk) a, y = (ArrayChunk) b;
+			char[] values = new char[x.cardinality + y.cardinality];
+			int n = 0, i = 0, j = 0;
+			while (i < x.cardinality || j < y.cardinality)
+				if (j == y.cardinality || i < x.cardinality && x.values[i] < y.values[j])
+					values[n++] = x.values[i++];
+				else if (i == x.cardinality || x.values[i] > y.values[j])
+					values[n++] = y.values[j++];
+				else {
+					values[n++] = x.values[i++];
+					j++;
+				}
+			return new ArrayChunk(values, n);
+		}
+		long[] words = a instanceof BitmapChunk ? ((BitmapChunk) a).words.clone()
+				: ((ArrayChunk) a).toBitmap().words;
+		if (b instanceof BitmapChunk) {
+			long[] y = ((BitmapChunk) b).words;
+			for (int w = 0; w < IdBitmap.WORDS; w++)
+				words[w] |= y[w];
+		}
+		else {
+			ArrayChunk other = (ArrayChunk) b;
+			for (int i = 0; i < other.cardinality; i++)
+				words[other.values[i] >>> 6] |= 1L << other.values[i];
+		}
+		int n = 0;
+		for (long word : words)
+			n += Long.bitCount(word);
+		return IdBitmap.toChunk(words, n);
+	}
+
+	/**
+	 * Returns a chunk for the bits, converting sparse bits to an array chunk.
+	 *
+	 * @param words the bits
+	 * @param cardinality the number of set bits
+	 * @return the chunk
+	 */
+	private static Chunk toChunk(long[] words, int cardinality) {
+		if (cardinality > IdBitmap.ARRAY_MAX)
+			return new BitmapChunk(words, cardinality);
+		char[] values = new char[cardinality];
+		int n = 0;
+		for (int w = 0; w < IdBitmap.WORDS; w++)
+			for (long word = words[w]; word != 0; word &= word - 1)
+				values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+		return new ArrayChunk(values, cardinality);
+	}
+
+	/**
+	 * Returns the number of ids in this bitmap in constant time.
+	 *
+	 * @return the cardinality
+	 */
+	public int cardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * Returns whether the id is in this bitmap.
+	 *
+	 * @param id the id
+	 * @return true if the id is present
+	 */
+	public boolean contains(int id) {
+		int i = chunkIndex((char) (id >>> 16));
+		return i >= 0 && chunks[i].contains((char) id);
+	}
+
+	/**
+	 * Passes every id in this bitmap to the consumer in increasing order.
+	 *
+	 * @param consumer the consumer
+	 */
+	public void forEach(IntConsumer consumer) {
+		for (int id = nextId(0); id >= 0; id = id == Integer.MAX_VALUE ? -1 : nextId(id + 1))
+			consumer.accept(id);
+	}
+
+	/**
+	 * Returns whether this bitmap is empty.
+	 *
+	 * @return true if there are no ids
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the smallest id in this bitmap not less than from.
+	 *
+	 * @param from the lower bound
+	 * @return the id or -1 if there is none
+	 */
+	public int nextId(int from) {
+		if (from < 0)
+			from = 0;
+		int i = chunkIndex((char) (from >>> 16));
+		if (i >= 0) {
+			int v = chunks[i].next(from & 0xffff);
+			if (v >= 0)
+				return keys[i] << 16 | v;
+			i++;
+		}
+		else
+			i = -i - 1;
+		return i < size ? keys[i] << 16 | chunks[i].next(0) : -1;
+	}
+
+	/**
+	 * Returns the largest id in this bitmap not greater than from.
+	 *
+	 * @param from the upper bound
+	 * @return the id or -1 if there is none
+	 */
+	public int prevId(int from) {
+		if (from < 0)
+			return -1;
+		int i = chunkIndex((char) (from >>> 16));
+		if (i >= 0) {
+			int v = chunks[i].prev(from & 0xffff);
+			if (v >= 0)
+				return keys[i] << 16 | v;
+		}
+		else
+			i = -i - 1;
+		return i > 0 ? keys[i - 1] << 16 | chunks[i - 1].prev(0xffff) : -1;
+	}
+
+	/**
+	 * Returns a spliterator over the ids in this bitmap in increasing order.
+	 * It reports its exact size and splits between chunks of 65536 ids, so a
+	 * parallel stream over a large bitmap divides it into parts of known
+	 * size without counting them.
+	 *
+	 * @return the spliterator
+	 */
+	public Spliterator.OfInt spliterator() {
+		return new IdSpliterator(0, 0, size, cardinality);
+	}
+
+	/**
+	 * Returns a stream of the ids in this bitmap in increasing order.
+	 *
+	 * @return the stream
+	 */
+	public IntStream stream() {
+		return StreamSupport.intStream(spliterator(), false);
+	}
+
+	/**
+	 * Returns the ids in this bitmap in increasing order.
+	 *
+	 * @return the ids
+	 */
+	public int[] toArray() {
+		int[] out = new int[cardinality()];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			int high = keys[i] << 16;
+			for (int v = chunks[i].next(0); v >= 0; v = v == 0xffff ? -1 : chunks[i].next(v + 1))
+				out[n++] = high | v;
+		}
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		forEach(id -> sb.append(sb.length() > 1 ? "," : "").append(id));
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Adds the id to this bitmap.
+	 *
+	 * @param id the id
+	 * @return true if the id was not already present
+	 */
+	boolean add(int id) {
+		char key = (char) (id >>> 16);
+		int i = chunkIndex(key);
+		if (i < 0) {
+			i = -i - 1;
+			insertChunk(i, key, new ArrayChunk(new char[4], 0));
+			chunks[i].edit = edit;
+		}
+		else if (chunks[i].contains((char) id))
+			return false;
+		Chunk chunk = owned(i);
+		chunks[i] = chunk.add((char) id);
+		chunks[i].edit = edit;
+		cardinality++;
+		return true;
+	}
+
+	/**
+	 * Returns a bitmap holding the same ids that shares the chunks of this
+	 * bitmap and may only modify its own copies of them.
+	 *
+	 * @param edit the edit token of the copy
+	 * @return the copy
+	 */
+	IdBitmap copy(Object edit) {
+		return new IdBitmap(keys.clone(), chunks.clone(), size, cardinality, edit);
+	}
+
+	/**
+	 * Removes the id from this bitmap.
+	 *
+	 * @param id the id
+	 * @return true if the id was present
+	 */
+	boolean remove(int id) {
+		int i = chunkIndex((char) (id >>> 16));
+		if (i < 0 || !chunks[i].contains((char) id))
+			return false;
+		cardinality--;
+		if (chunks[i].cardinality == 1) {
+			System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+			System.arraycopy(chunks, i + 1, chunks, i, size - i - 1);
+			chunks[--size] = null;
+			return true;
+		}
+		chunks[i] = owned(i).remove((char) id);
+		chunks[i].edit = edit;
+		return true;
+	}
+
+	/**
+	 * Appends a chunk with a key greater than every present key.
+	 *
+	 * @param key the key
+	 * @param chunk the chunk
+	 */
+	private void append(char key, Chunk chunk) {
+		insertChunk(size, key, chunk);
+	}
+
+	/**
+	 * Binary searches the chunk keys.
+	 *
+	 * @param key the key
+	 * @return the index of the chunk or (-(insertion point) - 1)
+	 */
+	private int chunkIndex(char key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	/**
+	 * Returns chunk i, first replacing it with a copy if this bitmap may not
+	 * modify it.
+	 *
+	 * @param i the index of the chunk
+	 * @return the chunk
+	 */
+	private Chunk owned(int i) {
+		if (chunks[i].edit != edit) {
+			chunks[i] = chunks[i].copy();
+			chunks[i].edit = edit;
+		}
+		return chunks[i];
+	}
+
+	/**
+	 * Inserts a chunk at position i.
+	 *
+	 * @param i the position
+	 * @param key the key
+	 * @param chunk the chunk
+	 */
+	private void insertChunk(int i, char key, Chunk chunk) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			chunks = Arrays.copyOf(chunks, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(chunks, i, chunks, i + 1, size - i);
+		keys[i] = key;
+		chunks[i] = chunk;
+		size++;
+		cardinality += chunk.cardinality;
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * This file defines the IdPage class. The IdPage class is one page of the ids
+ * of a relation, read with a cursor.
+ */
+package edu.fgcu.secrel;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The IdPage class holds one page of the ids related to an entity in
+ * increasing order, e.g. the members of a role. Pages are keyed by the last
+ * id they hold rather than by an offset: the next page is requested with
+ * {@link #getCursor()} and holds the ids greater than it. A listing therefore
+ * neither repeats nor skips ids that stay in the relation while it is paged
+ * through, however the relation changes between requests, and each page
+ * costs a seek and the ids it holds.
+ * </p>
+ *
+ * <pre>
+ * IdPage page = Members.getMemberPage(roleId, IdPage.FIRST, 1000);
+ * // use page.getIds()
+ * while (page.hasMore()) {
+ * 	page = Members.getMemberPage(roleId, page.getCursor(), 1000);
+ * 	// use page.getIds()
+ * }
+ * </pre>
+ *
+ * @author lngibson
+ *
+ */
+public final class IdPage {
+
+	/**
+	 * The cursor requesting the first page.
+	 */
+	public static final int FIRST = -1;
+
+	/**
+	 * The ids of this page.
+	 */
+	private final int[] ids;
+
+	/**
+	 * The cursor of the next page.
+	 */
+	private final int cursor;
+
+	/**
+	 * Whether there are ids after this page.
+	 */
+	private final boolean more;
+
+	/**
+	 * Constructs a page.
+	 *
+	 * @param ids the ids
+	 * @param cursor the cursor of the next page
+	 * @param more whether there are ids after the page
+	 */
+	private IdPage(int[] ids, int cursor, boolean more) {
+		this.ids = ids;
+		this.cursor = cursor;
+		this.more = more;
+	}
+
+	/**
+	 * Reads a page of ids from a bitmap.
+	 *
+	 * @param bitmap the bitmap
+	 * @param after the cursor, the ids of the page are greater than it
+	 * @param limit the largest number of ids in the page
+	 * @return the page
+	 */
+	static IdPage of(IdBitmap bitmap, int after, int limit) {
+		// check if the limit is positive
+		if (limit <= 0)
+			throw new IllegalArgumentException("Page size must be positive.");
+		int[] ids = new int[Math.min(limit, bitmap.cardinality())];
+		int n = 0;
+		int id = after == Integer.MAX_VALUE ? -1 : bitmap.nextId(after + 1);
+		for (; id >= 0 && n < ids.length; id = id == Integer.MAX_VALUE ? -1 : bitmap.nextId(id + 1))
+			ids[n++] = id;
+		if (n < ids.length)
+			ids = Arrays.copyOf(ids, n);
+		return new IdPage(ids, n > 0 ? ids[n - 1] : after, id >= 0);
+	}
+
+	/**
+	 * Returns the cursor requesting the page following this one. It is the
+	 * last id of this page, or the cursor of this page if it is empty.
+	 *
+	 * @return the cursor
+	 */
+	public int getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Returns the ids of this page in increasing order. The array is not
+	 * copied.
+	 *
+	 * @return the ids
+	 */
+	public int[] getIds() {
+		return ids;
+	}
+
+	/**
+	 * Returns whether there are ids after this page.
+	 *
+	 * @return true if the next page is not empty
+	 */
+	public boolean hasMore() {
+		return more;
+	}
+
+}
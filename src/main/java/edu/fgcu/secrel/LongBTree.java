@@ -0,0 +1,1008 @@
+/**
+ * This file defines the LongBTree class. The LongBTree class is the sorted
+ * primitive store used by the SecRelSystem to hold its packed mapping rows.
+ */
+package edu.fgcu.secrel;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * The LongBTree class is a B+tree specialized for primitive long keys with an
+ * optional primitive int value column. It replaces the
+ * <code>TreeSet&lt;Long&gt;</code> and <code>TreeMap&lt;Long, Right&gt;</code>
+ * instances previously used for the mapping rows so that a row costs twelve
+ * bytes in a leaf array instead of a boxed Long and a red-black node.
+ * </p>
+ * <p>
+ * A range of rows sharing the same 32 most significant bits, e.g. all the
+ * roles of a user, is read with one descent and a sequential scan of one or
+ * two leaves. Range reads are done with a {@link Cursor} or with
+ * {@link #low(long, long)}, neither of which boxes.
+ * </p>
+ * <p>
+ * The tree is copy-on-write. Every node records the edit token of the tree
+ * that created it and a tree only modifies the nodes carrying its current
+ * token, copying any other node on the path to a modified row first.
+ * {@link #snapshot()} returns a read only tree sharing every node and gives
+ * this tree a new token, so the snapshot never changes and costs nothing to
+ * take; the next modifications copy one path each. A snapshot may be read by
+ * any number of threads once it has been safely published. The tree itself
+ * is not thread safe.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class LongBTree implements RowStore {
+
+	/**
+	 * A forward cursor over the rows of a key range. The cursor is positioned
+	 * before the first row; each call to next advances it by one row.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	final class Cursor implements RowStore.Cursor {
+
+		/**
+		 * The inner nodes on the path to leaf, root first.
+		 */
+		private final Inner[] path = new Inner[16];
+
+		/**
+		 * The child index taken at each node of path.
+		 */
+		private final int[] childIndices = new int[16];
+
+		/**
+		 * The number of nodes in path.
+		 */
+		private int depth;
+
+		/**
+		 * The leaf of the current row.
+		 */
+		private Leaf leaf;
+
+		/**
+		 * The index of the current row in leaf.
+		 */
+		private int index;
+
+		/**
+		 * The exclusive upper bound of the range.
+		 */
+		private final long to;
+
+		/**
+		 * Constructs a cursor positioned before the first row not less than
+		 * from.
+		 *
+		 * @param from the inclusive lower bound
+		 * @param to the exclusive upper bound
+		 */
+		private Cursor(long from, long to) {
+			this.to = to;
+			Node node = root;
+			while (node instanceof Inner) {
+				Inner inner = (Inner) node;
+				path[depth] = inner;
+				childIndices[depth] = inner.childIndex(from);
+				node = inner.children[childIndices[depth++]];
+			}
+			leaf = (Leaf) node;
+			index = leaf.search(from);
+			if (index < 0)
+				index = -index - 1;
+			index--;
+		}
+
+		/**
+		 * Advances to the next row.
+		 *
+		 * @return true if there is such a row in the range
+		 */
+		@Override
+		public boolean next() {
+			if (leaf == null)
+				return false;
+			index++;
+			while (index >= leaf.size) {
+				leaf = nextLeaf();
+				index = 0;
+				if (leaf == null)
+					return false;
+			}
+			if (leaf.keys[index] >= to) {
+				leaf = null;
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the key of the current row.
+		 *
+		 * @return the key
+		 */
+		@Override
+		public long key() {
+			return leaf.keys[index];
+		}
+
+		/**
+		 * Returns the leaf following the current leaf, climbing the path to
+		 * the first node with a child to the right.
+		 *
+		 * @return the leaf or null if the current leaf is the last
+		 */
+		private Leaf nextLeaf() {
+			while (depth > 0 && childIndices[depth - 1] + 1 >= path[depth - 1].size)
+				depth--;
+			if (depth == 0)
+				return null;
+			Node node = path[depth - 1].children[++childIndices[depth - 1]];
+			while (node instanceof Inner) {
+				Inner inner = (Inner) node;
+				path[depth] = inner;
+				childIndices[depth++] = 0;
+				node = inner.children[0];
+			}
+			return (Leaf) node;
+		}
+
+		/**
+		 * Returns the value of the current row, or 0 if the tree has no
+		 * values.
+		 *
+		 * @return the value
+		 */
+		@Override
+		public int value() {
+			return leaf.values == null ? 0 : leaf.values[index];
+		}
+	}
+
+	/**
+	 * An inner node. Child i holds the keys k with keys[i-1] &lt;= k &lt;
+	 * keys[i].
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Inner extends Node {
+
+		/**
+		 * The children of this node.
+		 */
+		final Node[] children;
+
+		/**
+		 * Constructs an empty inner node.
+		 *
+		 * @param edit the edit token of the creating tree
+		 */
+		Inner(Object edit) {
+			super(new long[LongBTree.FANOUT - 1], 0, edit);
+			children = new Node[LongBTree.FANOUT];
+		}
+
+		/**
+		 * Constructs a copy of an inner node.
+		 *
+		 * @param other the node to copy
+		 * @param edit the edit token of the copying tree
+		 */
+		private Inner(Inner other, Object edit) {
+			super(other.keys.clone(), other.size, edit);
+			children = other.children.clone();
+		}
+
+		/**
+		 * Returns the index of the child that may contain key.
+		 *
+		 * @param key the key
+		 * @return the child index
+		 */
+		int childIndex(long key) {
+			int i = search(key);
+			return i < 0 ? -i - 1 : i + 1;
+		}
+
+		@Override
+		Node copy(Object edit) {
+			return new Inner(this, edit);
+		}
+
+		/**
+		 * Inserts the separator and right child produced by splitting child i.
+		 *
+		 * @param i the index of the split child
+		 * @param separator the first key of the right child
+		 * @param right the right child
+		 */
+		void insertChild(int i, long separator, Node right) {
+			System.arraycopy(keys, i, keys, i + 1, size - 1 - i);
+			System.arraycopy(children, i + 1, children, i + 2, size - 1 - i);
+			keys[i] = separator;
+			children[i + 1] = right;
+			size++;
+		}
+
+		/**
+		 * Removes the separator i and the child to its right.
+		 *
+		 * @param i the index of the separator
+		 */
+		void removeChild(int i) {
+			System.arraycopy(keys, i + 1, keys, i, size - 2 - i);
+			System.arraycopy(children, i + 2, children, i + 1, size - 2 - i);
+			size--;
+			children[size] = null;
+		}
+	}
+
+	/**
+	 * A leaf node holding the rows.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Leaf extends Node {
+
+		/**
+		 * The value column or null if the tree has no values.
+		 */
+		final int[] values;
+
+		/**
+		 * Constructs an empty leaf.
+		 *
+		 * @param withValues whether the leaf has a value column
+		 * @param edit the edit token of the creating tree
+		 */
+		Leaf(boolean withValues, Object edit) {
+			super(new long[LongBTree.FANOUT], 0, edit);
+			values = withValues ? new int[LongBTree.FANOUT] : null;
+		}
+
+		/**
+		 * Constructs a copy of a leaf.
+		 *
+		 * @param other the leaf to copy
+		 * @param edit the edit token of the copying tree
+		 */
+		private Leaf(Leaf other, Object edit) {
+			super(other.keys.clone(), other.size, edit);
+			values = other.values == null ? null : other.values.clone();
+		}
+
+		@Override
+		Node copy(Object edit) {
+			return new Leaf(this, edit);
+		}
+
+		/**
+		 * Inserts a row at position i.
+		 *
+		 * @param i the position
+		 * @param key the key
+		 * @param value the value
+		 */
+		void insert(int i, long key, int value) {
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			keys[i] = key;
+			if (values != null) {
+				System.arraycopy(values, i, values, i + 1, size - i);
+				values[i] = value;
+			}
+			size++;
+		}
+
+		/**
+		 * Removes the row at position i.
+		 *
+		 * @param i the position
+		 */
+		void remove(int i) {
+			System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+			if (values != null)
+				System.arraycopy(values, i + 1, values, i, size - i - 1);
+			size--;
+		}
+	}
+
+	/**
+	 * The common part of inner nodes and leaves: a sorted key array.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private abstract static class Node {
+
+		/**
+		 * The keys of this node.
+		 */
+		final long[] keys;
+
+		/**
+		 * The number of keys in a leaf or children in an inner node.
+		 */
+		int size;
+
+		/**
+		 * The edit token of the tree that created this node. Only a tree
+		 * holding the same token may modify the node.
+		 */
+		final Object edit;
+
+		/**
+		 * Constructs a node.
+		 *
+		 * @param keys the key array
+		 * @param size the number of keys or children
+		 * @param edit the edit token of the creating tree
+		 */
+		Node(long[] keys, int size, Object edit) {
+			this.keys = keys;
+			this.size = size;
+			this.edit = edit;
+		}
+
+		/**
+		 * Returns a copy of this node owned by another edit token.
+		 *
+		 * @param edit the edit token
+		 * @return the copy
+		 */
+		abstract Node copy(Object edit);
+
+		/**
+		 * Binary searches the keys of this node.
+		 *
+		 * @param key the key
+		 * @return the index of key or (-(insertion point) - 1)
+		 */
+		int search(long key) {
+			return Arrays.binarySearch(keys, 0, this instanceof Leaf ? size : size - 1, key);
+		}
+	}
+
+	/**
+	 * The maximum number of rows in a leaf and children of an inner node.
+	 */
+	private static final int FANOUT = 64;
+
+	/**
+	 * The minimum number of rows in a non-root leaf and children of a non-root
+	 * inner node.
+	 */
+	private static final int MIN = LongBTree.FANOUT / 4;
+
+	/**
+	 * Whether the rows carry a value.
+	 */
+	private final boolean withValues;
+
+	/**
+	 * The root node.
+	 */
+	private Node root;
+
+	/**
+	 * The number of rows.
+	 */
+	private int size;
+
+	/**
+	 * The token marking the nodes this tree may modify, or null if the tree is
+	 * a read only snapshot.
+	 */
+	private Object edit;
+
+	/**
+	 * Constructs an empty tree.
+	 *
+	 * @param withValues whether the rows carry an int value
+	 */
+	LongBTree(boolean withValues) {
+		this.withValues = withValues;
+		edit = new Object();
+		clear();
+	}
+
+	/**
+	 * Constructs a read only tree sharing the nodes of another tree.
+	 *
+	 * @param other the tree
+	 */
+	private LongBTree(LongBTree other) {
+		withValues = other.withValues;
+		root = other.root;
+		size = other.size;
+	}
+
+	/**
+	 * Inserts a row if no row with that key exists.
+	 *
+	 * @param key the key
+	 * @param value the value, ignored if the tree has no values
+	 * @return true if the row was inserted
+	 */
+	@Override
+	public boolean add(long key, int value) {
+		checkWritable();
+		Leaf leaf = findLeaf(key);
+		int i = leaf.search(key);
+		if (i >= 0)
+			return false;
+		root = owned(root);
+		Node split = insert(root, key, value);
+		if (split != null) {
+			Inner top = new Inner(edit);
+			top.children[0] = root;
+			top.children[1] = split;
+			top.keys[0] = firstKey(split);
+			top.size = 2;
+			root = top;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Inserts a row without a value if no row with that key exists.
+	 *
+	 * @param key the key
+	 * @return true if the row was inserted
+	 */
+	@Override
+	public boolean add(long key) {
+		return add(key, 0);
+	}
+
+	/**
+	 * Builds a tree bottom-up from rows sorted by key. The rows are split
+	 * evenly into as few leaves as possible and each level of inner nodes is
+	 * split the same way, so the tree is built in one pass without a single
+	 * split or rebalance and every node holds at least half of the fanout.
+	 *
+	 * @param keys the keys in strictly ascending order
+	 * @param values the values of the keys, ignored if withValues is false
+	 * @param size the number of rows
+	 * @param withValues whether the rows carry an int value
+	 * @return the tree
+	 * @throws IllegalArgumentException if the keys are not strictly ascending
+	 */
+	static LongBTree build(long[] keys, int[] values, int size, boolean withValues) {
+		for (int i = 1; i < size; i++)
+			// check if the keys are sorted and distinct
+			if (keys[i - 1] >= keys[i])
+				throw new IllegalArgumentException("Keys must be strictly ascending.");
+		LongBTree tree = new LongBTree(withValues);
+		if (size == 0)
+			return tree;
+		int count = (size + LongBTree.FANOUT - 1) / LongBTree.FANOUT;
+		Node[] level = new Node[count];
+		long[] firstKeys = new long[count];
+		for (int i = 0, from = 0; i < count; i++) {
+			int to = (int) ((long) size * (i + 1) / count);
+			Leaf leaf = new Leaf(withValues, tree.edit);
+			System.arraycopy(keys, from, leaf.keys, 0, to - from);
+			if (withValues)
+				System.arraycopy(values, from, leaf.values, 0, to - from);
+			leaf.size = to - from;
+			level[i] = leaf;
+			firstKeys[i] = keys[from];
+			from = to;
+		}
+		while (count > 1) {
+			int parents = (count + LongBTree.FANOUT - 1) / LongBTree.FANOUT;
+			Node[] up = new Node[parents];
+			long[] upFirstKeys = new long[parents];
+			for (int i = 0, from = 0; i < parents; i++) {
+				int to = (int) ((long) count * (i + 1) / parents);
+				Inner inner = new Inner(tree.edit);
+				System.arraycopy(level, from, inner.children, 0, to - from);
+				// the separator of each child but the first is its first key
+				System.arraycopy(firstKeys, from + 1, inner.keys, 0, to - from - 1);
+				inner.size = to - from;
+				up[i] = inner;
+				upFirstKeys[i] = firstKeys[from];
+				from = to;
+			}
+			level = up;
+			firstKeys = upFirstKeys;
+			count = parents;
+		}
+		tree.root = level[0];
+		tree.size = size;
+		return tree;
+	}
+
+	/**
+	 * Removes all rows.
+	 */
+	@Override
+	public void clear() {
+		checkWritable();
+		root = new Leaf(withValues, edit);
+		size = 0;
+	}
+
+	/**
+	 * Returns whether a row with the key exists.
+	 *
+	 * @param key the key
+	 * @return true if there is such a row
+	 */
+	@Override
+	public boolean contains(long key) {
+		return findLeaf(key).search(key) >= 0;
+	}
+
+	/**
+	 * Returns a cursor over the rows with keys in [from, to).
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the cursor
+	 */
+	@Override
+	public Cursor cursor(long from, long to) {
+		return new Cursor(from, to);
+	}
+
+	/**
+	 * Returns the value of the row with the key.
+	 *
+	 * @param key the key
+	 * @param absent the value to return if there is no such row
+	 * @return the value or absent
+	 */
+	@Override
+	public int get(long key, int absent) {
+		Leaf leaf = findLeaf(key);
+		int i = leaf.search(key);
+		if (i < 0 || leaf.values == null)
+			return i < 0 ? absent : 0;
+		return leaf.values[i];
+	}
+
+	/**
+	 * Returns whether the tree is empty.
+	 *
+	 * @return true if there are no rows
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the 32 least significant bits of the keys in [from, to), in key
+	 * order. With from and to being consecutive multiples of 2^32 this is the
+	 * list of ids mapped from the id in the 32 most significant bits.
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the low halves of the keys
+	 */
+	@Override
+	public int[] low(long from, long to) {
+		int[] out = new int[8];
+		int n = 0;
+		for (Cursor c = new Cursor(from, to); c.next();) {
+			if (n == out.length)
+				out = Arrays.copyOf(out, n << 1);
+			out[n++] = (int) c.key();
+		}
+		return Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * Removes the row with the key.
+	 *
+	 * @param key the key
+	 * @return true if the row was removed
+	 */
+	@Override
+	public boolean remove(long key) {
+		checkWritable();
+		if (!contains(key))
+			return false;
+		root = owned(root);
+		remove(root, key);
+		if (root instanceof Inner && root.size == 1)
+			root = ((Inner) root).children[0];
+		size--;
+		return true;
+	}
+
+	/**
+	 * Removes the rows with keys in [from, to). Only the nodes on the paths to
+	 * the first and the last row of the range are modified; the subtrees in
+	 * between are dropped whole and the two paths are rebalanced on the way
+	 * up.
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the number of rows removed
+	 */
+	@Override
+	public int removeRange(long from, long to) {
+		checkWritable();
+		if (from >= to || size == 0)
+			return 0;
+		root = owned(root);
+		int removed = removeRange(root, from, to);
+		if (root.size == 0)
+			root = new Leaf(withValues, edit);
+		while (root instanceof Inner && root.size == 1)
+			root = ((Inner) root).children[0];
+		size -= removed;
+		return removed;
+	}
+
+	/**
+	 * Replaces the value of an existing row.
+	 *
+	 * @param key the key
+	 * @param value the new value
+	 * @return true if there was such a row
+	 */
+	@Override
+	public boolean set(long key, int value) {
+		checkWritable();
+		if (!contains(key))
+			return false;
+		if (!withValues)
+			return true;
+		root = owned(root);
+		Node node = root;
+		while (node instanceof Inner) {
+			Inner inner = (Inner) node;
+			int c = inner.childIndex(key);
+			node = inner.children[c] = owned(inner.children[c]);
+		}
+		((Leaf) node).values[node.search(key)] = value;
+		return true;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a read only tree holding the current rows. The snapshot shares
+	 * the nodes of this tree, which copies them before its next modification.
+	 *
+	 * @return the snapshot
+	 */
+	@Override
+	public LongBTree snapshot() {
+		if (edit != null)
+			edit = new Object();
+		return new LongBTree(this);
+	}
+
+	@Override
+	public boolean withValues() {
+		return withValues;
+	}
+
+	/**
+	 * Throws an exception if this tree is a read only snapshot.
+	 */
+	private void checkWritable() {
+		if (edit == null)
+			throw new IllegalStateException("Snapshot cannot be modified.");
+	}
+
+	/**
+	 * Returns the number of rows in the subtree.
+	 *
+	 * @param node the subtree
+	 * @return the number of rows
+	 */
+	private static int count(Node node) {
+		if (node instanceof Leaf)
+			return node.size;
+		Inner inner = (Inner) node;
+		int count = 0;
+		for (int i = 0; i < inner.size; i++)
+			count += LongBTree.count(inner.children[i]);
+		return count;
+	}
+
+	/**
+	 * Removes a child and the separator on its left, or on its right for the
+	 * first child.
+	 *
+	 * @param parent the parent of the child
+	 * @param i the index of the child
+	 */
+	private static void drop(Inner parent, int i) {
+		if (i > 0) {
+			parent.removeChild(i - 1);
+			return;
+		}
+		System.arraycopy(parent.keys, 1, parent.keys, 0, Math.max(parent.size - 2, 0));
+		System.arraycopy(parent.children, 1, parent.children, 0, parent.size - 1);
+		parent.size--;
+		parent.children[parent.size] = null;
+	}
+
+	/**
+	 * Returns the first key in the subtree.
+	 *
+	 * @param node the subtree
+	 * @return the first key
+	 */
+	private static long firstKey(Node node) {
+		while (node instanceof Inner)
+			node = ((Inner) node).children[0];
+		if (node.size == 0)
+			throw new NoSuchElementException();
+		return node.keys[0];
+	}
+
+	/**
+	 * Returns the leaf that contains or would contain the key.
+	 *
+	 * @param key the key
+	 * @return the leaf
+	 */
+	private Leaf findLeaf(long key) {
+		Node node = root;
+		while (node instanceof Inner) {
+			Inner inner = (Inner) node;
+			node = inner.children[inner.childIndex(key)];
+		}
+		return (Leaf) node;
+	}
+
+	/**
+	 * Fixes an underflowing child by borrowing from or merging with a sibling.
+	 *
+	 * @param parent the parent of the child
+	 * @param i the index of the child
+	 */
+	private void fix(Inner parent, int i) {
+		// prefer the left sibling so that merges keep the left node
+		int l = i > 0 ? i - 1 : i;
+		Node left = parent.children[l] = owned(parent.children[l]);
+		Node right = parent.children[l + 1] = owned(parent.children[l + 1]);
+		if (left instanceof Leaf) {
+			Leaf a = (Leaf) left, b = (Leaf) right;
+			if (a.size + b.size <= LongBTree.FANOUT) {
+				// merge b into a
+				System.arraycopy(b.keys, 0, a.keys, a.size, b.size);
+				if (a.values != null)
+					System.arraycopy(b.values, 0, a.values, a.size, b.size);
+				a.size += b.size;
+				parent.removeChild(l);
+			}
+			else if (a.size < b.size) {
+				// move the first row of b to a
+				a.insert(a.size, b.keys[0], b.values == null ? 0 : b.values[0]);
+				b.remove(0);
+				parent.keys[l] = b.keys[0];
+			}
+			else {
+				// move the last row of a to b
+				b.insert(0, a.keys[a.size - 1], a.values == null ? 0 : a.values[a.size - 1]);
+				a.remove(a.size - 1);
+				parent.keys[l] = b.keys[0];
+			}
+			return;
+		}
+		Inner a = (Inner) left, b = (Inner) right;
+		if (a.size + b.size <= LongBTree.FANOUT) {
+			// merge b into a pulling down the separator
+			a.keys[a.size - 1] = parent.keys[l];
+			System.arraycopy(b.keys, 0, a.keys, a.size, b.size - 1);
+			System.arraycopy(b.children, 0, a.children, a.size, b.size);
+			a.size += b.size;
+			parent.removeChild(l);
+		}
+		else if (a.size < b.size) {
+			// rotate the first child of b through the parent
+			a.keys[a.size - 1] = parent.keys[l];
+			a.children[a.size] = b.children[0];
+			a.size++;
+			parent.keys[l] = b.keys[0];
+			System.arraycopy(b.keys, 1, b.keys, 0, b.size - 2);
+			System.arraycopy(b.children, 1, b.children, 0, b.size - 1);
+			b.size--;
+			b.children[b.size] = null;
+		}
+		else {
+			// rotate the last child of a through the parent
+			System.arraycopy(b.keys, 0, b.keys, 1, b.size - 1);
+			System.arraycopy(b.children, 0, b.children, 1, b.size);
+			b.keys[0] = parent.keys[l];
+			b.children[0] = a.children[a.size - 1];
+			b.size++;
+			parent.keys[l] = a.keys[a.size - 2];
+			a.size--;
+			a.children[a.size] = null;
+		}
+	}
+
+	/**
+	 * Inserts a row known to be absent into the subtree.
+	 *
+	 * @param node the subtree
+	 * @param key the key
+	 * @param value the value
+	 * @return the new right sibling of node if node was split, or null
+	 */
+	private Node insert(Node node, long key, int value) {
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			int i = -leaf.search(key) - 1;
+			if (leaf.size < LongBTree.FANOUT) {
+				leaf.insert(i, key, value);
+				return null;
+			}
+			// split the full leaf in half
+			Leaf right = new Leaf(withValues, edit);
+			int half = LongBTree.FANOUT / 2;
+			right.size = LongBTree.FANOUT - half;
+			System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+			if (withValues)
+				System.arraycopy(leaf.values, half, right.values, 0, right.size);
+			leaf.size = half;
+			if (i <= half)
+				leaf.insert(i, key, value);
+			else
+				right.insert(i - half, key, value);
+			return right;
+		}
+		Inner inner = (Inner) node;
+		int c = inner.childIndex(key);
+		inner.children[c] = owned(inner.children[c]);
+		Node split = insert(inner.children[c], key, value);
+		if (split == null)
+			return null;
+		long separator = firstKey(split);
+		if (inner.size < LongBTree.FANOUT) {
+			inner.insertChild(c, separator, split);
+			return null;
+		}
+		// split the full inner node, the middle separator moves up
+		Node[] children = Arrays.copyOf(inner.children, LongBTree.FANOUT + 1);
+		long[] keys = Arrays.copyOf(inner.keys, LongBTree.FANOUT);
+		System.arraycopy(keys, c, keys, c + 1, LongBTree.FANOUT - 1 - c);
+		System.arraycopy(children, c + 1, children, c + 2, LongBTree.FANOUT - 1 - c);
+		keys[c] = separator;
+		children[c + 1] = split;
+		int half = (LongBTree.FANOUT + 1) / 2;
+		Inner right = new Inner(edit);
+		Arrays.fill(inner.children, null);
+		System.arraycopy(children, 0, inner.children, 0, half);
+		System.arraycopy(keys, 0, inner.keys, 0, half - 1);
+		inner.size = half;
+		right.size = LongBTree.FANOUT + 1 - half;
+		System.arraycopy(children, half, right.children, 0, right.size);
+		System.arraycopy(keys, half, right.keys, 0, right.size - 1);
+		return right;
+	}
+
+	/**
+	 * Returns the node if this tree may modify it, otherwise a copy it may
+	 * modify.
+	 *
+	 * @param node the node
+	 * @return the node or its copy
+	 */
+	private Node owned(Node node) {
+		return node.edit == edit ? node : node.copy(edit);
+	}
+
+	/**
+	 * Fixes a child until it no longer underflows. Unlike the removal of a
+	 * single row, a range removal may leave a child far below the minimum, so
+	 * it is merged or fed one row or child at a time.
+	 *
+	 * @param parent the parent of the child
+	 * @param i the index of the child
+	 */
+	private void rebalance(Inner parent, int i) {
+		while (parent.size > 1 && i < parent.size && parent.children[i].size < LongBTree.MIN) {
+			int before = parent.size;
+			fix(parent, i);
+			// a merge with the left sibling moves the child left
+			if (parent.size < before && i > 0)
+				i--;
+		}
+	}
+
+	/**
+	 * Removes the rows with keys in [from, to) from the subtree. Emptied
+	 * children are dropped and the children on the boundaries of the range
+	 * are rebalanced before returning.
+	 *
+	 * @param node the subtree
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the number of rows removed
+	 */
+	private int removeRange(Node node, long from, long to) {
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			int i = leaf.search(from), j = leaf.search(to);
+			i = i < 0 ? -i - 1 : i;
+			j = j < 0 ? -j - 1 : j;
+			if (i == j)
+				return 0;
+			System.arraycopy(leaf.keys, j, leaf.keys, i, leaf.size - j);
+			if (leaf.values != null)
+				System.arraycopy(leaf.values, j, leaf.values, i, leaf.size - j);
+			leaf.size -= j - i;
+			return j - i;
+		}
+		Inner inner = (Inner) node;
+		int first = inner.childIndex(from), last = inner.childIndex(to - 1);
+		int removed = 0;
+		// drop the children entirely inside the range without visiting them
+		// beyond counting their rows
+		if (last - first > 1) {
+			for (int c = first + 1; c < last; c++)
+				removed += LongBTree.count(inner.children[c]);
+			int gap = last - first - 1;
+			System.arraycopy(inner.keys, last - 1, inner.keys, first, inner.size - last);
+			System.arraycopy(inner.children, last, inner.children, first + 1, inner.size - last);
+			Arrays.fill(inner.children, inner.size - gap, inner.size, null);
+			inner.size -= gap;
+			last = first + 1;
+		}
+		for (int c = last; c >= first; c--) {
+			Node child = inner.children[c] = owned(inner.children[c]);
+			removed += removeRange(child, from, to);
+			if (child.size == 0)
+				LongBTree.drop(inner, c);
+		}
+		if (inner.size > 0) {
+			rebalance(inner, Math.min(first + 1, inner.size - 1));
+			rebalance(inner, Math.min(first, inner.size - 1));
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes the row with the key from the subtree.
+	 *
+	 * @param node the subtree
+	 * @param key the key
+	 * @return true if the row was removed
+	 */
+	private boolean remove(Node node, long key) {
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+			int i = leaf.search(key);
+			if (i < 0)
+				return false;
+			leaf.remove(i);
+			return true;
+		}
+		Inner inner = (Inner) node;
+		int c = inner.childIndex(key);
+		Node child = inner.children[c] = owned(inner.children[c]);
+		if (!remove(child, key))
+			return false;
+		if (child.size < LongBTree.MIN)
+			fix(inner, c);
+		return true;
+	}
+
+}
@@ -0,0 +1,648 @@
+/**
+ * This file defines the MappedRowStore class. The MappedRowStore class holds
+ * mapping rows in sorted pages of a memory mapped file.
+ */
+package edu.fgcu.secrel;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>
+ * The MappedRowStore class is a {@link RowStore} keeping its rows outside the
+ * Java heap, in pages of a {@link PageFile}. A page holds up to
+ * {@link #CAPACITY} rows sorted by key: the number of rows, the keys and,
+ * if the store has values, the values, in the same packed long format as the
+ * heap store. The heap only holds a directory mapping the upper bound of each
+ * page to its page number, i.e. a few bytes per thousand rows.
+ * </p>
+ * <p>
+ * The store is copy-on-write at page granularity. Pages written since the
+ * last snapshot are modified in place; any other page is copied to a new page
+ * first and the directory, a {@link LongBTree}, is copied on write as usual.
+ * A replaced page is freed once every snapshot that may read it has been
+ * garbage collected: each snapshot holds a pin reachable from the pins of all
+ * the older snapshots, and the pages replaced after a snapshot are freed when
+ * its pin is only weakly reachable.
+ * </p>
+ * <p>
+ * Pages are split when full and freed when empty; they are not merged, so a
+ * store whose rows are mostly removed keeps sparse pages until they empty.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class MappedRowStore implements RowStore {
+
+	/**
+	 * A forward cursor over the rows of a key range.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private final class Cursor implements RowStore.Cursor {
+
+		/**
+		 * The directory entries of the pages following the first page.
+		 */
+		private final LongBTree.Cursor entries;
+
+		/**
+		 * Whether the last page, which has no directory entry in entries,
+		 * has been reached.
+		 */
+		private boolean tail = false;
+
+		/**
+		 * The current page or -1 once the cursor is exhausted.
+		 */
+		private int page;
+
+		/**
+		 * The number of rows in page.
+		 */
+		private int count;
+
+		/**
+		 * The index of the current row in page.
+		 */
+		private int index;
+
+		/**
+		 * The exclusive upper bound of the range.
+		 */
+		private final long to;
+
+		/**
+		 * Constructs a cursor positioned before the first row not less than
+		 * from.
+		 *
+		 * @param from the inclusive lower bound
+		 * @param to the exclusive upper bound
+		 */
+		Cursor(long from, long to) {
+			this.to = to;
+			entries = directory.cursor(from, Long.MAX_VALUE);
+			nextPage();
+			if (page != -1) {
+				index = search(page, from);
+				if (index < 0)
+					index = -index - 1;
+				index--;
+			}
+		}
+
+		@Override
+		public boolean next() {
+			if (page == -1)
+				return false;
+			index++;
+			while (index >= count) {
+				nextPage();
+				index = 0;
+				if (page == -1)
+					return false;
+			}
+			if (MappedRowStore.this.key(page, index) >= to) {
+				page = -1;
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public long key() {
+			return MappedRowStore.this.key(page, index);
+		}
+
+		/**
+		 * Moves to the next page in key order.
+		 */
+		private void nextPage() {
+			if (entries.next())
+				page = entries.value();
+			else if (!tail) {
+				tail = true;
+				page = directory.get(Long.MAX_VALUE, -1);
+			}
+			else
+				page = -1;
+			count = page == -1 ? 0 : count(page);
+		}
+
+		@Override
+		public int value() {
+			return withValues ? MappedRowStore.this.value(page, index) : 0;
+		}
+	}
+
+	/**
+	 * The token of a snapshot. The pin of a snapshot references the pin of
+	 * the next snapshot, so a pin is strongly reachable while any snapshot at
+	 * least as old is.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Pin {
+
+		/**
+		 * The pin of the next snapshot.
+		 */
+		@SuppressWarnings("unused")
+		Pin next;
+	}
+
+	/**
+	 * The pages replaced after a snapshot, freed once its pin is collected.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Retired {
+
+		/**
+		 * The pin of the snapshot.
+		 */
+		final WeakReference<Pin> pin;
+
+		/**
+		 * The replaced pages.
+		 */
+		final int[] pages;
+
+		/**
+		 * Constructs a batch of replaced pages.
+		 *
+		 * @param pin the pin of the snapshot
+		 * @param pages the replaced pages
+		 */
+		Retired(Pin pin, int[] pages) {
+			this.pin = new WeakReference<>(pin);
+			this.pages = pages;
+		}
+	}
+
+	/**
+	 * The maximum number of rows of a page.
+	 */
+	static final int CAPACITY = (PageFile.PAGE_SIZE - 8) / 12;
+
+	/**
+	 * The offset of the keys in a page.
+	 */
+	private static final int KEYS = 8;
+
+	/**
+	 * The offset of the values in a page.
+	 */
+	private static final int VALUES = MappedRowStore.KEYS + 8 * MappedRowStore.CAPACITY;
+
+	/**
+	 * The file holding the pages.
+	 */
+	private final PageFile file;
+
+	/**
+	 * Whether the rows carry an int value.
+	 */
+	private final boolean withValues;
+
+	/**
+	 * Maps the upper bound of every page but the last to the page number. The
+	 * last page is mapped from Long.MAX_VALUE.
+	 */
+	private final LongBTree directory;
+
+	/**
+	 * The number of rows.
+	 */
+	private int size;
+
+	/**
+	 * Whether this store may be modified, false for snapshots.
+	 */
+	private final boolean writable;
+
+	/**
+	 * The pages written since the last snapshot, which may be modified in
+	 * place.
+	 */
+	private final BitSet written;
+
+	/**
+	 * The pin of the last snapshot, held by the store so that the pages it
+	 * reads are not freed before the next snapshot.
+	 */
+	private Pin pin;
+
+	/**
+	 * The pages replaced since the last snapshot.
+	 */
+	private int[] retiring;
+
+	/**
+	 * The number of pages in retiring.
+	 */
+	private int retiringCount = 0;
+
+	/**
+	 * The batches of replaced pages waiting for their snapshots to be
+	 * collected, oldest first.
+	 */
+	private final ArrayDeque<Retired> retired;
+
+	/**
+	 * Constructs a writable store over existing pages.
+	 *
+	 * @param file the file holding the pages
+	 * @param withValues whether the rows carry an int value
+	 * @param pages the pages in key order
+	 * @param size the number of rows
+	 */
+	MappedRowStore(PageFile file, boolean withValues, int[] pages, int size) {
+		this.file = file;
+		this.withValues = withValues;
+		this.size = size;
+		writable = true;
+		written = new BitSet();
+		retiring = new int[16];
+		retired = new ArrayDeque<>();
+		directory = new LongBTree(true);
+		for (int i = 0; i < pages.length; i++)
+			directory.add(i == pages.length - 1 ? Long.MAX_VALUE : key(pages[i], count(pages[i]) - 1), pages[i]);
+	}
+
+	/**
+	 * Constructs a read only store sharing the pages of another store.
+	 *
+	 * @param other the store
+	 * @param pin the pin of the snapshot
+	 */
+	private MappedRowStore(MappedRowStore other, Pin pin) {
+		file = other.file;
+		withValues = other.withValues;
+		directory = other.directory.snapshot();
+		size = other.size;
+		writable = false;
+		written = null;
+		retired = null;
+		this.pin = pin;
+	}
+
+	@Override
+	public boolean add(long key, int value) {
+		checkWritable();
+		if (directory.isEmpty()) {
+			int page = allocate();
+			file.putInt(page, 0, 0);
+			directory.add(Long.MAX_VALUE, page);
+		}
+		long bound = bound(key);
+		int page = directory.get(bound, -1);
+		int i = search(page, key);
+		if (i >= 0)
+			return false;
+		i = -i - 1;
+		page = owned(bound, page);
+		int n = count(page);
+		if (n == MappedRowStore.CAPACITY) {
+			// move the upper half to a new page keeping the bound
+			int right = allocate();
+			int half = n / 2;
+			for (int j = half; j < n; j++)
+				move(page, j, right, j - half);
+			file.putInt(right, 0, n - half);
+			file.putInt(page, 0, half);
+			directory.set(bound, right);
+			directory.add(key(page, half - 1), page);
+			if (i >= half) {
+				page = right;
+				i -= half;
+			}
+			n = count(page);
+		}
+		for (int j = n; j > i; j--)
+			move(page, j - 1, page, j);
+		file.putLong(page, MappedRowStore.KEYS + 8 * i, key);
+		if (withValues)
+			file.putInt(page, MappedRowStore.VALUES + 4 * i, value);
+		file.putInt(page, 0, n + 1);
+		size++;
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		checkWritable();
+		for (int page : pages())
+			release(page);
+		directory.clear();
+		size = 0;
+	}
+
+	@Override
+	public boolean contains(long key) {
+		int page = page(key);
+		return page != -1 && search(page, key) >= 0;
+	}
+
+	@Override
+	public RowStore.Cursor cursor(long from, long to) {
+		return new Cursor(from, to);
+	}
+
+	@Override
+	public int get(long key, int absent) {
+		int page = page(key);
+		int i = page == -1 ? -1 : search(page, key);
+		if (i < 0 || !withValues)
+			return i < 0 ? absent : 0;
+		return value(page, i);
+	}
+
+	@Override
+	public boolean remove(long key) {
+		checkWritable();
+		if (directory.isEmpty())
+			return false;
+		long bound = bound(key);
+		int page = directory.get(bound, -1);
+		int i = search(page, key);
+		if (i < 0)
+			return false;
+		page = owned(bound, page);
+		int n = count(page);
+		for (int j = i + 1; j < n; j++)
+			move(page, j, page, j - 1);
+		file.putInt(page, 0, n - 1);
+		size--;
+		// the last page is kept so that every key has a page
+		if (n == 1 && bound != Long.MAX_VALUE) {
+			directory.remove(bound);
+			release(page);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the rows with keys in [from, to). Each page overlapping the
+	 * range is compacted with one shift and freed if it empties.
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the number of rows removed
+	 */
+	@Override
+	public int removeRange(long from, long to) {
+		checkWritable();
+		int removed = 0;
+		while (from < to && !directory.isEmpty()) {
+			long bound = bound(from);
+			int page = directory.get(bound, -1);
+			int n = count(page);
+			int i = search(page, from), j = search(page, to);
+			i = i < 0 ? -i - 1 : i;
+			j = j < 0 ? -j - 1 : j;
+			if (i < j) {
+				page = owned(bound, page);
+				for (int k = j; k < n; k++)
+					move(page, k, page, k - (j - i));
+				file.putInt(page, 0, n - (j - i));
+				removed += j - i;
+				size -= j - i;
+				// the last page is kept so that every key has a page
+				if (n == j - i && bound != Long.MAX_VALUE) {
+					directory.remove(bound);
+					release(page);
+				}
+			}
+			// the following pages only hold keys above the bound
+			if (bound >= to - 1)
+				break;
+			from = bound + 1;
+		}
+		return removed;
+	}
+
+	@Override
+	public boolean set(long key, int value) {
+		checkWritable();
+		if (directory.isEmpty())
+			return false;
+		long bound = bound(key);
+		int page = directory.get(bound, -1);
+		int i = search(page, key);
+		if (i < 0)
+			return false;
+		if (!withValues)
+			return true;
+		page = owned(bound, page);
+		file.putInt(page, MappedRowStore.VALUES + 4 * i, value);
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public MappedRowStore snapshot() {
+		if (!writable)
+			return new MappedRowStore(this, pin);
+		Pin next = new Pin();
+		if (pin != null) {
+			pin.next = next;
+			if (retiringCount > 0)
+				retired.add(new Retired(pin, Arrays.copyOf(retiring, retiringCount)));
+		}
+		retiringCount = 0;
+		pin = next;
+		written.clear();
+		return new MappedRowStore(this, next);
+	}
+
+	@Override
+	public boolean withValues() {
+		return withValues;
+	}
+
+	/**
+	 * Allocates a page written by this store.
+	 *
+	 * @return the number of the page
+	 */
+	private int allocate() {
+		int page = file.allocate();
+		written.set(page);
+		return page;
+	}
+
+	/**
+	 * Returns the directory key of the page that contains or would contain
+	 * the key.
+	 *
+	 * @param key the key
+	 * @return the upper bound of the page
+	 */
+	private long bound(long key) {
+		LongBTree.Cursor c = directory.cursor(key, Long.MAX_VALUE);
+		return c.next() ? c.key() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Throws an exception if this store is a read only snapshot.
+	 */
+	private void checkWritable() {
+		if (!writable)
+			throw new IllegalStateException("Snapshot cannot be modified.");
+	}
+
+	/**
+	 * Returns the number of rows of a page.
+	 *
+	 * @param page the number of the page
+	 * @return the number of rows
+	 */
+	private int count(int page) {
+		return file.getInt(page, 0);
+	}
+
+	/**
+	 * Returns a key of a page.
+	 *
+	 * @param page the number of the page
+	 * @param i the index of the row
+	 * @return the key
+	 */
+	private long key(int page, int i) {
+		return file.getLong(page, MappedRowStore.KEYS + 8 * i);
+	}
+
+	/**
+	 * Copies a row.
+	 *
+	 * @param from the source page
+	 * @param i the index of the row in the source page
+	 * @param to the destination page
+	 * @param j the index of the row in the destination page
+	 */
+	private void move(int from, int i, int to, int j) {
+		file.putLong(to, MappedRowStore.KEYS + 8 * j, key(from, i));
+		if (withValues)
+			file.putInt(to, MappedRowStore.VALUES + 4 * j, value(from, i));
+	}
+
+	/**
+	 * Returns a page this store may modify in place, first copying the page
+	 * if it may be read by a snapshot.
+	 *
+	 * @param bound the directory key of the page
+	 * @param page the number of the page
+	 * @return the number of the writable page
+	 */
+	private int owned(long bound, int page) {
+		if (written.get(page))
+			return page;
+		int copy = allocate();
+		file.copy(page, copy);
+		directory.set(bound, copy);
+		release(page);
+		return copy;
+	}
+
+	/**
+	 * Returns the page that contains or would contain the key.
+	 *
+	 * @param key the key
+	 * @return the number of the page or -1 if the store has no pages
+	 */
+	private int page(long key) {
+		LongBTree.Cursor c = directory.cursor(key, Long.MAX_VALUE);
+		return c.next() ? c.value() : directory.get(Long.MAX_VALUE, -1);
+	}
+
+	/**
+	 * Returns the pages of this store in key order.
+	 *
+	 * @return the page numbers
+	 */
+	int[] pages() {
+		int[] out = new int[directory.size()];
+		int n = 0;
+		for (LongBTree.Cursor c = directory.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();)
+			out[n++] = c.value();
+		if (n < out.length)
+			out[n++] = directory.get(Long.MAX_VALUE, -1);
+		return out;
+	}
+
+	/**
+	 * Frees the pages replaced after snapshots that have been collected. This
+	 * is called by the file before it allocates a page.
+	 */
+	void reclaim() {
+		while (!retired.isEmpty() && retired.peek().pin.get() == null)
+			for (int page : retired.poll().pages)
+				file.free(page);
+	}
+
+	/**
+	 * Releases a page no longer referenced by this store. A page written
+	 * since the last snapshot is freed at once; any other page is retired
+	 * until the snapshots that may read it are collected.
+	 *
+	 * @param page the number of the page
+	 */
+	private void release(int page) {
+		if (written.get(page)) {
+			written.clear(page);
+			file.free(page);
+		}
+		else if (pin == null)
+			file.free(page);
+		else {
+			if (retiringCount == retiring.length)
+				retiring = Arrays.copyOf(retiring, retiringCount << 1);
+			retiring[retiringCount++] = page;
+		}
+	}
+
+	/**
+	 * Searches a page for a key.
+	 *
+	 * @param page the number of the page
+	 * @param key the key
+	 * @return the index of the key, or -(insertion point) - 1 if absent
+	 */
+	private int search(int page, long key) {
+		int low = 0, high = count(page) - 1;
+		while (low <= high) {
+			int mid = low + high >>> 1;
+			long k = key(page, mid);
+			if (k < key)
+				low = mid + 1;
+			else if (k > key)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Returns a value of a page.
+	 *
+	 * @param page the number of the page
+	 * @param i the index of the row
+	 * @return the value
+	 */
+	private int value(int page, int i) {
+		return file.getInt(page, MappedRowStore.VALUES + 4 * i);
+	}
+
+}
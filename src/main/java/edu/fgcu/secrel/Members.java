@@ -7,7 +7,7 @@
 package edu.fgcu.secrel;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This class contains methods for (un)assigning users to roles in the
@@ -25,30 +25,76 @@ public class Members {
 	 * @param roleId the id of the role
 	 */
 	public static void assignRole(Integer userId, Integer roleId) {
-		// check if a userId is null
-		if (userId == null)
-		    // throw exception
-		    throw new NullPointerException("User id cannot be null.");
-		// check if user exists
-		if (!SecRelSystem.userIds.containsKey(userId))
-			throw new IllegalArgumentException("User with that id does not exist.");
-		// check if a roleId is null
-		if (roleId == null)
-		    // throw exception
-		    throw new NullPointerException("Role id cannot be null.");
-		// check if role exists
-		if (!SecRelSystem.roleIds.containsKey(roleId))
-			throw new IllegalArgumentException("Role with that id does not exist.");
-		// construct mapping rows
-		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
-		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
-		// check if rows exist
-		if (SecRelSystem.memberForwardMap.contains(forwardRow) || SecRelSystem.memberBackwardMap.contains(backwardRow))
-			throw new IllegalStateException("User is already assigned to that Role: " + forwardRow + "( " + userId
-			        + ", " + roleId + " ), " + backwardRow + "( " + roleId + ", " + userId + " )");
-		// add rows to system
-		SecRelSystem.memberForwardMap.add(forwardRow);
-		SecRelSystem.memberBackwardMap.add(backwardRow);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a userId is null
+			if (userId == null)
+			    // throw exception
+			    throw new NullPointerException("User id cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userIds.containsKey(userId))
+				throw new IllegalArgumentException("User with that id does not exist.");
+			// check if a roleId is null
+			if (roleId == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleIds.containsKey(roleId))
+				throw new IllegalArgumentException("Role with that id does not exist.");
+			PolicyVersion policy = SecRelSystem.policy();
+			// construct mapping rows
+			long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
+			long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
+			// check if rows exist
+			if (policy.memberForwardMap.contains(forwardRow) || policy.memberBackwardMap.contains(backwardRow))
+				throw new IllegalStateException("User is already assigned to that Role: " + forwardRow + "( " + userId
+				        + ", " + roleId + " ), " + backwardRow + "( " + roleId + ", " + userId + " )");
+			// check if role is full
+			if (SecRelSystem.isRoleFull(roleId))
+				throw new IllegalStateException("Role has reached its maximum number of members.");
+			// check if the assignment conflicts with a role of the user
+			if (SecRelSystem.hasStaticConflict(userId, roleId))
+				throw new IllegalStateException("User holds a Role conflicting with that Role.");
+			// add rows to system
+			SecRelSystem.addMembership(userId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Assigns the specified user to the specified role until the specified
+	 * time. The assignment is removed within a tick of the expiry wheel after
+	 * that time, as if it had been unassigned; unassigning it earlier cancels
+	 * the expiry.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @param expiresAt the time in milliseconds since the epoch
+	 */
+	public static void assignRole(Integer userId, Integer roleId, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a userId is null
+			if (userId == null)
+			    // throw exception
+			    throw new NullPointerException("User id cannot be null.");
+			// check if a roleId is null
+			if (roleId == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if the expiry has passed
+			if (expiresAt <= System.currentTimeMillis())
+				throw new IllegalArgumentException("Expiry must be in the future.");
+			// delegate to permanent version
+			assignRole(userId, roleId);
+			// schedule expiry
+			SecRelSystem.scheduleMembershipExpiry(userId, roleId, expiresAt);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -58,34 +104,46 @@ public class Members {
 	 * @param roleName the name of the role
 	 */
 	public static void assignRole(String userName, String roleName) {
-		// check if a userName is null
-		if (userName == null)
-		    // throw exception
-		    throw new NullPointerException("User name cannot be null.");
-		// check if user exists
-		if (!SecRelSystem.userNames.containsKey(userName))
-			throw new IllegalArgumentException("User with that name does not exist.");
-		// check if a roleName is null
-		if (roleName == null)
-		    // throw exception
-		    throw new NullPointerException("Role name cannot be null.");
-		// check if role exists
-		if (!SecRelSystem.roleNames.containsKey(roleName))
-			throw new IllegalArgumentException("Role with that name does not exist.");
-		// construct mapping row
-		Integer userId = SecRelSystem.userNames.get(userName);
-		Integer roleId = SecRelSystem.roleNames.get(roleName);
-		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
-		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
-		// check if rows exist
-		if (SecRelSystem.memberForwardMap.contains(forwardRow) || SecRelSystem.memberBackwardMap.contains(backwardRow))
-			throw new IllegalStateException("User is already assigned to that Role: " + forwardRow + "( "
-			        + SecRelSystem.userNames.get(userName) + ", " + SecRelSystem.roleNames.get(roleName) + " ), "
-			        + backwardRow + "( " + SecRelSystem.roleNames.get(roleName) + ", "
-			        + SecRelSystem.userNames.get(userName) + " )");
-		// add rows to system
-		SecRelSystem.memberForwardMap.add(forwardRow);
-		SecRelSystem.memberBackwardMap.add(backwardRow);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a userName is null
+			if (userName == null)
+			    // throw exception
+			    throw new NullPointerException("User name cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userNames.containsKey(userName))
+				throw new IllegalArgumentException("User with that name does not exist.");
+			// check if a roleName is null
+			if (roleName == null)
+			    // throw exception
+			    throw new NullPointerException("Role name cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleNames.containsKey(roleName))
+				throw new IllegalArgumentException("Role with that name does not exist.");
+			// construct mapping row
+			Integer userId = SecRelSystem.userNames.get(userName);
+			Integer roleId = SecRelSystem.roleNames.get(roleName);
+			PolicyVersion policy = SecRelSystem.policy();
+			long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
+			long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
+			// check if rows exist
+			if (policy.memberForwardMap.contains(forwardRow) || policy.memberBackwardMap.contains(backwardRow))
+				throw new IllegalStateException("User is already assigned to that Role: " + forwardRow + "( "
+				        + SecRelSystem.userNames.get(userName) + ", " + SecRelSystem.roleNames.get(roleName) + " ), "
+				        + backwardRow + "( " + SecRelSystem.roleNames.get(roleName) + ", "
+				        + SecRelSystem.userNames.get(userName) + " )");
+			// check if role is full
+			if (SecRelSystem.isRoleFull(roleId))
+				throw new IllegalStateException("Role has reached its maximum number of members.");
+			// check if the assignment conflicts with a role of the user
+			if (SecRelSystem.hasStaticConflict(userId, roleId))
+				throw new IllegalStateException("User holds a Role conflicting with that Role.");
+			// add rows to system
+			SecRelSystem.addMembership(userId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -95,62 +153,199 @@ public class Members {
 	 * @param role the Role instance
 	 */
 	public static void assignRole(User user, Role role) {
-		// check if a user is null
-		if (user == null)
-		    // throw exception
-		    throw new NullPointerException("User id cannot be null.");
+		SecRelSystem.beginWrite();
+		try {
+			// check if a user is null
+			if (user == null)
+			    // throw exception
+			    throw new NullPointerException("User id cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userIds.containsKey(user.getId()))
+				throw new IllegalArgumentException("User does not exist.");
+			// check if a role is null
+			if (role == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleIds.containsKey(role.getId()))
+				throw new IllegalArgumentException("Role does not exist.");
+			// construct mapping rows
+			Integer userId = user.getId();
+			Integer roleId = role.getId();
+			PolicyVersion policy = SecRelSystem.policy();
+			long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
+			long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
+			// check if rows exist
+			if (policy.memberForwardMap.contains(forwardRow) || policy.memberBackwardMap.contains(backwardRow))
+				throw new IllegalStateException("User is already assigned to that Role: " + forwardRow + "( " + user.getId()
+				        + ", " + role.getId() + " ), " + backwardRow + "( " + role.getId() + ", " + user.getId() + " )");
+			// check if role is full
+			if (SecRelSystem.isRoleFull(roleId))
+				throw new IllegalStateException("Role has reached its maximum number of members.");
+			// check if the assignment conflicts with a role of the user
+			if (SecRelSystem.hasStaticConflict(userId, roleId))
+				throw new IllegalStateException("User holds a Role conflicting with that Role.");
+			// add rows to system
+			SecRelSystem.addMembership(userId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Makes the assignment of the specified user to the specified role
+	 * permanent by cancelling its expiry, if it has one.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 */
+	public static void clearExpiry(int userId, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the assignment exists
+			if (!Members.isMemberOf(userId, roleId))
+				throw new IllegalArgumentException("User is not assigned to that Role.");
+			// cancel expiry
+			SecRelSystem.cancelMembershipExpiry(userId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Returns the number of users assigned to the role with the specified ID.
+	 * The count is maintained with the assignments, so this takes constant
+	 * time and allocates nothing.
+	 *
+	 * @param roleId the id of the role
+	 * @return the number of users assigned to the role
+	 */
+	public static int countMembers(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.policy().roleMembers.get(roleId).cardinality();
+	}
+
+	/**
+	 * Returns the number of users assigned to each of the roles with the
+	 * specified IDs. The counts are read from a single version of the
+	 * relations, so they are consistent with one another.
+	 *
+	 * @param roleIds the ids of the roles
+	 * @return the number of users assigned to each role, in the same order
+	 */
+	public static int[] countMembers(int[] roleIds) {
+		PolicyVersion policy = SecRelSystem.policy();
+		int[] counts = new int[roleIds.length];
+		for (int i = 0; i < roleIds.length; i++) {
+			// check if role exists
+			if (!SecRelSystem.roleIds.contains(roleIds[i]))
+				throw new IllegalArgumentException("Role with that id does not exist.");
+			counts[i] = policy.roleMembers.get(roleIds[i]).cardinality();
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the number of roles to which the user with the specified ID is
+	 * assigned. The count is maintained with the assignments, so this takes
+	 * constant time and allocates nothing.
+	 *
+	 * @param userId the id of the user
+	 * @return the number of roles to which the user is assigned
+	 */
+	public static int countRoles(int userId) {
 		// check if user exists
-		if (!SecRelSystem.userIds.containsKey(user.getId()))
-			throw new IllegalArgumentException("User does not exist.");
-		// check if a role is null
-		if (role == null)
-		    // throw exception
-		    throw new NullPointerException("Role id cannot be null.");
+		if (!SecRelSystem.userIds.contains(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		return SecRelSystem.policy().userRoles.get(userId).cardinality();
+	}
+
+	/**
+	 * Returns the time at which the assignment of the specified user to the
+	 * specified role expires.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return the time in milliseconds since the epoch, or -1 if the
+	 *         assignment is permanent
+	 */
+	public static long getExpiry(int userId, int roleId) {
+		// check if the assignment exists
+		if (!Members.isMemberOf(userId, roleId))
+			throw new IllegalArgumentException("User is not assigned to that Role.");
+		return SecRelSystem.getMembershipExpiry(userId, roleId);
+	}
+
+	/**
+	 * Returns a page of the ids of the users assigned to the role with the
+	 * specified ID, in increasing order.
+	 * The first page is requested with {@link IdPage#FIRST} and each
+	 * following page with the cursor of the previous one.
+	 *
+	 * @param roleId the id of the role
+	 * @param after the cursor, the ids of the page are greater than it
+	 * @param limit the largest number of ids in the page
+	 * @return the page
+	 */
+	public static IdPage getMemberPage(int roleId, int after, int limit) {
 		// check if role exists
-		if (!SecRelSystem.roleIds.containsKey(role.getId()))
-			throw new IllegalArgumentException("Role does not exist.");
-		// construct mapping rows
-		Integer userId = user.getId();
-		Integer roleId = role.getId();
-		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
-		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
-		// check if rows exist
-		if (SecRelSystem.memberForwardMap.contains(forwardRow) || SecRelSystem.memberBackwardMap.contains(backwardRow))
-			throw new IllegalStateException("User is already assigned to that Role: " + forwardRow + "( " + user.getId()
-			        + ", " + role.getId() + " ), " + backwardRow + "( " + role.getId() + ", " + user.getId() + " )");
-		// add rows to system
-		SecRelSystem.memberForwardMap.add(forwardRow);
-		SecRelSystem.memberBackwardMap.add(backwardRow);
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return IdPage.of(SecRelSystem.policy().roleMembers.get(roleId), after, limit);
 	}
 
 	/**
-	 * Returns the users assigned to the role with the specified ID.
+	 * Returns the users assigned to the role with the specified ID. The set is
+	 * a read only view that reads the current assignments whenever it is used,
+	 * so it copies nothing and follows later changes.
 	 *
 	 * @param roleId the id of the role
 	 * @return the users assigned to this role
 	 */
 	public static NavigableSet<User> getMembers(Integer roleId) {
-		// retrieves the user ids
-		Integer[] ids = SecRelSystem.getMemberIds(roleId);
-		// convert to list
-		List<Integer> users = Arrays.asList(ids);
-		// stream into User set
-		return users.stream().map(id -> new User(id)).collect(Collectors.toCollection(TreeSet::new));
+		// check if a roleId is null
+		if (roleId == null)
+		    // throw exception
+		    throw new NullPointerException("Role id cannot be null.");
+		return new RelationView<>(User.class, policy -> policy.roleMembers, roleId, User::new);
+	}
+
+	/**
+	 * Returns a page of the ids of the roles to which the user with the
+	 * specified ID is assigned, in increasing order.
+	 * The first page is requested with {@link IdPage#FIRST} and each
+	 * following page with the cursor of the previous one.
+	 *
+	 * @param userId the id of the user
+	 * @param after the cursor, the ids of the page are greater than it
+	 * @param limit the largest number of ids in the page
+	 * @return the page
+	 */
+	public static IdPage getRolePage(int userId, int after, int limit) {
+		// check if user exists
+		if (!SecRelSystem.userIds.contains(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		return IdPage.of(SecRelSystem.policy().userRoles.get(userId), after, limit);
 	}
 
 	/**
 	 * Returns the roles to which the user with the specified ID is assigned.
+	 * The set is a read only view that reads the current assignments whenever
+	 * it is used, so it copies nothing and follows later changes.
 	 *
 	 * @param userId the id of the user
 	 * @return the roles to which the user is assigned
 	 */
 	public static NavigableSet<Role> getRoles(Integer userId) {
-		// retrieve the role ids
-		Integer[] ids = SecRelSystem.getRoleIds(userId);
-		// convert to list
-		List<Integer> roles = Arrays.asList(ids);
-		// stream into Role set
-		return roles.stream().map(id -> new Role(id)).collect(Collectors.toCollection(TreeSet::new));
+		// check if a userId is null
+		if (userId == null)
+		    // throw exception
+		    throw new NullPointerException("User id cannot be null.");
+		return new RelationView<>(Role.class, policy -> policy.userRoles, userId, Role::new);
 	}
 
 	/**
@@ -172,15 +367,32 @@ public class Members {
 		if (roleId == null)
 		    // throw exception
 		    throw new NullPointerException("Role id cannot be null.");
+		return Members.isMemberOf(userId.intValue(), roleId.intValue());
+	}
+
+	/**
+	 * Returns whether the specified user is assigned to the specified role.
+	 * Unlike {@link #isMemberOf(Integer, Integer)}, this method boxes nothing
+	 * and allocates nothing.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return true if the user is assigned to the role
+	 */
+	public static boolean isMemberOf(int userId, int roleId) {
+		// check if user exists
+		if (!SecRelSystem.userIds.contains(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
 		// check if role exists
-		if (!SecRelSystem.roleIds.containsKey(roleId))
+		if (!SecRelSystem.roleIds.contains(roleId))
 			throw new IllegalArgumentException("Role with that id does not exist.");
+		PolicyVersion policy = SecRelSystem.policy();
 		// construct mapping rows
 		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
 		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
 		// check existence of mapping rows
-		return SecRelSystem.memberForwardMap.contains(forwardRow)
-		        && SecRelSystem.memberBackwardMap.contains(backwardRow);
+		return policy.memberForwardMap.contains(forwardRow)
+		        && policy.memberBackwardMap.contains(backwardRow);
 	}
 
 	/**
@@ -208,11 +420,12 @@ public class Members {
 		// construct mapping rows
 		Integer userId = SecRelSystem.userNames.get(userName);
 		Integer roleId = SecRelSystem.roleNames.get(roleName);
+		PolicyVersion policy = SecRelSystem.policy();
 		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
 		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
 		// check existence of mapping rows
-		return SecRelSystem.memberForwardMap.contains(forwardRow)
-		        && SecRelSystem.memberBackwardMap.contains(backwardRow);
+		return policy.memberForwardMap.contains(forwardRow)
+		        && policy.memberBackwardMap.contains(backwardRow);
 	}
 
 	/**
@@ -240,44 +453,210 @@ public class Members {
 		// construct mapping rows
 		Integer userId = user.getId();
 		Integer roleId = role.getId();
+		PolicyVersion policy = SecRelSystem.policy();
 		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
 		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
 		// check existence of mapping rows
-		return SecRelSystem.memberForwardMap.contains(forwardRow)
-		        && SecRelSystem.memberBackwardMap.contains(backwardRow);
+		return policy.memberForwardMap.contains(forwardRow)
+		        && policy.memberBackwardMap.contains(backwardRow);
 	}
 
 	/**
-	 * Unassigns the specified user from the specified role.
+	 * Sets the time at which the assignment of the specified user to the
+	 * specified role expires. This replaces any earlier expiry, so it also
+	 * extends or shortens one, and gives a permanent assignment an expiry.
 	 *
 	 * @param userId the id of the user
 	 * @param roleId the id of the role
+	 * @param expiresAt the time in milliseconds since the epoch
 	 */
-	public static void unassignRole(Integer userId, Integer roleId) {
-		// check if a userId is null
-		if (userId == null)
-		    // throw exception
-		    throw new NullPointerException("User id cannot be null.");
-		// check if user exists
-		if (!SecRelSystem.userIds.containsKey(userId))
-			throw new IllegalArgumentException("User with that id does not exist.");
-		// check if a roleId is null
-		if (roleId == null)
-		    // throw exception
-		    throw new NullPointerException("Role id cannot be null.");
+	public static void setExpiry(int userId, int roleId, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the assignment exists
+			if (!Members.isMemberOf(userId, roleId))
+				throw new IllegalArgumentException("User is not assigned to that Role.");
+			// check if the expiry has passed
+			if (expiresAt <= System.currentTimeMillis())
+				throw new IllegalArgumentException("Expiry must be in the future.");
+			// schedule expiry
+			SecRelSystem.scheduleMembershipExpiry(userId, roleId, expiresAt);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Returns the ids of the users assigned to the role with the specified ID
+	 * in increasing order.
+	 * The stream reads the current version of the relations and reports its
+	 * exact size; a parallel stream splits it between chunks of 65536 ids.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids
+	 */
+	public static IntStream streamMembers(int roleId) {
 		// check if role exists
-		if (!SecRelSystem.roleIds.containsKey(roleId))
+		if (!SecRelSystem.roleIds.contains(roleId))
 			throw new IllegalArgumentException("Role with that id does not exist.");
-		// construct mapping rows
-		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
-		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
-		// check existence of mapping rows
-		if (!(SecRelSystem.memberForwardMap.contains(forwardRow)
-		        && SecRelSystem.memberBackwardMap.contains(backwardRow)))
-			throw new IllegalArgumentException("User was not assigned to that Role");
-		// remove rows from system
-		SecRelSystem.memberForwardMap.remove(forwardRow);
-		SecRelSystem.memberBackwardMap.remove(backwardRow);
+		return SecRelSystem.policy().roleMembers.get(roleId).stream();
+	}
+
+	/**
+	 * Returns the ids of the roles to which the user with the specified ID is
+	 * assigned in increasing order.
+	 * The stream reads the current version of the relations and reports its
+	 * exact size; a parallel stream splits it between chunks of 65536 ids.
+	 *
+	 * @param userId the id of the user
+	 * @return the ids
+	 */
+	public static IntStream streamRoles(int userId) {
+		// check if user exists
+		if (!SecRelSystem.userIds.contains(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		return SecRelSystem.policy().userRoles.get(userId).stream();
+	}
+
+	/**
+	 * Assigns the specified user to the specified role unless it already is.
+	 * Unlike {@link #assignRole(Integer, Integer)}, this method reports missing
+	 * entities and existing assignments with a status instead of an exception.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return OK, NO_SUCH_USER, NO_SUCH_ROLE, ALREADY_EXISTS, ROLE_FULL or
+	 *         CONFLICT
+	 */
+	public static Status tryAssignRole(int userId, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if user exists
+			if (!SecRelSystem.userIds.contains(userId))
+				return Status.NO_SUCH_USER;
+			// check if role exists
+			if (!SecRelSystem.roleIds.contains(roleId))
+				return Status.NO_SUCH_ROLE;
+			PolicyVersion policy = SecRelSystem.policy();
+			// check if rows exist
+			if (policy.memberForwardMap.contains(SecRelSystem.memberForwardRow(userId, roleId))
+			        || policy.memberBackwardMap.contains(SecRelSystem.memberBackwardRow(userId, roleId)))
+				return Status.ALREADY_EXISTS;
+			// check if role is full
+			if (SecRelSystem.isRoleFull(roleId))
+				return Status.ROLE_FULL;
+			// check if the assignment conflicts with a role of the user
+			if (SecRelSystem.hasStaticConflict(userId, roleId))
+				return Status.CONFLICT;
+			// add rows to system
+			SecRelSystem.addMembership(userId, roleId);
+			return Status.OK;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Assigns the specified user to the specified role until the specified
+	 * time unless it already is. An existing assignment keeps its expiry. A
+	 * time that has passed is a programming error rather than an expected
+	 * condition and is still reported with an exception.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @param expiresAt the time in milliseconds since the epoch
+	 * @return OK, NO_SUCH_USER, NO_SUCH_ROLE, ALREADY_EXISTS, ROLE_FULL or
+	 *         CONFLICT
+	 */
+	public static Status tryAssignRole(int userId, int roleId, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the expiry has passed
+			if (expiresAt <= System.currentTimeMillis())
+				throw new IllegalArgumentException("Expiry must be in the future.");
+			// delegate to permanent version
+			Status status = Members.tryAssignRole(userId, roleId);
+			// schedule expiry
+			if (status == Status.OK)
+				SecRelSystem.scheduleMembershipExpiry(userId, roleId, expiresAt);
+			return status;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Unassigns the specified user from the specified role if it is assigned.
+	 * Unlike {@link #unassignRole(Integer, Integer)}, this method reports
+	 * missing entities and assignments with a status instead of an exception.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return OK, NO_SUCH_USER, NO_SUCH_ROLE or NOT_FOUND
+	 */
+	public static Status tryUnassignRole(int userId, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if user exists
+			if (!SecRelSystem.userIds.contains(userId))
+				return Status.NO_SUCH_USER;
+			// check if role exists
+			if (!SecRelSystem.roleIds.contains(roleId))
+				return Status.NO_SUCH_ROLE;
+			PolicyVersion policy = SecRelSystem.policy();
+			// check existence of mapping rows
+			if (!(policy.memberForwardMap.contains(SecRelSystem.memberForwardRow(userId, roleId))
+			        && policy.memberBackwardMap.contains(SecRelSystem.memberBackwardRow(userId, roleId))))
+				return Status.NOT_FOUND;
+			// remove rows from system
+			SecRelSystem.removeMembership(userId, roleId);
+			return Status.OK;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Unassigns the specified user from the specified role.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 */
+	public static void unassignRole(Integer userId, Integer roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a userId is null
+			if (userId == null)
+			    // throw exception
+			    throw new NullPointerException("User id cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userIds.containsKey(userId))
+				throw new IllegalArgumentException("User with that id does not exist.");
+			// check if a roleId is null
+			if (roleId == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleIds.containsKey(roleId))
+				throw new IllegalArgumentException("Role with that id does not exist.");
+			PolicyVersion policy = SecRelSystem.policy();
+			// construct mapping rows
+			long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
+			long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
+			// check existence of mapping rows
+			if (!(policy.memberForwardMap.contains(forwardRow)
+			        && policy.memberBackwardMap.contains(backwardRow)))
+				throw new IllegalArgumentException("User was not assigned to that Role");
+			// remove rows from system
+			SecRelSystem.removeMembership(userId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -287,32 +666,38 @@ public class Members {
 	 * @param roleName the name of the role
 	 */
 	public static void unassignRole(String userName, String roleName) {
-		// check if a userName is null
-		if (userName == null)
-		    // throw exception
-		    throw new NullPointerException("User name cannot be null.");
-		// check if user exists
-		if (!SecRelSystem.userNames.containsKey(userName))
-			throw new IllegalArgumentException("User with that name does not exist.");
-		// check if a roleName is null
-		if (roleName == null)
-		    // throw exception
-		    throw new NullPointerException("Role name cannot be null.");
-		// check if role exists
-		if (!SecRelSystem.roleNames.containsKey(roleName))
-			throw new IllegalArgumentException("Role with that name does not exist.");
-		// construct mapping rows
-		Integer userId = SecRelSystem.userNames.get(userName);
-		Integer roleId = SecRelSystem.roleNames.get(roleName);
-		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
-		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
-		// check existence of mapping rows
-		if (!(SecRelSystem.memberForwardMap.contains(forwardRow)
-		        && SecRelSystem.memberBackwardMap.contains(backwardRow)))
-			throw new IllegalArgumentException("User was not assigned to that Role");
-		// remove rows from system
-		SecRelSystem.memberForwardMap.remove(forwardRow);
-		SecRelSystem.memberBackwardMap.remove(backwardRow);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a userName is null
+			if (userName == null)
+			    // throw exception
+			    throw new NullPointerException("User name cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userNames.containsKey(userName))
+				throw new IllegalArgumentException("User with that name does not exist.");
+			// check if a roleName is null
+			if (roleName == null)
+			    // throw exception
+			    throw new NullPointerException("Role name cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleNames.containsKey(roleName))
+				throw new IllegalArgumentException("Role with that name does not exist.");
+			// construct mapping rows
+			Integer userId = SecRelSystem.userNames.get(userName);
+			Integer roleId = SecRelSystem.roleNames.get(roleName);
+			PolicyVersion policy = SecRelSystem.policy();
+			long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
+			long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
+			// check existence of mapping rows
+			if (!(policy.memberForwardMap.contains(forwardRow)
+			        && policy.memberBackwardMap.contains(backwardRow)))
+				throw new IllegalArgumentException("User was not assigned to that Role");
+			// remove rows from system
+			SecRelSystem.removeMembership(userId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -322,32 +707,38 @@ public class Members {
 	 * @param role the Role instance
 	 */
 	public static void unassignRole(User user, Role role) {
-		// check if a user is null
-		if (user == null)
-		    // throw exception
-		    throw new NullPointerException("User id cannot be null.");
-		// check if user exists
-		if (!SecRelSystem.userIds.containsKey(user.getId()))
-			throw new IllegalArgumentException("User does not exist.");
-		// check if a role is null
-		if (role == null)
-		    // throw exception
-		    throw new NullPointerException("Role id cannot be null.");
-		// check if role exists
-		if (!SecRelSystem.roleIds.containsKey(role.getId()))
-			throw new IllegalArgumentException("Role does not exist.");
-		// construct mapping rows
-		Integer userId = user.getId();
-		Integer roleId = role.getId();
-		long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
-		long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
-		// check existence of mapping rows
-		if (!(SecRelSystem.memberForwardMap.contains(forwardRow)
-		        && SecRelSystem.memberBackwardMap.contains(backwardRow)))
-			throw new IllegalArgumentException("User was not assigned to that Role");
-		// remove rows from system
-		SecRelSystem.memberForwardMap.remove(forwardRow);
-		SecRelSystem.memberBackwardMap.remove(backwardRow);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a user is null
+			if (user == null)
+			    // throw exception
+			    throw new NullPointerException("User id cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userIds.containsKey(user.getId()))
+				throw new IllegalArgumentException("User does not exist.");
+			// check if a role is null
+			if (role == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleIds.containsKey(role.getId()))
+				throw new IllegalArgumentException("Role does not exist.");
+			// construct mapping rows
+			Integer userId = user.getId();
+			Integer roleId = role.getId();
+			PolicyVersion policy = SecRelSystem.policy();
+			long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
+			long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
+			// check existence of mapping rows
+			if (!(policy.memberForwardMap.contains(forwardRow)
+			        && policy.memberBackwardMap.contains(backwardRow)))
+				throw new IllegalArgumentException("User was not assigned to that Role");
+			// remove rows from system
+			SecRelSystem.removeMembership(userId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -0,0 +1,357 @@
+/**
+ * This file defines the MutationPipeline class. The MutationPipeline class
+ * queues changes to the SecRelSystem and applies them in batches.
+ */
+package edu.fgcu.secrel;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * The MutationPipeline class is an asynchronous alternative to the mutators
+ * of Users, Roles, Members, Authorizations and Services for bulk provisioning.
+ * Each method enqueues the change in a ring buffer and returns a future
+ * completed once the change is visible to readers; the synchronous mutators
+ * remain available and may be mixed with the pipeline.
+ * </p>
+ * <p>
+ * The ring buffer is drained by a single writer thread. The writer takes the
+ * write lock of the SecRelSystem once per batch of up to
+ * {@link #MAX_BATCH} changes, so the batch is published as one version and
+ * the callers never contend for the lock. Each change is validated on its own
+ * and a failed change completes its future exceptionally without affecting
+ * the rest of the batch. When the buffer is full, callers wait for the writer
+ * to free a slot.
+ * </p>
+ * <p>
+ * The futures of a batch are completed after its publication by a task of the
+ * common fork-join pool rather than by the writer thread, so callbacks
+ * attached to them may enqueue further changes, as in
+ * {@code createUser(name).thenCompose(u -> assignRole(u.getId(), roleId))},
+ * and may wait for them. Only the changes themselves, which run on the
+ * writer thread, cannot enqueue changes.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public final class MutationPipeline {
+
+	/**
+	 * A queued change and the future of its result.
+	 *
+	 * @author lngibson
+	 *
+	 * @param <T> the type of the result
+	 */
+	private static final class Mutation<T> {
+
+		/**
+		 * The change.
+		 */
+		final Callable<T> task;
+
+		/**
+		 * The future of the result.
+		 */
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		/**
+		 * The result of the change once applied.
+		 */
+		T result;
+
+		/**
+		 * The exception thrown by the change, or null if it succeeded.
+		 */
+		Throwable failure;
+
+		/**
+		 * Constructs a queued change.
+		 *
+		 * @param task the change
+		 */
+		Mutation(Callable<T> task) {
+			this.task = task;
+		}
+
+		/**
+		 * Applies the change. This is called by the writer thread while it
+		 * holds the write lock.
+		 */
+		void apply() {
+			try {
+				result = task.call();
+			}
+			catch (Throwable e) {
+				failure = e;
+			}
+		}
+
+		/**
+		 * Completes the future. This is called by the completion task of the
+		 * batch after the batch is published.
+		 */
+		void complete() {
+			if (failure == null)
+				future.complete(result);
+			else
+				future.completeExceptionally(failure);
+		}
+	}
+
+	/**
+	 * The number of slots of the ring buffer. This is a power of two.
+	 */
+	private static final int CAPACITY = 1 << 14;
+
+	/**
+	 * The maximum number of changes published together.
+	 */
+	static final int MAX_BATCH = 1024;
+
+	/**
+	 * The ring buffer, a slot being null until its change is enqueued and
+	 * again once the writer has taken it.
+	 */
+	private static final AtomicReferenceArray<Mutation<?>> ring = new AtomicReferenceArray<>(
+			MutationPipeline.CAPACITY);
+
+	/**
+	 * The sequence number of the next slot to claim.
+	 */
+	private static final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * The sequence number of the next slot to drain. Only the writer thread
+	 * modifies it.
+	 */
+	private static volatile long head = 0;
+
+	/**
+	 * Whether the writer thread is about to park for lack of changes.
+	 */
+	private static volatile boolean idle = false;
+
+	/**
+	 * The thread draining the ring buffer.
+	 */
+	private static final Thread writer = new Thread(MutationPipeline::drain, "SecRel mutation writer");
+
+	static {
+		MutationPipeline.writer.setDaemon(true);
+		MutationPipeline.writer.start();
+	}
+
+	/**
+	 * Enqueues the assignment of a user to a role.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return the future of the assignment
+	 * @see Members#assignRole(Integer, Integer)
+	 */
+	public static CompletableFuture<Void> assignRole(Integer userId, Integer roleId) {
+		return MutationPipeline.submit(() -> {
+			Members.assignRole(userId, roleId);
+			return null;
+		});
+	}
+
+	/**
+	 * Enqueues the authorization of a role to invoke a service.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param accessType the access type
+	 * @return the future of the authorization
+	 * @see Authorizations#authorizeRole(Integer, Integer, int)
+	 */
+	public static CompletableFuture<Void> authorizeRole(Integer roleId, Integer serviceId, int accessType) {
+		return MutationPipeline.submit(() -> {
+			Authorizations.authorizeRole(roleId, serviceId, accessType);
+			return null;
+		});
+	}
+
+	/**
+	 * Enqueues the creation of a role.
+	 *
+	 * @param name the name of the new role
+	 * @return the future of the new role
+	 * @see Roles#createRole(String)
+	 */
+	public static CompletableFuture<Role> createRole(String name) {
+		return MutationPipeline.submit(() -> Roles.createRole(name));
+	}
+
+	/**
+	 * Enqueues the creation of a user.
+	 *
+	 * @param name the name of the new user
+	 * @return the future of the new user
+	 * @see Users#createUser(String)
+	 */
+	public static CompletableFuture<User> createUser(String name) {
+		return MutationPipeline.submit(() -> Users.createUser(name));
+	}
+
+	/**
+	 * Drains the ring buffer forever. This is the body of the writer thread.
+	 */
+	private static void drain() {
+		Mutation<?>[] batch = new Mutation<?>[MutationPipeline.MAX_BATCH];
+		for (;;) {
+			Mutation<?> mutation = MutationPipeline.ring.get(MutationPipeline.slot(MutationPipeline.head));
+			if (mutation == null) {
+				// park unless a change was enqueued since the last read
+				MutationPipeline.idle = true;
+				if (MutationPipeline.ring.get(MutationPipeline.slot(MutationPipeline.head)) == null)
+					LockSupport.park();
+				MutationPipeline.idle = false;
+				continue;
+			}
+			int n = 0;
+			SecRelSystem.beginWrite();
+			try {
+				do {
+					MutationPipeline.ring.lazySet(MutationPipeline.slot(MutationPipeline.head), null);
+					MutationPipeline.head++;
+					batch[n++] = mutation;
+					mutation.apply();
+				} while (n < MutationPipeline.MAX_BATCH && (mutation = MutationPipeline.ring
+						.get(MutationPipeline.slot(MutationPipeline.head))) != null);
+			}
+			finally {
+				SecRelSystem.endWrite();
+			}
+			// complete the futures off the writer thread
+			Mutation<?>[] published = Arrays.copyOf(batch, n);
+			Arrays.fill(batch, 0, n, null);
+			ForkJoinPool.commonPool().execute(() -> {
+				for (Mutation<?> completed : published)
+					completed.complete();
+			});
+		}
+	}
+
+	/**
+	 * Enqueues the registration of a service.
+	 *
+	 * @param service the service
+	 * @return the future of the registration
+	 * @see Services#registerService(Service)
+	 */
+	public static CompletableFuture<Void> registerService(Service service) {
+		return MutationPipeline.submit(() -> {
+			Services.registerService(service);
+			return null;
+		});
+	}
+
+	/**
+	 * Enqueues the removal of a role.
+	 *
+	 * @param roleId the id of the role
+	 * @return the future of the removal
+	 * @see Roles#removeRole(Integer)
+	 */
+	public static CompletableFuture<Void> removeRole(Integer roleId) {
+		return MutationPipeline.submit(() -> {
+			Roles.removeRole(roleId);
+			return null;
+		});
+	}
+
+	/**
+	 * Enqueues the removal of a service.
+	 *
+	 * @param serviceId the id of the service
+	 * @return the future of the removal
+	 * @see Services#removeService(Integer)
+	 */
+	public static CompletableFuture<Void> removeService(Integer serviceId) {
+		return MutationPipeline.submit(() -> {
+			Services.removeService(serviceId);
+			return null;
+		});
+	}
+
+	/**
+	 * Enqueues the removal of a user.
+	 *
+	 * @param userId the id of the user
+	 * @return the future of the removal
+	 * @see Users#removeUser(Integer)
+	 */
+	public static CompletableFuture<Void> removeUser(Integer userId) {
+		return MutationPipeline.submit(() -> {
+			Users.removeUser(userId);
+			return null;
+		});
+	}
+
+	/**
+	 * Returns the index of the slot of a sequence number.
+	 *
+	 * @param sequence the sequence number
+	 * @return the index in the ring buffer
+	 */
+	private static int slot(long sequence) {
+		return (int) sequence & MutationPipeline.CAPACITY - 1;
+	}
+
+	/**
+	 * Enqueues a change. The change is applied by the writer thread while it
+	 * holds the write lock and may call any mutator of the system.
+	 *
+	 * @param task the change
+	 * @param <T> the type of the result
+	 * @return the future of the result of the change
+	 */
+	static <T> CompletableFuture<T> submit(Callable<T> task) {
+		// check if task is null
+		if (task == null)
+			throw new NullPointerException("Mutation cannot be null.");
+		// check if called from a batch, which would wait for itself
+		if (Thread.currentThread() == MutationPipeline.writer)
+			throw new IllegalStateException("Mutations cannot be enqueued by the mutation writer.");
+		Mutation<T> mutation = new Mutation<>(task);
+		long sequence = MutationPipeline.tail.getAndIncrement();
+		// wait for the writer to free the slot
+		while (sequence - MutationPipeline.head >= MutationPipeline.CAPACITY)
+			Thread.yield();
+		MutationPipeline.ring.set(MutationPipeline.slot(sequence), mutation);
+		if (MutationPipeline.idle)
+			LockSupport.unpark(MutationPipeline.writer);
+		return mutation.future;
+	}
+
+	/**
+	 * Enqueues the removal of a user from a role.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return the future of the removal
+	 * @see Members#unassignRole(Integer, Integer)
+	 */
+	public static CompletableFuture<Void> unassignRole(Integer userId, Integer roleId) {
+		return MutationPipeline.submit(() -> {
+			Members.unassignRole(userId, roleId);
+			return null;
+		});
+	}
+
+	/**
+	 * Prevents instantiation of the MutationPipeline class.
+	 */
+	private MutationPipeline() {
+	}
+
+}
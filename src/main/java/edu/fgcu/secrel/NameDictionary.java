@@ -0,0 +1,824 @@
+/**
+ * This file defines the NameDictionary class. The NameDictionary class maps
+ * the names of users, roles or services to their ids.
+ */
+package edu.fgcu.secrel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * The NameDictionary class maps the names of one type of entity to their ids
+ * and back. The names are kept as UTF-8 in a single byte arena, sorted and
+ * front-coded in blocks of {@value #BLOCK_SIZE}: the first name of a block is
+ * stored whole and every other name only as the length of the prefix it
+ * shares with its predecessor and the remaining bytes. Names with long common
+ * prefixes, such as the class names of services, therefore cost little more
+ * than their distinct suffixes.
+ * </p>
+ * <p>
+ * Exact lookups go through an open-addressing hash table of entry numbers;
+ * ordered iteration and prefix scans binary search the first names of the
+ * blocks and decode forward. The name of an id is found through an array
+ * indexed by id, which is compact because ids are dense.
+ * </p>
+ * <p>
+ * The arena is immutable. Names added since it was built are kept in a small
+ * sorted map and removed names are marked in a bitmap; once these changes
+ * outgrow a quarter of the arena, the arena is rebuilt with the changes merged
+ * in. Readers take the arena and its changes together from a single volatile
+ * field, so they never lock and never see a rebuild half done. Writers are
+ * serialized by the dictionary's monitor.
+ * </p>
+ * <p>
+ * Names are ordered by code point, which is the order of their UTF-8 bytes.
+ * This differs from {@link String#compareTo} only for characters above
+ * U+E000. Names must not contain unpaired surrogates, which have no UTF-8
+ * encoding.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class NameDictionary extends AbstractMap<String, Integer> {
+
+	/**
+	 * An immutable front-coded arena of names.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Arena {
+
+		/**
+		 * The arena without names.
+		 */
+		static final Arena EMPTY = new Arena(new byte[0], 0, new int[0], new int[0], new int[0]);
+
+		/**
+		 * The front-coded names.
+		 */
+		final byte[] bytes;
+
+		/**
+		 * The number of names.
+		 */
+		final int count;
+
+		/**
+		 * The offset of each block in bytes.
+		 */
+		final int[] blocks;
+
+		/**
+		 * The id of each name in name order.
+		 */
+		final int[] ids;
+
+		/**
+		 * The hash code of each name in name order.
+		 */
+		final int[] hashes;
+
+		/**
+		 * The hash table of the names: the number of a name plus one, or 0 for
+		 * an empty slot.
+		 */
+		final int[] table;
+
+		/**
+		 * The number of the name of each id, or -1.
+		 */
+		final int[] names;
+
+		/**
+		 * Creates an arena and indexes its names.
+		 *
+		 * @param bytes the front-coded names
+		 * @param count the number of names
+		 * @param blocks the offset of each block
+		 * @param ids the id of each name
+		 * @param hashes the hash code of each name
+		 */
+		Arena(byte[] bytes, int count, int[] blocks, int[] ids, int[] hashes) {
+			this.bytes = bytes;
+			this.count = count;
+			this.blocks = blocks;
+			this.ids = ids;
+			this.hashes = hashes;
+			// size the table for a load factor of at most two thirds
+			table = new int[Integer.highestOneBit(Math.max(count * 3 / 2, 1)) << 1];
+			int maxId = -1;
+			for (int e = 0; e < count; e++) {
+				int i = NameDictionary.spread(hashes[e]) & table.length - 1;
+				while (table[i] != 0)
+					i = i + 1 & table.length - 1;
+				table[i] = e + 1;
+				maxId = Math.max(maxId, ids[e]);
+			}
+			names = new int[maxId + 1];
+			Arrays.fill(names, -1);
+			for (int e = 0; e < count; e++)
+				names[ids[e]] = e;
+		}
+
+		/**
+		 * Returns the number of the first name not less than a key.
+		 *
+		 * @param key the UTF-8 key
+		 * @return the number of the name or count if there is none
+		 */
+		int ceiling(byte[] key) {
+			// find the last block whose first name is not greater than key
+			int lo = 0, hi = blocks.length - 1, block = 0;
+			while (lo <= hi) {
+				int mid = lo + hi >>> 1;
+				int pos = blocks[mid] + 1;
+				int length = 0;
+				for (int shift = 0;; shift += 7) {
+					byte b = bytes[pos++];
+					length |= (b & 0x7f) << shift;
+					if (b >= 0)
+						break;
+				}
+				if (NameDictionary.compare(bytes, pos, length, key, 0, key.length) <= 0) {
+					block = mid;
+					lo = mid + 1;
+				}
+				else
+					hi = mid - 1;
+			}
+			Decoder d = new Decoder(this, block * NameDictionary.BLOCK_SIZE);
+			while (d.next())
+				if (NameDictionary.compare(d.name, 0, d.length, key, 0, key.length) >= 0)
+					return d.entry;
+			return count;
+		}
+
+		/**
+		 * Returns the number of a name.
+		 *
+		 * @param name the name
+		 * @param key the UTF-8 name
+		 * @return the number of the name or -1 if it is absent
+		 */
+		int find(String name, byte[] key) {
+			int hash = name.hashCode();
+			for (int i = NameDictionary.spread(hash) & table.length - 1; table[i] != 0; i = i + 1 & table.length - 1) {
+				int e = table[i] - 1;
+				if (hashes[e] == hash) {
+					Decoder d = new Decoder(this, e);
+					d.next();
+					if (NameDictionary.compare(d.name, 0, d.length, key, 0, key.length) == 0)
+						return e;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Builds an arena from names added in ascending order.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Builder {
+
+		/**
+		 * The front-coded names.
+		 */
+		private byte[] bytes = new byte[256];
+
+		/**
+		 * The number of bytes used.
+		 */
+		private int size;
+
+		/**
+		 * The number of names.
+		 */
+		private int count;
+
+		/**
+		 * The offset of each block.
+		 */
+		private int[] blocks = new int[4];
+
+		/**
+		 * The id of each name.
+		 */
+		private int[] ids = new int[NameDictionary.BLOCK_SIZE];
+
+		/**
+		 * The hash code of each name.
+		 */
+		private int[] hashes = new int[NameDictionary.BLOCK_SIZE];
+
+		/**
+		 * The last name added.
+		 */
+		private byte[] last = new byte[0];
+
+		/**
+		 * The length of the last name added.
+		 */
+		private int lastLength;
+
+		/**
+		 * Appends a name.
+		 *
+		 * @param name the buffer holding the UTF-8 name
+		 * @param length the length of the name
+		 * @param hash the hash code of the name
+		 * @param id the id of the name
+		 */
+		void add(byte[] name, int length, int hash, int id) {
+			int shared = 0;
+			if (count % NameDictionary.BLOCK_SIZE == 0) {
+				if (count / NameDictionary.BLOCK_SIZE == blocks.length)
+					blocks = Arrays.copyOf(blocks, blocks.length * 2);
+				blocks[count / NameDictionary.BLOCK_SIZE] = size;
+			}
+			else
+				while (shared < length && shared < lastLength && name[shared] == last[shared])
+					shared++;
+			if (size + length - shared + 10 > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length - shared + 10));
+			writeVarint(shared);
+			writeVarint(length - shared);
+			System.arraycopy(name, shared, bytes, size, length - shared);
+			size += length - shared;
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				hashes = Arrays.copyOf(hashes, count * 2);
+			}
+			ids[count] = id;
+			hashes[count] = hash;
+			count++;
+			if (last.length < length)
+				last = new byte[Math.max(length, last.length * 2)];
+			System.arraycopy(name, 0, last, 0, length);
+			lastLength = length;
+		}
+
+		/**
+		 * Returns the arena of the names added.
+		 *
+		 * @return the arena
+		 */
+		Arena build() {
+			int blockCount = (count + NameDictionary.BLOCK_SIZE - 1) / NameDictionary.BLOCK_SIZE;
+			return new Arena(Arrays.copyOf(bytes, size), count, Arrays.copyOf(blocks, blockCount),
+					Arrays.copyOf(ids, count), Arrays.copyOf(hashes, count));
+		}
+
+		/**
+		 * Appends a variable length integer.
+		 *
+		 * @param value the non-negative integer
+		 */
+		private void writeVarint(int value) {
+			while (value >= 0x80) {
+				bytes[size++] = (byte) (value | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+	}
+
+	/**
+	 * Decodes the names of an arena in order.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Decoder {
+
+		/**
+		 * The arena.
+		 */
+		final Arena arena;
+
+		/**
+		 * The number of the current name.
+		 */
+		int entry;
+
+		/**
+		 * The offset of the next name in the arena.
+		 */
+		private int pos;
+
+		/**
+		 * The buffer holding the current name.
+		 */
+		byte[] name = new byte[32];
+
+		/**
+		 * The length of the current name.
+		 */
+		int length;
+
+		/**
+		 * Creates a decoder whose first call to {@link #next()} decodes a name.
+		 *
+		 * @param arena the arena
+		 * @param entry the number of the name
+		 */
+		Decoder(Arena arena, int entry) {
+			this.arena = arena;
+			int block = entry / NameDictionary.BLOCK_SIZE;
+			this.entry = block * NameDictionary.BLOCK_SIZE - 1;
+			pos = block < arena.blocks.length ? arena.blocks[block] : arena.bytes.length;
+			// decode the names before the requested one in its block
+			while (this.entry < entry - 1)
+				next();
+		}
+
+		/**
+		 * Decodes the next name.
+		 *
+		 * @return false if there are no more names
+		 */
+		boolean next() {
+			if (entry + 1 >= arena.count)
+				return false;
+			entry++;
+			int shared = readVarint();
+			int suffix = readVarint();
+			if (shared + suffix > name.length)
+				name = Arrays.copyOf(name, Math.max(shared + suffix, name.length * 2));
+			System.arraycopy(arena.bytes, pos, name, shared, suffix);
+			pos += suffix;
+			length = shared + suffix;
+			return true;
+		}
+
+		/**
+		 * Reads a variable length integer.
+		 *
+		 * @return the integer
+		 */
+		private int readVarint() {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = arena.bytes[pos++];
+				value |= (b & 0x7f) << shift;
+				if (b >= 0)
+					return value;
+			}
+		}
+
+		/**
+		 * Returns the current name.
+		 *
+		 * @return the name
+		 */
+		String string() {
+			return new String(name, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * An arena together with the changes made since it was built.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class State {
+
+		/**
+		 * The arena.
+		 */
+		final Arena arena;
+
+		/**
+		 * The bits of the names of the arena that were removed.
+		 */
+		final AtomicLongArray removed;
+
+		/**
+		 * The names added since the arena was built.
+		 */
+		final ConcurrentSkipListMap<String, Integer> added = new ConcurrentSkipListMap<>(NameDictionary::compare);
+
+		/**
+		 * The names added since the arena was built by id.
+		 */
+		final ConcurrentHashMap<Integer, String> addedIds = new ConcurrentHashMap<>();
+
+		/**
+		 * The number of names of the arena that were removed.
+		 */
+		int removedCount;
+
+		/**
+		 * Creates the state of a new arena.
+		 *
+		 * @param arena the arena
+		 */
+		State(Arena arena) {
+			this.arena = arena;
+			removed = new AtomicLongArray(arena.count + 63 >>> 6);
+		}
+
+		/**
+		 * Returns whether a name of the arena was removed.
+		 *
+		 * @param entry the number of the name
+		 * @return true if the name was removed
+		 */
+		boolean isRemoved(int entry) {
+			return (removed.get(entry >>> 6) & 1L << entry) != 0;
+		}
+	}
+
+	/**
+	 * The number of names in a front-coded block.
+	 */
+	private static final int BLOCK_SIZE = 16;
+
+	/**
+	 * The number of changes below which the arena is never rebuilt.
+	 */
+	private static final int MIN_CHANGES = 64;
+
+	/**
+	 * Compares two UTF-8 byte ranges as unsigned bytes.
+	 *
+	 * @param a the first array
+	 * @param aFrom the start of the first range
+	 * @param aLength the length of the first range
+	 * @param b the second array
+	 * @param bFrom the start of the second range
+	 * @param bLength the length of the second range
+	 * @return a negative integer, zero, or a positive integer as the first
+	 *         range is less than, equal to, or greater than the second
+	 */
+	private static int compare(byte[] a, int aFrom, int aLength, byte[] b, int bFrom, int bLength) {
+		int n = Math.min(aLength, bLength);
+		for (int i = 0; i < n; i++) {
+			int x = a[aFrom + i] & 0xff, y = b[bFrom + i] & 0xff;
+			if (x != y)
+				return x - y;
+		}
+		return aLength - bLength;
+	}
+
+	/**
+	 * Compares two names by code point, which agrees with the order of their
+	 * UTF-8 bytes.
+	 *
+	 * @param a the first name
+	 * @param b the second name
+	 * @return a negative integer, zero, or a positive integer as the first
+	 *         name is less than, equal to, or greater than the second
+	 */
+	static int compare(String a, String b) {
+		int n = Math.min(a.length(), b.length());
+		for (int i = 0; i < n; i++) {
+			char x = a.charAt(i), y = b.charAt(i);
+			if (x != y) {
+				// surrogate pairs encode code points above every other char
+				boolean sx = Character.isSurrogate(x), sy = Character.isSurrogate(y);
+				if (sx != sy)
+					return sx ? 1 : -1;
+				return x - y;
+			}
+		}
+		return a.length() - b.length();
+	}
+
+	/**
+	 * Spreads the bits of a hash code over the slots of the hash table.
+	 *
+	 * @param hash the hash code
+	 * @return the spread hash code
+	 */
+	private static int spread(int hash) {
+		hash *= 0x9e3779b9;
+		return hash ^ hash >>> 16;
+	}
+
+	/**
+	 * The arena and the changes made since it was built.
+	 */
+	private volatile State state = new State(Arena.EMPTY);
+
+	/**
+	 * The number of names.
+	 */
+	private volatile int size;
+
+	/**
+	 * Returns the number of bytes used by the front-coded names.
+	 *
+	 * @return the number of bytes
+	 */
+	int arenaSize() {
+		return state.arena.bytes.length;
+	}
+
+	/**
+	 * Returns a view of the names and ids by id.
+	 *
+	 * @return the view
+	 */
+	Map<Integer, String> byId() {
+		return new AbstractMap<Integer, String>() {
+
+			@Override
+			public boolean containsKey(Object key) {
+				return get(key) != null;
+			}
+
+			@Override
+			public Set<Map.Entry<Integer, String>> entrySet() {
+				return new AbstractSet<Map.Entry<Integer, String>>() {
+
+					@Override
+					public Iterator<Map.Entry<Integer, String>> iterator() {
+						Iterator<Map.Entry<String, Integer>> it = NameDictionary.this.iterator("");
+						return new Iterator<Map.Entry<Integer, String>>() {
+
+							@Override
+							public boolean hasNext() {
+								return it.hasNext();
+							}
+
+							@Override
+							public Map.Entry<Integer, String> next() {
+								Map.Entry<String, Integer> e = it.next();
+								return new AbstractMap.SimpleImmutableEntry<>(e.getValue(), e.getKey());
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return NameDictionary.this.size();
+					}
+				};
+			}
+
+			@Override
+			public String get(Object key) {
+				return key instanceof Integer ? name((Integer) key) : null;
+			}
+		};
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Integer>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Integer>>() {
+
+			@Override
+			public Iterator<Map.Entry<String, Integer>> iterator() {
+				return NameDictionary.this.iterator("");
+			}
+
+			@Override
+			public int size() {
+				return NameDictionary.this.size();
+			}
+		};
+	}
+
+	@Override
+	public Integer get(Object key) {
+		// check if key is null, which the dictionary does not permit
+		if (key == null)
+			throw new NullPointerException("Name cannot be null.");
+		if (!(key instanceof String))
+			return null;
+		String name = (String) key;
+		State state = this.state;
+		Integer id = state.added.get(name);
+		if (id != null)
+			return id;
+		int e = state.arena.find(name, name.getBytes(StandardCharsets.UTF_8));
+		return e < 0 || state.isRemoved(e) ? null : state.arena.ids[e];
+	}
+
+	/**
+	 * Returns an iterator over the names beginning with a prefix in ascending
+	 * order, merging the arena with the names added since it was built.
+	 *
+	 * @param prefix the prefix
+	 * @return the iterator
+	 */
+	private Iterator<Map.Entry<String, Integer>> iterator(String prefix) {
+		State state = this.state;
+		byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+		Decoder d = new Decoder(state.arena, state.arena.ceiling(key));
+		Iterator<Map.Entry<String, Integer>> added = state.added.tailMap(prefix).entrySet().iterator();
+		return new Iterator<Map.Entry<String, Integer>>() {
+
+			/**
+			 * The next name of the arena, or null.
+			 */
+			private Map.Entry<String, Integer> nextArena = advanceArena();
+
+			/**
+			 * The next added name, or null.
+			 */
+			private Map.Entry<String, Integer> nextAdded = advanceAdded();
+
+			/**
+			 * The name of the last entry returned.
+			 */
+			private String last;
+
+			/**
+			 * Decodes the next name of the arena that was not removed.
+			 *
+			 * @return the entry or null if there are no more names
+			 */
+			private Map.Entry<String, Integer> advanceArena() {
+				while (d.next()) {
+					if (d.length < key.length || NameDictionary.compare(d.name, 0, key.length, key, 0, key.length) != 0)
+						return null;
+					if (!state.isRemoved(d.entry))
+						return new AbstractMap.SimpleImmutableEntry<>(d.string(), state.arena.ids[d.entry]);
+				}
+				return null;
+			}
+
+			/**
+			 * Returns the next added name.
+			 *
+			 * @return the entry or null if there are no more names
+			 */
+			private Map.Entry<String, Integer> advanceAdded() {
+				if (!added.hasNext())
+					return null;
+				Map.Entry<String, Integer> e = added.next();
+				return e.getKey().startsWith(prefix) ? new AbstractMap.SimpleImmutableEntry<>(e) : null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return nextArena != null || nextAdded != null;
+			}
+
+			@Override
+			public Map.Entry<String, Integer> next() {
+				Map.Entry<String, Integer> out;
+				// check if there is a next name
+				if (nextArena == null && nextAdded == null)
+					throw new NoSuchElementException();
+				if (nextAdded == null
+						|| nextArena != null && NameDictionary.compare(nextArena.getKey(), nextAdded.getKey()) < 0) {
+					out = nextArena;
+					nextArena = advanceArena();
+				}
+				else {
+					out = nextAdded;
+					nextAdded = advanceAdded();
+				}
+				last = out.getKey();
+				return out;
+			}
+
+			@Override
+			public void remove() {
+				// check if next has been called
+				if (last == null)
+					throw new IllegalStateException();
+				NameDictionary.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	/**
+	 * Rebuilds the arena with the changes merged in if they have outgrown it.
+	 */
+	private void maybeRebuild() {
+		State state = this.state;
+		if (state.added.size() + state.removedCount <= Math.max(NameDictionary.MIN_CHANGES, state.arena.count / 4))
+			return;
+		Builder builder = new Builder();
+		Decoder d = new Decoder(state.arena, 0);
+		boolean more = d.next();
+		for (Map.Entry<String, Integer> e : state.added.entrySet()) {
+			byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+			for (; more && NameDictionary.compare(d.name, 0, d.length, name, 0, name.length) < 0; more = d.next())
+				if (!state.isRemoved(d.entry))
+					builder.add(d.name, d.length, state.arena.hashes[d.entry], state.arena.ids[d.entry]);
+			builder.add(name, name.length, e.getKey().hashCode(), e.getValue());
+		}
+		for (; more; more = d.next())
+			if (!state.isRemoved(d.entry))
+				builder.add(d.name, d.length, state.arena.hashes[d.entry], state.arena.ids[d.entry]);
+		this.state = new State(builder.build());
+	}
+
+	/**
+	 * Returns the name of an id.
+	 *
+	 * @param id the id
+	 * @return the name or null if the id has no name
+	 */
+	String name(int id) {
+		State state = this.state;
+		String name = state.addedIds.get(id);
+		if (name != null)
+			return name;
+		Arena arena = state.arena;
+		int e = id >= 0 && id < arena.names.length ? arena.names[id] : -1;
+		if (e < 0 || state.isRemoved(e))
+			return null;
+		Decoder d = new Decoder(arena, e);
+		d.next();
+		return d.string();
+	}
+
+	/**
+	 * Returns a view of the names beginning with a prefix in ascending order.
+	 *
+	 * @param prefix the prefix
+	 * @return the view
+	 */
+	Map<String, Integer> prefixed(String prefix) {
+		// check if prefix is null
+		if (prefix == null)
+			throw new NullPointerException("Prefix cannot be null.");
+		return new AbstractMap<String, Integer>() {
+
+			@Override
+			public Set<Map.Entry<String, Integer>> entrySet() {
+				return new AbstractSet<Map.Entry<String, Integer>>() {
+
+					@Override
+					public Iterator<Map.Entry<String, Integer>> iterator() {
+						return NameDictionary.this.iterator(prefix);
+					}
+
+					@Override
+					public int size() {
+						int size = 0;
+						for (Iterator<Map.Entry<String, Integer>> it = iterator(); it.hasNext(); it.next())
+							size++;
+						return size;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Maps a name to an id. The id must not already have a name.
+	 *
+	 * @param name the name
+	 * @param id the id
+	 * @return the previous id of the name or null
+	 */
+	@Override
+	public synchronized Integer put(String name, Integer id) {
+		// check if arguments are null
+		if (name == null || id == null)
+			throw new NullPointerException("Name and id cannot be null.");
+		Integer old = remove(name);
+		State state = this.state;
+		state.added.put(name, id);
+		state.addedIds.put(id, name);
+		size++;
+		maybeRebuild();
+		return old;
+	}
+
+	@Override
+	public synchronized Integer remove(Object key) {
+		Integer id = get(key);
+		if (id == null)
+			return null;
+		State state = this.state;
+		String name = (String) key;
+		if (state.added.remove(name) != null)
+			state.addedIds.remove(id);
+		else {
+			int e = state.arena.find(name, name.getBytes(StandardCharsets.UTF_8));
+			state.removed.getAndAccumulate(e >>> 6, 1L << e, (a, b) -> a | b);
+			state.removedCount++;
+		}
+		size--;
+		maybeRebuild();
+		return id;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+}
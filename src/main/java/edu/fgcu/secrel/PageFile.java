@@ -0,0 +1,470 @@
+/**
+ * This file defines the PageFile class. The PageFile class is a memory mapped
+ * file of fixed size pages holding the rows of MappedRowStores.
+ */
+package edu.fgcu.secrel;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The PageFile class maps a file in segments outside the Java heap and
+ * divides it in pages of {@link #PAGE_SIZE} bytes, allocated to and freed by
+ * the {@link MappedRowStore} relations stored in the file. The operating
+ * system page cache holds the pages in use; the heap only holds the page
+ * directory of each relation.
+ * </p>
+ * <p>
+ * Page 0 is the header. It records the number of pages, the first page of a
+ * chain of side pages holding an array of longs checkpointed with the rows,
+ * such as their pending expiries, and, for every relation, the number of
+ * rows and the first page of a chain of directory pages listing the data
+ * pages of the relation in key order. The header is
+ * only rewritten by {@link #checkpoint()}, after the new directory pages and
+ * every data page have been forced to the file, and the pages reachable from
+ * the header are never modified or reused until the next checkpoint. A file
+ * therefore always reopens in the state of its last checkpoint.
+ * </p>
+ * <p>
+ * This class is not thread safe. It is only used by the thread holding the
+ * write lock of the SecRelSystem, except for reads of pages reachable from a
+ * published snapshot, which never change.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class PageFile implements AutoCloseable {
+
+	/**
+	 * The size of a page in bytes.
+	 */
+	static final int PAGE_SIZE = 4096;
+
+	/**
+	 * The number of bits of a page number selecting the page within a
+	 * segment.
+	 */
+	private static final int SEGMENT_BITS = 14;
+
+	/**
+	 * The value identifying a page file in its header.
+	 */
+	private static final int MAGIC = 0x53525046;
+
+	/**
+	 * The format version of the file. Files of version 1 have no side pages.
+	 */
+	private static final int FORMAT = 2;
+
+	/**
+	 * The offset in the header of the first relation record.
+	 */
+	private static final int RELATIONS_OFFSET = 32;
+
+	/**
+	 * The size of a relation record in the header: the number of rows, the
+	 * first directory page and whether the rows carry values.
+	 */
+	private static final int RELATION_SIZE = 16;
+
+	/**
+	 * The offset in the header of the first side page.
+	 */
+	private static final int SIDE_OFFSET = 28;
+
+	/**
+	 * The number of data page numbers held by a directory page after its next
+	 * page number and count.
+	 */
+	private static final int DIRECTORY_CAPACITY = PageFile.PAGE_SIZE / 4 - 2;
+
+	/**
+	 * The number of longs held by a side page after its next page number and
+	 * count.
+	 */
+	private static final int SIDE_CAPACITY = PageFile.PAGE_SIZE / 8 - 1;
+
+	/**
+	 * The channel of the file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The mapped segments of the file. The array is replaced when the file
+	 * grows so that readers always see a complete array.
+	 */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+	/**
+	 * The number of pages in use or freed, i.e. the number of the next page
+	 * allocated at the end of the file.
+	 */
+	private int pageCount;
+
+	/**
+	 * The freed pages available for allocation.
+	 */
+	private int[] free = new int[64];
+
+	/**
+	 * The number of pages in free.
+	 */
+	private int freeCount = 0;
+
+	/**
+	 * The number of completed checkpoints.
+	 */
+	private long generation;
+
+	/**
+	 * The relations stored in the file.
+	 */
+	private final MappedRowStore[] relations;
+
+	/**
+	 * The snapshots of the relations taken by the last checkpoint. Holding
+	 * them prevents the pages reachable from the header from being reused.
+	 */
+	private final RowStore[] checkpointed;
+
+	/**
+	 * The directory and side pages written by the last checkpoint.
+	 */
+	private int[] directoryPages = new int[0];
+
+	/**
+	 * The longs written to the side pages by the next checkpoint.
+	 */
+	private long[] sideData = new long[0];
+
+	/**
+	 * Opens or creates a page file.
+	 *
+	 * @param path the path of the file
+	 * @param withValues whether the rows of each relation carry values, one
+	 *            element per relation
+	 * @throws IOException if the file cannot be read or mapped
+	 * @throws IllegalStateException if the file is not a page file with the
+	 *             same relations
+	 */
+	PageFile(Path path, boolean... withValues) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		relations = new MappedRowStore[withValues.length];
+		checkpointed = new RowStore[withValues.length];
+		try {
+			boolean created = channel.size() == 0;
+			pageCount = created ? 1 : PageFile.pageCount(channel.size());
+			ensureMapped(pageCount);
+			if (created) {
+				for (int r = 0; r < relations.length; r++)
+					relations[r] = new MappedRowStore(this, withValues[r], new int[0], 0);
+				checkpoint();
+			}
+			else
+				load(withValues);
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of pages of an existing file from its size.
+	 *
+	 * @param size the size of the file in bytes
+	 * @return the number of whole pages
+	 */
+	private static int pageCount(long size) {
+		return (int) Math.min(size / PageFile.PAGE_SIZE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Allocates a page, reusing a freed page if possible.
+	 *
+	 * @return the number of the page
+	 * @throws IllegalStateException if the file cannot grow
+	 */
+	int allocate() {
+		for (MappedRowStore relation : relations)
+			if (relation != null)
+				relation.reclaim();
+		if (freeCount > 0)
+			return free[--freeCount];
+		try {
+			ensureMapped(pageCount + 1);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Page file cannot grow.", e);
+		}
+		return pageCount++;
+	}
+
+	/**
+	 * Writes the directories of the relations and the header and forces the
+	 * file to the storage device. The file reopens in the state of the last
+	 * completed checkpoint.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	void checkpoint() throws IOException {
+		int[] previous = directoryPages;
+		int[] written = new int[0];
+		int side = -1;
+		// write the side chain from its last page as well
+		for (int end = sideData.length; end > 0; end -= Math.min(end, PageFile.SIDE_CAPACITY)) {
+			int start = Math.max(0, end - PageFile.SIDE_CAPACITY);
+			int page = allocate();
+			putInt(page, 0, side);
+			putInt(page, 4, end - start);
+			for (int i = start; i < end; i++)
+				putLong(page, 8 + 8 * (i - start), sideData[i]);
+			side = page;
+			written = Arrays.copyOf(written, written.length + 1);
+			written[written.length - 1] = page;
+		}
+		RowStore[] snapshots = new RowStore[relations.length];
+		int[] heads = new int[relations.length];
+		for (int r = 0; r < relations.length; r++) {
+			snapshots[r] = relations[r].snapshot();
+			int[] pages = relations[r].pages();
+			heads[r] = -1;
+			// write the chain from its last page so that each page knows the next
+			for (int end = pages.length; end > 0; end -= Math.min(end, PageFile.DIRECTORY_CAPACITY)) {
+				int start = Math.max(0, end - PageFile.DIRECTORY_CAPACITY);
+				int page = allocate();
+				putInt(page, 0, heads[r]);
+				putInt(page, 4, end - start);
+				for (int i = start; i < end; i++)
+					putInt(page, 8 + 4 * (i - start), pages[i]);
+				heads[r] = page;
+				written = Arrays.copyOf(written, written.length + 1);
+				written[written.length - 1] = page;
+			}
+		}
+		force();
+		putInt(0, 0, PageFile.MAGIC);
+		putInt(0, 4, PageFile.FORMAT);
+		putInt(0, 8, PageFile.PAGE_SIZE);
+		putInt(0, 12, pageCount);
+		putLong(0, 16, ++generation);
+		putInt(0, 24, relations.length);
+		putInt(0, PageFile.SIDE_OFFSET, side);
+		for (int r = 0; r < relations.length; r++) {
+			int offset = PageFile.RELATIONS_OFFSET + r * PageFile.RELATION_SIZE;
+			putLong(0, offset, snapshots[r].size());
+			putInt(0, offset + 8, heads[r]);
+			putInt(0, offset + 12, snapshots[r].withValues() ? 1 : 0);
+		}
+		force();
+		// the previous checkpoint is no longer reachable from the header
+		System.arraycopy(snapshots, 0, checkpointed, 0, snapshots.length);
+		directoryPages = written;
+		for (int page : previous)
+			free(page);
+	}
+
+	/**
+	 * Closes the file after a checkpoint. The relations must not be used
+	 * afterwards.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			checkpoint();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Copies a page.
+	 *
+	 * @param from the number of the source page
+	 * @param to the number of the destination page
+	 */
+	void copy(int from, int to) {
+		for (int offset = 0; offset < PageFile.PAGE_SIZE; offset += 8)
+			putLong(to, offset, getLong(from, offset));
+	}
+
+	/**
+	 * Maps the segments holding the first pages of the file.
+	 *
+	 * @param pages the number of pages to map
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private void ensureMapped(int pages) throws IOException {
+		int needed = (pages + (1 << PageFile.SEGMENT_BITS) - 1) >>> PageFile.SEGMENT_BITS;
+		MappedByteBuffer[] segments = this.segments;
+		if (needed <= segments.length)
+			return;
+		MappedByteBuffer[] grown = Arrays.copyOf(segments, needed);
+		long segmentSize = (long) PageFile.PAGE_SIZE << PageFile.SEGMENT_BITS;
+		for (int i = segments.length; i < needed; i++)
+			grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentSize, segmentSize);
+		this.segments = grown;
+	}
+
+	/**
+	 * Forces every mapped segment to the storage device.
+	 */
+	private void force() {
+		for (MappedByteBuffer segment : segments)
+			segment.force();
+	}
+
+	/**
+	 * Returns a page to the free list. The caller guarantees that no snapshot
+	 * can read the page.
+	 *
+	 * @param page the number of the page
+	 */
+	void free(int page) {
+		if (freeCount == free.length)
+			free = Arrays.copyOf(free, freeCount << 1);
+		free[freeCount++] = page;
+	}
+
+	/**
+	 * Reads an int from a page.
+	 *
+	 * @param page the number of the page
+	 * @param offset the offset in the page
+	 * @return the int
+	 */
+	int getInt(int page, int offset) {
+		return segments[page >>> PageFile.SEGMENT_BITS]
+				.getInt((page & (1 << PageFile.SEGMENT_BITS) - 1) * PageFile.PAGE_SIZE + offset);
+	}
+
+	/**
+	 * Reads a long from a page.
+	 *
+	 * @param page the number of the page
+	 * @param offset the offset in the page
+	 * @return the long
+	 */
+	long getLong(int page, int offset) {
+		return segments[page >>> PageFile.SEGMENT_BITS]
+				.getLong((page & (1 << PageFile.SEGMENT_BITS) - 1) * PageFile.PAGE_SIZE + offset);
+	}
+
+	/**
+	 * Reads the header and the directories of the last checkpoint.
+	 *
+	 * @param withValues whether the rows of each relation carry values
+	 */
+	private void load(boolean[] withValues) {
+		// check if the header is valid
+		int format = getInt(0, 4);
+		if (getInt(0, 0) != PageFile.MAGIC || format != PageFile.FORMAT && format != 1
+				|| getInt(0, 8) != PageFile.PAGE_SIZE)
+			throw new IllegalStateException("File is not a page file.");
+		// check if the relations match
+		if (getInt(0, 24) != relations.length)
+			throw new IllegalStateException("Page file holds a different number of relations.");
+		pageCount = getInt(0, 12);
+		generation = getLong(0, 16);
+		boolean[] used = new boolean[pageCount];
+		used[0] = true;
+		int[] directory = new int[0];
+		for (int r = 0; r < relations.length; r++) {
+			int offset = PageFile.RELATIONS_OFFSET + r * PageFile.RELATION_SIZE;
+			// check if the value column matches
+			if ((getInt(0, offset + 12) == 1) != withValues[r])
+				throw new IllegalStateException("Page file relation has a different value column.");
+			int[] pages = new int[0];
+			for (int page = getInt(0, offset + 8); page != -1; page = getInt(page, 0)) {
+				used[page] = true;
+				directory = Arrays.copyOf(directory, directory.length + 1);
+				directory[directory.length - 1] = page;
+				int count = getInt(page, 4);
+				int n = pages.length;
+				pages = Arrays.copyOf(pages, n + count);
+				for (int i = 0; i < count; i++)
+					used[pages[n + i] = getInt(page, 8 + 4 * i)] = true;
+			}
+			relations[r] = new MappedRowStore(this, withValues[r], pages, (int) getLong(0, offset));
+			checkpointed[r] = relations[r].snapshot();
+		}
+		for (int page = format == 1 ? -1 : getInt(0, PageFile.SIDE_OFFSET); page != -1; page = getInt(page, 0)) {
+			used[page] = true;
+			directory = Arrays.copyOf(directory, directory.length + 1);
+			directory[directory.length - 1] = page;
+			int count = getInt(page, 4);
+			int n = sideData.length;
+			sideData = Arrays.copyOf(sideData, n + count);
+			for (int i = 0; i < count; i++)
+				sideData[n + i] = getLong(page, 8 + 8 * i);
+		}
+		directoryPages = directory;
+		for (int page = pageCount - 1; page > 0; page--)
+			if (!used[page])
+				free(page);
+	}
+
+	/**
+	 * Writes an int to a page.
+	 *
+	 * @param page the number of the page
+	 * @param offset the offset in the page
+	 * @param value the int
+	 */
+	void putInt(int page, int offset, int value) {
+		segments[page >>> PageFile.SEGMENT_BITS]
+				.putInt((page & (1 << PageFile.SEGMENT_BITS) - 1) * PageFile.PAGE_SIZE + offset, value);
+	}
+
+	/**
+	 * Writes a long to a page.
+	 *
+	 * @param page the number of the page
+	 * @param offset the offset in the page
+	 * @param value the long
+	 */
+	void putLong(int page, int offset, long value) {
+		segments[page >>> PageFile.SEGMENT_BITS]
+				.putLong((page & (1 << PageFile.SEGMENT_BITS) - 1) * PageFile.PAGE_SIZE + offset, value);
+	}
+
+	/**
+	 * Returns a relation of the file.
+	 *
+	 * @param r the index of the relation
+	 * @return the writable relation
+	 */
+	MappedRowStore relation(int r) {
+		return relations[r];
+	}
+
+	/**
+	 * Replaces the longs written to the side pages by the next checkpoint.
+	 *
+	 * @param sideData the longs, which are not copied
+	 */
+	void setSideData(long[] sideData) {
+		this.sideData = sideData;
+	}
+
+	/**
+	 * Returns the longs of the side pages of the last checkpoint, or those
+	 * set since.
+	 *
+	 * @return the longs
+	 */
+	long[] sideData() {
+		return sideData;
+	}
+
+}
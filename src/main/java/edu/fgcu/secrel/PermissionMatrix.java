@@ -0,0 +1,374 @@
+/**
+ * This file defines the PermissionMatrix class. The PermissionMatrix class is
+ * a materialized view of the services each user may invoke.
+ */
+package edu.fgcu.secrel;
+
+/**
+ * <p>
+ * The PermissionMatrix class holds the effective permissions of the system,
+ * i.e. the composition of the user-role and role-service relations through
+ * the role hierarchy, as a bitmap of services per user and a bitmap of users
+ * per service. Checking whether a user may invoke a service is a single bit
+ * test, whatever the depth of the hierarchy, and the users able to invoke a
+ * service are read without visiting their roles.
+ * </p>
+ * <p>
+ * Alongside each permission the matrix keeps the OR of the access types of
+ * the authorizations granting it, so checking whether a user holds a mode of
+ * a service, e.g. {@link Right#READ_RESULT}, is one lookup and one AND rather
+ * than a walk over the rights of the user's roles.
+ * </p>
+ * <p>
+ * The matrix is updated incrementally by the SecRelSystem whenever a mapping
+ * row is added or removed, after the bitmap index has been updated. Additions
+ * only set bits; removals recompute the affected bits from the bitmap index
+ * because another role may still grant the permission.
+ * </p>
+ * <p>
+ * The matrix is copy-on-write like the bitmap index it is built from. This
+ * class is not thread safe; its snapshots are.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class PermissionMatrix {
+
+	/**
+	 * The services each user may invoke, indexed by user id.
+	 */
+	private final BitmapIndex userServices;
+
+	/**
+	 * The users that may invoke each service, indexed by service id.
+	 */
+	private final BitmapIndex serviceUsers;
+
+	/**
+	 * The OR of the access types granting each permission, keyed by user to
+	 * service row.
+	 */
+	private final LongBTree modes;
+
+	/**
+	 * Constructs an empty matrix.
+	 */
+	PermissionMatrix() {
+		this(new BitmapIndex(), new BitmapIndex(), new LongBTree(true));
+	}
+
+	/**
+	 * Constructs a matrix from its indexes.
+	 *
+	 * @param userServices the services of each user
+	 * @param serviceUsers the users of each service
+	 * @param modes the access types of each permission
+	 */
+	private PermissionMatrix(BitmapIndex userServices, BitmapIndex serviceUsers, LongBTree modes) {
+		this.userServices = userServices;
+		this.serviceUsers = serviceUsers;
+		this.modes = modes;
+	}
+
+	/**
+	 * Returns the access type of an authorization.
+	 *
+	 * @param policy the draft holding the mapping rows
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @return the access type
+	 */
+	private static int accessType(PolicyVersion policy, int roleId, int serviceId) {
+		return policy.serviceForwardMap.get(SecRelSystem.serviceForwardRow(roleId, serviceId), 0);
+	}
+
+	/**
+	 * Recomputes the modes of the service for the members of the role and of
+	 * the roles inheriting it. This is called after the access type of an
+	 * authorization of the role changes.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 */
+	void accessTypeChanged(PolicyVersion policy, int roleId, int serviceId) {
+		policy.roleMembers.get(roleId).forEach(userId -> update(policy, userId, serviceId));
+		policy.hierarchy.seniors(roleId).forEach(
+				seniorId -> policy.roleMembers.get(seniorId).forEach(userId -> update(policy, userId, serviceId)));
+	}
+
+	/**
+	 * Grants the service to every member of the role and of the roles
+	 * inheriting it. This is called after the role is authorized to invoke
+	 * the service.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 */
+	void authorizationAdded(PolicyVersion policy, int roleId, int serviceId) {
+		int accessType = PermissionMatrix.accessType(policy, roleId, serviceId);
+		policy.roleMembers.get(roleId).forEach(userId -> grant(userId, serviceId, accessType));
+		policy.hierarchy.seniors(roleId).forEach(seniorId -> policy.roleMembers.get(seniorId)
+				.forEach(userId -> grant(userId, serviceId, accessType)));
+	}
+
+	/**
+	 * Revokes the service from the members of the role and of the roles
+	 * inheriting it that hold no other role granting it. This is called after
+	 * the authorization is removed.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 */
+	void authorizationRemoved(PolicyVersion policy, int roleId, int serviceId) {
+		accessTypeChanged(policy, roleId, serviceId);
+	}
+
+	/**
+	 * Removes every permission.
+	 */
+	void clear() {
+		userServices.clear();
+		serviceUsers.clear();
+		modes.clear();
+	}
+
+	/**
+	 * Sets the bits of a permission and adds an access type to its modes.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param accessType the access type of the granting authorization
+	 */
+	private void grant(int userId, int serviceId, int accessType) {
+		long row = PermissionMatrix.row(userId, serviceId);
+		if (userServices.add(userId, serviceId)) {
+			serviceUsers.add(serviceId, userId);
+			modes.add(row, accessType);
+		}
+		else {
+			int mode = modes.get(row, 0);
+			// check if the access type adds a mode
+			if ((mode | accessType) != mode)
+				modes.set(row, mode | accessType);
+		}
+	}
+
+	/**
+	 * Returns whether the user may invoke the service.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @return true if one of the roles of the user is authorized to invoke the
+	 *         service
+	 */
+	boolean isAuthorized(int userId, int serviceId) {
+		return userServices.get(userId).contains(serviceId);
+	}
+
+	/**
+	 * Grants the services of the role inherited by a new edge to the members
+	 * of the senior role and of the roles inheriting it. This is called after
+	 * the edge is added to the hierarchy.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param seniorId the id of the senior role of the edge
+	 */
+	void inheritanceAdded(PolicyVersion policy, int seniorId) {
+		policy.roleMembers.get(seniorId).forEach(userId -> membershipAdded(policy, userId, seniorId));
+		policy.hierarchy.seniors(seniorId).forEach(roleId -> policy.roleMembers.get(roleId)
+				.forEach(userId -> membershipAdded(policy, userId, roleId)));
+	}
+
+	/**
+	 * Recomputes the services of the members of the senior role of a removed
+	 * edge and of the roles inheriting it. This is called after the edge is
+	 * removed from the hierarchy.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param seniorId the id of the senior role of the edge
+	 */
+	void inheritanceRemoved(PolicyVersion policy, int seniorId) {
+		policy.roleMembers.get(seniorId).forEach(userId -> recompute(policy, userId));
+		policy.hierarchy.seniors(seniorId)
+				.forEach(roleId -> policy.roleMembers.get(roleId).forEach(userId -> recompute(policy, userId)));
+	}
+
+	/**
+	 * Grants the services of the role and of the roles it inherits to the
+	 * user. This is called after the user is assigned to the role.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 */
+	void membershipAdded(PolicyVersion policy, int userId, int roleId) {
+		policy.roleServices.get(roleId).forEach(
+				serviceId -> grant(userId, serviceId, PermissionMatrix.accessType(policy, roleId, serviceId)));
+		policy.hierarchy.juniors(roleId).forEach(juniorId -> policy.roleServices.get(juniorId).forEach(
+				serviceId -> grant(userId, serviceId, PermissionMatrix.accessType(policy, juniorId, serviceId))));
+	}
+
+	/**
+	 * Recomputes the services of the user. This is called after the user is
+	 * unassigned from the role.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 */
+	void membershipRemoved(PolicyVersion policy, int userId, int roleId) {
+		if (!policy.hierarchy.juniors(roleId).isEmpty())
+			recompute(policy, userId);
+		else
+			policy.roleServices.get(roleId).forEach(serviceId -> update(policy, userId, serviceId));
+	}
+
+	/**
+	 * Returns the OR of the access types of the authorizations through which
+	 * the roles, or the roles they inherit, grant a service.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param roles the ids of the roles
+	 * @param serviceId the id of the service
+	 * @return the modes, or -1 if none of the roles grants the service
+	 */
+	private static int mode(PolicyVersion policy, IdBitmap roles, int serviceId) {
+		IdBitmap authorized = policy.serviceRoles.get(serviceId);
+		int mode = -1;
+		for (int roleId = roles.nextId(0); roleId >= 0; roleId = roles.nextId(roleId + 1)) {
+			if (authorized.contains(roleId))
+				mode = Math.max(mode, 0) | PermissionMatrix.accessType(policy, roleId, serviceId);
+			IdBitmap juniors = policy.hierarchy.juniors(roleId);
+			if (!juniors.isEmpty() && IdBitmap.intersects(juniors, authorized))
+				for (int juniorId : IdBitmap.and(juniors, authorized).toArray())
+					mode = Math.max(mode, 0) | PermissionMatrix.accessType(policy, juniorId, serviceId);
+		}
+		return mode;
+	}
+
+	/**
+	 * Returns the OR of the access types through which the user may invoke
+	 * the service.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @return the modes, or 0 if the user may not invoke the service
+	 */
+	int modes(int userId, int serviceId) {
+		return modes.get(PermissionMatrix.row(userId, serviceId), 0);
+	}
+
+	/**
+	 * Revokes the services of the user that none of its roles grants any
+	 * more and recomputes the modes of the others.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param userId the id of the user
+	 */
+	private void recompute(PolicyVersion policy, int userId) {
+		for (int serviceId : userServices.get(userId).toArray())
+			update(policy, userId, serviceId);
+	}
+
+	/**
+	 * Clears the bits of a permission.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 */
+	private void revoke(int userId, int serviceId) {
+		if (userServices.remove(userId, serviceId)) {
+			serviceUsers.remove(serviceId, userId);
+			modes.remove(PermissionMatrix.row(userId, serviceId));
+		}
+	}
+
+	/**
+	 * Returns the key of the modes of a permission.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @return the user to service row
+	 */
+	private static long row(int userId, int serviceId) {
+		return (long) userId << 32 | serviceId;
+	}
+
+	/**
+	 * Revokes every permission to invoke the service. This is called after the
+	 * authorizations of the service are removed.
+	 *
+	 * @param serviceId the id of the service
+	 */
+	void serviceRemoved(int serviceId) {
+		serviceUsers.get(serviceId).forEach(userId -> {
+			userServices.remove(userId, serviceId);
+			modes.remove(PermissionMatrix.row(userId, serviceId));
+		});
+		serviceUsers.clear(serviceId);
+	}
+
+	/**
+	 * Returns the services the user may invoke.
+	 *
+	 * @param userId the id of the user
+	 * @return the ids of the services
+	 */
+	IdBitmap services(int userId) {
+		return userServices.get(userId);
+	}
+
+	/**
+	 * Returns a read only matrix holding the current permissions.
+	 *
+	 * @return the snapshot
+	 */
+	PermissionMatrix snapshot() {
+		return new PermissionMatrix(userServices.snapshot(), serviceUsers.snapshot(), modes.snapshot());
+	}
+
+	/**
+	 * Revokes every permission of the user. This is called after the
+	 * assignments of the user are removed.
+	 *
+	 * @param userId the id of the user
+	 */
+	void userRemoved(int userId) {
+		userServices.get(userId).forEach(serviceId -> serviceUsers.remove(serviceId, userId));
+		userServices.clear(userId);
+		modes.removeRange((long) userId << 32, (long) userId + 1 << 32);
+	}
+
+	/**
+	 * Recomputes a permission from the roles of the user, revoking it if none
+	 * of them grants the service any more.
+	 *
+	 * @param policy the draft holding the bitmap index
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 */
+	private void update(PolicyVersion policy, int userId, int serviceId) {
+		int mode = PermissionMatrix.mode(policy, policy.userRoles.get(userId), serviceId);
+		if (mode < 0)
+			revoke(userId, serviceId);
+		else if (!userServices.get(userId).contains(serviceId))
+			grant(userId, serviceId, mode);
+		else
+			modes.set(PermissionMatrix.row(userId, serviceId), mode);
+	}
+
+	/**
+	 * Returns the users that may invoke the service.
+	 *
+	 * @param serviceId the id of the service
+	 * @return the ids of the users
+	 */
+	IdBitmap users(int serviceId) {
+		return serviceUsers.get(serviceId);
+	}
+
+}
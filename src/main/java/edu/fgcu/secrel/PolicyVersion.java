@@ -0,0 +1,222 @@
+/**
+ * This file defines the PolicyVersion class. The PolicyVersion class holds one
+ * version of the relations of the SecRelSystem.
+ */
+package edu.fgcu.secrel;
+
+/**
+ * <p>
+ * The PolicyVersion class groups the mapping rows, the bitmap index and the
+ * permission matrix of the user-role and role-service relations so that they
+ * are read and published together.
+ * </p>
+ * <p>
+ * The SecRelSystem holds one writable draft, modified only by the thread
+ * holding its write lock, and publishes read only snapshots of it. Readers
+ * pin the published snapshot once and read every relation from it, so they
+ * never lock, never observe a forward row without its backward row and never
+ * observe half of a change. The structures are copy-on-write, so taking a
+ * snapshot costs a few allocations and the next change copies only the nodes,
+ * pages and chunks it modifies.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class PolicyVersion {
+
+	/**
+	 * The version of the draft, which is never published as is.
+	 */
+	static final long DRAFT = -1;
+
+	/**
+	 * The version number, increasing with every publication.
+	 */
+	final long version;
+
+	/**
+	 * <p>
+	 * Maps users to roles.
+	 * </p>
+	 * <p>
+	 * Each long value is the concatenated integer IDs of a user and a role. The
+	 * 32 most significant bytes belong to the user and the 32 least significant
+	 * belong to the role. Because the tree is sorted, users assigned to multiple
+	 * roles will have their mappings long values stored consecutively, allowing
+	 * for simple retrieval of all a users roles using
+	 * <code>RowStore.low()</code>.
+	 * </p>
+	 */
+	final RowStore memberForwardMap;
+
+	/**
+	 * <p>
+	 * Maps roles to users.
+	 * </p>
+	 * <p>
+	 * Each long value is the concatenated integer IDs of a role and a user. The
+	 * 32 most significant bytes belong to the role and the 32 least significant
+	 * belong to the user. Because the tree is sorted, roles assigned to multiple
+	 * users will have their mappings long values stored consecutively, allowing
+	 * for simple retrieval of all a roles users using
+	 * <code>RowStore.low()</code>.
+	 * </p>
+	 */
+	final RowStore memberBackwardMap;
+
+	/**
+	 * <p>
+	 * Maps roles to services.
+	 * </p>
+	 * <p>
+	 * Each long value is the concatenated integer IDs of a role and a service.
+	 * The 32 most significant bytes belong to the role and the 32 least
+	 * significant belong to the service. The value of each row is the access
+	 * type of the authorization; Right instances are only created on request.
+	 * Because the tree is sorted, roles assigned to multiple services will have
+	 * their mappings long values stored consecutively, allowing for simple
+	 * retrieval of all a roles services using <code>RowStore.low()</code>.
+	 * </p>
+	 */
+	final RowStore serviceForwardMap;
+
+	/**
+	 * <p>
+	 * Maps services to roles.
+	 * </p>
+	 * <p>
+	 * Each long value is the concatenated integer IDs of a service and a role.
+	 * The 32 most significant bytes belong to the service and the 32 least
+	 * significant belong to the role. The value of each row is the access type
+	 * of the authorization. Because the tree is sorted, services assigned to
+	 * multiple roles will have their mappings long values stored
+	 * consecutively, allowing for simple retrieval of all a services roles
+	 * using <code>RowStore.low()</code>.
+	 * </p>
+	 */
+	final RowStore serviceBackwardMap;
+
+	/**
+	 * The users of each role, indexed by role id. This mirrors
+	 * memberBackwardMap for the set operations of {@link Queries}.
+	 */
+	final BitmapIndex roleMembers;
+
+	/**
+	 * The roles of each user, indexed by user id. This mirrors
+	 * memberForwardMap for the set operations of {@link Queries}.
+	 */
+	final BitmapIndex userRoles;
+
+	/**
+	 * The services of each role, indexed by role id. This mirrors
+	 * serviceForwardMap for the set operations of {@link Queries}.
+	 */
+	final BitmapIndex roleServices;
+
+	/**
+	 * The roles authorized for each service, indexed by service id. This
+	 * mirrors serviceBackwardMap for the set operations of {@link Queries}.
+	 */
+	final BitmapIndex serviceRoles;
+
+	/**
+	 * The inheritance edges between roles and their transitive closure. The
+	 * edges are not mapping rows, so they are held on the heap even when the
+	 * relations are held in a file.
+	 */
+	final RoleHierarchy hierarchy;
+
+	/**
+	 * The services each user may invoke through any of its roles and the
+	 * roles they inherit. This is the composition of the bitmap indexes and
+	 * the hierarchy and is updated with them.
+	 */
+	final PermissionMatrix permissions;
+
+	/**
+	 * Constructs an empty draft holding its rows on the heap.
+	 */
+	PolicyVersion() {
+		this(new LongBTree(false), new LongBTree(false), new LongBTree(true), new LongBTree(true));
+	}
+
+	/**
+	 * Constructs a draft over existing rows. The bitmap index and the
+	 * permission matrix are empty until {@link #rebuildDerived()} is called.
+	 *
+	 * @param memberForwardMap the user to role rows
+	 * @param memberBackwardMap the role to user rows
+	 * @param serviceForwardMap the role to service rows
+	 * @param serviceBackwardMap the service to role rows
+	 */
+	PolicyVersion(RowStore memberForwardMap, RowStore memberBackwardMap, RowStore serviceForwardMap,
+			RowStore serviceBackwardMap) {
+		version = PolicyVersion.DRAFT;
+		this.memberForwardMap = memberForwardMap;
+		this.memberBackwardMap = memberBackwardMap;
+		this.serviceForwardMap = serviceForwardMap;
+		this.serviceBackwardMap = serviceBackwardMap;
+		roleMembers = new BitmapIndex();
+		userRoles = new BitmapIndex();
+		roleServices = new BitmapIndex();
+		serviceRoles = new BitmapIndex();
+		hierarchy = new RoleHierarchy();
+		permissions = new PermissionMatrix();
+	}
+
+	/**
+	 * Constructs a read only snapshot of a draft.
+	 *
+	 * @param draft the draft
+	 * @param version the version number of the snapshot
+	 */
+	private PolicyVersion(PolicyVersion draft, long version) {
+		this.version = version;
+		memberForwardMap = draft.memberForwardMap.snapshot();
+		memberBackwardMap = draft.memberBackwardMap.snapshot();
+		serviceForwardMap = draft.serviceForwardMap.snapshot();
+		serviceBackwardMap = draft.serviceBackwardMap.snapshot();
+		roleMembers = draft.roleMembers.snapshot();
+		userRoles = draft.userRoles.snapshot();
+		roleServices = draft.roleServices.snapshot();
+		serviceRoles = draft.serviceRoles.snapshot();
+		hierarchy = draft.hierarchy.snapshot();
+		permissions = draft.permissions.snapshot();
+	}
+
+	/**
+	 * Rebuilds the bitmap index and the permission matrix of this draft from
+	 * its forward mapping rows and its hierarchy. This is called when a draft
+	 * is constructed over rows loaded from a file, after its hierarchy has
+	 * been copied from the previous draft.
+	 */
+	void rebuildDerived() {
+		roleMembers.clear();
+		userRoles.clear();
+		roleServices.clear();
+		serviceRoles.clear();
+		permissions.clear();
+		for (RowStore.Cursor c = serviceForwardMap.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			roleServices.add((int) (c.key() >> 32), (int) c.key());
+			serviceRoles.add((int) c.key(), (int) (c.key() >> 32));
+		}
+		for (RowStore.Cursor c = memberForwardMap.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			userRoles.add((int) (c.key() >> 32), (int) c.key());
+			roleMembers.add((int) c.key(), (int) (c.key() >> 32));
+			permissions.membershipAdded(this, (int) (c.key() >> 32), (int) c.key());
+		}
+	}
+
+	/**
+	 * Returns a read only snapshot of this draft.
+	 *
+	 * @param version the version number of the snapshot
+	 * @return the snapshot
+	 */
+	PolicyVersion snapshot(long version) {
+		return new PolicyVersion(this, version);
+	}
+
+}
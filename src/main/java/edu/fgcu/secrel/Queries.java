@@ -0,0 +1,361 @@
+/**
+ * <p>
+ * This file defines the Queries class. The Queries class contains methods to
+ * answer set questions about the relations in the SecRelSystem.
+ * </p>
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * This class contains methods for querying the user-role and role-service
+ * relations of the SecRelSystem as sets of ids. The sets are IdBitmaps read
+ * from the bitmap index the system maintains alongside its mapping rows, so no
+ * User, Role or Service instances are built.
+ * </p>
+ * <p>
+ * The returned bitmaps are combined with the set operations of IdBitmap. For
+ * example, the users in role a and role b but not in role c are
+ * </p>
+ *
+ * <pre>
+ * IdBitmap.andNot(Queries.membersOfAll(a, b), Queries.members(c))
+ * </pre>
+ * <p>
+ * and their number is given by the corresponding cardinality method without
+ * building the result.
+ * </p>
+ * <p>
+ * Each query reads a single published version of the relations, so the
+ * bitmaps combined by a query are consistent with one another and are never
+ * modified afterwards.
+ * </p>
+ * <p>
+ * The permitted methods check a batch of users and services at once and
+ * return a BitSet with one bit per check, without allocating a monitor or a
+ * boxed id per check. Very large batches are split across the common
+ * fork-join pool.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public class Queries {
+
+	/**
+	 * Answers the checks of a chunk of a batch.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	@FunctionalInterface
+	private interface Chunk {
+
+		/**
+		 * Sets the bits of the checks that pass.
+		 *
+		 * @param from the first check of the chunk
+		 * @param to the check following the chunk
+		 * @param words the bits of the whole batch
+		 */
+		void check(int from, int to, long[] words);
+	}
+
+	/**
+	 * The number of checks in a chunk of a batch answered in parallel, a
+	 * multiple of 64.
+	 */
+	private static final int CHUNK = 1 << 12;
+
+	/**
+	 * The number of checks above which a batch is answered in parallel.
+	 */
+	private static final int PARALLEL_BATCH = 1 << 14;
+
+	/**
+	 * Returns the roles authorized to invoke the service with the specified
+	 * id.
+	 *
+	 * @param serviceId the id of the service
+	 * @return the ids of the roles
+	 */
+	public static IdBitmap authorizedRoles(int serviceId) {
+		return Queries.authorizedRoles(SecRelSystem.policy(), serviceId);
+	}
+
+	/**
+	 * Returns the roles authorized to invoke the service with the specified
+	 * id in a version of the relations.
+	 *
+	 * @param policy the version
+	 * @param serviceId the id of the service
+	 * @return the ids of the roles
+	 */
+	private static IdBitmap authorizedRoles(PolicyVersion policy, int serviceId) {
+		// check if service exists
+		if (!SecRelSystem.serviceIds.containsKey(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		return policy.serviceRoles.get(serviceId);
+	}
+
+	/**
+	 * Answers a batch of checks, splitting it into chunks answered in parallel
+	 * by the common fork-join pool if it is large.
+	 *
+	 * @param length the number of checks
+	 * @param chunk answers the checks of a chunk
+	 * @return the bits of the checks that passed
+	 */
+	private static BitSet batch(int length, Chunk chunk) {
+		long[] words = new long[length + 63 >>> 6];
+		if (length <= Queries.PARALLEL_BATCH)
+			chunk.check(0, length, words);
+		else
+			// chunks are whole words, so no two tasks write the same word
+			IntStream.range(0, (length + Queries.CHUNK - 1) / Queries.CHUNK).parallel().forEach(
+					c -> chunk.check(c * Queries.CHUNK, Math.min(length, (c + 1) * Queries.CHUNK), words));
+		return BitSet.valueOf(words);
+	}
+
+	/**
+	 * Returns the roles inherited, directly or not, by the role with the
+	 * specified id.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the junior roles
+	 */
+	public static IdBitmap juniorRoles(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.containsKey(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.policy().hierarchy.juniors(roleId);
+	}
+
+	/**
+	 * Returns the users assigned to the role with the specified id.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the users
+	 */
+	public static IdBitmap members(int roleId) {
+		return Queries.members(SecRelSystem.policy(), roleId);
+	}
+
+	/**
+	 * Returns the users assigned to the role with the specified id in a
+	 * version of the relations.
+	 *
+	 * @param policy the version
+	 * @param roleId the id of the role
+	 * @return the ids of the users
+	 */
+	private static IdBitmap members(PolicyVersion policy, int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.containsKey(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return policy.roleMembers.get(roleId);
+	}
+
+	/**
+	 * Returns the users assigned to every one of the specified roles.
+	 *
+	 * @param roleIds the ids of the roles
+	 * @return the ids of the users
+	 */
+	public static IdBitmap membersOfAll(int... roleIds) {
+		if (roleIds.length == 0)
+			return new IdBitmap();
+		PolicyVersion policy = SecRelSystem.policy();
+		IdBitmap out = Queries.members(policy, roleIds[0]);
+		for (int i = 1; i < roleIds.length; i++)
+			out = IdBitmap.and(out, Queries.members(policy, roleIds[i]));
+		return out;
+	}
+
+	/**
+	 * Returns the users assigned to at least one of the specified roles.
+	 *
+	 * @param roleIds the ids of the roles
+	 * @return the ids of the users
+	 */
+	public static IdBitmap membersOfAny(int... roleIds) {
+		PolicyVersion policy = SecRelSystem.policy();
+		IdBitmap out = new IdBitmap();
+		for (int roleId : roleIds)
+			out = IdBitmap.or(out, Queries.members(policy, roleId));
+		return out;
+	}
+
+	/**
+	 * <p>
+	 * Determines which of the specified pairs of users and services are
+	 * permitted. Bit i of the result is set if the user userIds[i] may invoke
+	 * the service serviceIds[i].
+	 * </p>
+	 * <p>
+	 * The pairs are grouped by user so the row of each user is fetched once.
+	 * Ids without an entity are never permitted.
+	 * </p>
+	 *
+	 * @param userIds the ids of the users
+	 * @param serviceIds the ids of the services
+	 * @return the bits of the permitted pairs
+	 */
+	public static BitSet permitted(int[] userIds, int[] serviceIds) {
+		// check if arrays are null
+		if (userIds == null || serviceIds == null)
+			throw new NullPointerException("Id arrays cannot be null.");
+		// check if arrays have equal lengths
+		if (userIds.length != serviceIds.length)
+			throw new IllegalArgumentException("Id arrays must have equal lengths.");
+		PolicyVersion policy = SecRelSystem.policy();
+		return Queries.batch(serviceIds.length, (from, to, words) -> {
+			// sort the pairs of the chunk by user, remembering their position
+			long[] keys = new long[to - from];
+			for (int i = from; i < to; i++)
+				keys[i - from] = (long) userIds[i] << 32 | i - from;
+			Arrays.sort(keys);
+			IdBitmap services = null;
+			for (int k = 0; k < keys.length; k++) {
+				if (k == 0 || keys[k] >> 32 != keys[k - 1] >> 32)
+					services = policy.permissions.services((int) (keys[k] >> 32));
+				int i = from + (int) keys[k];
+				if (services.contains(serviceIds[i]))
+					words[i >>> 6] |= 1L << i;
+			}
+		});
+	}
+
+	/**
+	 * Determines which of the specified services the user with the specified
+	 * id may invoke. Bit i of the result is set if the user may invoke the
+	 * service serviceIds[i]. The row of the user is fetched once for the whole
+	 * batch; ids without an entity are never permitted.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceIds the ids of the services
+	 * @return the bits of the permitted services
+	 */
+	public static BitSet permitted(int userId, int... serviceIds) {
+		// check if serviceIds is null
+		if (serviceIds == null)
+			throw new NullPointerException("Service ids cannot be null.");
+		IdBitmap services = SecRelSystem.policy().permissions.services(userId);
+		return Queries.batch(serviceIds.length, (from, to, words) -> {
+			for (int i = from; i < to; i++)
+				if (services.contains(serviceIds[i]))
+					words[i >>> 6] |= 1L << i;
+		});
+	}
+
+	/**
+	 * Returns the services the user with the specified id may invoke through
+	 * any of its roles.
+	 *
+	 * @param userId the id of the user
+	 * @return the ids of the services
+	 */
+	public static IdBitmap permittedServices(int userId) {
+		// check if user exists
+		if (!SecRelSystem.userIds.containsKey(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		return SecRelSystem.policy().permissions.services(userId);
+	}
+
+	/**
+	 * Returns the users that may invoke the service with the specified id
+	 * through any of their roles.
+	 *
+	 * @param serviceId the id of the service
+	 * @return the ids of the users
+	 */
+	public static IdBitmap permittedUsers(int serviceId) {
+		// check if service exists
+		if (!SecRelSystem.serviceIds.containsKey(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		return SecRelSystem.policy().permissions.users(serviceId);
+	}
+
+	/**
+	 * Returns the roles to which the user with the specified id is assigned.
+	 *
+	 * @param userId the id of the user
+	 * @return the ids of the roles
+	 */
+	public static IdBitmap roles(int userId) {
+		// check if user exists
+		if (!SecRelSystem.userIds.containsKey(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		return SecRelSystem.policy().userRoles.get(userId);
+	}
+
+	/**
+	 * Returns the roles authorized to invoke every one of the specified
+	 * services.
+	 *
+	 * @param serviceIds the ids of the services
+	 * @return the ids of the roles
+	 */
+	public static IdBitmap rolesAuthorizedForAll(int... serviceIds) {
+		if (serviceIds.length == 0)
+			return new IdBitmap();
+		PolicyVersion policy = SecRelSystem.policy();
+		IdBitmap out = Queries.authorizedRoles(policy, serviceIds[0]);
+		for (int i = 1; i < serviceIds.length; i++)
+			out = IdBitmap.and(out, Queries.authorizedRoles(policy, serviceIds[i]));
+		return out;
+	}
+
+	/**
+	 * Returns the roles authorized to invoke at least one of the specified
+	 * services.
+	 *
+	 * @param serviceIds the ids of the services
+	 * @return the ids of the roles
+	 */
+	public static IdBitmap rolesAuthorizedForAny(int... serviceIds) {
+		PolicyVersion policy = SecRelSystem.policy();
+		IdBitmap out = new IdBitmap();
+		for (int serviceId : serviceIds)
+			out = IdBitmap.or(out, Queries.authorizedRoles(policy, serviceId));
+		return out;
+	}
+
+	/**
+	 * Returns the roles inheriting, directly or not, the role with the
+	 * specified id.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the senior roles
+	 */
+	public static IdBitmap seniorRoles(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.containsKey(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.policy().hierarchy.seniors(roleId);
+	}
+
+	/**
+	 * Returns the services the role with the specified id is authorized to
+	 * invoke.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the services
+	 */
+	public static IdBitmap services(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.containsKey(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.policy().roleServices.get(roleId);
+	}
+
+	/**
+	 * Prevents instantiation of the Queries class.
+	 */
+	private Queries() {
+	}
+
+}
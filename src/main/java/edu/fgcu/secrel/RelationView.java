@@ -0,0 +1,323 @@
+/**
+ * This file defines the RelationView class. The RelationView class is a live,
+ * read only NavigableSet of the entities related to one entity.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * <p>
+ * The RelationView class is a read only NavigableSet of the entities related
+ * to one entity, e.g. the users of a role, ordered by id. It holds no ids of
+ * its own: every call reads the bitmap of the entity from the current version
+ * of the relations, so the view follows later changes and costs nothing until
+ * it is used. contains is a bitmap probe, first and ceiling seek to the next
+ * id and the size of an unbounded view is the maintained count of the bitmap;
+ * only the size of a bounded view counts its ids. Entity instances are created
+ * as they are returned.
+ * </p>
+ * <p>
+ * An iterator reads the version that was current when it was created, so it
+ * never observes half of a change. Sub-views narrow the id range of their
+ * view and are live in the same way.
+ * </p>
+ *
+ * @author lngibson
+ *
+ * @param <E> the type of the related entities
+ */
+final class RelationView<E extends Entity> extends AbstractSet<E> implements NavigableSet<E> {
+
+	/**
+	 * The type of the related entities.
+	 */
+	private final Class<E> type;
+
+	/**
+	 * Selects the bitmap index of the relation from a version.
+	 */
+	private final Function<PolicyVersion, BitmapIndex> index;
+
+	/**
+	 * The id of the entity whose related entities are viewed.
+	 */
+	private final int owner;
+
+	/**
+	 * Returns the related entity with an id.
+	 */
+	private final IntFunction<E> entity;
+
+	/**
+	 * The smallest id in the view.
+	 */
+	private final long from;
+
+	/**
+	 * The largest id in the view.
+	 */
+	private final long to;
+
+	/**
+	 * Whether the view is ordered by decreasing id.
+	 */
+	private final boolean descending;
+
+	/**
+	 * Constructs a view of every entity related to an entity.
+	 *
+	 * @param type the type of the related entities
+	 * @param index selects the bitmap index of the relation
+	 * @param owner the id of the entity
+	 * @param entity returns the related entity with an id
+	 */
+	RelationView(Class<E> type, Function<PolicyVersion, BitmapIndex> index, int owner, IntFunction<E> entity) {
+		this(type, index, owner, entity, 0, Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * Constructs a view of the entities related to an entity within an id
+	 * range.
+	 *
+	 * @param type the type of the related entities
+	 * @param index selects the bitmap index of the relation
+	 * @param owner the id of the entity
+	 * @param entity returns the related entity with an id
+	 * @param from the smallest id
+	 * @param to the largest id
+	 * @param descending whether the view is ordered by decreasing id
+	 */
+	private RelationView(Class<E> type, Function<PolicyVersion, BitmapIndex> index, int owner,
+			IntFunction<E> entity, long from, long to, boolean descending) {
+		this.type = type;
+		this.index = index;
+		this.owner = owner;
+		this.entity = entity;
+		this.from = from;
+		this.to = to;
+		this.descending = descending;
+	}
+
+	@Override
+	public E ceiling(E e) {
+		return descending ? get(floorId(bitmap(), id(e))) : get(ceilingId(bitmap(), id(e)));
+	}
+
+	@Override
+	public Comparator<? super E> comparator() {
+		return descending ? Collections.reverseOrder() : null;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!type.isInstance(o))
+			return false;
+		long id = ((Entity) o).getId();
+		return id >= from && id <= to && bitmap().contains((int) id);
+	}
+
+	@Override
+	public Iterator<E> descendingIterator() {
+		return descendingSet().iterator();
+	}
+
+	@Override
+	public NavigableSet<E> descendingSet() {
+		return new RelationView<>(type, index, owner, entity, from, to, !descending);
+	}
+
+	@Override
+	public E first() {
+		E e = get(descending ? floorId(bitmap(), to) : ceilingId(bitmap(), from));
+		// check if the view is empty
+		if (e == null)
+			throw new NoSuchElementException();
+		return e;
+	}
+
+	@Override
+	public E floor(E e) {
+		return descending ? get(ceilingId(bitmap(), id(e))) : get(floorId(bitmap(), id(e)));
+	}
+
+	@Override
+	public SortedSet<E> headSet(E toElement) {
+		return headSet(toElement, false);
+	}
+
+	@Override
+	public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+		long id = id(toElement);
+		return descending ? range(inclusive ? id : id + 1, to) : range(from, inclusive ? id : id - 1);
+	}
+
+	@Override
+	public E higher(E e) {
+		return descending ? get(floorId(bitmap(), id(e) - 1)) : get(ceilingId(bitmap(), id(e) + 1));
+	}
+
+	@Override
+	public boolean isEmpty() {
+		IdBitmap bitmap = bitmap();
+		return ceilingId(bitmap, from) < 0;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		IdBitmap bitmap = bitmap();
+		return new Iterator<E>() {
+
+			private long next = descending ? floorId(bitmap, to) : ceilingId(bitmap, from);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public E next() {
+				// check if the iteration is complete
+				if (next < 0)
+					throw new NoSuchElementException();
+				int id = (int) next;
+				next = descending ? floorId(bitmap, next - 1) : ceilingId(bitmap, next + 1);
+				return entity.apply(id);
+			}
+		};
+	}
+
+	@Override
+	public E last() {
+		return descendingSet().first();
+	}
+
+	@Override
+	public E lower(E e) {
+		return descending ? get(ceilingId(bitmap(), id(e) + 1)) : get(floorId(bitmap(), id(e) - 1));
+	}
+
+	@Override
+	public E pollFirst() {
+		throw new UnsupportedOperationException("Relation views are read only.");
+	}
+
+	@Override
+	public E pollLast() {
+		throw new UnsupportedOperationException("Relation views are read only.");
+	}
+
+	@Override
+	public int size() {
+		IdBitmap bitmap = bitmap();
+		if (from == 0 && to == Integer.MAX_VALUE)
+			return bitmap.cardinality();
+		int n = 0;
+		for (long id = ceilingId(bitmap, from); id >= 0; id = ceilingId(bitmap, id + 1))
+			n++;
+		return n;
+	}
+
+	@Override
+	public SortedSet<E> subSet(E fromElement, E toElement) {
+		return subSet(fromElement, true, toElement, false);
+	}
+
+	@Override
+	public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+		long low = id(fromElement), high = id(toElement);
+		// check if the bounds are out of order
+		if (descending ? low < high : low > high)
+			throw new IllegalArgumentException("fromElement is after toElement.");
+		if (descending)
+			return range(toInclusive ? high : high + 1, fromInclusive ? low : low - 1);
+		return range(fromInclusive ? low : low + 1, toInclusive ? high : high - 1);
+	}
+
+	@Override
+	public SortedSet<E> tailSet(E fromElement) {
+		return tailSet(fromElement, true);
+	}
+
+	@Override
+	public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+		long id = id(fromElement);
+		return descending ? range(from, inclusive ? id : id - 1) : range(inclusive ? id : id + 1, to);
+	}
+
+	/**
+	 * Returns the bitmap of the owner in the current version of the
+	 * relations.
+	 *
+	 * @return the bitmap
+	 */
+	private IdBitmap bitmap() {
+		return index.apply(SecRelSystem.policy()).get(owner);
+	}
+
+	/**
+	 * Returns the smallest id of the view not less than an id.
+	 *
+	 * @param bitmap the bitmap of the owner
+	 * @param id the id
+	 * @return the id or -1 if there is none
+	 */
+	private long ceilingId(IdBitmap bitmap, long id) {
+		if (id > to)
+			return -1;
+		int next = bitmap.nextId((int) Math.max(id, from));
+		return next >= 0 && next <= to ? next : -1;
+	}
+
+	/**
+	 * Returns the largest id of the view not greater than an id.
+	 *
+	 * @param bitmap the bitmap of the owner
+	 * @param id the id
+	 * @return the id or -1 if there is none
+	 */
+	private long floorId(IdBitmap bitmap, long id) {
+		if (id < from)
+			return -1;
+		int prev = bitmap.prevId((int) Math.min(id, to));
+		return prev >= from ? prev : -1;
+	}
+
+	/**
+	 * Returns the entity with an id.
+	 *
+	 * @param id the id or -1
+	 * @return the entity or null if the id is -1
+	 */
+	private E get(long id) {
+		return id < 0 ? null : entity.apply((int) id);
+	}
+
+	/**
+	 * Returns the id of an entity used as a bound.
+	 *
+	 * @param e the entity
+	 * @return the id
+	 */
+	private long id(E e) {
+		// check if an entity is null
+		if (e == null)
+			// throw exception
+			throw new NullPointerException("Entity cannot be null.");
+		return e.getId();
+	}
+
+	/**
+	 * Returns a view narrowed to an id range, ordered like this view.
+	 *
+	 * @param low the smallest id
+	 * @param high the largest id
+	 * @return the view
+	 */
+	private NavigableSet<E> range(long low, long high) {
+		return new RelationView<>(type, index, owner, entity, Math.max(from, low), Math.min(to, high), descending);
+	}
+
+}
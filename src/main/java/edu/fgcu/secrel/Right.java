@@ -2,19 +2,57 @@
  * This file defines the Right class. The Right class is simply the
  * encapsulation of a role id, a service id and an access type.
  */
-// Note: accessType, checkRights
 package edu.fgcu.secrel;
 
 /**
+ * <p>
  * The Right class is the encapsulation of a role and service id as well as an
  * access type for use by the SecRelSystem to represent role-service
  * authorizations.
+ * </p>
+ * <p>
+ * The access type is a mask of the modes the authorization grants:
+ * {@link #INVOKE}, {@link #STREAM_INPUT}, {@link #READ_RESULT} and
+ * {@link #ADMINISTER}. A user holds a mode of a service if any of its roles,
+ * or a role they inherit, is authorized with it; see
+ * {@link Authorizations#isPermitted(int, int, int)}.
+ * </p>
+ * <p>
+ * A Right is a read only copy of an authorization taken when it was read; the
+ * access type of the authorization is changed through
+ * {@link Authorizations#setAccessType(int, int, int)}.
+ * </p>
  *
  * @author lngibson
  *
  */
 public final class Right {
 	
+	/**
+	 * The mode permitting the service to be invoked.
+	 */
+	public static final int INVOKE = 1;
+	
+	/**
+	 * The mode permitting input to be streamed into the service.
+	 */
+	public static final int STREAM_INPUT = 2;
+	
+	/**
+	 * The mode permitting the results of the service to be read.
+	 */
+	public static final int READ_RESULT = 4;
+	
+	/**
+	 * The mode permitting the service to be administered.
+	 */
+	public static final int ADMINISTER = 8;
+	
+	/**
+	 * The mask of every mode.
+	 */
+	public static final int ALL = Right.INVOKE | Right.STREAM_INPUT | Right.READ_RESULT | Right.ADMINISTER;
+	
 	/**
 	 * The id of the authorized role.
 	 */
@@ -26,20 +64,18 @@ public final class Right {
 	public final int serviceId;
 	
 	/**
-	 * I do not know the purpose of this field.
+	 * The modes granted, a mask of the mode constants.
 	 */
-	private int accessType;
+	private final int accessType;
 	
 	/**
-	 * Constructs a Right given the role and service.
+	 * Constructs a Right given the role and service, granting {@link #INVOKE}.
 	 *
 	 * @param roleId the id of the role
 	 * @param serviceId the id of the service
 	 */
 	protected Right(int roleId, int serviceId) {
-		super();
-		this.roleId = roleId;
-		this.serviceId = serviceId;
+		this(roleId, serviceId, Right.INVOKE);
 	}
 	
 	/**
@@ -57,11 +93,22 @@ public final class Right {
 	}
 	
 	/**
-	 * I do not know the purpose of this method
+	 * Returns whether this right grants the service to be invoked.
+	 *
+	 * @return true if the access type holds {@link #INVOKE}
 	 */
-	@SuppressWarnings("static-method")
-	public void checkRights() {
-		throw new RuntimeException("not implemented");
+	public boolean checkRights() {
+		return checkRights(Right.INVOKE);
+	}
+	
+	/**
+	 * Returns whether this right grants every mode of the specified mask.
+	 *
+	 * @param mode the requested modes
+	 * @return true if the access type holds the modes
+	 */
+	public boolean checkRights(int mode) {
+		return (accessType & mode) == mode;
 	}
 	
 	/**
@@ -109,13 +156,4 @@ public final class Right {
 		return serviceId;
 	}
 	
-	/**
-	 * Setter accessType.
-	 *
-	 * @param accessType the accessType to set
-	 */
-	public void setAccessType(int accessType) {
-		this.accessType = accessType;
-	}
-	
 }
\ No newline at end of file
@@ -5,7 +5,7 @@
  */
 package edu.fgcu.secrel;
 
-import java.util.Set;
+import java.util.NavigableSet;
 
 /**
  * The Role class provides a means of querying the System about a specific role.
@@ -66,21 +66,22 @@ public class Role implements Entity, Comparable<Role> {
 	}
 	
 	/**
-	 * Returns the services this Role is authorized to invoke.
+	 * Returns the services this Role is authorized to invoke as a live, read
+	 * only view.
 	 *
 	 * @return the services this Role is authorized to invoke
 	 */
-	public Set<Service> getServices() {
-		throw new RuntimeException("not implemented");
+	public NavigableSet<Service> getServices() {
+		return Authorizations.getAuthorizedServices(id);
 	}
 	
 	/**
-	 * Returns the users assigned to this Role.
+	 * Returns the users assigned to this Role as a live, read only view.
 	 *
 	 * @return the users assigned to this Role
 	 */
-	public Set<User> getUsers() {
-		throw new RuntimeException("not implemented");
+	public NavigableSet<User> getUsers() {
+		return Members.getMembers(id);
 	}
 	
 	@Override
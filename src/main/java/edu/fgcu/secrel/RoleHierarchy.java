@@ -0,0 +1,252 @@
+/**
+ * This file defines the RoleHierarchy class. The RoleHierarchy class holds the
+ * inheritance edges between roles and their transitive closure.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+/**
+ * <p>
+ * The RoleHierarchy class holds the inheritance edges of the system, each
+ * making a senior role inherit the authorizations of a junior role, e.g.
+ * staff inherits senior-engineer which inherits engineer. Alongside the
+ * direct edges it keeps their transitive closure as a bitmap of all junior
+ * roles and a bitmap of all senior roles per role, so the permission matrix
+ * can fold the hierarchy into the permissions and an authorization check
+ * costs the same at any depth.
+ * </p>
+ * <p>
+ * The closure is maintained incrementally. Adding an edge from s to j adds j
+ * and the juniors of j to the juniors of s and of every senior of s, and
+ * symmetrically for the seniors. Removing an edge recomputes the juniors of s
+ * and its seniors and the seniors of j and its juniors from the direct edges,
+ * since another path may still connect them; no other role is visited. The
+ * hierarchy is kept acyclic by the SecRelSystem.
+ * </p>
+ * <p>
+ * The hierarchy is copy-on-write like the bitmap indexes it consists of.
+ * This class is not thread safe; its snapshots are.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class RoleHierarchy {
+
+	/**
+	 * The junior roles each role directly inherits, indexed by role id.
+	 */
+	private final BitmapIndex directJuniors;
+
+	/**
+	 * The senior roles directly inheriting each role, indexed by role id.
+	 */
+	private final BitmapIndex directSeniors;
+
+	/**
+	 * The junior roles each role inherits through any path, indexed by role
+	 * id.
+	 */
+	private final BitmapIndex juniors;
+
+	/**
+	 * The senior roles inheriting each role through any path, indexed by role
+	 * id.
+	 */
+	private final BitmapIndex seniors;
+
+	/**
+	 * Constructs an empty hierarchy.
+	 */
+	RoleHierarchy() {
+		this(new BitmapIndex(), new BitmapIndex(), new BitmapIndex(), new BitmapIndex());
+	}
+
+	/**
+	 * Constructs a hierarchy from its indexes.
+	 *
+	 * @param directJuniors the direct junior roles of each role
+	 * @param directSeniors the direct senior roles of each role
+	 * @param juniors the junior roles of each role
+	 * @param seniors the senior roles of each role
+	 */
+	private RoleHierarchy(BitmapIndex directJuniors, BitmapIndex directSeniors, BitmapIndex juniors,
+			BitmapIndex seniors) {
+		this.directJuniors = directJuniors;
+		this.directSeniors = directSeniors;
+		this.juniors = juniors;
+		this.seniors = seniors;
+	}
+
+	/**
+	 * Returns the roles reachable from a role through an index of direct
+	 * edges, excluding the role itself.
+	 *
+	 * @param direct the direct edges
+	 * @param roleId the id of the role
+	 * @return the ids of the reachable roles
+	 */
+	private static IdBitmap reachable(BitmapIndex direct, int roleId) {
+		IdBitmap out = new IdBitmap();
+		Deque<Integer> pending = new ArrayDeque<>();
+		pending.push(roleId);
+		while (!pending.isEmpty())
+			direct.get(pending.pop()).forEach(next -> {
+				if (out.add(next))
+					pending.push(next);
+			});
+		return out;
+	}
+
+	/**
+	 * Adds an edge making the senior role inherit the junior role. The caller
+	 * is responsible for checking that the edge does not close a cycle.
+	 *
+	 * @param seniorId the id of the senior role
+	 * @param juniorId the id of the junior role
+	 * @return true if the edge did not already exist
+	 */
+	boolean add(int seniorId, int juniorId) {
+		if (!directJuniors.add(seniorId, juniorId))
+			return false;
+		directSeniors.add(juniorId, seniorId);
+		int[] above = with(seniorId, seniors.get(seniorId));
+		int[] below = with(juniorId, juniors.get(juniorId));
+		for (int a : above)
+			for (int b : below)
+				juniors.add(a, b);
+		for (int b : below)
+			for (int a : above)
+				seniors.add(b, a);
+		return true;
+	}
+
+	/**
+	 * Returns the role and the junior roles it inherits through any path.
+	 *
+	 * @param roleId the id of the role
+	 * @return a new bitmap of the ids of the roles
+	 */
+	IdBitmap closure(int roleId) {
+		IdBitmap roles = IdBitmap.or(juniors.get(roleId), BitmapIndex.EMPTY);
+		roles.add(roleId);
+		return roles;
+	}
+
+	/**
+	 * Returns the roles and the junior roles they inherit through any path,
+	 * i.e. the roles whose authorizations holding the roles grants.
+	 *
+	 * @param roleIds the ids of the roles
+	 * @return the ids of the roles and of their juniors
+	 */
+	IdBitmap closure(IdBitmap roleIds) {
+		IdBitmap roles = roleIds;
+		for (int roleId = roleIds.nextId(0); roleId >= 0; roleId = roleIds.nextId(roleId + 1))
+			if (!juniors.get(roleId).isEmpty())
+				roles = IdBitmap.or(roles, juniors.get(roleId));
+		return roles;
+	}
+
+	/**
+	 * Returns the junior roles the role directly inherits.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the junior roles
+	 */
+	IdBitmap directJuniors(int roleId) {
+		return directJuniors.get(roleId);
+	}
+
+	/**
+	 * Returns the senior roles directly inheriting the role.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the senior roles
+	 */
+	IdBitmap directSeniors(int roleId) {
+		return directSeniors.get(roleId);
+	}
+
+	/**
+	 * Returns the junior roles the role inherits through any path.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the junior roles
+	 */
+	IdBitmap juniors(int roleId) {
+		return juniors.get(roleId);
+	}
+
+	/**
+	 * Removes an edge and recomputes the closure of the roles whose paths may
+	 * have used it.
+	 *
+	 * @param seniorId the id of the senior role
+	 * @param juniorId the id of the junior role
+	 * @return true if the edge existed
+	 */
+	boolean remove(int seniorId, int juniorId) {
+		if (!directJuniors.remove(seniorId, juniorId))
+			return false;
+		directSeniors.remove(juniorId, seniorId);
+		// the roles above and below the edge are unchanged by its removal
+		int[] above = with(seniorId, seniors.get(seniorId));
+		int[] below = with(juniorId, juniors.get(juniorId));
+		for (int a : above)
+			replace(juniors, a, RoleHierarchy.reachable(directJuniors, a));
+		for (int b : below)
+			replace(seniors, b, RoleHierarchy.reachable(directSeniors, b));
+		return true;
+	}
+
+	/**
+	 * Returns the senior roles inheriting the role through any path.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the senior roles
+	 */
+	IdBitmap seniors(int roleId) {
+		return seniors.get(roleId);
+	}
+
+	/**
+	 * Returns a read only hierarchy holding the current edges.
+	 *
+	 * @return the snapshot
+	 */
+	RoleHierarchy snapshot() {
+		return new RoleHierarchy(directJuniors.snapshot(), directSeniors.snapshot(), juniors.snapshot(),
+				seniors.snapshot());
+	}
+
+	/**
+	 * Replaces the bitmap of a role in an index.
+	 *
+	 * @param index the index
+	 * @param roleId the id of the role
+	 * @param ids the new ids
+	 */
+	private void replace(BitmapIndex index, int roleId, IdBitmap ids) {
+		for (int id : index.get(roleId).toArray())
+			if (!ids.contains(id))
+				index.remove(roleId, id);
+		ids.forEach(id -> index.add(roleId, id));
+	}
+
+	/**
+	 * Returns a role followed by the roles of a bitmap.
+	 *
+	 * @param roleId the id of the role
+	 * @param others the other roles
+	 * @return the ids
+	 */
+	private int[] with(int roleId, IdBitmap others) {
+		int[] ids = new int[others.cardinality() + 1];
+		ids[0] = roleId;
+		System.arraycopy(others.toArray(), 0, ids, 1, ids.length - 1);
+		return ids;
+	}
+
+}
@@ -15,6 +15,57 @@ package edu.fgcu.secrel;
  */
 public class Roles {
 	
+	/**
+	 * Makes the senior role inherit the authorizations of the junior role and,
+	 * through it, of every role the junior role inherits. The members of the
+	 * senior role are not assigned to the junior role; the inherited
+	 * authorizations are folded into their permissions. The edge is refused
+	 * if a user holding the senior role would then hold two roles sharing a
+	 * static separation of duty constraint, or if an open session with the
+	 * senior role active would then hold two roles sharing a dynamic one.
+	 *
+	 * @param seniorId the id of the senior role
+	 * @param juniorId the id of the junior role
+	 */
+	public static void addInheritance(int seniorId, int juniorId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if senior role exists
+			if (!SecRelSystem.roleIds.contains(seniorId))
+				throw new IllegalArgumentException("Senior Role with that id does not exist.");
+			// check if junior role exists
+			if (!SecRelSystem.roleIds.contains(juniorId))
+				throw new IllegalArgumentException("Junior Role with that id does not exist.");
+			RoleHierarchy hierarchy = SecRelSystem.policy().hierarchy;
+			// check if the edge exists
+			if (hierarchy.directJuniors(seniorId).contains(juniorId))
+				throw new IllegalStateException("Role already inherits that Role.");
+			// check if the edge would close a cycle
+			if (seniorId == juniorId || hierarchy.juniors(juniorId).contains(seniorId))
+				throw new IllegalStateException("Role cannot inherit a Role that inherits it.");
+			// check if the edge would give a holder of the senior role conflicting roles
+			ConflictSets conflicts = SecRelSystem.getStaticConflicts();
+			if (!conflicts.isEmpty()) {
+				PolicyVersion policy = SecRelSystem.policy();
+				IdBitmap inherited = hierarchy.closure(juniorId);
+				IdBitmap holders = SecRelSystem.getRoleHolders(seniorId);
+				for (int userId = holders.nextId(0); userId >= 0; userId = holders.nextId(userId + 1))
+					if (conflicts.conflicts(hierarchy.closure(policy.userRoles.get(userId)), inherited))
+						throw new IllegalStateException(
+								"Inheritance would give a User Roles sharing a static constraint.");
+			}
+			// check if the edge would give a session conflicting active roles
+			if (SecRelSystem.hasDynamicConflict(SecRelSystem.getDynamicConflicts(), seniorId,
+					hierarchy.closure(juniorId)))
+				throw new IllegalStateException("Inheritance would give a Session Roles sharing a dynamic constraint.");
+			// add edge to system
+			SecRelSystem.addInheritance(seniorId, juniorId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
 	/**
 	 * Creates a new role with the specified role name.
 	 *
@@ -22,22 +73,29 @@ public class Roles {
 	 * @return a Role instance representing the new role
 	 */
 	public static Role createRole(String name) {
-		// check if a name is null
-		if (name == null)
-		    // throw exception
-		    throw new NullPointerException("Role name cannot be null.");
-		// check if a role with that name already exists
-		if (SecRelSystem.roleNames.containsKey(name))
-		    // throw exception
-		    throw new IllegalArgumentException(
-		            String.format("A Role with the name \"%s\" already exists. Role(%d,\"%s\")", name,
-		                    SecRelSystem.roleNames.get(name), name));
-		// compute new roleId
-		Integer id = SecRelSystem.roleIds.isEmpty() ? 0 : SecRelSystem.roleIds.lastKey() + 1;
-		// add role to system
-		SecRelSystem.roleIds.put(id, name);
-		SecRelSystem.roleNames.put(name, id);
-		return new Role(id);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a name is null
+			if (name == null)
+			    // throw exception
+			    throw new NullPointerException("Role name cannot be null.");
+			// check if a role with that name already exists
+			if (SecRelSystem.roleNames.containsKey(name))
+			    // throw exception
+			    throw new IllegalArgumentException(
+			            String.format("A Role with the name \"%s\" already exists. Role(%d,\"%s\")", name,
+			                    SecRelSystem.roleNames.get(name), name));
+			// compute new roleId
+			Integer id = SecRelSystem.roleIds.allocate();
+			// add role to system
+			Role role = new Role(id);
+			SecRelSystem.roleIds.put(id, role);
+			SecRelSystem.roleNames.put(name, id);
+			return role;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 	
 	/**
@@ -64,6 +122,19 @@ public class Roles {
 		throw new IllegalArgumentException("Role with that name does not exist");
 	}
 	
+	/**
+	 * Returns the maximum number of members of the role with the specified ID.
+	 *
+	 * @param roleId the id of the role
+	 * @return the maximum, or 0 if the role is unlimited
+	 */
+	public static int getMaxMembers(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		return SecRelSystem.getRoleLimit(roleId);
+	}
+	
 	/**
 	 * Returns whether the system has a role with the specified id.
 	 *
@@ -94,24 +165,85 @@ public class Roles {
 		return SecRelSystem.roleNames.containsKey(roleName);
 	}
 	
+	/**
+	 * Returns whether the senior role inherits the junior role through any
+	 * path of the hierarchy. This reads the maintained closure, so it costs
+	 * the same at any depth.
+	 *
+	 * @param seniorId the id of the senior role
+	 * @param juniorId the id of the junior role
+	 * @return true if the senior role inherits the junior role
+	 */
+	public static boolean inherits(int seniorId, int juniorId) {
+		// check if senior role exists
+		if (!SecRelSystem.roleIds.contains(seniorId))
+			throw new IllegalArgumentException("Senior Role with that id does not exist.");
+		// check if junior role exists
+		if (!SecRelSystem.roleIds.contains(juniorId))
+			throw new IllegalArgumentException("Junior Role with that id does not exist.");
+		return SecRelSystem.policy().hierarchy.juniors(seniorId).contains(juniorId);
+	}
+	
+	/**
+	 * Removes the edge making the senior role inherit the junior role. The
+	 * senior role keeps inheriting the junior role if another path connects
+	 * them.
+	 *
+	 * @param seniorId the id of the senior role
+	 * @param juniorId the id of the junior role
+	 */
+	public static void removeInheritance(int seniorId, int juniorId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if senior role exists
+			if (!SecRelSystem.roleIds.contains(seniorId))
+				throw new IllegalArgumentException("Senior Role with that id does not exist.");
+			// check if junior role exists
+			if (!SecRelSystem.roleIds.contains(juniorId))
+				throw new IllegalArgumentException("Junior Role with that id does not exist.");
+			// check if the edge exists
+			if (!SecRelSystem.policy().hierarchy.directJuniors(seniorId).contains(juniorId))
+				throw new IllegalArgumentException("Role does not inherit that Role directly.");
+			// remove edge from system
+			SecRelSystem.removeInheritance(seniorId, juniorId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
 	/**
 	 * Removes the specified role from the system.
 	 *
 	 * @param roleId the id of the role
 	 */
 	public static void removeRole(Integer roleId) {
-		// check if a roleId is null
-		if (roleId == null)
-		    // throw exception
-		    throw new NullPointerException("Role id cannot be null.");
-		// check if role exists
-		if (!SecRelSystem.roleIds.containsKey(roleId))
-			throw new IllegalArgumentException("Role does not exist.");
-		// clear role member assignments
-		SecRelSystem.clearRoleMembers(roleId);
-		// remove role from system
-		SecRelSystem.roleNames.remove(SecRelSystem.roleIds.get(roleId));
-		SecRelSystem.roleIds.remove(roleId);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a roleId is null
+			if (roleId == null)
+			    // throw exception
+			    throw new NullPointerException("Role id cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleIds.containsKey(roleId))
+				throw new IllegalArgumentException("Role does not exist.");
+			// clear role inheritance edges
+			SecRelSystem.clearRoleHierarchy(roleId);
+			// clear role member assignments
+			SecRelSystem.clearRoleMembers(roleId);
+			// clear role authorizations
+			SecRelSystem.clearRoleServices(roleId);
+			// clear role limit
+			SecRelSystem.setRoleLimit(roleId, 0);
+			// clear role constraints
+			SecRelSystem.clearRoleConflicts(roleId);
+			// remove role from system
+			SecRelSystem.roleNames.remove(SecRelSystem.roleNames.name(roleId));
+			SecRelSystem.roleIds.remove(roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 	
 	/**
@@ -134,19 +266,93 @@ public class Roles {
 	 * @param roleName the name of the role
 	 */
 	public static void removeRole(String roleName) {
-		// check if a roleName is null
-		if (roleName == null)
-		    // throw exception
-		    throw new NullPointerException("Role name cannot be null.");
-		// check if role exists
-		if (!SecRelSystem.roleNames.containsKey(roleName))
-			throw new IllegalArgumentException("Role does not exist.");
-		Integer roleId = SecRelSystem.roleNames.get(roleName);
-		// clear role member assignments
-		SecRelSystem.clearRoleMembers(roleId);
-		// remove role from system
-		SecRelSystem.roleIds.remove(roleId);
-		SecRelSystem.roleNames.remove(roleName);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a roleName is null
+			if (roleName == null)
+			    // throw exception
+			    throw new NullPointerException("Role name cannot be null.");
+			// check if role exists
+			if (!SecRelSystem.roleNames.containsKey(roleName))
+				throw new IllegalArgumentException("Role does not exist.");
+			Integer roleId = SecRelSystem.roleNames.get(roleName);
+			// clear role inheritance edges
+			SecRelSystem.clearRoleHierarchy(roleId);
+			// clear role member assignments
+			SecRelSystem.clearRoleMembers(roleId);
+			// clear role authorizations
+			SecRelSystem.clearRoleServices(roleId);
+			// clear role limit
+			SecRelSystem.setRoleLimit(roleId, 0);
+			// clear role constraints
+			SecRelSystem.clearRoleConflicts(roleId);
+			// remove role from system
+			SecRelSystem.roleIds.remove(roleId);
+			SecRelSystem.roleNames.remove(roleName);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Sets the maximum number of members of the role with the specified ID.
+	 * Once the role has that many members, assignRole throws an
+	 * IllegalStateException and tryAssignRole returns ROLE_FULL. The check
+	 * reads the maintained member count of the role, so it takes constant
+	 * time.
+	 *
+	 * @param roleId the id of the role
+	 * @param maxMembers the maximum, or 0 to remove the limit
+	 */
+	public static void setMaxMembers(int roleId, int maxMembers) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if role exists
+			if (!SecRelSystem.roleIds.contains(roleId))
+				throw new IllegalArgumentException("Role with that id does not exist.");
+			// check if the maximum is negative
+			if (maxMembers < 0)
+				throw new IllegalArgumentException("Maximum number of members cannot be negative.");
+			// check if the role already has more members
+			if (maxMembers > 0 && SecRelSystem.policy().roleMembers.get(roleId).cardinality() > maxMembers)
+				throw new IllegalStateException("Role has more members than the maximum.");
+			SecRelSystem.setRoleLimit(roleId, maxMembers);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Creates a new role with the specified name unless the name is taken.
+	 * Unlike {@link #createRole(String)}, this method reports a taken name
+	 * with a status instead of an exception. The id of the new role can be
+	 * found by its name.
+	 *
+	 * @param name the name of the new role
+	 * @return OK or DUPLICATE_NAME
+	 */
+	public static Status tryCreateRole(String name) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a name is null
+			if (name == null)
+			    // throw exception
+			    throw new NullPointerException("Role name cannot be null.");
+			// check if a role with that name already exists
+			if (SecRelSystem.roleNames.containsKey(name))
+				return Status.DUPLICATE_NAME;
+			// compute new roleId
+			Integer id = SecRelSystem.roleIds.allocate();
+			// add role to system
+			SecRelSystem.roleIds.put(id, new Role(id));
+			SecRelSystem.roleNames.put(name, id);
+			return Status.OK;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 	
 	/**
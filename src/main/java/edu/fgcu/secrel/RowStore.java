@@ -0,0 +1,189 @@
+/**
+ * This file defines the RowStore interface. The RowStore interface is the
+ * sorted store of packed mapping rows used by the SecRelSystem.
+ */
+package edu.fgcu.secrel;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The RowStore interface is a sorted set of primitive long keys with an
+ * optional primitive int value column, the keys being mapping rows packed by
+ * memberForwardRow and its siblings. The rows are held on the heap by a
+ * {@link LongBTree} or in a memory mapped file by a {@link MappedRowStore}.
+ * </p>
+ * <p>
+ * Every implementation is copy-on-write: {@link #snapshot()} returns a read
+ * only store that never changes and may be read by any number of threads once
+ * safely published, while the store itself is modified by a single thread.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+interface RowStore {
+
+	/**
+	 * A forward cursor over the rows of a key range. The cursor is positioned
+	 * before the first row; each call to next advances it by one row.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	interface Cursor {
+
+		/**
+		 * Advances to the next row.
+		 *
+		 * @return true if there is such a row in the range
+		 */
+		boolean next();
+
+		/**
+		 * Returns the key of the current row.
+		 *
+		 * @return the key
+		 */
+		long key();
+
+		/**
+		 * Returns the value of the current row.
+		 *
+		 * @return the value
+		 */
+		int value();
+	}
+
+	/**
+	 * Inserts a row if no row with that key exists.
+	 *
+	 * @param key the key
+	 * @param value the value, ignored if the store has no values
+	 * @return true if the row was inserted
+	 */
+	boolean add(long key, int value);
+
+	/**
+	 * Inserts a row without a value if no row with that key exists.
+	 *
+	 * @param key the key
+	 * @return true if the row was inserted
+	 */
+	default boolean add(long key) {
+		return add(key, 0);
+	}
+
+	/**
+	 * Removes all rows.
+	 */
+	void clear();
+
+	/**
+	 * Returns whether a row with the key exists.
+	 *
+	 * @param key the key
+	 * @return true if there is such a row
+	 */
+	boolean contains(long key);
+
+	/**
+	 * Returns a cursor over the rows with keys in [from, to).
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the cursor
+	 */
+	Cursor cursor(long from, long to);
+
+	/**
+	 * Returns the value of the row with the key.
+	 *
+	 * @param key the key
+	 * @param absent the value to return if there is no such row
+	 * @return the value or absent
+	 */
+	int get(long key, int absent);
+
+	/**
+	 * Returns whether the store is empty.
+	 *
+	 * @return true if there are no rows
+	 */
+	default boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Returns the 32 least significant bits of the keys in [from, to), in key
+	 * order. With from and to being consecutive multiples of 2^32 this is the
+	 * list of ids mapped from the id in the 32 most significant bits.
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the low halves of the keys
+	 */
+	default int[] low(long from, long to) {
+		int[] out = new int[8];
+		int n = 0;
+		for (Cursor c = cursor(from, to); c.next();) {
+			if (n == out.length)
+				out = Arrays.copyOf(out, n << 1);
+			out[n++] = (int) c.key();
+		}
+		return Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * Removes the row with the key.
+	 *
+	 * @param key the key
+	 * @return true if the row was removed
+	 */
+	boolean remove(long key);
+
+	/**
+	 * Removes the rows with keys in [from, to). With from and to being
+	 * consecutive multiples of 2^32 this removes every row mapped from the id
+	 * in the 32 most significant bits. The cost is that of finding the first
+	 * row plus the number of rows removed, not a search per row.
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @return the number of rows removed
+	 */
+	int removeRange(long from, long to);
+
+	/**
+	 * Replaces the value of an existing row.
+	 *
+	 * @param key the key
+	 * @param value the new value
+	 * @return true if there was such a row
+	 */
+	boolean set(long key, int value);
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return the number of rows
+	 */
+	int size();
+
+	/**
+	 * Returns a read only store holding the current rows. The snapshot shares
+	 * the storage of this store, which copies it before its next
+	 * modification.
+	 *
+	 * @return the snapshot
+	 */
+	RowStore snapshot();
+
+	/**
+	 * Returns whether the rows carry an int value.
+	 *
+	 * @return true if the rows carry values
+	 */
+	boolean withValues();
+
+}
@@ -1,51 +1,27 @@
 /**
  * <p>
- * This file defines the SecRelSystem and Entity types.
- * <p>
+ * This file defines the SecRelSystem class.
+ * </p>
  * <p>
  * The SecRelSystem class is a database for user, role and service information.
  * The User and Role classes defer requested actions and queries to the
  * SecRelSystem. The only class that contains any significant logic outside the
  * SecRelSystem class is the Service abstract class.
  * </p>
- * <p>
- * The Entity interface is used as a super type for the User, Role and Service
- * types. The need for this is little but may become useful if further
- * extensions include classes treated similarly to the Service class or if the
- * Service class proves to be too abstract and more granularity is needed.
- * </p>
  */
-// Note: authorizeRole(accessType)
 package edu.fgcu.secrel;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import edu.fgcu.secrel.Service.ReferenceMonitor;
 
-/**
- * Required by verifyCompositeMap for extensibility.
- *
- * @author lngibson
- *
- */
-interface Entity {
-	
-	/**
-	 * Returns the id of this entity.
-	 *
-	 * @return this entity's id
-	 */
-	Integer getId();
-	
-	/**
-	 * Returns the name of this entity.
-	 *
-	 * @return this entity's name
-	 */
-	String getName();
-}
-
 /**
  * <p>
  * The SecRelSystem class is the principal component of the SecRel pattern. It
@@ -63,7 +39,22 @@ interface Entity {
  * <p>
  * Methods that can fail report failures by throwing subclasses of
  * RuntimeException, specifically, NullPointerException,
- * IllegalArgumentException and IllegalStateException.
+ * IllegalArgumentException and IllegalStateException. Asynchronous methods
+ * complete their stage exceptionally with the same exceptions instead, and
+ * with a SecurityException when a request is denied. The tryX mutation
+ * methods return a {@link Status} for expected failures, such as a taken name
+ * or an existing assignment, and only throw for null arguments.
+ * </p>
+ * <h2>Concurrency</h2>
+ * <p>
+ * Changes are made by a single writer holding the writeLock, see
+ * {@link MutationPipeline}, and published as immutable versions of the
+ * relations. Authorization checks and queries read the latest published
+ * version without locking and write no shared structure except the
+ * replaced slots of the decision cache on a miss. Alternatively, a
+ * {@link ShardedPolicyEngine} partitions the users among threads that each
+ * own a copy of the roles of their users and decide the requests of those
+ * users; it follows the published versions.
  * </p>
  * <h2>Unfinished Sections</h2>
  * <p>
@@ -99,127 +90,504 @@ interface Entity {
 public class SecRelSystem {
 	
 	/**
-	 * Maps user IDs to user names.
+	 * Maps user IDs to users.
 	 */
-	protected static final NavigableMap<Integer, String> userIds = new TreeMap<>();
+	protected static final EntityTable<User> userIds = new EntityTable<>();
 	
 	/**
-	 * Maps role IDs to role names.
+	 * Maps role IDs to roles.
 	 */
-	protected static final NavigableMap<Integer, String> roleIds = new TreeMap<>();
+	protected static final EntityTable<Role> roleIds = new EntityTable<>();
 	
 	/**
-	 * Maps user names to user IDs.
+	 * Maps user names to user IDs and back.
 	 */
-	protected static final NavigableMap<String, Integer> userNames = new TreeMap<>();
+	protected static final NameDictionary userNames = new NameDictionary();
 	
 	/**
-	 * Maps role names to role IDs.
+	 * Maps role names to role IDs and back.
 	 */
-	protected static final NavigableMap<String, Integer> roleNames = new TreeMap<>();
+	protected static final NameDictionary roleNames = new NameDictionary();
 	
 	/**
-	 * <p>
-	 * Maps users to roles.
-	 * </p>
-	 * <p>
-	 * Each long value is the concatenated integer IDs of a user and a role. The
-	 * 32 most significant bytes belong to the user and the 32 least significant
-	 * belong to the role. Because the set is sorted, users assigned to multiple
-	 * roles will have their mappings long values stored consecutively, allowing
-	 * for simple retrieval of all a users roles using
-	 * <code>NavigableSet.subSet()</code>.
-	 * </p>
+	 * Maps service IDs to services.
 	 */
-	protected static final NavigableSet<Long> memberForwardMap = new TreeSet<>();
+	protected static final EntityTable<Service> serviceIds = new EntityTable<>();
 	
 	/**
-	 * <p>
-	 * Maps roles to users.
-	 * </p>
-	 * <p>
-	 * Each long value is the concatenated integer IDs of a role and a user. The
-	 * 32 most significant bytes belong to the role and the 32 least significant
-	 * belong to the user. Because the set is sorted, roles assigned to multiple
-	 * users will have their mappings long values stored consecutively, allowing
-	 * for simple retrieval of all a roles users using
-	 * <code>NavigableSet.subSet()</code>.
-	 * </p>
+	 * Maps service names to service IDs.
 	 */
-	protected static final NavigableSet<Long> memberBackwardMap = new TreeSet<>();
+	protected static final NameDictionary serviceNames = new NameDictionary();
 	
 	/**
-	 * Maps service IDs to services.
+	 * Maps user IDs to the open sessions of the user. It is only modified by
+	 * the thread holding the writeLock.
 	 */
-	protected static final NavigableMap<Integer, Service> serviceIds = new TreeMap<>();
+	protected static final Map<Integer, Set<Session>> userSessions = new ConcurrentHashMap<>();
 	
 	/**
-	 * Maps service names to service IDs.
+	 * The number of threads in the serviceThreadPool.
 	 */
-	protected static final NavigableMap<String, Integer> serviceNames = new TreeMap<>();
+	private static final int NUM_SERVICE_THREADS = 5;
 	
 	/**
-	 * <p>
-	 * Maps roles to services.
-	 * </p>
-	 * <p>
-	 * Each long value is the concatenated integer IDs of a role and a service.
-	 * The 32 most significant bytes belong to the role and the 32 least
-	 * significant belong to the service. Because the map is sorted, roles
-	 * assigned to multiple services will have their mappings long values stored
-	 * consecutively, allowing for simple retrieval of all a roles services
-	 * using <code>NavigableSet.subMap()</code>.
-	 * </p>
+	 * The thread pool used to execute ReferenceMonitor instances.
+	 */
+	protected static ExecutorService monitorThreadPool = Executors.newCachedThreadPool();
+	
+	/**
+	 * The thread pool used to execute Services.
+	 */
+	protected static ExecutorService serviceThreadPool = Executors.newFixedThreadPool(NUM_SERVICE_THREADS);
+	
+	/**
+	 * Serializes the changes to the system. It is held by the thread modifying
+	 * the draft; readers never take it.
+	 */
+	private static final ReentrantLock writeLock = new ReentrantLock();
+	
+	/**
+	 * The relations as modified by the thread holding the writeLock. Only that
+	 * thread may read or modify the draft. It is replaced when a relation
+	 * store is opened or closed.
+	 */
+	private static PolicyVersion draft = new PolicyVersion();
+	
+	/**
+	 * The file holding the mapping rows outside the heap, or null if the rows
+	 * are held on the heap.
+	 */
+	private static PageFile relationStore = null;
+	
+	/**
+	 * The maximum number of members of each role, indexed by role id, where 0
+	 * means the role is unlimited. It is only replaced by the thread holding
+	 * the writeLock and is never modified once published.
+	 */
+	private static volatile int[] roleLimits = new int[0];
+	
+	/**
+	 * The static separation of duty constraints, checked when a user is
+	 * assigned to a role. It is only replaced by the thread holding the
+	 * writeLock.
+	 */
+	private static volatile ConflictSets staticConflicts = ConflictSets.EMPTY;
+	
+	/**
+	 * The dynamic separation of duty constraints, checked when a role is
+	 * activated. It is only replaced by the thread holding the writeLock.
+	 */
+	private static volatile ConflictSets dynamicConflicts = ConflictSets.EMPTY;
+	
+	/**
+	 * Whether the draft has changed since the last publication.
+	 */
+	private static boolean draftChanged = false;
+	
+	/**
+	 * The version number of the last publication.
+	 */
+	private static long policyVersion = 0;
+	
+	/**
+	 * The most recently published version of the relations.
+	 */
+	private static volatile PolicyVersion published = SecRelSystem.draft.snapshot(0);
+	
+	/**
+	 * The cache of the decisions of the reference monitors.
+	 */
+	private static final DecisionCache decisions = new DecisionCache(1 << 16);
+	
+	/**
+	 * The sharded engines receiving every published version. It is only
+	 * changed by the thread holding the writeLock.
+	 */
+	private static final List<ShardedPolicyEngine> engines = new CopyOnWriteArrayList<>();
+	
+	/**
+	 * The users whose roles changed since the last publication, or null if
+	 * the memberships were replaced as a whole. It is only used by the thread
+	 * holding the writeLock.
+	 */
+	private static IdBitmap changedUsers = new IdBitmap();
+	
+	/**
+	 * The thread removing expired assignments and authorizations.
+	 */
+	private static final ScheduledExecutorService expiryScheduler = Executors
+			.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "SecRel expiry");
+				thread.setDaemon(true);
+				return thread;
+			});
+	
+	/**
+	 * The logger of failures on the background threads.
+	 */
+	private static final Logger logger = Logger.getLogger(SecRelSystem.class.getName());
+	
+	/**
+	 * The length of a tick of the expiry wheels in milliseconds.
+	 */
+	private static final long EXPIRY_TICK = 100;
+	
+	/**
+	 * The pending expiries of role assignments, keyed by user to role row.
+	 * It is only changed by the thread holding the writeLock.
 	 */
-	protected static final NavigableMap<Long, Right> serviceForwardMap = new TreeMap<>();
+	private static final TimingWheel memberExpiries = new TimingWheel(System.currentTimeMillis(),
+			SecRelSystem.EXPIRY_TICK);
+	
+	/**
+	 * The pending expiries of authorizations, keyed by role to service row.
+	 * It is only changed by the thread holding the writeLock.
+	 */
+	private static final TimingWheel serviceExpiries = new TimingWheel(System.currentTimeMillis(),
+			SecRelSystem.EXPIRY_TICK);
+	
+	/**
+	 * Whether the task advancing the expiry wheels has been scheduled.
+	 */
+	private static final AtomicBoolean expiryScheduled = new AtomicBoolean();
+	
+	/**
+	 * Adds the mapping rows of an authorization and updates the bitmap index.
+	 * The caller is responsible for validating the ids and checking that the
+	 * rows do not exist.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param accessType the access type
+	 */
+	protected static void addAuthorization(int roleId, int serviceId, int accessType) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			draft.serviceForwardMap.add(SecRelSystem.serviceForwardRow(roleId, serviceId), accessType);
+			draft.serviceBackwardMap.add(SecRelSystem.serviceBackwardRow(roleId, serviceId), accessType);
+			draft.roleServices.add(roleId, serviceId);
+			draft.serviceRoles.add(serviceId, roleId);
+			draft.permissions.authorizationAdded(draft, roleId, serviceId);
+			SecRelSystem.decisions.invalidateService(serviceId);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Starts sending the published versions to a sharded engine. The engine
+	 * first loads the current version, so it must not be added while the
+	 * caller has unpublished changes.
+	 *
+	 * @param engine the engine
+	 * @throws IllegalStateException if the caller is in the middle of a change
+	 */
+	protected static void addEngine(ShardedPolicyEngine engine) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the draft may differ from the published version
+			if (SecRelSystem.writeLock.getHoldCount() > 1)
+				throw new IllegalStateException("Engines cannot be started during a change.");
+			SecRelSystem.engines.add(engine);
+			engine.publish(SecRelSystem.published, null);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Adds an edge making the senior role inherit the junior role and updates
+	 * the closure and the permission matrix. The caller is responsible for
+	 * validating the ids and checking that the edge neither exists nor closes
+	 * a cycle.
+	 *
+	 * @param seniorId the id of the senior role
+	 * @param juniorId the id of the junior role
+	 */
+	protected static void addInheritance(int seniorId, int juniorId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			draft.hierarchy.add(seniorId, juniorId);
+			draft.permissions.inheritanceAdded(draft, seniorId);
+			SecRelSystem.refreshSessions();
+			SecRelSystem.decisions.invalidateAll();
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Adds the mapping rows of a role assignment and updates the bitmap index.
+	 * The caller is responsible for validating the ids and checking that the
+	 * rows do not exist.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 */
+	protected static void addMembership(int userId, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			draft.memberForwardMap.add(SecRelSystem.memberForwardRow(userId, roleId));
+			draft.memberBackwardMap.add(SecRelSystem.memberBackwardRow(userId, roleId));
+			draft.userRoles.add(userId, roleId);
+			draft.roleMembers.add(roleId, userId);
+			draft.permissions.membershipAdded(draft, userId, roleId);
+			SecRelSystem.userChanged(userId);
+			SecRelSystem.decisions.invalidateUser(userId);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
 	
 	/**
 	 * <p>
-	 * Maps services to roles.
+	 * Acquires the write lock of the system. Every change to the system is
+	 * made between a call to this method and a call to {@link #endWrite()},
+	 * which publishes the change to readers. Calls may be nested; the change
+	 * is published when the outermost call ends, so a nested sequence of
+	 * changes is observed by readers all at once or not at all.
 	 * </p>
 	 * <p>
-	 * Each long value is the concatenated integer IDs of a service and a role.
-	 * The 32 most significant bytes belong to the service and the 32 least
-	 * significant belong to the role. Because the map is sorted, services
-	 * assigned to multiple roles will have their mappings long values stored
-	 * consecutively, allowing for simple retrieval of all a services roles
-	 * using <code>NavigableSet.subMap()</code>.
+	 * While the lock is held, {@link #policy()} returns the draft to the
+	 * holding thread so that it reads its own changes.
 	 * </p>
 	 */
-	protected static final NavigableMap<Long, Right> serviceBackwardMap = new TreeMap<>();
+	protected static void beginWrite() {
+		SecRelSystem.writeLock.lock();
+	}
 	
 	/**
-	 * The number of threads in the serviceThreadPool.
+	 * Converts ids extracted from mapping rows to the boxed array returned by
+	 * the getXIds methods.
+	 *
+	 * @param ids the ids
+	 * @return the boxed ids
 	 */
-	private static final int NUM_SERVICE_THREADS = 5;
+	private static Integer[] box(int[] ids) {
+		Integer[] out = new Integer[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			out[i] = ids[i];
+		return out;
+	}
 	
 	/**
-	 * The thread pool used to execute ReferenceMonitor instances.
+	 * Cancels the expiry of the authorization of the specified role for the
+	 * specified service, so that it no longer expires.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
 	 */
-	protected static ExecutorService monitorThreadPool = Executors.newCachedThreadPool();
+	protected static void cancelAuthorizationExpiry(int roleId, int serviceId) {
+		SecRelSystem.beginWrite();
+		try {
+			SecRelSystem.serviceExpiries.cancel(SecRelSystem.serviceForwardRow(roleId, serviceId));
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
 	
 	/**
-	 * The thread pool used to execute Services.
+	 * Cancels the expiry of the assignment of the specified user to the
+	 * specified role, so that it no longer expires.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
 	 */
-	protected static ExecutorService serviceThreadPool = Executors.newFixedThreadPool(NUM_SERVICE_THREADS);
+	protected static void cancelMembershipExpiry(int userId, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			SecRelSystem.memberExpiries.cancel(SecRelSystem.memberForwardRow(userId, roleId));
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Throws an exception if a relation loaded from a relation store maps an
+	 * id that does not exist.
+	 *
+	 * @param rows the forward mapping rows of the relation
+	 * @param from the ids of the first entities
+	 * @param to the ids of the second entities
+	 * @param type the name of the relation to use in the exception's message
+	 */
+	private static void checkRows(RowStore rows, Map<Integer, ?> from, Map<Integer, ?> to, String type) {
+		for (RowStore.Cursor c = rows.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();)
+			// check if both ids exist
+			if (!from.containsKey((int) (c.key() >> 32)) || !to.containsKey((int) c.key()))
+				throw new IllegalStateException(String.format("Relation store maps %s (%d,%d) between missing ids.",
+						type, c.key() >> 32, (int) c.key()));
+	}
+	
+	/**
+	 * Removes the specified role from every separation of duty constraint.
+	 * This is called when a role is removed, so a reused id does not inherit
+	 * the constraints of the removed role.
+	 *
+	 * @param roleId the id of the role
+	 */
+	protected static void clearRoleConflicts(int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			SecRelSystem.staticConflicts = SecRelSystem.staticConflicts.withoutRole(roleId);
+			SecRelSystem.dynamicConflicts = SecRelSystem.dynamicConflicts.withoutRole(roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Removes every inheritance edge of the specified role, in both
+	 * directions. This is called when a role is removed.
+	 *
+	 * @param roleId the id of the role
+	 */
+	protected static void clearRoleHierarchy(int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			for (int juniorId : draft.hierarchy.directJuniors(roleId).toArray())
+				SecRelSystem.removeInheritance(roleId, juniorId);
+			for (int seniorId : draft.hierarchy.directSeniors(roleId).toArray())
+				SecRelSystem.removeInheritance(seniorId, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
 	
 	/**
 	 * Clears all assignments for the specified role. This is called when a role
 	 * is removed. If the mappings remain, if the role id is reused, the system
 	 * will inadvertently assume membership of the removed role's user in the
-	 * new role.
+	 * new role. The role to user rows are removed as one range.
 	 *
 	 * @param roleId the id of the role
 	 */
 	protected static void clearRoleMembers(Integer roleId) {
-		// iterate the user ids of the role members
-		for (Integer userId : SecRelSystem.getMemberIds(roleId)) {
-			// construct forward and backward mapping rows
-			long forwardRow = SecRelSystem.memberForwardRow(userId, roleId);
-			long backwardRow = SecRelSystem.memberBackwardRow(userId, roleId);
-			// remove mappings from system
-			SecRelSystem.memberForwardMap.remove(forwardRow);
-			SecRelSystem.memberBackwardMap.remove(backwardRow);
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			int role = roleId;
+			int[] users = draft.memberBackwardMap.low((long) role << 32, (long) role + 1 << 32);
+			if (users.length == 0)
+				return;
+			draft.memberBackwardMap.removeRange((long) role << 32, (long) role + 1 << 32);
+			for (int user : users) {
+				SecRelSystem.memberExpiries.cancel(SecRelSystem.memberForwardRow(user, role));
+				draft.memberForwardMap.remove(SecRelSystem.memberForwardRow(user, role));
+				draft.userRoles.remove(user, role);
+				SecRelSystem.userChanged(user);
+			}
+			// revoke the services of the role once the users no longer hold it
+			for (int user : users)
+				draft.permissions.membershipRemoved(draft, user, role);
+			draft.roleMembers.clear(role);
+			draft.roleServices.get(role).forEach(SecRelSystem.decisions::invalidateService);
+			for (int user : users)
+				SecRelSystem.refreshSessions(user);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Clears all authorizations of the specified role. This is called when a
+	 * role is removed. If the mappings remain, if the role id is reused, the
+	 * new role will inadvertently be authorized to invoke the services of the
+	 * removed role. The role to service rows are removed as one range.
+	 *
+	 * @param roleId the id of the role
+	 */
+	protected static void clearRoleServices(Integer roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			int role = roleId;
+			int[] services = draft.serviceForwardMap.low((long) role << 32, (long) role + 1 << 32);
+			if (services.length == 0)
+				return;
+			draft.serviceForwardMap.removeRange((long) role << 32, (long) role + 1 << 32);
+			for (int service : services) {
+				SecRelSystem.serviceExpiries.cancel(SecRelSystem.serviceForwardRow(role, service));
+				draft.serviceBackwardMap.remove(SecRelSystem.serviceBackwardRow(role, service));
+				draft.serviceRoles.remove(service, role);
+			}
+			for (int service : services) {
+				draft.permissions.authorizationRemoved(draft, role, service);
+				SecRelSystem.decisions.invalidateService(service);
+			}
+			draft.roleServices.clear(role);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Clears all authorizations for the specified service. This is called
+	 * when a service is removed. If the mappings remain, if the service id is
+	 * reused, the roles authorized to invoke the removed service will
+	 * inadvertently be authorized to invoke the new service. The service to
+	 * role rows are removed as one range.
+	 *
+	 * @param serviceId the id of the service
+	 */
+	protected static void clearServiceRoles(Integer serviceId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			int service = serviceId;
+			int[] roles = draft.serviceBackwardMap.low((long) service << 32, (long) service + 1 << 32);
+			if (roles.length == 0)
+				return;
+			draft.serviceBackwardMap.removeRange((long) service << 32, (long) service + 1 << 32);
+			for (int role : roles) {
+				SecRelSystem.serviceExpiries.cancel(SecRelSystem.serviceForwardRow(role, service));
+				draft.serviceForwardMap.remove(SecRelSystem.serviceForwardRow(role, service));
+				draft.roleServices.remove(role, service);
+			}
+			draft.serviceRoles.clear(service);
+			draft.permissions.serviceRemoved(service);
+			SecRelSystem.decisions.invalidateService(service);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Closes every session of the specified user. This is called when a user
+	 * is removed.
+	 *
+	 * @param userId the id of the user
+	 */
+	protected static void clearUserSessions(Integer userId) {
+		SecRelSystem.beginWrite();
+		try {
+			Set<Session> sessions = SecRelSystem.userSessions.remove(userId);
+			if (sessions != null)
+				sessions.forEach(Session::close);
+		}
+		finally {
+			SecRelSystem.endWrite();
 		}
 	}
 	
@@ -227,22 +595,160 @@ public class SecRelSystem {
 	 * Clears all assignments for the specified user. This is called when a user
 	 * is removed. If the mappings remain, if the user id is reused, the system
 	 * will inadvertently assume membership of the new user in the roles of the
-	 * removed user.
+	 * removed user. The user to role rows are removed as one range.
 	 *
 	 * @param userId the id of the user
 	 */
 	protected static void clearUserRoles(Integer userId) {
-		// iterate the role ids of the user roles
-		for (Integer roleId : SecRelSystem.getRoleIds(userId)) {
-			// construct forward and backward mapping rows
-			long forwardRow = userId.longValue() << 32 | roleId;
-			long backwardRow = roleId.longValue() << 32 | userId;
-			// remove mappings from system
-			SecRelSystem.memberForwardMap.remove(forwardRow);
-			SecRelSystem.memberBackwardMap.remove(backwardRow);
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			int user = userId;
+			int[] roles = draft.memberForwardMap.low((long) user << 32, (long) user + 1 << 32);
+			if (roles.length == 0)
+				return;
+			draft.memberForwardMap.removeRange((long) user << 32, (long) user + 1 << 32);
+			for (int role : roles) {
+				SecRelSystem.memberExpiries.cancel(SecRelSystem.memberForwardRow(user, role));
+				draft.memberBackwardMap.remove(SecRelSystem.memberBackwardRow(user, role));
+				draft.roleMembers.remove(role, user);
+			}
+			draft.userRoles.clear(user);
+			draft.permissions.userRemoved(user);
+			SecRelSystem.userChanged(user);
+			SecRelSystem.decisions.invalidateUser(user);
+			SecRelSystem.refreshSessions(user);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
 		}
 	}
 	
+	/**
+	 * Copies the inheritance edges of a draft to a draft replacing it. The
+	 * closure and the permissions of the destination are built as the edges
+	 * are added.
+	 *
+	 * @param from the source draft
+	 * @param to the destination draft
+	 */
+	private static void copyHierarchy(PolicyVersion from, PolicyVersion to) {
+		for (Integer roleId : SecRelSystem.roleIds.keySet())
+			from.hierarchy.directJuniors(roleId).forEach(juniorId -> to.hierarchy.add(roleId, juniorId));
+	}
+	
+	/**
+	 * Copies the rows of a store to another store.
+	 *
+	 * @param from the source rows
+	 * @param to the destination rows
+	 */
+	private static void copyRows(RowStore from, RowStore to) {
+		for (RowStore.Cursor c = from.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();)
+			to.add(c.key(), c.value());
+	}
+	
+	/**
+	 * Removes the assignments and authorizations whose expiry has passed. This
+	 * runs on the expiry thread once per tick, never on the thread of a
+	 * request; the removals are published together when it releases the
+	 * write lock. Failures are logged rather than thrown, since an exception
+	 * escaping the task would cancel it and no expiry would fire again, and a
+	 * row failing to expire does not keep the others from expiring.
+	 */
+	private static void expire() {
+		try {
+			SecRelSystem.beginWrite();
+			try {
+				long now = System.currentTimeMillis();
+				PolicyVersion draft = SecRelSystem.draft;
+				SecRelSystem.memberExpiries.advance(now, row -> {
+					try {
+						if (draft.memberForwardMap.contains(row))
+							SecRelSystem.removeMembership((int) (row >>> 32), (int) row);
+					}
+					catch (RuntimeException e) {
+						SecRelSystem.logger.log(Level.WARNING,
+								"Cannot expire the assignment " + (row >>> 32) + " -> " + (int) row, e);
+					}
+				});
+				SecRelSystem.serviceExpiries.advance(now, row -> {
+					try {
+						if (draft.serviceForwardMap.contains(row))
+							SecRelSystem.removeAuthorization((int) (row >>> 32), (int) row);
+					}
+					catch (RuntimeException e) {
+						SecRelSystem.logger.log(Level.WARNING,
+								"Cannot expire the authorization " + (row >>> 32) + " -> " + (int) row, e);
+					}
+				});
+			}
+			finally {
+				SecRelSystem.endWrite();
+			}
+		}
+		catch (RuntimeException e) {
+			SecRelSystem.logger.log(Level.WARNING, "Cannot expire assignments and authorizations", e);
+		}
+	}
+	
+	/**
+	 * Returns the pending expiries as the side data of the relation store:
+	 * the number of expiring assignments, then each expiring assignment row
+	 * and authorization row followed by its time in milliseconds.
+	 *
+	 * @return the longs
+	 */
+	private static long[] expiryData() {
+		long[] members = SecRelSystem.memberExpiries.entries();
+		long[] services = SecRelSystem.serviceExpiries.entries();
+		long[] data = new long[1 + members.length + services.length];
+		data[0] = members.length / 2;
+		System.arraycopy(members, 0, data, 1, members.length);
+		System.arraycopy(services, 0, data, 1 + members.length, services.length);
+		return data;
+	}
+	
+	/**
+	 * Releases the write lock acquired by {@link #beginWrite()}. When the
+	 * outermost call ends, the changes made to the draft are published as a
+	 * new version. The cached decisions invalidated by the changes are only
+	 * discarded after the publication, so a decision computed from the
+	 * previous version cannot be cached under the new epochs. The new version
+	 * is sent to the sharded engines with the users whose roles changed.
+	 */
+	protected static void endWrite() {
+		try {
+			if (SecRelSystem.writeLock.getHoldCount() == 1) {
+				if (SecRelSystem.draftChanged) {
+					SecRelSystem.draftChanged = false;
+					SecRelSystem.published = SecRelSystem.draft.snapshot(++SecRelSystem.policyVersion);
+					for (ShardedPolicyEngine engine : SecRelSystem.engines)
+						engine.publish(SecRelSystem.published, SecRelSystem.changedUsers);
+					SecRelSystem.changedUsers = new IdBitmap();
+				}
+				SecRelSystem.decisions.publish();
+			}
+		}
+		finally {
+			SecRelSystem.writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the time at which the authorization of the specified role for
+	 * the specified service expires.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @return the time in milliseconds, or -1 if it does not expire
+	 */
+	protected static long getAuthorizationExpiry(int roleId, int serviceId) {
+		// the wheel synchronizes its reads, so the write lock is not needed
+		return SecRelSystem.serviceExpiries.expiry(SecRelSystem.serviceForwardRow(roleId, serviceId));
+	}
+	
 	/**
 	 * Returns the roles authorized to invoke the service with the specified ID.
 	 *
@@ -250,16 +756,32 @@ public class SecRelSystem {
 	 * @return the ids of the roles
 	 */
 	protected static Integer[] getAuthorizedIds(Integer serviceId) {
-		// retrieve elements of backwards map corresponding to this service
-		Map<Long, Right> entries = SecRelSystem.serviceBackwardMap.subMap(serviceId.longValue() << 32,
-				serviceId.longValue() + 1 << 32);
-		// initialize output array
-		Integer[] ids = new Integer[entries.size()];
-		// extract role ids from mapping rows
-		int i = 0;
-		for (Iterator<Long> it = entries.keySet().iterator(); it.hasNext(); i++)
-			ids[i] = (int) (it.next() & 0xffffffffl);
-		return ids;
+		// extract role ids from the rows of backward map corresponding to this
+		// service
+		return SecRelSystem.box(SecRelSystem.policy().serviceBackwardMap.low(serviceId.longValue() << 32,
+				serviceId.longValue() + 1 << 32));
+	}
+	
+	/**
+	 * Returns the dynamic separation of duty constraints.
+	 *
+	 * @return the constraints
+	 */
+	protected static ConflictSets getDynamicConflicts() {
+		return SecRelSystem.dynamicConflicts;
+	}
+	
+	/**
+	 * Returns the time at which the assignment of the specified user to the
+	 * specified role expires.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return the time in milliseconds, or -1 if it does not expire
+	 */
+	protected static long getMembershipExpiry(int userId, int roleId) {
+		// the wheel synchronizes its reads, so the write lock is not needed
+		return SecRelSystem.memberExpiries.expiry(SecRelSystem.memberForwardRow(userId, roleId));
 	}
 	
 	/**
@@ -269,16 +791,10 @@ public class SecRelSystem {
 	 * @return the ids of the users
 	 */
 	protected static Integer[] getMemberIds(Integer roleId) {
-		// retrieve elements of backward map corresponding to this role
-		Set<Long> entries = SecRelSystem.memberBackwardMap.subSet(roleId.longValue() << 32,
-				roleId.longValue() + 1 << 32);
-		// initialize output array
-		Integer[] ids = new Integer[entries.size()];
-		// extract user ids from mapping rows
-		int i = 0;
-		for (Iterator<Long> it = entries.iterator(); it.hasNext(); i++)
-			ids[i] = (int) (it.next() & 0xffffffffl);
-		return ids;
+		// extract user ids from the rows of backward map corresponding to this
+		// role
+		return SecRelSystem.box(SecRelSystem.policy().memberBackwardMap.low(roleId.longValue() << 32,
+				roleId.longValue() + 1 << 32));
 	}
 	
 	/**
@@ -288,16 +804,38 @@ public class SecRelSystem {
 	 * @return the ids of the roles
 	 */
 	protected static Integer[] getRoleIds(Integer userId) {
-		// retrieve elements of forward map corresponding to this user
-		Set<Long> entries = SecRelSystem.memberForwardMap.subSet(userId.longValue() << 32,
-				userId.longValue() + 1 << 32);
-		// initialize output array
-		Integer[] ids = new Integer[entries.size()];
-		// extract role ids from mapping rows
-		int i = 0;
-		for (Iterator<Long> it = entries.iterator(); it.hasNext(); i++)
-			ids[i] = (int) (it.next() & 0xffffffffl);
-		return ids;
+		// extract role ids from the rows of forward map corresponding to this
+		// user
+		return SecRelSystem.box(SecRelSystem.policy().memberForwardMap.low(userId.longValue() << 32,
+				userId.longValue() + 1 << 32));
+	}
+	
+	/**
+	 * Returns the ids of the users holding the role with the specified ID,
+	 * i.e. assigned to it or to a role inheriting it.
+	 *
+	 * @param roleId the id of the role
+	 * @return the ids of the users
+	 */
+	protected static IdBitmap getRoleHolders(int roleId) {
+		PolicyVersion policy = SecRelSystem.policy();
+		IdBitmap users = policy.roleMembers.get(roleId);
+		IdBitmap seniors = policy.hierarchy.seniors(roleId);
+		for (int seniorId = seniors.nextId(0); seniorId >= 0; seniorId = seniors.nextId(seniorId + 1))
+			users = IdBitmap.or(users, policy.roleMembers.get(seniorId));
+		return users;
+	}
+	
+	/**
+	 * Returns the maximum number of members of the role with the specified
+	 * ID.
+	 *
+	 * @param roleId the id of the role
+	 * @return the maximum, or 0 if the role is unlimited
+	 */
+	protected static int getRoleLimit(int roleId) {
+		int[] limits = SecRelSystem.roleLimits;
+		return roleId >= 0 && roleId < limits.length ? limits[roleId] : 0;
 	}
 	
 	/**
@@ -307,7 +845,7 @@ public class SecRelSystem {
 	 * @return the name of the role
 	 */
 	protected static String getRoleName(Integer id) {
-		return SecRelSystem.roleIds.get(id);
+		return SecRelSystem.roleNames.name(id);
 	}
 	
 	/**
@@ -318,16 +856,19 @@ public class SecRelSystem {
 	 * @return the ids of the services
 	 */
 	protected static Integer[] getServiceIds(Integer roleId) {
-		// retrieve elements of forward map corresponding to this role
-		Map<Long, Right> entries = SecRelSystem.serviceForwardMap.subMap(roleId.longValue() << 32,
-				roleId.longValue() + 1 << 32);
-		// initialize output array
-		Integer[] ids = new Integer[entries.size()];
-		// extract service ids from mapping rows
-		int i = 0;
-		for (Iterator<Long> it = entries.keySet().iterator(); it.hasNext(); i++)
-			ids[i] = (int) (it.next() & 0xffffffffl);
-		return ids;
+		// extract service ids from the rows of forward map corresponding to
+		// this role
+		return SecRelSystem.box(SecRelSystem.policy().serviceForwardMap.low(roleId.longValue() << 32,
+				roleId.longValue() + 1 << 32));
+	}
+	
+	/**
+	 * Returns the static separation of duty constraints.
+	 *
+	 * @return the constraints
+	 */
+	protected static ConflictSets getStaticConflicts() {
+		return SecRelSystem.staticConflicts;
 	}
 	
 	/**
@@ -337,7 +878,142 @@ public class SecRelSystem {
 	 * @return the name of the user
 	 */
 	protected static String getUserName(Integer id) {
-		return SecRelSystem.userIds.get(id);
+		return SecRelSystem.userNames.name(id);
+	}
+	
+	/**
+	 * Returns whether an open session holding the specified role, as an
+	 * active role or through the hierarchy, would hold two roles sharing a
+	 * dynamic separation of duty constraint if it also held the specified
+	 * roles.
+	 *
+	 * @param conflicts the dynamic constraints to check
+	 * @param roleId the id of the role held by the sessions
+	 * @param added the ids of the roles the sessions would gain
+	 * @return true if a session would hold conflicting roles
+	 */
+	protected static boolean hasDynamicConflict(ConflictSets conflicts, int roleId, IdBitmap added) {
+		if (conflicts.isEmpty())
+			return false;
+		for (Set<Session> sessions : SecRelSystem.userSessions.values())
+			for (Session session : sessions) {
+				IdBitmap effective = session.getEffectiveRoles();
+				if (effective.contains(roleId) && conflicts.conflicts(effective, added))
+					return true;
+			}
+		return false;
+	}
+	
+	/**
+	 * Returns whether assigning the specified user to the specified role
+	 * would violate a static separation of duty constraint. The roles the
+	 * user holds, directly or through the hierarchy, are checked against the
+	 * role and the roles it inherits, each check intersecting the precompiled
+	 * conflict mask of a role, so this costs the same however many
+	 * constraints exist.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return true if the assignment would give the user conflicting roles
+	 */
+	protected static boolean hasStaticConflict(int userId, int roleId) {
+		ConflictSets conflicts = SecRelSystem.staticConflicts;
+		if (conflicts.isEmpty())
+			return false;
+		PolicyVersion policy = SecRelSystem.policy();
+		return conflicts.conflicts(policy.hierarchy.closure(policy.userRoles.get(userId)),
+				policy.hierarchy.closure(roleId));
+	}
+	
+	/**
+	 * Replaces the empty relations of the system with loaded rows. The rows
+	 * are published together when the outermost write ends. If a relation
+	 * store is open, the rows are copied into it in key order, otherwise the
+	 * loaded stores become the draft. The caller must hold the write lock and
+	 * is responsible for validating the ids of the rows.
+	 *
+	 * @param memberForwardMap the user to role rows
+	 * @param memberBackwardMap the role to user rows
+	 * @param serviceForwardMap the role to service rows
+	 * @param serviceBackwardMap the service to role rows
+	 * @throws IllegalStateException if the system has rows
+	 */
+	protected static void installRelations(RowStore memberForwardMap, RowStore memberBackwardMap,
+			RowStore serviceForwardMap, RowStore serviceBackwardMap) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if the system has rows
+			if (!SecRelSystem.draft.memberForwardMap.isEmpty() || !SecRelSystem.draft.serviceForwardMap.isEmpty())
+				throw new IllegalStateException("Relations must be empty to install loaded rows.");
+			PolicyVersion loaded;
+			if (SecRelSystem.relationStore != null) {
+				loaded = SecRelSystem.draft;
+				SecRelSystem.copyRows(memberForwardMap, loaded.memberForwardMap);
+				SecRelSystem.copyRows(memberBackwardMap, loaded.memberBackwardMap);
+				SecRelSystem.copyRows(serviceForwardMap, loaded.serviceForwardMap);
+				SecRelSystem.copyRows(serviceBackwardMap, loaded.serviceBackwardMap);
+			}
+			else {
+				loaded = new PolicyVersion(memberForwardMap, memberBackwardMap, serviceForwardMap, serviceBackwardMap);
+				SecRelSystem.copyHierarchy(SecRelSystem.draft, loaded);
+			}
+			loaded.rebuildDerived();
+			SecRelSystem.draft = loaded;
+			SecRelSystem.decisions.invalidateAll();
+			SecRelSystem.changedUsers = null;
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Returns whether the user with the specified ID may invoke the service
+	 * with the specified ID, that is whether its roles grant
+	 * {@link Right#INVOKE}. Every invocation path is decided here or by
+	 * {@link #isPermitted(int, int, int)} with a mode holding INVOKE.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @return true if the user may invoke the service
+	 */
+	protected static boolean isPermitted(int userId, int serviceId) {
+		// the holder of the write lock reads its draft, which is never cached
+		if (SecRelSystem.writeLock.isHeldByCurrentThread())
+			return (SecRelSystem.draft.permissions.modes(userId, serviceId) & Right.INVOKE) != 0;
+		return SecRelSystem.decisions.isPermitted(userId, serviceId,
+				(u, s) -> (SecRelSystem.published.permissions.modes(u, s) & Right.INVOKE) != 0);
+	}
+	
+	/**
+	 * Returns whether the user with the specified ID holds every mode of the
+	 * specified mask for the service with the specified ID. The modes of each
+	 * permission are the OR of the access types granting it, kept by the
+	 * permission matrix, so the check is one lookup and one AND.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param mode the requested modes, a mask of the constants of
+	 *            {@link Right}
+	 * @return true if the user holds the modes
+	 */
+	protected static boolean isPermitted(int userId, int serviceId, int mode) {
+		return (SecRelSystem.policy().permissions.modes(userId, serviceId) & mode) == mode;
+	}
+	
+	/**
+	 * Returns whether the role with the specified ID has as many members as
+	 * its limit allows. This reads the maintained member count of the role,
+	 * so it costs the same for a role with ten members and a role with a
+	 * million.
+	 *
+	 * @param roleId the id of the role
+	 * @return true if a further assignment would exceed the limit
+	 */
+	protected static boolean isRoleFull(int roleId) {
+		int limit = SecRelSystem.getRoleLimit(roleId);
+		return limit > 0 && SecRelSystem.policy().roleMembers.get(roleId).cardinality() >= limit;
 	}
 	
 	/**
@@ -348,8 +1024,8 @@ public class SecRelSystem {
 	 * @param roleId the id of the role
 	 * @return the mapping row
 	 */
-	protected static Long memberBackwardRow(Integer userId, Integer roleId) {
-		return roleId.longValue() << 32 | userId;
+	protected static long memberBackwardRow(int userId, int roleId) {
+		return (long) roleId << 32 | userId;
 	}
 	
 	/**
@@ -360,8 +1036,196 @@ public class SecRelSystem {
 	 * @param roleId the id of the role
 	 * @return the mapping row
 	 */
-	protected static Long memberForwardRow(Integer userId, Integer roleId) {
-		return userId.longValue() << 32 | roleId;
+	protected static long memberForwardRow(int userId, int roleId) {
+		return (long) userId << 32 | roleId;
+	}
+	
+	/**
+	 * Returns the version of the relations to read. This is the published
+	 * version, or the draft if the calling thread holds the write lock.
+	 * Callers reading more than one relation should call this method once and
+	 * read every relation from the returned version.
+	 *
+	 * @return the version
+	 */
+	protected static PolicyVersion policy() {
+		return SecRelSystem.writeLock.isHeldByCurrentThread() ? SecRelSystem.draft : SecRelSystem.published;
+	}
+	
+	/**
+	 * Refreshes every open session. This is called when the role hierarchy
+	 * changes, which changes the roles inherited by active roles.
+	 */
+	private static void refreshSessions() {
+		for (Set<Session> sessions : SecRelSystem.userSessions.values())
+			for (Session session : sessions)
+				session.refresh(SecRelSystem.draft);
+	}
+	
+	/**
+	 * Refreshes the open sessions of the specified user. This is called when
+	 * an assignment of the user is removed, so the sessions deactivate the
+	 * roles the user no longer holds.
+	 *
+	 * @param userId the id of the user
+	 */
+	private static void refreshSessions(int userId) {
+		Set<Session> sessions = SecRelSystem.userSessions.get(userId);
+		if (sessions != null)
+			for (Session session : sessions)
+				session.refresh(SecRelSystem.draft);
+	}
+	
+	/**
+	 * Removes the mapping rows of an authorization and updates the bitmap
+	 * index.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 */
+	protected static void removeAuthorization(int roleId, int serviceId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			draft.serviceForwardMap.remove(SecRelSystem.serviceForwardRow(roleId, serviceId));
+			draft.serviceBackwardMap.remove(SecRelSystem.serviceBackwardRow(roleId, serviceId));
+			draft.roleServices.remove(roleId, serviceId);
+			draft.serviceRoles.remove(serviceId, roleId);
+			draft.permissions.authorizationRemoved(draft, roleId, serviceId);
+			SecRelSystem.serviceExpiries.cancel(SecRelSystem.serviceForwardRow(roleId, serviceId));
+			SecRelSystem.decisions.invalidateService(serviceId);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Stops sending the published versions to a sharded engine.
+	 *
+	 * @param engine the engine
+	 */
+	protected static void removeEngine(ShardedPolicyEngine engine) {
+		SecRelSystem.beginWrite();
+		try {
+			SecRelSystem.engines.remove(engine);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Removes an edge of the role hierarchy and updates the closure and the
+	 * permission matrix.
+	 *
+	 * @param seniorId the id of the senior role
+	 * @param juniorId the id of the junior role
+	 */
+	protected static void removeInheritance(int seniorId, int juniorId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			draft.hierarchy.remove(seniorId, juniorId);
+			draft.permissions.inheritanceRemoved(draft, seniorId);
+			SecRelSystem.refreshSessions();
+			SecRelSystem.decisions.invalidateAll();
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Removes the mapping rows of a role assignment and updates the bitmap
+	 * index.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 */
+	protected static void removeMembership(int userId, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			draft.memberForwardMap.remove(SecRelSystem.memberForwardRow(userId, roleId));
+			draft.memberBackwardMap.remove(SecRelSystem.memberBackwardRow(userId, roleId));
+			draft.userRoles.remove(userId, roleId);
+			draft.roleMembers.remove(roleId, userId);
+			draft.permissions.membershipRemoved(draft, userId, roleId);
+			SecRelSystem.userChanged(userId);
+			SecRelSystem.memberExpiries.cancel(SecRelSystem.memberForwardRow(userId, roleId));
+			SecRelSystem.decisions.invalidateUser(userId);
+			SecRelSystem.refreshSessions(userId);
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Schedules again the expiries saved with the rows of a relation store,
+	 * skipping those whose row is missing. An expiry that has passed while
+	 * the store was closed fires on the next tick.
+	 *
+	 * @param policy the draft holding the rows of the store
+	 * @param data the side data of the store, see {@link #expiryData()}
+	 */
+	private static void restoreExpiries(PolicyVersion policy, long[] data) {
+		if (data.length == 0)
+			return;
+		int members = (int) data[0];
+		for (int i = 1; i < data.length; i += 2) {
+			boolean member = i < 1 + 2 * members;
+			if (member && policy.memberForwardMap.contains(data[i]))
+				SecRelSystem.memberExpiries.schedule(data[i], data[i + 1]);
+			else if (!member && policy.serviceForwardMap.contains(data[i]))
+				SecRelSystem.serviceExpiries.schedule(data[i], data[i + 1]);
+		}
+		if (!SecRelSystem.memberExpiries.isEmpty() || !SecRelSystem.serviceExpiries.isEmpty())
+			SecRelSystem.startExpiry();
+	}
+	
+	/**
+	 * Schedules the expiry of the authorization of the specified role for the
+	 * specified service. The caller is responsible for checking that the
+	 * authorization exists.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param expiresAt the time in milliseconds
+	 */
+	protected static void scheduleAuthorizationExpiry(int roleId, int serviceId, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			SecRelSystem.serviceExpiries.schedule(SecRelSystem.serviceForwardRow(roleId, serviceId), expiresAt);
+			SecRelSystem.startExpiry();
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Schedules the expiry of the assignment of the specified user to the
+	 * specified role. The caller is responsible for checking that the
+	 * assignment exists.
+	 *
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @param expiresAt the time in milliseconds
+	 */
+	protected static void scheduleMembershipExpiry(int userId, int roleId, long expiresAt) {
+		SecRelSystem.beginWrite();
+		try {
+			SecRelSystem.memberExpiries.schedule(SecRelSystem.memberForwardRow(userId, roleId), expiresAt);
+			SecRelSystem.startExpiry();
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 	
 	/**
@@ -372,8 +1236,8 @@ public class SecRelSystem {
 	 * @param serviceId the id of the service
 	 * @return the mapping row
 	 */
-	protected static Long serviceBackwardRow(Integer roleId, Integer serviceId) {
-		return serviceId.longValue() << 32 | roleId;
+	protected static long serviceBackwardRow(int roleId, int serviceId) {
+		return (long) serviceId << 32 | roleId;
 	}
 	
 	/**
@@ -384,8 +1248,93 @@ public class SecRelSystem {
 	 * @param serviceId the id of the service
 	 * @return the mapping row
 	 */
-	protected static Long serviceForwardRow(Integer roleId, Integer serviceId) {
-		return roleId.longValue() << 32 | serviceId;
+	protected static long serviceForwardRow(int roleId, int serviceId) {
+		return (long) roleId << 32 | serviceId;
+	}
+	
+	/**
+	 * Changes the access type stored in the mapping rows of an authorization.
+	 *
+	 * @param roleId the id of the role
+	 * @param serviceId the id of the service
+	 * @param accessType the new access type
+	 * @return true if the rows exist
+	 */
+	protected static boolean setAccessType(int roleId, int serviceId, int accessType) {
+		SecRelSystem.beginWrite();
+		try {
+			PolicyVersion draft = SecRelSystem.draft;
+			boolean found = draft.serviceForwardMap.set(SecRelSystem.serviceForwardRow(roleId, serviceId), accessType)
+			        & draft.serviceBackwardMap.set(SecRelSystem.serviceBackwardRow(roleId, serviceId), accessType);
+			SecRelSystem.draftChanged |= found;
+			if (found) {
+				draft.permissions.accessTypeChanged(draft, roleId, serviceId);
+				SecRelSystem.decisions.invalidateService(serviceId);
+			}
+			return found;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Replaces the dynamic separation of duty constraints. The caller must
+	 * hold the write lock and is responsible for validating the constraints.
+	 *
+	 * @param conflicts the constraints
+	 */
+	protected static void setDynamicConflicts(ConflictSets conflicts) {
+		SecRelSystem.dynamicConflicts = conflicts;
+	}
+	
+	/**
+	 * Sets the maximum number of members of the role with the specified ID.
+	 * The caller must hold the write lock and is responsible for validating
+	 * the id and the limit.
+	 *
+	 * @param roleId the id of the role
+	 * @param limit the maximum, or 0 to remove the limit
+	 */
+	protected static void setRoleLimit(int roleId, int limit) {
+		int[] limits = SecRelSystem.roleLimits;
+		if (limit == 0 && roleId >= limits.length)
+			return;
+		limits = Arrays.copyOf(limits, Math.max(limits.length, roleId + 1));
+		limits[roleId] = limit;
+		SecRelSystem.roleLimits = limits;
+	}
+	
+	/**
+	 * Replaces the static separation of duty constraints. The caller must
+	 * hold the write lock and is responsible for validating the constraints.
+	 *
+	 * @param conflicts the constraints
+	 */
+	protected static void setStaticConflicts(ConflictSets conflicts) {
+		SecRelSystem.staticConflicts = conflicts;
+	}
+	
+	/**
+	 * Schedules the task advancing the expiry wheels unless it is already
+	 * scheduled. The task is only started by the first expiry, so a system
+	 * without expiries runs no task.
+	 */
+	private static void startExpiry() {
+		if (SecRelSystem.expiryScheduled.compareAndSet(false, true))
+			SecRelSystem.expiryScheduler.scheduleWithFixedDelay(SecRelSystem::expire, SecRelSystem.EXPIRY_TICK,
+					SecRelSystem.EXPIRY_TICK, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Records that the roles of a user changed, so that the sharded engine
+	 * owning the user reloads them from the next published version.
+	 *
+	 * @param userId the id of the user
+	 */
+	private static void userChanged(int userId) {
+		if (SecRelSystem.changedUsers != null)
+			SecRelSystem.changedUsers.add(userId);
 	}
 	
 	/**
@@ -429,7 +1378,8 @@ public class SecRelSystem {
 	 *
 	 * @param roleId the id of the role
 	 * @param serviceId the id of the service
-	 * @param accessType I do not know the purpose of this parameter
+	 * @param accessType the modes granted, a mask of the constants of
+	 *            {@link Right}
 	 * @deprecated Use {@link Authorizations#authorizeRole(Integer,Integer,int)}
 	 *             instead
 	 */
@@ -443,7 +1393,8 @@ public class SecRelSystem {
 	 *
 	 * @param role the Role instance
 	 * @param service the Service instance
-	 * @param accessType I do not know the purpose of this parameter
+	 * @param accessType the modes granted, a mask of the constants of
+	 *            {@link Right}
 	 * @deprecated Use {@link Authorizations#authorizeRole(Role,Service,int)}
 	 *             instead
 	 */
@@ -457,8 +1408,8 @@ public class SecRelSystem {
 	 *
 	 * @param roleName the name of the role
 	 * @param serviceName the name of the service
-	 * @param accessType I do not know the purpose of this parameterI do not
-	 *            know the purpose of this parameter
+	 * @param accessType the modes granted, a mask of the constants of
+	 *            {@link Right}
 	 * @deprecated Use {@link Authorizations#authorizeRole(String,String,int)}
 	 *             instead
 	 */
@@ -467,6 +1418,62 @@ public class SecRelSystem {
 		Authorizations.authorizeRole(roleName, serviceName, accessType);
 	}
 	
+	/**
+	 * Writes the mapping rows to the open relation store and forces them to
+	 * the storage device. The pending expiries of the rows are written with
+	 * them and scheduled again when the store is reopened. The store reopens
+	 * in the state of its last checkpoint; pages replaced since the previous
+	 * checkpoint are reused only after this one.
+	 *
+	 * @throws IOException if the store cannot be written
+	 * @throws IllegalStateException if no relation store is open
+	 */
+	public static void checkpointRelationStore() throws IOException {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a store is open
+			if (SecRelSystem.relationStore == null)
+				throw new IllegalStateException("No relation store is open.");
+			SecRelSystem.relationStore.setSideData(SecRelSystem.expiryData());
+			SecRelSystem.relationStore.checkpoint();
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
+	/**
+	 * Checkpoints and closes the open relation store and moves the mapping
+	 * rows back to the heap.
+	 *
+	 * @throws IOException if the store cannot be written
+	 * @throws IllegalStateException if no relation store is open
+	 */
+	public static void closeRelationStore() throws IOException {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a store is open
+			if (SecRelSystem.relationStore == null)
+				throw new IllegalStateException("No relation store is open.");
+			PolicyVersion heap = new PolicyVersion();
+			SecRelSystem.copyRows(SecRelSystem.draft.memberForwardMap, heap.memberForwardMap);
+			SecRelSystem.copyRows(SecRelSystem.draft.memberBackwardMap, heap.memberBackwardMap);
+			SecRelSystem.copyRows(SecRelSystem.draft.serviceForwardMap, heap.serviceForwardMap);
+			SecRelSystem.copyRows(SecRelSystem.draft.serviceBackwardMap, heap.serviceBackwardMap);
+			SecRelSystem.copyHierarchy(SecRelSystem.draft, heap);
+			heap.rebuildDerived();
+			PageFile store = SecRelSystem.relationStore;
+			SecRelSystem.draft = heap;
+			SecRelSystem.relationStore = null;
+			SecRelSystem.draftChanged = true;
+			store.setSideData(SecRelSystem.expiryData());
+			store.close();
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
 	/**
 	 * Creates a new role with the specified role name.
 	 *
@@ -590,6 +1597,16 @@ public class SecRelSystem {
 		return Authorizations.getAuthorizedServices(roleId);
 	}
 	
+	/**
+	 * Returns the cache of the decisions of the reference monitors, whose
+	 * statistics report how often decisions are reused.
+	 *
+	 * @return the decision cache
+	 */
+	public static DecisionCache getDecisionCache() {
+		return SecRelSystem.decisions;
+	}
+	
 	/**
 	 * Returns the users assigned to the role with the specified ID.
 	 *
@@ -851,7 +1868,8 @@ public class SecRelSystem {
 	 * This function returns a Handle object which can be used to open a I/O
 	 * connection to the executing thread of the service and to retrieve any
 	 * results. The input data is streamed into the service using the supplied
-	 * InputStream.
+	 * InputStream. The request is permitted if the roles of the user grant
+	 * {@link Right#INVOKE}.
 	 *
 	 * @param userId the id of the user
 	 * @param serviceId the id of the service
@@ -873,13 +1891,216 @@ public class SecRelSystem {
 			throw new NullPointerException("Service id cannot be null.");
 		if (!SecRelSystem.serviceIds.containsKey(serviceId))
 			throw new IllegalArgumentException("Service with that id does not exist.");
-		Service service = SecRelSystem.serviceIds.get(serviceId);
-		ReferenceMonitor monitor = service.monitor(userId);
-		if (monitor.checkRights())
-			return service.invokeService(argv, argm);
+		// decide without a monitor as nothing waits on the decision
+		if (SecRelSystem.isPermitted(userId, serviceId))
+			return SecRelSystem.serviceIds.get(serviceId).invokeService(argv, argm);
 		return null;
 	}
 	
+	/**
+	 * Attempts to invoke a service in the specified modes using the identity
+	 * of the specified user. The request is permitted if the authorizations
+	 * of the roles of the user, and of the roles they inherit, together grant
+	 * {@link Right#INVOKE} and every requested mode, e.g.
+	 * {@code Right.INVOKE | Right.READ_RESULT}.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param mode the requested modes, a mask of the constants of
+	 *            {@link Right}
+	 * @param argv an array of parameters
+	 * @param argm an map of parameters
+	 * @return the handle of the executing thread of the service if successful
+	 */
+	public static Service.Handle makeRequest(Integer userId, Integer serviceId, int mode, String[] argv,
+			Map<String, String> argm) {
+		// check if a userId is null
+		if (userId == null)
+			// throw exception
+			throw new NullPointerException("User id cannot be null.");
+		if (!SecRelSystem.userIds.containsKey(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		// check if a serviceId is null
+		if (serviceId == null)
+			// throw exception
+			throw new NullPointerException("Service id cannot be null.");
+		if (!SecRelSystem.serviceIds.containsKey(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		// check if the mode is valid
+		if (mode == 0 || (mode & ~Right.ALL) != 0)
+			throw new IllegalArgumentException("Mode must be a non-empty mask of access types.");
+		// invoking the service always requires the invoke mode
+		if (SecRelSystem.isPermitted(userId, serviceId, mode | Right.INVOKE))
+			return SecRelSystem.serviceIds.get(serviceId).invokeService(argv, argm);
+		return null;
+	}
+	
+	/**
+	 * Attempts to invoke a service using the active roles of the specified
+	 * session. This function calls makeRequest(Session, Integer, String[],
+	 * Map) without parameters.
+	 *
+	 * @param session the session of the user
+	 * @param serviceId the id of the service
+	 * @return the handle of the executing thread of the service if successful
+	 */
+	public static Service.Handle makeRequest(Session session, Integer serviceId) {
+		return makeRequest(session, serviceId, new String[0], new HashMap<String, String>());
+	}
+	
+	/**
+	 * Attempts to invoke a service using the active roles of the specified
+	 * session. The request is permitted if an active role, or a role inherited
+	 * by one, is authorized for the service with an access type holding
+	 * {@link Right#INVOKE}. The active roles were resolved when they were
+	 * activated, so the roles of the user are not read.
+	 *
+	 * @param session the session of the user
+	 * @param serviceId the id of the service
+	 * @param argv an array of parameters
+	 * @param argm an map of parameters
+	 * @return the handle of the executing thread of the service if successful
+	 */
+	public static Service.Handle makeRequest(Session session, Integer serviceId, String[] argv,
+			Map<String, String> argm) {
+		// check if a session is null
+		if (session == null)
+			// throw exception
+			throw new NullPointerException("Session cannot be null.");
+		// check if the session is closed
+		if (!session.isOpen())
+			throw new IllegalStateException("Session is closed.");
+		// check if a serviceId is null
+		if (serviceId == null)
+			// throw exception
+			throw new NullPointerException("Service id cannot be null.");
+		if (!SecRelSystem.serviceIds.containsKey(serviceId))
+			throw new IllegalArgumentException("Service with that id does not exist.");
+		if (session.isPermitted(SecRelSystem.policy(), serviceId, Right.INVOKE))
+			return SecRelSystem.serviceIds.get(serviceId).invokeService(argv, argm);
+		return null;
+	}
+	
+	/**
+	 * <p>
+	 * Attempts to invoke a service using the identity of the specified user
+	 * without blocking the caller. The request is authorized by a reference
+	 * monitor on the monitor thread pool and, if granted, dispatched to the
+	 * service thread pool; the returned stage completes with the Handle of the
+	 * executing thread once the service is dispatched.
+	 * </p>
+	 * <p>
+	 * Failures complete the stage exceptionally rather than being thrown: a
+	 * null id with a NullPointerException, a missing user or service with an
+	 * IllegalArgumentException and a denied request with a SecurityException.
+	 * </p>
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param argv an array of parameters
+	 * @param argm an map of parameters
+	 * @return a stage completed with the handle of the executing thread of the
+	 *         service
+	 */
+	public static CompletionStage<Service.Handle> makeRequestAsync(Integer userId, Integer serviceId, String[] argv,
+			Map<String, String> argm) {
+		CompletableFuture<Service.Handle> out = new CompletableFuture<>();
+		Service service;
+		try {
+			// check if a userId is null
+			if (userId == null)
+				// throw exception
+				throw new NullPointerException("User id cannot be null.");
+			if (!SecRelSystem.userIds.containsKey(userId))
+				throw new IllegalArgumentException("User with that id does not exist.");
+			// check if a serviceId is null
+			if (serviceId == null)
+				// throw exception
+				throw new NullPointerException("Service id cannot be null.");
+			service = SecRelSystem.serviceIds.get(serviceId);
+			if (service == null)
+				throw new IllegalArgumentException("Service with that id does not exist.");
+		}
+		catch (RuntimeException e) {
+			out.completeExceptionally(e);
+			return out;
+		}
+		return service.monitor(userId).checkRightsAsync().thenApply(authorized -> {
+			// check if the request was denied
+			if (!authorized)
+				throw new SecurityException(
+						String.format("User %d is not authorized to invoke service %d.", userId, serviceId));
+			return service.invokeService(argv, argm);
+		});
+	}
+	
+	/**
+	 * <p>
+	 * Opens or creates a relation store and moves the mapping rows of the
+	 * system to it. The membership and authorization rows are then kept in
+	 * sorted pages of the memory mapped file rather than on the heap, and the
+	 * rows of the last checkpoint of an existing file are restored without
+	 * being reloaded. The bitmap index and the permission matrix remain on the
+	 * heap and are rebuilt from the rows.
+	 * </p>
+	 * <p>
+	 * The store only holds the rows; users, roles and services must already
+	 * exist with the ids the rows refer to. The system must have no
+	 * assignments or authorizations when the store is opened. The restored
+	 * assignments are checked against the member limits of the roles and the
+	 * static separation of duty constraints like loaded ones, since either may
+	 * have changed since the checkpoint, and their expiries are scheduled
+	 * again.
+	 * </p>
+	 *
+	 * @param path the path of the file
+	 * @throws IOException if the file cannot be read or mapped
+	 * @throws IllegalStateException if a store is already open, if the system
+	 *             has rows, if the file maps ids that do not exist or if its
+	 *             assignments exceed a limit or break a constraint
+	 */
+	public static void openRelationStore(Path path) throws IOException {
+		// check if a path is null
+		if (path == null)
+			// throw exception
+			throw new NullPointerException("Relation store path cannot be null.");
+		SecRelSystem.beginWrite();
+		try {
+			// check if a store is open
+			if (SecRelSystem.relationStore != null)
+				throw new IllegalStateException("A relation store is already open.");
+			// check if the system has rows
+			if (!SecRelSystem.draft.memberForwardMap.isEmpty() || !SecRelSystem.draft.serviceForwardMap.isEmpty())
+				throw new IllegalStateException("Relations must be empty to open a relation store.");
+			PageFile store = new PageFile(path, false, false, true, true);
+			PolicyVersion mapped = new PolicyVersion(store.relation(0), store.relation(1), store.relation(2),
+					store.relation(3));
+			try {
+				SecRelSystem.checkRows(mapped.memberForwardMap, SecRelSystem.userIds, SecRelSystem.roleIds,
+						"assignment");
+				SecRelSystem.checkRows(mapped.serviceForwardMap, SecRelSystem.roleIds, SecRelSystem.serviceIds,
+						"authorization");
+				BulkLoader.checkRoleLimits(mapped.memberBackwardMap);
+				BulkLoader.checkRoleConflicts(mapped.memberForwardMap);
+				SecRelSystem.copyHierarchy(SecRelSystem.draft, mapped);
+				mapped.rebuildDerived();
+			}
+			catch (RuntimeException e) {
+				store.close();
+				throw e;
+			}
+			SecRelSystem.draft = mapped;
+			SecRelSystem.decisions.invalidateAll();
+			SecRelSystem.changedUsers = null;
+			SecRelSystem.relationStore = store;
+			SecRelSystem.restoreExpiries(mapped, store.sideData());
+			SecRelSystem.draftChanged = true;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+	
 	/**
 	 * Registers the Service with the system.
 	 *
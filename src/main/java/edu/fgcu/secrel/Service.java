@@ -7,6 +7,7 @@ package edu.fgcu.secrel;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -325,19 +326,32 @@ public abstract class Service implements Entity, Comparable<Service> {
 		}
 
 		/**
-		 * Waits for the Service to complete or timeout milliseconds.
+		 * Waits for the Service to complete or timeout milliseconds. The
+		 * executing thread belongs to a pool and outlives the Service, so this
+		 * waits for the COMPLETED state rather than for the thread.
 		 *
 		 * @param timeout the number of milliseconds to wait or -1 to wait
 		 *            indefinitely
 		 */
 		public void join(long timeout) {
+			long deadline = System.currentTimeMillis() + timeout;
 			synchronized (this) {
-				if (state != Handle.COMPLETED)
+				while (state != Handle.COMPLETED)
 					try {
-						thread.join(timeout);
+						if (timeout == -1)
+							wait();
+						else {
+							// read the clock once, as wait(0) would never return
+							long remaining = deadline - System.currentTimeMillis();
+							if (remaining <= 0)
+								break;
+							wait(remaining);
+						}
 					}
 				catch (InterruptedException e) {
-					// e.printStackTrace();
+					// keep the interrupt for the caller
+					Thread.currentThread().interrupt();
+					break;
 				}
 			}
 		}
@@ -589,6 +603,22 @@ public abstract class Service implements Entity, Comparable<Service> {
 			return isAuthorized;
 		}
 
+		/**
+		 * Determines if the user can invoke the Service without blocking the
+		 * caller. Deliberation is done by the monitor thread pool of the
+		 * SecRelSystem.
+		 *
+		 * @return a future completed with whether the user has been granted
+		 *         access
+		 */
+		public CompletableFuture<Boolean> checkRightsAsync() {
+			state = ReferenceMonitor.PENDING;
+			return CompletableFuture.supplyAsync(() -> {
+				run();
+				return isAuthorized;
+			}, SecRelSystem.monitorThreadPool);
+		}
+
 		/**
 		 * Returns the id of this monitor.
 		 *
@@ -636,10 +666,9 @@ public abstract class Service implements Entity, Comparable<Service> {
 
 		@Override
 		public void run() {
-			Integer[] roleIds = SecRelSystem.getRoleIds(userId);
-			for (int roleId : roleIds)
-				if (Authorizations.isAuthorizedFor(roleId, id))
-					authorizeUser();
+			// test the bit of the user and service in the permission matrix
+			if (SecRelSystem.isPermitted(userId, id))
+				authorizeUser();
 			if (state == ReferenceMonitor.PENDING) {
 				state = ReferenceMonitor.UNAUTHORIZED;
 				synchronized (this) {
@@ -689,9 +718,15 @@ public abstract class Service implements Entity, Comparable<Service> {
 
 		@Override
 		public void run() {
+			handle.thread = Thread.currentThread();
 			handle.state(Handle.RUNNING);
-			invokeServiceInner(handle, argumentVector, argumentMap);
-			handle.state(Handle.COMPLETED);
+			try {
+				invokeServiceInner(handle, argumentVector, argumentMap);
+			}
+			finally {
+				// release the callers waiting in join even if the Service fails
+				handle.state(Handle.COMPLETED);
+			}
 		}
 	}
 
@@ -819,8 +854,6 @@ public abstract class Service implements Entity, Comparable<Service> {
 	public Handle invokeService(String[] argv, Map<String, String> argm) {
 		Handle handle = new Handle();
 		SecRelSystem.serviceThreadPool.execute(new ServiceRunner(handle, argv, argm));
-		handle.state = Handle.IDLE;
-		handle.thread.start();
 		return handle;
 	}
 
@@ -75,38 +75,45 @@ public class Services {
 	 * @param service the Service to be registered
 	 */
 	public static void registerService(Service service) {
-		// check if the service is null
-		if (service == null)
-		    // throw exception
-		    throw new NullPointerException("Service cannot be null.");
-		// check if service is already registered
-		if (SecRelSystem.serviceIds.containsValue(service))
-		    // exit method
-		    throw new IllegalArgumentException(
-		            String.format("A Service with the name \"%s\" already exists. Service(%d,\"%s\")",
-		                    service.getName(), SecRelSystem.roleNames.get(service.getName()), service.getName()));
-		// check if a service with that name already exists
-		if (SecRelSystem.serviceNames.containsKey(service.getName()))
-		    // throw exception
-		    throw new IllegalArgumentException(
-		            String.format("A Service with the name \"%s\" already exists.", service.getName()));
-		// compute new serviceId
-		Integer id = SecRelSystem.serviceIds.isEmpty() ? 0 : SecRelSystem.serviceIds.lastKey() + 1;
+		SecRelSystem.beginWrite();
 		try {
-			// attempt to set id
-			service.setId(id);
-		}
-		catch (IllegalStateException e) {
-			// id is already set retrieve id
-			id = service.getId();
-			// check if id is already in use
-			if (SecRelSystem.serviceIds.containsKey(id))
+			// check if the service is null
+			if (service == null)
+			    // throw exception
+			    throw new NullPointerException("Service cannot be null.");
+			// check if service is already registered
+			if (SecRelSystem.serviceIds.containsValue(service))
+			    // exit method
+			    throw new IllegalArgumentException(
+			            String.format("A Service with the name \"%s\" already exists. Service(%d,\"%s\")",
+			                    service.getName(), SecRelSystem.roleNames.get(service.getName()), service.getName()));
+			// check if a service with that name already exists
+			if (SecRelSystem.serviceNames.containsKey(service.getName()))
 			    // throw exception
-			    throw new IllegalStateException("Service id is already in use.");
+			    throw new IllegalArgumentException(
+			            String.format("A Service with the name \"%s\" already exists.", service.getName()));
+			// compute new serviceId
+			Integer id = SecRelSystem.serviceIds.allocate();
+			try {
+				// attempt to set id
+				service.setId(id);
+			}
+			catch (IllegalStateException e) {
+				// id is already set return the new id and retrieve id
+				SecRelSystem.serviceIds.release(id);
+				id = service.getId();
+				// check if id is already in use
+				if (SecRelSystem.serviceIds.containsKey(id))
+				    // throw exception
+				    throw new IllegalStateException("Service id is already in use.");
+			}
+			// register service
+			SecRelSystem.serviceIds.put(id, service);
+			SecRelSystem.serviceNames.put(service.getName(), id);
+		}
+		finally {
+			SecRelSystem.endWrite();
 		}
-		// register service
-		SecRelSystem.serviceIds.put(id, service);
-		SecRelSystem.serviceNames.put(service.getName(), id);
 	}
 	
 	/**
@@ -115,19 +122,25 @@ public class Services {
 	 * @param serviceId the id of the service
 	 */
 	public static void removeService(Integer serviceId) {
-		// check if a serviceId is null
-		if (serviceId == null)
-		    // throw exception
-		    throw new NullPointerException("Service id cannot be null.");
-		// check if service exists
-		if (!SecRelSystem.serviceIds.containsKey(serviceId))
-			throw new IllegalArgumentException("Service does not exist.");
-		// clear service roles
-		// SecRelSystem.clearServiceRoles(serviceId); // not implemented
-		Service service = SecRelSystem.serviceIds.get(serviceId);
-		// remove service from system
-		SecRelSystem.serviceNames.remove(service.getName());
-		SecRelSystem.serviceIds.remove(serviceId);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a serviceId is null
+			if (serviceId == null)
+			    // throw exception
+			    throw new NullPointerException("Service id cannot be null.");
+			// check if service exists
+			if (!SecRelSystem.serviceIds.containsKey(serviceId))
+				throw new IllegalArgumentException("Service does not exist.");
+			// clear service roles
+			SecRelSystem.clearServiceRoles(serviceId);
+			Service service = SecRelSystem.serviceIds.get(serviceId);
+			// remove service from system
+			SecRelSystem.serviceNames.remove(service.getName());
+			SecRelSystem.serviceIds.remove(serviceId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 	
 	/**
@@ -136,19 +149,21 @@ public class Services {
 	 * @param service the service instance
 	 */
 	public static void removeService(Service service) {
-		// check if a service is null
-		if (service == null)
-		    // throw exception
-		    throw new NullPointerException("Service cannot be null.");
-		removeService(service.getId());
-		// check if service is registered
-		if (!SecRelSystem.serviceNames.containsValue(service))
-			throw new IllegalArgumentException("Service is not registered.");
-		// clear service roles
-		// SecRelSystem.clearServiceRoles(serviceId); // not implemented
-		// remove service from system
-		SecRelSystem.serviceIds.remove(service.getId());
-		SecRelSystem.serviceNames.remove(service.getName());
+		SecRelSystem.beginWrite();
+		try {
+			// check if a service is null
+			if (service == null)
+			    // throw exception
+			    throw new NullPointerException("Service cannot be null.");
+			// check if service is registered
+			if (service.getId() == null || SecRelSystem.serviceIds.get(service.getId()) != service)
+				throw new IllegalArgumentException("Service is not registered.");
+			// delegate to id version, which clears the service roles
+			removeService(service.getId());
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 	
 	/**
@@ -157,19 +172,25 @@ public class Services {
 	 * @param serviceName the name of the service
 	 */
 	public static void removeService(String serviceName) {
-		// check if a serviceName is null
-		if (serviceName == null)
-		    // throw exception
-		    throw new NullPointerException("Service name cannot be null.");
-		// check if service exists
-		if (!SecRelSystem.serviceNames.containsKey(serviceName))
-			throw new IllegalArgumentException("Service does not exist.");
-		// clear service roles
-		// SecRelSystem.clearServiceRoles(serviceId); // not implemented
-		Service service = SecRelSystem.serviceIds.get(SecRelSystem.serviceNames.get(serviceName));
-		// remove service from system
-		SecRelSystem.serviceIds.remove(service.getId());
-		SecRelSystem.serviceNames.remove(serviceName);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a serviceName is null
+			if (serviceName == null)
+			    // throw exception
+			    throw new NullPointerException("Service name cannot be null.");
+			// check if service exists
+			if (!SecRelSystem.serviceNames.containsKey(serviceName))
+				throw new IllegalArgumentException("Service does not exist.");
+			Service service = SecRelSystem.serviceIds.get(SecRelSystem.serviceNames.get(serviceName));
+			// clear service roles
+			SecRelSystem.clearServiceRoles(service.getId());
+			// remove service from system
+			SecRelSystem.serviceIds.remove(service.getId());
+			SecRelSystem.serviceNames.remove(serviceName);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 	
 	/**
@@ -0,0 +1,192 @@
+/**
+ * This file defines the Session class. The Session class is a user's set of
+ * active roles, against which requests made in the session are checked.
+ */
+package edu.fgcu.secrel;
+
+/**
+ * <p>
+ * The Session class holds the roles a user has activated, a subset of the
+ * roles the user is assigned to or inherits through them. Requests made
+ * through {@link SecRelSystem#makeRequest(Session, Integer)} are permitted if
+ * an active role or a role it inherits is authorized to invoke the service.
+ * </p>
+ * <p>
+ * The active roles and the roles they inherit are resolved once, when the
+ * roles are activated, and held as bitmaps, so a check intersects them with
+ * the roles authorized for the service and never reads the roles of the user.
+ * The SecRelSystem indexes the sessions of each user and refreshes them when
+ * an assignment of the user or the role hierarchy changes: an active role the
+ * user no longer holds is deactivated.
+ * </p>
+ * <p>
+ * Sessions are created and changed through {@link Sessions}. Their bitmaps
+ * are replaced rather than modified, so a session may be read by any thread.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public final class Session {
+
+	/**
+	 * The id of this session.
+	 */
+	private final int sessionId;
+
+	/**
+	 * The id of the user of this session.
+	 */
+	private final int userId;
+
+	/**
+	 * The ids of the active roles.
+	 */
+	private volatile IdBitmap activeRoles = BitmapIndex.EMPTY;
+
+	/**
+	 * The ids of the active roles and of the roles they inherit.
+	 */
+	private volatile IdBitmap effectiveRoles = BitmapIndex.EMPTY;
+
+	/**
+	 * Whether this session is open.
+	 */
+	private volatile boolean open = true;
+
+	/**
+	 * Constructs a session without active roles.
+	 *
+	 * @param sessionId the id of the session
+	 * @param userId the id of the user
+	 */
+	Session(int sessionId, int userId) {
+		this.sessionId = sessionId;
+		this.userId = userId;
+	}
+
+	/**
+	 * Returns the ids of the active roles. The bitmap is read only and is not
+	 * changed by later activations.
+	 *
+	 * @return the ids of the active roles
+	 */
+	public IdBitmap getActiveRoles() {
+		return activeRoles;
+	}
+
+	/**
+	 * Returns the ids of the active roles and of the roles they inherit. The
+	 * bitmap is read only and is not changed by later activations.
+	 *
+	 * @return the ids of the effective roles
+	 */
+	IdBitmap getEffectiveRoles() {
+		return effectiveRoles;
+	}
+
+	/**
+	 * Returns the id of this session.
+	 *
+	 * @return the id
+	 */
+	public int getId() {
+		return sessionId;
+	}
+
+	/**
+	 * Returns the id of the user of this session.
+	 *
+	 * @return the id of the user
+	 */
+	public int getUserId() {
+		return userId;
+	}
+
+	/**
+	 * Returns whether this session is open.
+	 *
+	 * @return true if the session has not been closed
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public String toString() {
+		return "Session " + sessionId + " of user " + userId + ": " + activeRoles;
+	}
+
+	/**
+	 * Closes this session and deactivates its roles. The caller must hold the
+	 * write lock.
+	 */
+	void close() {
+		open = false;
+		activeRoles = BitmapIndex.EMPTY;
+		effectiveRoles = BitmapIndex.EMPTY;
+	}
+
+	/**
+	 * Returns whether an active role or a role it inherits is authorized for
+	 * a service with an access type holding a mode.
+	 *
+	 * @param policy the version of the relations
+	 * @param serviceId the id of the service
+	 * @param mode the mode, one of the constants of {@link Right}
+	 * @return true if one of the roles of the session grants the mode
+	 */
+	boolean isPermitted(PolicyVersion policy, int serviceId, int mode) {
+		IdBitmap roles = effectiveRoles;
+		IdBitmap authorized = policy.serviceRoles.get(serviceId);
+		if (!IdBitmap.intersects(roles, authorized))
+			return false;
+		for (int roleId = roles.nextId(0); roleId >= 0; roleId = roles.nextId(roleId + 1))
+			if (authorized.contains(roleId)
+					&& (policy.serviceForwardMap.get(SecRelSystem.serviceForwardRow(roleId, serviceId), 0) & mode) != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Deactivates the active roles the user no longer holds and resolves the
+	 * inherited roles again. The caller must hold the write lock.
+	 *
+	 * @param policy the version of the relations
+	 */
+	void refresh(PolicyVersion policy) {
+		IdBitmap active = new IdBitmap();
+		activeRoles.forEach(roleId -> {
+			if (Session.isAuthorized(policy, userId, roleId))
+				active.add(roleId);
+		});
+		setActiveRoles(policy, active);
+	}
+
+	/**
+	 * Replaces the active roles and resolves the roles they inherit. The
+	 * caller must hold the write lock.
+	 *
+	 * @param policy the version of the relations
+	 * @param active the ids of the active roles, which is not copied
+	 */
+	void setActiveRoles(PolicyVersion policy, IdBitmap active) {
+		effectiveRoles = policy.hierarchy.closure(active);
+		activeRoles = active;
+	}
+
+	/**
+	 * Returns whether a user may activate a role, i.e. whether the user is
+	 * assigned to the role or to a role inheriting it.
+	 *
+	 * @param policy the version of the relations
+	 * @param userId the id of the user
+	 * @param roleId the id of the role
+	 * @return true if the user may activate the role
+	 */
+	static boolean isAuthorized(PolicyVersion policy, int userId, int roleId) {
+		IdBitmap roles = policy.userRoles.get(userId);
+		return roles.contains(roleId) || IdBitmap.intersects(roles, policy.hierarchy.seniors(roleId));
+	}
+
+}
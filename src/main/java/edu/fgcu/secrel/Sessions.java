@@ -0,0 +1,212 @@
+/**
+ * <p>
+ * This file defines the Sessions class. The Sessions class contains methods to
+ * create, change and close the sessions of the users of the SecRelSystem.
+ * </p>
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * This class contains methods for creating and closing sessions and for
+ * activating and deactivating the roles of a session. A user may activate a
+ * role it is assigned to or a role inherited by one of those, unless the role
+ * or a role it inherits shares a dynamic separation of duty constraint with a
+ * role already active in the session or inherited by one. Requests are
+ * granted through the inherited roles, so the constraints apply to them too.
+ * </p>
+ * <p>
+ * Requests made through a session are checked against its active roles, see
+ * {@link SecRelSystem#makeRequest(Session, Integer)}. The sessions of a user
+ * are indexed by the user's id; when an assignment of the user or the role
+ * hierarchy changes, the roles the user no longer holds are deactivated, and
+ * removing the user closes them.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public class Sessions {
+
+	/**
+	 * The id of the next session.
+	 */
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	/**
+	 * Activates the specified role in the specified session.
+	 *
+	 * @param session the session
+	 * @param roleId the id of the role
+	 */
+	public static void activateRole(Session session, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a session is null
+			if (session == null)
+				// throw exception
+				throw new NullPointerException("Session cannot be null.");
+			// check if the session is closed
+			if (!session.isOpen())
+				throw new IllegalStateException("Session is closed.");
+			Sessions.activate(session, roleId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Closes the specified session.
+	 *
+	 * @param session the session
+	 */
+	public static void closeSession(Session session) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a session is null
+			if (session == null)
+				// throw exception
+				throw new NullPointerException("Session cannot be null.");
+			// check if the session is closed
+			if (!session.isOpen())
+				throw new IllegalStateException("Session is already closed.");
+			Set<Session> sessions = SecRelSystem.userSessions.get(session.getUserId());
+			if (sessions != null && sessions.remove(session) && sessions.isEmpty())
+				SecRelSystem.userSessions.remove(session.getUserId());
+			session.close();
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Creates a session of the specified user with the specified roles
+	 * active.
+	 *
+	 * @param userId the id of the user
+	 * @param roleIds the ids of the roles to activate
+	 * @return the session
+	 */
+	public static Session createSession(int userId, int... roleIds) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if roleIds is null
+			if (roleIds == null)
+				// throw exception
+				throw new NullPointerException("Role ids cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userIds.contains(userId))
+				throw new IllegalArgumentException("User with that id does not exist.");
+			Session session = new Session(Sessions.nextId.getAndIncrement(), userId);
+			for (int roleId : roleIds)
+				Sessions.activate(session, roleId);
+			// add session to system
+			SecRelSystem.userSessions.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(session);
+			return session;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Deactivates the specified role in the specified session.
+	 *
+	 * @param session the session
+	 * @param roleId the id of the role
+	 */
+	public static void deactivateRole(Session session, int roleId) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a session is null
+			if (session == null)
+				// throw exception
+				throw new NullPointerException("Session cannot be null.");
+			// check if the session is closed
+			if (!session.isOpen())
+				throw new IllegalStateException("Session is closed.");
+			// check if the role is active
+			if (!session.getActiveRoles().contains(roleId))
+				throw new IllegalArgumentException("Role is not active in that Session.");
+			IdBitmap active = IdBitmap.or(session.getActiveRoles(), BitmapIndex.EMPTY);
+			active.remove(roleId);
+			session.setActiveRoles(SecRelSystem.policy(), active);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
+	/**
+	 * Returns the open sessions of the user with the specified id.
+	 *
+	 * @param userId the id of the user
+	 * @return the sessions
+	 */
+	public static Set<Session> getSessions(int userId) {
+		// check if user exists
+		if (!SecRelSystem.userIds.contains(userId))
+			throw new IllegalArgumentException("User with that id does not exist.");
+		Set<Session> sessions = SecRelSystem.userSessions.get(userId);
+		return sessions == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(sessions));
+	}
+
+	/**
+	 * Returns whether a request of the specified session for the specified
+	 * service would be permitted. A closed session is permitted nothing.
+	 *
+	 * @param session the session
+	 * @param serviceId the id of the service
+	 * @return true if an active role or a role it inherits is authorized to
+	 *         invoke the service
+	 */
+	public static boolean isPermitted(Session session, int serviceId) {
+		// check if a session is null
+		if (session == null)
+			// throw exception
+			throw new NullPointerException("Session cannot be null.");
+		return session.isPermitted(SecRelSystem.policy(), serviceId, Right.INVOKE);
+	}
+
+	/**
+	 * Validates and activates a role in a session. The caller must hold the
+	 * write lock.
+	 *
+	 * @param session the session
+	 * @param roleId the id of the role
+	 */
+	private static void activate(Session session, int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.contains(roleId))
+			throw new IllegalArgumentException("Role with that id does not exist.");
+		IdBitmap active = session.getActiveRoles();
+		// check if the role is active
+		if (active.contains(roleId))
+			throw new IllegalStateException("Role is already active in that Session.");
+		PolicyVersion policy = SecRelSystem.policy();
+		// check if the user holds the role
+		if (!Session.isAuthorized(policy, session.getUserId(), roleId))
+			throw new IllegalStateException("User of the Session does not hold that Role.");
+		// check if the role or a role it inherits conflicts with an active or inherited role
+		ConflictSets conflicts = SecRelSystem.getDynamicConflicts();
+		if (!conflicts.isEmpty()
+				&& conflicts.conflicts(policy.hierarchy.closure(active), policy.hierarchy.closure(roleId)))
+			throw new IllegalStateException("Role conflicts with a Role active in that Session.");
+		active = IdBitmap.or(active, BitmapIndex.EMPTY);
+		active.add(roleId);
+		session.setActiveRoles(policy, active);
+	}
+
+	/**
+	 * Prevents instantiation of the Sessions class.
+	 */
+	private Sessions() {
+	}
+
+}
@@ -0,0 +1,460 @@
+/**
+ * This file defines the ShardedPolicyEngine class. The ShardedPolicyEngine
+ * class partitions the user side of the relations and the authorization
+ * requests by user id among single threaded shards.
+ */
+package edu.fgcu.secrel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * The ShardedPolicyEngine class is a thread-per-core mode for authorization
+ * requests. The user ids are partitioned among a fixed number of shards, each
+ * owned by one thread. A shard holds its own copy of the roles of the users it
+ * owns and of the owned members of every role, which only its thread reads or
+ * writes, and every request of a user is decided by the thread owning the
+ * user, so the shards take no locks and share no user-side structure. The
+ * role-side and service-side relations are read from the immutable version of
+ * the policy the shard has last loaded.
+ * </p>
+ * <p>
+ * Changes still go through the single writer of the SecRelSystem. Every
+ * published version is sent to each shard with the users whose roles changed,
+ * and the shard reloads the roles of the ones it owns before deciding the
+ * requests routed after the publication.
+ * </p>
+ * <p>
+ * Queries about a role or a service span every user and are scattered to all
+ * shards, each answering for its own users, then gathered into one bitmap. If
+ * a version was published while the query was scattered, so that the shards
+ * answered from different versions, the query is scattered again.
+ * </p>
+ * <p>
+ * Like the other asynchronous methods of the system, the methods of the engine
+ * complete their future exceptionally rather than throw.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public final class ShardedPolicyEngine implements AutoCloseable {
+
+	/**
+	 * The answer of a shard to a scattered query.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Part {
+
+		/**
+		 * The version of the policy the shard answered from.
+		 */
+		final long version;
+
+		/**
+		 * The users of the shard matching the query.
+		 */
+		final IdBitmap users;
+
+		/**
+		 * Constructs an answer.
+		 *
+		 * @param version the version of the policy
+		 * @param users the matching users
+		 */
+		Part(long version, IdBitmap users) {
+			this.version = version;
+			this.users = users;
+		}
+	}
+
+	/**
+	 * A partition of the users and the thread owning it. Apart from the
+	 * executor, the fields are only accessed by that thread.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Shard {
+
+		/**
+		 * The index of the shard.
+		 */
+		final int index;
+
+		/**
+		 * The number of shards of the engine.
+		 */
+		final int shardCount;
+
+		/**
+		 * The single threaded executor of the shard.
+		 */
+		final ExecutorService executor;
+
+		/**
+		 * The version of the policy last loaded by the shard.
+		 */
+		PolicyVersion policy;
+
+		/**
+		 * The roles of each user owned by the shard, indexed by user id.
+		 */
+		BitmapIndex userRoles = new BitmapIndex();
+
+		/**
+		 * The users owned by the shard of each role, indexed by role id.
+		 */
+		BitmapIndex roleMembers = new BitmapIndex();
+
+		/**
+		 * Constructs a shard.
+		 *
+		 * @param index the index of the shard
+		 * @param shardCount the number of shards of the engine
+		 * @param executor the executor of the shard
+		 */
+		Shard(int index, int shardCount, ExecutorService executor) {
+			this.index = index;
+			this.shardCount = shardCount;
+			this.executor = executor;
+		}
+
+		/**
+		 * Replaces the roles of the owned users with those of a version.
+		 *
+		 * @param policy the version
+		 */
+		void load(PolicyVersion policy) {
+			this.policy = policy;
+			userRoles = new BitmapIndex();
+			roleMembers = new BitmapIndex();
+			for (RowStore.Cursor c = policy.memberForwardMap.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+				int userId = (int) (c.key() >> 32);
+				if (owns(userId)) {
+					userRoles.add(userId, (int) c.key());
+					roleMembers.add((int) c.key(), userId);
+				}
+			}
+		}
+
+		/**
+		 * Returns a copy of the owned users of the role.
+		 *
+		 * @param roleId the id of the role
+		 * @return the ids of the users
+		 */
+		IdBitmap members(int roleId) {
+			return IdBitmap.or(roleMembers.get(roleId), BitmapIndex.EMPTY);
+		}
+
+		/**
+		 * Returns the OR of the access types through which the owned user may
+		 * invoke the service.
+		 *
+		 * @param userId the id of the user
+		 * @param serviceId the id of the service
+		 * @return the modes, or 0 if none of the roles of the user grants the
+		 *         service
+		 */
+		int modes(int userId, int serviceId) {
+			IdBitmap roles = userRoles.get(userId);
+			if (roles.isEmpty())
+				return 0;
+			IdBitmap authorized = policy.serviceRoles.get(serviceId);
+			if (authorized.isEmpty())
+				return 0;
+			int mode = 0;
+			for (int roleId : IdBitmap.and(policy.hierarchy.closure(roles), authorized).toArray())
+				mode |= policy.serviceForwardMap.get(SecRelSystem.serviceForwardRow(roleId, serviceId), 0);
+			return mode;
+		}
+
+		/**
+		 * Returns whether the shard owns the user.
+		 *
+		 * @param userId the id of the user
+		 * @return true if the requests of the user are routed to this shard
+		 */
+		boolean owns(int userId) {
+			return Math.floorMod(userId, shardCount) == index;
+		}
+
+		/**
+		 * Returns a new bitmap of the owned users holding a role authorized
+		 * for the service or a role inheriting one.
+		 *
+		 * @param serviceId the id of the service
+		 * @return the ids of the users
+		 */
+		IdBitmap permittedUsers(int serviceId) {
+			IdBitmap users = BitmapIndex.EMPTY;
+			for (int roleId : policy.serviceRoles.get(serviceId).toArray()) {
+				users = IdBitmap.or(users, roleMembers.get(roleId));
+				for (int seniorId : policy.hierarchy.seniors(roleId).toArray())
+					users = IdBitmap.or(users, roleMembers.get(seniorId));
+			}
+			return users;
+		}
+
+		/**
+		 * Reloads the roles of the changed users owned by the shard from a
+		 * version.
+		 *
+		 * @param policy the version
+		 * @param users the users whose roles changed
+		 */
+		void update(PolicyVersion policy, IdBitmap users) {
+			this.policy = policy;
+			for (int userId = users.nextId(0); userId >= 0; userId = users.nextId(userId + 1)) {
+				if (!owns(userId))
+					continue;
+				IdBitmap roles = policy.userRoles.get(userId);
+				for (int roleId : userRoles.get(userId).toArray())
+					if (!roles.contains(roleId)) {
+						userRoles.remove(userId, roleId);
+						roleMembers.remove(roleId, userId);
+					}
+				for (int roleId : roles.toArray())
+					if (userRoles.add(userId, roleId))
+						roleMembers.add(roleId, userId);
+			}
+		}
+	}
+
+	/**
+	 * The shards.
+	 */
+	private final Shard[] shards;
+
+	/**
+	 * Constructs an engine with one shard per available processor.
+	 */
+	public ShardedPolicyEngine() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs an engine with the specified number of shards. The shards
+	 * load the current version of the policy and follow every version
+	 * published until the engine is closed.
+	 *
+	 * @param shardCount the number of shards
+	 * @throws IllegalStateException if the calling thread is in the middle of
+	 *             a change
+	 */
+	public ShardedPolicyEngine(int shardCount) {
+		// check if shardCount is positive
+		if (shardCount < 1)
+			throw new IllegalArgumentException("Shard count must be positive.");
+		shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			String name = String.format("SecRel shard %d", i);
+			shards[i] = new Shard(i, shardCount, Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}));
+		}
+		try {
+			SecRelSystem.addEngine(this);
+		}
+		catch (RuntimeException e) {
+			for (Shard shard : shards)
+				shard.executor.shutdown();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops following the published versions and stops the shards. Requests
+	 * already routed are executed.
+	 */
+	@Override
+	public void close() {
+		SecRelSystem.removeEngine(this);
+		for (Shard shard : shards)
+			shard.executor.shutdown();
+	}
+
+	/**
+	 * Determines if the user may invoke the service, that is if its roles
+	 * grant {@link Right#INVOKE}, on the shard owning the user.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @return the future of the decision
+	 */
+	public CompletableFuture<Boolean> isPermitted(int userId, int serviceId) {
+		return isPermitted(userId, serviceId, Right.INVOKE);
+	}
+
+	/**
+	 * Determines if the user holds every mode of the specified mask for the
+	 * service on the shard owning the user.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param mode the requested modes, a mask of the constants of
+	 *            {@link Right}
+	 * @return the future of the decision
+	 */
+	public CompletableFuture<Boolean> isPermitted(int userId, int serviceId, int mode) {
+		// check if the mode is valid
+		if (mode == 0 || (mode & ~Right.ALL) != 0) {
+			CompletableFuture<Boolean> out = new CompletableFuture<>();
+			out.completeExceptionally(new IllegalArgumentException("Mode must be a non-empty mask of access types."));
+			return out;
+		}
+		Shard shard = shards[shard(userId)];
+		return CompletableFuture.supplyAsync(() -> {
+			return (shard.modes(userId, serviceId) & mode) == mode;
+		}, shard.executor);
+	}
+
+	/**
+	 * Attempts to invoke a service using the identity of the specified user.
+	 * The request is decided by the shard owning the user, which dispatches
+	 * the service if the roles of the user grant {@link Right#INVOKE}.
+	 *
+	 * @param userId the id of the user
+	 * @param serviceId the id of the service
+	 * @param argv an array of parameters
+	 * @param argm an map of parameters
+	 * @return the future of the handle of the service, null if the user may
+	 *         not invoke it
+	 * @see SecRelSystem#makeRequest(Integer, Integer, String[], Map)
+	 */
+	public CompletableFuture<Service.Handle> makeRequest(Integer userId, Integer serviceId, String[] argv,
+			Map<String, String> argm) {
+		CompletableFuture<Service.Handle> out = new CompletableFuture<>();
+		Service service;
+		try {
+			// check if a userId is null
+			if (userId == null)
+				// throw exception
+				throw new NullPointerException("User id cannot be null.");
+			if (!SecRelSystem.userIds.containsKey(userId))
+				throw new IllegalArgumentException("User with that id does not exist.");
+			// check if a serviceId is null
+			if (serviceId == null)
+				// throw exception
+				throw new NullPointerException("Service id cannot be null.");
+			service = SecRelSystem.serviceIds.get(serviceId);
+			if (service == null)
+				throw new IllegalArgumentException("Service with that id does not exist.");
+		}
+		catch (RuntimeException e) {
+			out.completeExceptionally(e);
+			return out;
+		}
+		Shard shard = shards[shard(userId)];
+		return CompletableFuture.supplyAsync(
+				() -> (shard.modes(userId, serviceId) & Right.INVOKE) != 0 ? service.invokeService(argv, argm) : null,
+				shard.executor);
+	}
+
+	/**
+	 * Returns the users assigned to the role, gathered from every shard.
+	 *
+	 * @param roleId the id of the role
+	 * @return the future of the ids of the users
+	 * @see Queries#members(int)
+	 */
+	public CompletableFuture<IdBitmap> members(int roleId) {
+		// check if role exists
+		if (!SecRelSystem.roleIds.containsKey(roleId)) {
+			CompletableFuture<IdBitmap> out = new CompletableFuture<>();
+			out.completeExceptionally(new IllegalArgumentException("Role with that id does not exist."));
+			return out;
+		}
+		return scatter(shard -> shard.members(roleId));
+	}
+
+	/**
+	 * Returns the users that may invoke the service, gathered from every
+	 * shard.
+	 *
+	 * @param serviceId the id of the service
+	 * @return the future of the ids of the users
+	 * @see Queries#permittedUsers(int)
+	 */
+	public CompletableFuture<IdBitmap> permittedUsers(int serviceId) {
+		// check if service exists
+		if (!SecRelSystem.serviceIds.containsKey(serviceId)) {
+			CompletableFuture<IdBitmap> out = new CompletableFuture<>();
+			out.completeExceptionally(new IllegalArgumentException("Service with that id does not exist."));
+			return out;
+		}
+		return scatter(shard -> shard.permittedUsers(serviceId));
+	}
+
+	/**
+	 * Sends a published version to every shard. This is called by the writer
+	 * of the SecRelSystem while it holds the write lock, so the shards receive
+	 * the versions in the order of publication.
+	 *
+	 * @param policy the version
+	 * @param users the users whose roles changed since the previous version,
+	 *            or null if the shards must reload every user
+	 */
+	void publish(PolicyVersion policy, IdBitmap users) {
+		for (Shard shard : shards)
+			if (users == null)
+				shard.executor.execute(() -> shard.load(policy));
+			else
+				shard.executor.execute(() -> shard.update(policy, users));
+	}
+
+	/**
+	 * Scatters a query over users to every shard and gathers the parts. The
+	 * query is scattered again until every shard answers from the same
+	 * version.
+	 *
+	 * @param query the owned users matching the query
+	 * @return the future of the users matching the query
+	 */
+	private CompletableFuture<IdBitmap> scatter(Function<Shard, IdBitmap> query) {
+		List<CompletableFuture<Part>> parts = new ArrayList<>(shards.length);
+		for (Shard shard : shards)
+			parts.add(CompletableFuture.supplyAsync(() -> new Part(shard.policy.version, query.apply(shard)),
+					shard.executor));
+		return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenCompose(done -> {
+			long version = parts.get(0).join().version;
+			IdBitmap users = BitmapIndex.EMPTY;
+			for (CompletableFuture<Part> part : parts) {
+				// check if a version was published while scattering
+				if (part.join().version != version)
+					return scatter(query);
+				users = IdBitmap.or(users, part.join().users);
+			}
+			return CompletableFuture.completedFuture(users);
+		});
+	}
+
+	/**
+	 * Returns the shard owning the user.
+	 *
+	 * @param userId the id of the user
+	 * @return the index of the shard
+	 */
+	int shard(int userId) {
+		return Math.floorMod(userId, shards.length);
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return the number of shards
+	 */
+	public int shardCount() {
+		return shards.length;
+	}
+
+}
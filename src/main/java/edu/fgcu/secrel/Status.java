@@ -0,0 +1,79 @@
+/**
+ * This file defines the Status enum. The Status enum is the outcome of the
+ * non-throwing mutation methods of the SecRelSystem.
+ */
+package edu.fgcu.secrel;
+
+/**
+ * <p>
+ * The Status enum reports the outcome of the tryX mutation methods, e.g.
+ * Users.tryCreateUser and Members.tryAssignRole. These methods are meant for
+ * loaders that expect many of their changes to be redundant: an expected
+ * failure is returned as a constant, so no message is built and no exception
+ * or stack trace is captured.
+ * </p>
+ * <p>
+ * Null arguments are programming errors rather than expected conditions and
+ * are still reported with a NullPointerException.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+public enum Status {
+
+	/**
+	 * The change was made.
+	 */
+	OK,
+
+	/**
+	 * The user does not exist.
+	 */
+	NO_SUCH_USER,
+
+	/**
+	 * The role does not exist.
+	 */
+	NO_SUCH_ROLE,
+
+	/**
+	 * The service does not exist.
+	 */
+	NO_SUCH_SERVICE,
+
+	/**
+	 * An entity with the name already exists.
+	 */
+	DUPLICATE_NAME,
+
+	/**
+	 * The assignment or authorization already exists.
+	 */
+	ALREADY_EXISTS,
+
+	/**
+	 * The assignment or authorization does not exist.
+	 */
+	NOT_FOUND,
+
+	/**
+	 * The role has as many members as its limit allows.
+	 */
+	ROLE_FULL,
+
+	/**
+	 * The change would violate a separation of duty constraint.
+	 */
+	CONFLICT;
+
+	/**
+	 * Returns whether the change was made.
+	 *
+	 * @return true if this is OK
+	 */
+	public boolean isOk() {
+		return this == Status.OK;
+	}
+
+}
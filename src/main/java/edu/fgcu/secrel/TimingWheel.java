@@ -0,0 +1,272 @@
+/**
+ * This file defines the TimingWheel class. The TimingWheel class schedules the
+ * expiry of mapping rows in a hierarchical timing wheel.
+ */
+package edu.fgcu.secrel;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * The TimingWheel class holds the pending expiries of the rows of one
+ * relation, e.g. the temporary role assignments. Time is divided into ticks
+ * and the wheel has four levels of 64 slots: the first level holds the rows
+ * expiring within 64 ticks, one slot per tick, and each further level holds
+ * 64 times the span of the previous one, one slot per span of the previous
+ * level. When the current tick completes a span, the slot of that span is
+ * emptied into the lower levels. Scheduling a row and firing it therefore
+ * cost a constant number of steps however many rows are pending, and a row
+ * is moved down at most three times. Rows expiring after the span of the
+ * whole wheel wait in the top level and are placed again each time it turns.
+ * </p>
+ * <p>
+ * A slot stores its rows and their ticks in two primitive arrays, so a
+ * pending expiry costs twelve bytes in its slot and one row of the tree
+ * mapping each row to its tick. The tree identifies the current expiry of a
+ * row: cancelling or rescheduling a row only updates the tree, and the
+ * entries left behind in the slots are dropped when they are reached.
+ * </p>
+ * <p>
+ * The SecRelSystem only changes a wheel while holding its write lock. The
+ * methods synchronize on the wheel, so the expiry of a row can be read
+ * without that lock and only waits for a change of the wheel itself, never
+ * for a whole write. The lock order is the write lock, then the wheel.
+ * </p>
+ *
+ * @author lngibson
+ *
+ */
+final class TimingWheel {
+
+	/**
+	 * The rows and ticks of one slot.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class Slot {
+
+		/**
+		 * The rows.
+		 */
+		long[] rows = new long[4];
+
+		/**
+		 * The ticks at which the rows expire.
+		 */
+		int[] ticks = new int[4];
+
+		/**
+		 * The number of entries.
+		 */
+		int size;
+
+		/**
+		 * Adds an entry.
+		 *
+		 * @param row the row
+		 * @param tick the tick at which it expires
+		 */
+		void add(long row, int tick) {
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+				ticks = Arrays.copyOf(ticks, size * 2);
+			}
+			rows[size] = row;
+			ticks[size++] = tick;
+		}
+	}
+
+	/**
+	 * The number of bits of a tick selecting the slot within a level.
+	 */
+	private static final int SLOT_BITS = 6;
+
+	/**
+	 * The number of slots of a level.
+	 */
+	private static final int SLOTS = 1 << TimingWheel.SLOT_BITS;
+
+	/**
+	 * The number of levels.
+	 */
+	private static final int LEVELS = 4;
+
+	/**
+	 * The slots of each level, created when first used.
+	 */
+	private final Slot[][] slots = new Slot[TimingWheel.LEVELS][TimingWheel.SLOTS];
+
+	/**
+	 * Maps each pending row to the tick at which it expires.
+	 */
+	private final LongBTree pending = new LongBTree(true);
+
+	/**
+	 * The time of tick 0 in milliseconds.
+	 */
+	private final long start;
+
+	/**
+	 * The length of a tick in milliseconds.
+	 */
+	private final long tickMillis;
+
+	/**
+	 * The last tick that has been fired.
+	 */
+	private int now = 0;
+
+	/**
+	 * Constructs an empty wheel.
+	 *
+	 * @param start the time of tick 0 in milliseconds
+	 * @param tickMillis the length of a tick in milliseconds
+	 */
+	TimingWheel(long start, long tickMillis) {
+		this.start = start;
+		this.tickMillis = tickMillis;
+	}
+
+	/**
+	 * Fires the rows expiring up to a time, in the order of their ticks.
+	 *
+	 * @param millis the time in milliseconds
+	 * @param expire receives each expiring row
+	 * @return the number of rows fired
+	 */
+	synchronized int advance(long millis, LongConsumer expire) {
+		long target = Math.min((millis - start) / tickMillis, Integer.MAX_VALUE);
+		int fired = 0;
+		while (now < target) {
+			now++;
+			// empty the slots whose span starts at this tick, highest first
+			for (int level = TimingWheel.LEVELS - 1; level > 0; level--)
+				if ((now & (1 << TimingWheel.SLOT_BITS * level) - 1) == 0)
+					cascade(level, now >>> TimingWheel.SLOT_BITS * level & TimingWheel.SLOTS - 1);
+			Slot slot = slots[0][now & TimingWheel.SLOTS - 1];
+			if (slot == null || slot.size == 0)
+				continue;
+			slots[0][now & TimingWheel.SLOTS - 1] = null;
+			for (int i = 0; i < slot.size; i++)
+				if (pending.get(slot.rows[i], -1) == slot.ticks[i]) {
+					pending.remove(slot.rows[i]);
+					expire.accept(slot.rows[i]);
+					fired++;
+				}
+		}
+		return fired;
+	}
+
+	/**
+	 * Cancels the expiry of a row.
+	 *
+	 * @param row the row
+	 * @return true if the row was pending
+	 */
+	synchronized boolean cancel(long row) {
+		return !pending.isEmpty() && pending.remove(row);
+	}
+
+	/**
+	 * Returns the pending rows and the times at which they expire, in the
+	 * order of the rows.
+	 *
+	 * @return the rows, each followed by its time in milliseconds
+	 */
+	synchronized long[] entries() {
+		long[] entries = new long[2 * pending.size()];
+		int i = 0;
+		for (RowStore.Cursor c = pending.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			entries[i++] = c.key();
+			entries[i++] = start + c.value() * tickMillis;
+		}
+		return entries;
+	}
+
+	/**
+	 * Returns the time at which a row expires.
+	 *
+	 * @param row the row
+	 * @return the time in milliseconds, rounded up to a tick, or -1 if the row
+	 *         is not pending
+	 */
+	synchronized long expiry(long row) {
+		int tick = pending.get(row, -1);
+		return tick < 0 ? -1 : start + tick * tickMillis;
+	}
+
+	/**
+	 * Returns whether no row is pending.
+	 *
+	 * @return true if no row is pending
+	 */
+	synchronized boolean isEmpty() {
+		return pending.isEmpty();
+	}
+
+	/**
+	 * Schedules the expiry of a row, replacing its current expiry if it has
+	 * one. A time that has passed expires the row on the next tick.
+	 *
+	 * @param row the row
+	 * @param millis the time in milliseconds
+	 */
+	synchronized void schedule(long row, long millis) {
+		long ticks = (millis - start + tickMillis - 1) / tickMillis;
+		int tick = (int) Math.max(now + 1L, Math.min(ticks, Integer.MAX_VALUE));
+		if (!pending.set(row, tick))
+			pending.add(row, tick);
+		place(row, tick);
+	}
+
+	/**
+	 * Returns the number of pending rows.
+	 *
+	 * @return the number of rows
+	 */
+	synchronized int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Moves the entries of a slot to the lower levels, dropping those that
+	 * were cancelled or rescheduled.
+	 *
+	 * @param level the level of the slot
+	 * @param index the index of the slot
+	 */
+	private void cascade(int level, int index) {
+		Slot slot = slots[level][index];
+		if (slot == null)
+			return;
+		slots[level][index] = null;
+		for (int i = 0; i < slot.size; i++)
+			if (pending.get(slot.rows[i], -1) == slot.ticks[i])
+				place(slot.rows[i], slot.ticks[i]);
+	}
+
+	/**
+	 * Adds an entry to the slot of the lowest level whose span holds its
+	 * tick.
+	 *
+	 * @param row the row
+	 * @param tick the tick at which it expires, not before the current tick
+	 */
+	private void place(long row, int tick) {
+		long delta = (long) tick - now;
+		int level = 0;
+		while (level < TimingWheel.LEVELS - 1 && delta >= 1L << TimingWheel.SLOT_BITS * (level + 1))
+			level++;
+		// beyond the span of the wheel, wait for the top level to turn
+		int index = delta >= 1L << TimingWheel.SLOT_BITS * TimingWheel.LEVELS
+				? now >>> TimingWheel.SLOT_BITS * level & TimingWheel.SLOTS - 1
+				: tick >>> TimingWheel.SLOT_BITS * level & TimingWheel.SLOTS - 1;
+		Slot slot = slots[level][index];
+		if (slot == null)
+			slot = slots[level][index] = new Slot();
+		slot.add(row, tick);
+	}
+
+}
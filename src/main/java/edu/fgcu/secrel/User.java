@@ -4,7 +4,7 @@
  */
 package edu.fgcu.secrel;
 
-import java.util.Set;
+import java.util.NavigableSet;
 
 /**
  * The User class provides a means of querying the System about a specific user.
@@ -65,12 +65,13 @@ public class User implements Entity, Comparable<User> {
 	}
 	
 	/**
-	 * Returns the roles to which this User is assigned.
+	 * Returns the roles to which this User is assigned as a live, read only
+	 * view.
 	 *
 	 * @return the roles to which this User is assigned
 	 */
-	public Set<Role> getRoles() {
-		throw new RuntimeException("not implemented");
+	public NavigableSet<Role> getRoles() {
+		return Members.getRoles(id);
 	}
 	
 	@Override
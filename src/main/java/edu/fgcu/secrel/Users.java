@@ -22,22 +22,29 @@ public class Users {
 	 * @return a User instance representing the new user
 	 */
 	public static User createUser(String name) {
-		// check if a name is null
-		if (name == null)
-		    // throw exception
-		    throw new NullPointerException("User name cannot be null.");
-		// check if a user with that name already exists
-		if (SecRelSystem.userNames.containsKey(name))
-		    // throw exception
-		    throw new IllegalArgumentException(
-		            String.format("A User with the name \"%s\" already exists. User(%d,\"%s\")", name,
-		                    SecRelSystem.userNames.get(name), name));
-		// compute new userId
-		Integer id = SecRelSystem.userIds.isEmpty() ? 0 : SecRelSystem.userIds.lastKey() + 1;
-		// add user to system
-		SecRelSystem.userIds.put(id, name);
-		SecRelSystem.userNames.put(name, id);
-		return new User(id);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a name is null
+			if (name == null)
+			    // throw exception
+			    throw new NullPointerException("User name cannot be null.");
+			// check if a user with that name already exists
+			if (SecRelSystem.userNames.containsKey(name))
+			    // throw exception
+			    throw new IllegalArgumentException(
+			            String.format("A User with the name \"%s\" already exists. User(%d,\"%s\")", name,
+			                    SecRelSystem.userNames.get(name), name));
+			// compute new userId
+			Integer id = SecRelSystem.userIds.allocate();
+			// add user to system
+			User user = new User(id);
+			SecRelSystem.userIds.put(id, user);
+			SecRelSystem.userNames.put(name, id);
+			return user;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -100,18 +107,26 @@ public class Users {
 	 * @param userId the id of the user
 	 */
 	public static void removeUser(Integer userId) {
-		// check if a userId is null
-		if (userId == null)
-		    // throw exception
-		    throw new NullPointerException("User id cannot be null.");
-		// check if user exists
-		if (!SecRelSystem.userIds.containsKey(userId))
-			throw new IllegalArgumentException("User does not exist.");
-		// clear user role assignments
-		SecRelSystem.clearUserRoles(userId);
-		// remove role from system
-		SecRelSystem.userNames.remove(SecRelSystem.userIds.get(userId));
-		SecRelSystem.userIds.remove(userId);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a userId is null
+			if (userId == null)
+			    // throw exception
+			    throw new NullPointerException("User id cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userIds.containsKey(userId))
+				throw new IllegalArgumentException("User does not exist.");
+			// close user sessions
+			SecRelSystem.clearUserSessions(userId);
+			// clear user role assignments
+			SecRelSystem.clearUserRoles(userId);
+			// remove role from system
+			SecRelSystem.userNames.remove(SecRelSystem.userNames.name(userId));
+			SecRelSystem.userIds.remove(userId);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -120,19 +135,27 @@ public class Users {
 	 * @param userName the string of the user
 	 */
 	public static void removeUser(String userName) {
-		// check if a userName is null
-		if (userName == null)
-		    // throw exception
-		    throw new NullPointerException("User name cannot be null.");
-		// check if user exists
-		if (!SecRelSystem.userNames.containsKey(userName))
-			throw new IllegalArgumentException("User does not exist.");
-		Integer userId = SecRelSystem.userNames.get(userName);
-		// clear user role assignments
-		SecRelSystem.clearUserRoles(userId);
-		// remove role from system
-		SecRelSystem.userIds.remove(userId);
-		SecRelSystem.userNames.remove(userName);
+		SecRelSystem.beginWrite();
+		try {
+			// check if a userName is null
+			if (userName == null)
+			    // throw exception
+			    throw new NullPointerException("User name cannot be null.");
+			// check if user exists
+			if (!SecRelSystem.userNames.containsKey(userName))
+				throw new IllegalArgumentException("User does not exist.");
+			Integer userId = SecRelSystem.userNames.get(userName);
+			// close user sessions
+			SecRelSystem.clearUserSessions(userId);
+			// clear user role assignments
+			SecRelSystem.clearUserRoles(userId);
+			// remove role from system
+			SecRelSystem.userIds.remove(userId);
+			SecRelSystem.userNames.remove(userName);
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
 	}
 
 	/**
@@ -149,6 +172,37 @@ public class Users {
 		removeUser(user.getId());
 	}
 
+	/**
+	 * Creates a new user with the specified name unless the name is taken.
+	 * Unlike {@link #createUser(String)}, this method reports a taken name
+	 * with a status instead of an exception. The id of the new user can be
+	 * found by its name.
+	 *
+	 * @param name the name of the new user
+	 * @return OK or DUPLICATE_NAME
+	 */
+	public static Status tryCreateUser(String name) {
+		SecRelSystem.beginWrite();
+		try {
+			// check if a name is null
+			if (name == null)
+			    // throw exception
+			    throw new NullPointerException("User name cannot be null.");
+			// check if a user with that name already exists
+			if (SecRelSystem.userNames.containsKey(name))
+				return Status.DUPLICATE_NAME;
+			// compute new userId
+			Integer id = SecRelSystem.userIds.allocate();
+			// add user to system
+			SecRelSystem.userIds.put(id, new User(id));
+			SecRelSystem.userNames.put(name, id);
+			return Status.OK;
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+	}
+
 	/**
 	 * Prevents instantiation of the Users class.
 	 */
@@ -0,0 +1,199 @@
+/*
+ * This file defines the tests of access types as mode masks.
+ */
+package edu.fgcu.secrel;
+
+import java.util.HashMap;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The AccessModeTest class tests that the modes of a permission are the OR of
+ * the access types of the authorizations granting it and that they follow
+ * changes to the assignments, authorizations and hierarchy.
+ *
+ * @author lngibson
+ *
+ */
+public class AccessModeTest {
+
+	/**
+	 * Checks the bits of a right.
+	 */
+	@Test
+	public void testCheckRights() {
+		Right right = new Right(0, 0, Right.INVOKE | Right.READ_RESULT);
+		Assert.assertTrue(right.checkRights());
+		Assert.assertTrue(right.checkRights(Right.READ_RESULT));
+		Assert.assertTrue(right.checkRights(Right.INVOKE | Right.READ_RESULT));
+		Assert.assertFalse(right.checkRights(Right.INVOKE | Right.ADMINISTER));
+		Assert.assertFalse(new Right(0, 0, Right.STREAM_INPUT).checkRights());
+	}
+
+	/**
+	 * Checks that authorizations with an empty or unknown access type are
+	 * refused.
+	 */
+	@Test
+	public void testInvalidAccessType() {
+		Role role = Roles.createRole("mode_invalid");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			for (int accessType : new int[] { 0, Right.ALL + 1, -1 }) {
+				try {
+					Authorizations.authorizeRole(role.getId(), service.getId(), accessType);
+					Assert.fail("The access type " + accessType + " was accepted");
+				}
+				catch (IllegalArgumentException e) {
+					// expected
+				}
+				try {
+					Authorizations.authorizeRole(role, service, accessType);
+					Assert.fail("The access type " + accessType + " was accepted");
+				}
+				catch (IllegalArgumentException e) {
+					// expected
+				}
+				try {
+					Authorizations.tryAuthorizeRole(role.getId(), service.getId(), accessType);
+					Assert.fail("The access type " + accessType + " was accepted");
+				}
+				catch (IllegalArgumentException e) {
+					// expected
+				}
+			}
+			Assert.assertFalse(Authorizations.isAuthorizedFor(role.getId(), service.getId()));
+		}
+		finally {
+			Roles.removeRole("mode_invalid");
+			Services.removeService(service);
+		}
+	}
+
+	/**
+	 * Authorizes a role to read the results of a service but not to invoke it
+	 * and checks that every invocation path denies its members.
+	 *
+	 * @throws Exception if a future fails unexpectedly
+	 */
+	@Test
+	public void testInvokeRequired() throws Exception {
+		Role role = Roles.createRole("mode_reader_only");
+		User user = Users.createUser("mode_reader_user");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		ShardedPolicyEngine engine = new ShardedPolicyEngine(2);
+		try {
+			int userId = user.getId();
+			int serviceId = service.getId();
+			Authorizations.authorizeRole(role.getId(), serviceId, Right.READ_RESULT);
+			Members.assignRole(userId, role.getId());
+			Assert.assertTrue(Authorizations.isPermitted(userId, serviceId, Right.READ_RESULT));
+			Assert.assertFalse(Authorizations.isPermitted(userId, serviceId));
+			Assert.assertNull(SecRelSystem.makeRequest(userId, serviceId));
+			Assert.assertNull(SecRelSystem.makeRequest(userId, serviceId, Right.READ_RESULT, new String[0],
+					new HashMap<String, String>()));
+			Session session = Sessions.createSession(userId, role.getId());
+			Assert.assertFalse(Sessions.isPermitted(session, serviceId));
+			Assert.assertNull(SecRelSystem.makeRequest(session, serviceId));
+			Assert.assertFalse(engine.isPermitted(userId, serviceId).get(5, TimeUnit.SECONDS));
+			Assert.assertNull(engine.makeRequest(userId, serviceId, new String[0], new HashMap<String, String>())
+					.get(5, TimeUnit.SECONDS));
+			try {
+				SecRelSystem.makeRequestAsync(userId, serviceId, new String[0], new HashMap<String, String>())
+						.toCompletableFuture().get(5, TimeUnit.SECONDS);
+				Assert.fail("A request without the invoke mode was dispatched");
+			}
+			catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof SecurityException);
+			}
+		}
+		finally {
+			engine.close();
+			Roles.removeRole("mode_reader_only");
+			Users.removeUser("mode_reader_user");
+			Services.removeService(service);
+		}
+	}
+
+	/**
+	 * Authorizes two roles of a user with different modes and checks the
+	 * modes of the user as the roles, their authorizations and the hierarchy
+	 * change.
+	 */
+	@Test
+	public void testModes() {
+		Role reader = Roles.createRole("mode_reader");
+		Role writer = Roles.createRole("mode_writer");
+		Role admin = Roles.createRole("mode_admin");
+		User user = Users.createUser("mode_user");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			int userId = user.getId();
+			int serviceId = service.getId();
+			Authorizations.authorizeRole(reader.getId(), serviceId, Right.INVOKE | Right.READ_RESULT);
+			Authorizations.authorizeRole(writer.getId(), serviceId, Right.STREAM_INPUT);
+			Authorizations.authorizeRole(admin.getId(), serviceId, Right.ADMINISTER);
+			Members.assignRole(userId, reader.getId());
+			Members.assignRole(userId, writer.getId());
+			Assert.assertTrue(Authorizations.isPermitted(userId, serviceId, Right.INVOKE | Right.STREAM_INPUT));
+			Assert.assertTrue(Authorizations.isPermitted(userId, serviceId, Right.READ_RESULT));
+			Assert.assertFalse(Authorizations.isPermitted(userId, serviceId, Right.ADMINISTER));
+			Assert.assertNull(SecRelSystem.makeRequest(userId, serviceId, Right.ADMINISTER, new String[0],
+					new HashMap<String, String>()));
+			// an inherited authorization adds its modes
+			Roles.addInheritance(writer.getId(), admin.getId());
+			Assert.assertTrue(Authorizations.isPermitted(userId, serviceId, Right.ALL));
+			SecRelSystemDebuggingUtil.verify();
+			Roles.removeInheritance(writer.getId(), admin.getId());
+			Assert.assertFalse(Authorizations.isPermitted(userId, serviceId, Right.ADMINISTER));
+			// unassigning a role removes only the modes no other role grants
+			Members.unassignRole(userId, writer.getId());
+			Assert.assertFalse(Authorizations.isPermitted(userId, serviceId, Right.STREAM_INPUT));
+			Assert.assertTrue(Authorizations.isPermitted(userId, serviceId, Right.INVOKE | Right.READ_RESULT));
+			// changing the access type of an authorization changes the modes
+			Authorizations.setAccessType(reader.getId(), serviceId, Right.INVOKE);
+			Assert.assertFalse(Authorizations.isPermitted(userId, serviceId, Right.READ_RESULT));
+			Assert.assertTrue(Authorizations.isPermitted(userId, serviceId, Right.INVOKE));
+			Assert.assertEquals(Right.INVOKE,
+					Authorizations.getRoleRights(reader.getId()).iterator().next().getAccessType());
+			try {
+				Authorizations.setAccessType(reader.getId(), serviceId, 0);
+				Assert.fail("An empty access type was accepted");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+			SecRelSystemDebuggingUtil.verify();
+			SecRelSystem.removeAuthorization(reader.getId(), serviceId);
+			Assert.assertFalse(Authorizations.isPermitted(userId, serviceId));
+			try {
+				Authorizations.setAccessType(reader.getId(), serviceId, Right.INVOKE);
+				Assert.fail("The access type of a missing authorization was changed");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+			try {
+				Authorizations.isPermitted(userId, serviceId, 0);
+				Assert.fail("An empty mode was accepted");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("mode_reader");
+			Roles.removeRole("mode_writer");
+			Roles.removeRole("mode_admin");
+			Users.removeUser("mode_user");
+			Services.removeService(service);
+		}
+	}
+
+}
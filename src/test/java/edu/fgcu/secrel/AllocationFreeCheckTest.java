@@ -0,0 +1,155 @@
+/*
+ * This file defines the tests of the primitive authorization checks.
+ */
+package edu.fgcu.secrel;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The AllocationFreeCheckTest class tests that the primitive authorization
+ * checks agree with the boxed checks and allocate nothing once warmed up.
+ *
+ * @author lngibson
+ *
+ */
+public class AllocationFreeCheckTest {
+
+	/**
+	 * The number of checks of each kind per measurement.
+	 */
+	private static final int CHECKS = 200_000;
+
+	/**
+	 * The allocated bytes tolerated per measurement for the bookkeeping of the
+	 * measurement itself.
+	 */
+	private static final long SLACK = 1024;
+
+	/**
+	 * The assigned user.
+	 */
+	private User user;
+
+	/**
+	 * The user assigned to no role.
+	 */
+	private User stranger;
+
+	/**
+	 * The role authorized to invoke the service.
+	 */
+	private Role role;
+
+	/**
+	 * The service.
+	 */
+	private Service service;
+
+	/**
+	 * Creates the users, the role and the service.
+	 */
+	@Before
+	public void setUp() {
+		user = Users.createUser("fast_user");
+		stranger = Users.createUser("fast_stranger");
+		role = Roles.createRole("fast_role");
+		service = new AccumulatorService();
+		Services.registerService(service);
+		Authorizations.authorizeRole(role, service, Right.INVOKE);
+		Members.assignRole(user, role);
+	}
+
+	/**
+	 * Removes the users, the role and the service.
+	 */
+	@After
+	public void tearDown() {
+		Services.removeService(service.getId());
+		Roles.removeRole(role);
+		Users.removeUser(user);
+		Users.removeUser(stranger);
+	}
+
+	/**
+	 * Checks that the primitive checks agree with the boxed checks and reject
+	 * unknown ids.
+	 */
+	@Test
+	public void testDecisions() {
+		int u = user.getId(), s = stranger.getId(), r = role.getId(), v = service.getId();
+		Assert.assertTrue(Members.isMemberOf(u, r));
+		Assert.assertFalse(Members.isMemberOf(s, r));
+		Assert.assertTrue(Authorizations.isAuthorizedFor(r, v));
+		Assert.assertTrue(Authorizations.isPermitted(u, v));
+		Assert.assertFalse(Authorizations.isPermitted(s, v));
+		Members.unassignRole(user, role);
+		Assert.assertFalse(Members.isMemberOf(u, r));
+		Assert.assertFalse(Authorizations.isPermitted(u, v));
+		Members.assignRole(user, role);
+		Assert.assertTrue(Authorizations.isPermitted(u, v));
+		try {
+			Authorizations.isPermitted(-1, v);
+			Assert.fail("An unknown user was accepted");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			Authorizations.isAuthorizedFor(r, Integer.MAX_VALUE);
+			Assert.fail("An unknown service was accepted");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Checks that the primitive checks allocate nothing once warmed up.
+	 */
+	@Test
+	public void testNoAllocation() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+		int u = user.getId(), s = stranger.getId(), r = role.getId(), v = service.getId();
+		// warm up and keep the results so the checks are not eliminated
+		int granted = checks(u, s, r, v) + checks(u, s, r, v);
+		long before = threads.getThreadAllocatedBytes(thread);
+		granted += checks(u, s, r, v);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		Assert.assertEquals(9 * AllocationFreeCheckTest.CHECKS, granted);
+		Assert.assertTrue("Allocated " + allocated + " bytes", allocated < AllocationFreeCheckTest.SLACK);
+	}
+
+	/**
+	 * Runs each primitive check repeatedly.
+	 *
+	 * @param u the id of the assigned user
+	 * @param s the id of the unassigned user
+	 * @param r the id of the role
+	 * @param v the id of the service
+	 * @return the number of granted checks
+	 */
+	private static int checks(int u, int s, int r, int v) {
+		int granted = 0;
+		for (int i = 0; i < AllocationFreeCheckTest.CHECKS; i++) {
+			if (Authorizations.isPermitted(u, v))
+				granted++;
+			if (Authorizations.isPermitted(s, v))
+				granted++;
+			if (Members.isMemberOf(u, r))
+				granted++;
+			if (Authorizations.isAuthorizedFor(r, v))
+				granted++;
+		}
+		return granted;
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * This file defines the tests of the asynchronous requests of the SecRelSystem.
+ */
+package edu.fgcu.secrel;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+/**
+ * The AsyncRequestTest class tests that asynchronous requests are authorized,
+ * dispatched and denied without blocking the caller.
+ *
+ * @author lngibson
+ *
+ */
+public class AsyncRequestTest {
+
+	/**
+	 * A service returning its parameters joined by spaces.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class EchoService extends Service {
+
+		@Override
+		public String getName() {
+			return "edu.fgcu.secrel.AsyncRequestTest.Echo";
+		}
+
+		@Override
+		protected void invokeServiceInner(Handle handle, String[] argv, Map<String, String> argm) {
+			byte[] result = String.join(" ", argv).getBytes(StandardCharsets.UTF_8);
+			Service.result(handle, new ByteArrayInputStream(result), result.length);
+		}
+
+		@Override
+		public void processRequest() {
+			// nothing to process
+		}
+	}
+
+	/**
+	 * The user assigned to the role.
+	 */
+	private User user;
+
+	/**
+	 * The user assigned to no role.
+	 */
+	private User stranger;
+
+	/**
+	 * The role authorized to invoke the service.
+	 */
+	private Role role;
+
+	/**
+	 * The echo service.
+	 */
+	private Service service;
+
+	/**
+	 * Creates the users, the role and the service.
+	 */
+	@Before
+	public void setUp() {
+		user = Users.createUser("async_user");
+		stranger = Users.createUser("async_stranger");
+		role = Roles.createRole("async_role");
+		service = new EchoService();
+		Services.registerService(service);
+		Authorizations.authorizeRole(role, service, Right.INVOKE);
+		Members.assignRole(user, role);
+	}
+
+	/**
+	 * Removes the users, the role and the service.
+	 */
+	@After
+	public void tearDown() {
+		Services.removeService(service.getId());
+		Roles.removeRole(role);
+		Users.removeUser(user);
+		Users.removeUser(stranger);
+	}
+
+	/**
+	 * Checks that an authorized request completes with a handle whose service
+	 * runs to completion.
+	 *
+	 * @throws Exception if the request fails
+	 */
+	@Test
+	public void testAuthorized() throws Exception {
+		Service.Handle handle = SecRelSystem
+				.makeRequestAsync(user.getId(), service.getId(), new String[] { "hello", "world" }, new HashMap<>())
+				.toCompletableFuture().get(5, TimeUnit.SECONDS);
+		handle.join(5000);
+		Assert.assertEquals(Service.Handle.COMPLETED, handle.state());
+		Assert.assertEquals("hello world", handle.stringResult());
+	}
+
+	/**
+	 * Checks that denied and invalid requests complete exceptionally.
+	 *
+	 * @throws Exception if the request does not fail as expected
+	 */
+	@Test
+	public void testDenied() throws Exception {
+		AsyncRequestTest.assertFailsWith(SecurityException.class,
+				SecRelSystem.makeRequestAsync(stranger.getId(), service.getId(), new String[0], new HashMap<>()));
+		AsyncRequestTest.assertFailsWith(IllegalArgumentException.class,
+				SecRelSystem.makeRequestAsync(user.getId(), -1, new String[0], new HashMap<>()));
+		AsyncRequestTest.assertFailsWith(NullPointerException.class,
+				SecRelSystem.makeRequestAsync(null, service.getId(), new String[0], new HashMap<>()));
+	}
+
+	/**
+	 * Checks that waiting for a service that never completes returns once the
+	 * timeout elapses and, when interrupted, keeps the interrupt.
+	 */
+	@Test
+	public void testJoinTimeout() {
+		Service.Handle handle = service.new Handle();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 20; i++)
+			handle.join(1);
+		handle.join(50);
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		Thread.currentThread().interrupt();
+		handle.join(5000);
+		Assert.assertTrue(Thread.interrupted());
+		Assert.assertNotEquals(Service.Handle.COMPLETED, handle.state());
+	}
+
+	/**
+	 * Waits for a stage and checks that it failed with the expected exception.
+	 *
+	 * @param type the type of the expected exception
+	 * @param stage the stage
+	 * @throws Exception if waiting fails
+	 */
+	private static void assertFailsWith(Class<? extends Throwable> type, CompletionStage<?> stage)
+			throws Exception {
+		try {
+			stage.toCompletableFuture().get(5, TimeUnit.SECONDS);
+			Assert.fail("The request did not fail");
+		}
+		catch (ExecutionException e) {
+			Assert.assertEquals(type, e.getCause().getClass());
+		}
+	}
+
+}
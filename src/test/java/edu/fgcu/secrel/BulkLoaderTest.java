@@ -0,0 +1,199 @@
+/*
+ * This file defines the tests of the BulkLoader class.
+ */
+package edu.fgcu.secrel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * The BulkLoaderTest class tests that bulk loaded relations answer the same
+ * queries as relations built by single changes and that a failed load leaves
+ * the system unchanged.
+ *
+ * @author lngibson
+ *
+ */
+public class BulkLoaderTest {
+
+	/**
+	 * The directory of the files.
+	 */
+	private Path directory;
+
+	/**
+	 * Creates the directory of the files and checks that the system has no
+	 * relations left by other tests.
+	 *
+	 * @throws IOException if the directory cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		PolicyVersion policy = SecRelSystem.policy();
+		Assume.assumeTrue(policy.memberForwardMap.isEmpty() && policy.serviceForwardMap.isEmpty());
+		directory = Files.createTempDirectory("bulk");
+	}
+
+	/**
+	 * Deletes the files.
+	 *
+	 * @throws IOException if a file cannot be deleted
+	 */
+	@After
+	public void tearDown() throws IOException {
+		if (directory == null)
+			return;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files)
+				Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Writes a file.
+	 *
+	 * @param name the name of the file
+	 * @param lines the lines
+	 * @return the path of the file
+	 * @throws IOException if the file cannot be written
+	 */
+	private Path write(String name, List<String> lines) throws IOException {
+		return Files.write(directory.resolve(name), lines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks that a load giving a user two roles of a static constraint,
+	 * directly or through an inherited role, fails and installs no relation.
+	 *
+	 * @throws IOException if a file cannot be read
+	 */
+	@Test
+	public void testConflicts() throws IOException {
+		Role initiator = Roles.createRole("bulk_pi");
+		Role approver = Roles.createRole("bulk_pa");
+		Role manager = Roles.createRole("bulk_mgr");
+		try {
+			Constraints.createStaticConstraint("bulk_payments", initiator.getId(), approver.getId());
+			Roles.addInheritance(manager.getId(), approver.getId());
+			Path users = write("users", Arrays.asList("bulk_eve", "bulk_bob"));
+			for (String role : new String[] { "bulk_pa", "bulk_mgr" }) {
+				Path members = write("members",
+						Arrays.asList("bulk_bob\tbulk_pi", "bulk_eve\tbulk_pi", "bulk_eve\t" + role));
+				try {
+					BulkLoader.load(users, null, null, members, null);
+					Assert.fail("Conflicting roles were loaded through " + role);
+				}
+				catch (IllegalStateException e) {
+					Assert.assertTrue(e.getMessage(), e.getMessage().contains("bulk_eve"));
+				}
+				Assert.assertFalse(Users.hasUser("bulk_eve"));
+				Assert.assertTrue(SecRelSystem.policy().memberForwardMap.isEmpty());
+			}
+		}
+		finally {
+			Roles.removeRole("bulk_pi");
+			Roles.removeRole("bulk_pa");
+			Roles.removeRole("bulk_mgr");
+		}
+	}
+
+	/**
+	 * Loads users, roles, a service and their relations, including duplicate
+	 * lines, and checks them with the queries.
+	 *
+	 * @throws IOException if a file cannot be read
+	 */
+	@Test
+	public void testLoad() throws IOException {
+		List<String> users = new ArrayList<>(), roles = new ArrayList<>(), members = new ArrayList<>();
+		users.add("# users");
+		for (int u = 0; u < 3000; u++)
+			users.add("bulk_user" + u);
+		for (int r = 0; r < 40; r++)
+			roles.add("bulk_role" + r);
+		for (int u = 0; u < 3000; u++)
+			for (int r = u % 7; r < 40; r += 7)
+				members.add("bulk_user" + u + "\tbulk_role" + r);
+		members.add("");
+		members.add("bulk_user0\tbulk_role0");
+		List<String> authorizations = Arrays.asList("bulk_role0\tedu.fgcu.secrel.toy.Accumulator\t3",
+				"bulk_role0\tedu.fgcu.secrel.toy.Accumulator\t3");
+		BulkLoader.Counts counts = BulkLoader.load(write("users", users), write("roles", roles),
+				write("services", Collections.singletonList("edu.fgcu.secrel.toy.AccumulatorService")),
+				write("members", members), write("authorizations", authorizations));
+		try {
+			Assert.assertEquals(3000, counts.users);
+			Assert.assertEquals(40, counts.roles);
+			Assert.assertEquals(1, counts.services);
+			Assert.assertEquals(members.size() - 2, counts.memberships);
+			Assert.assertEquals(1, counts.authorizations);
+			Assert.assertTrue(Members.isMemberOf("bulk_user8", "bulk_role15"));
+			Assert.assertFalse(Members.isMemberOf("bulk_user8", "bulk_role14"));
+			Assert.assertEquals(3000 / 7 + 1, Members.getMembers(Roles.findRole("bulk_role0").getId()).size());
+			int serviceId = SecRelSystem.serviceNames.get("edu.fgcu.secrel.toy.Accumulator");
+			Assert.assertTrue(Authorizations.isPermitted(Users.findUser("bulk_user7").getId(), serviceId));
+			Assert.assertFalse(Authorizations.isPermitted(Users.findUser("bulk_user8").getId(), serviceId));
+			Assert.assertEquals(3, Authorizations.getRoleRights(Roles.findRole("bulk_role0").getId()).iterator()
+					.next().getAccessType());
+		}
+		finally {
+			Services.removeService("edu.fgcu.secrel.toy.Accumulator");
+			for (String role : roles)
+				Roles.removeRole(role);
+			for (String user : users.subList(1, users.size()))
+				Users.removeUser(user);
+		}
+	}
+
+	/**
+	 * Checks that a load failing on an invalid access type reports its line
+	 * and removes the entities it created.
+	 *
+	 * @throws IOException if a file cannot be read
+	 */
+	@Test
+	public void testInvalidAccessType() throws IOException {
+		Path roles = write("roles", Arrays.asList("bulk_r"));
+		Path services = write("services", Collections.singletonList("edu.fgcu.secrel.toy.AccumulatorService"));
+		Path authorizations = write("authorizations",
+				Arrays.asList("bulk_r\tedu.fgcu.secrel.toy.Accumulator\t" + (Right.ALL + 1)));
+		try {
+			BulkLoader.load(null, roles, services, null, authorizations);
+			Assert.fail("An invalid access type was accepted");
+		}
+		catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("authorizations:1: "));
+		}
+		Assert.assertFalse(Roles.hasRole("bulk_r"));
+		Assert.assertTrue(SecRelSystem.policy().serviceForwardMap.isEmpty());
+	}
+
+	/**
+	 * Checks that a load failing on an unknown name removes the entities it
+	 * created and installs no relation.
+	 *
+	 * @throws IOException if a file cannot be read
+	 */
+	@Test
+	public void testRollback() throws IOException {
+		Path users = write("users", Arrays.asList("bulk_a", "bulk_b"));
+		Path roles = write("roles", Arrays.asList("bulk_r"));
+		Path members = write("members", Arrays.asList("bulk_a\tbulk_r", "bulk_c\tbulk_r"));
+		try {
+			BulkLoader.load(users, roles, null, members, null);
+			Assert.fail("An unknown user was accepted");
+		}
+		catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("members:2: "));
+		}
+		Assert.assertFalse(Users.hasUser("bulk_a"));
+		Assert.assertFalse(Roles.hasRole("bulk_r"));
+		Assert.assertTrue(SecRelSystem.policy().memberForwardMap.isEmpty());
+	}
+
+}
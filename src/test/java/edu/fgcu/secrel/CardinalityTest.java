@@ -0,0 +1,119 @@
+/*
+ * This file defines the tests of the maintained counts and role limits.
+ */
+package edu.fgcu.secrel;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The CardinalityTest class tests that the member, role and authorization
+ * counts follow the relations and that role limits are enforced.
+ *
+ * @author lngibson
+ *
+ */
+public class CardinalityTest {
+
+	/**
+	 * Assigns, unassigns and authorizes and checks the counts after each
+	 * change.
+	 */
+	@Test
+	public void testCounts() {
+		Role a = Roles.createRole("count_a");
+		Role b = Roles.createRole("count_b");
+		User x = Users.createUser("count_x");
+		User y = Users.createUser("count_y");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			Assert.assertEquals(0, Members.countMembers(a.getId()));
+			Members.assignRole(x.getId(), a.getId());
+			Members.assignRole(y.getId(), a.getId());
+			Members.assignRole(x.getId(), b.getId());
+			Assert.assertEquals(2, Members.countMembers(a.getId()));
+			Assert.assertArrayEquals(new int[] { 2, 1 }, Members.countMembers(new int[] { a.getId(), b.getId() }));
+			Assert.assertEquals(2, Members.countRoles(x.getId()));
+			Assert.assertEquals(1, Members.countRoles(y.getId()));
+			Members.unassignRole(x.getId(), a.getId());
+			Assert.assertEquals(1, Members.countMembers(a.getId()));
+			Assert.assertEquals(1, Members.countRoles(x.getId()));
+			Assert.assertEquals(0, Authorizations.countAuthorizedRoles(service.getId()));
+			Authorizations.authorizeRole(a.getId(), service.getId(), Right.INVOKE);
+			Authorizations.authorizeRole(b.getId(), service.getId(), Right.INVOKE);
+			Assert.assertEquals(2, Authorizations.countAuthorizedRoles(service.getId()));
+			Roles.removeRole("count_b");
+			Assert.assertEquals(1, Authorizations.countAuthorizedRoles(service.getId()));
+			Assert.assertEquals(0, Members.countRoles(x.getId()));
+			try {
+				Members.countMembers(-1);
+				Assert.fail("A missing role was counted");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			if (Roles.hasRole("count_b"))
+				Roles.removeRole("count_b");
+			Roles.removeRole("count_a");
+			Users.removeUser("count_x");
+			Users.removeUser("count_y");
+			Services.removeService(service);
+		}
+	}
+
+	/**
+	 * Fills a role to its limit and checks that further assignments are
+	 * refused until the limit is raised or a member leaves.
+	 */
+	@Test
+	public void testRoleLimit() {
+		Role role = Roles.createRole("limit_role");
+		User[] users = new User[4];
+		for (int i = 0; i < users.length; i++)
+			users[i] = Users.createUser("limit_user" + i);
+		try {
+			Roles.setMaxMembers(role.getId(), 2);
+			Assert.assertEquals(2, Roles.getMaxMembers(role.getId()));
+			Members.assignRole(users[0].getId(), role.getId());
+			Assert.assertEquals(Status.OK, Members.tryAssignRole(users[1].getId(), role.getId()));
+			Assert.assertEquals(Status.ROLE_FULL, Members.tryAssignRole(users[2].getId(), role.getId()));
+			try {
+				Members.assignRole(users[2], role);
+				Assert.fail("A full role accepted a member");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			try {
+				Roles.setMaxMembers(role.getId(), 1);
+				Assert.fail("A limit below the member count was accepted");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Members.unassignRole(users[0].getId(), role.getId());
+			Members.assignRole(users[2].getId(), role.getId());
+			Roles.setMaxMembers(role.getId(), 0);
+			Members.assignRole(users[3].getId(), role.getId());
+			Assert.assertEquals(3, Members.countMembers(role.getId()));
+			Roles.setMaxMembers(role.getId(), 3);
+		}
+		finally {
+			Roles.removeRole("limit_role");
+			for (User user : users)
+				Users.removeUser(user.getName());
+		}
+		Role reused = Roles.createRole("limit_reused");
+		try {
+			Assert.assertEquals(0, Roles.getMaxMembers(reused.getId()));
+		}
+		finally {
+			Roles.removeRole("limit_reused");
+		}
+	}
+
+}
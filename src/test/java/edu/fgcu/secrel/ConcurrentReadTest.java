@@ -0,0 +1,157 @@
+/*
+ * This file defines the tests of reads running concurrently with changes.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+/**
+ * The ConcurrentReadTest class tests that readers running against a writer
+ * that keeps assigning and unassigning a role never fail and always read a
+ * version whose forward and backward relations agree.
+ *
+ * @author lngibson
+ *
+ */
+public class ConcurrentReadTest {
+
+	/**
+	 * A service doing nothing.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class NoopService extends Service {
+
+		@Override
+		public String getName() {
+			return "edu.fgcu.secrel.ConcurrentReadTest.Noop";
+		}
+
+		@Override
+		protected void invokeServiceInner(Handle handle, String[] argv, Map<String, String> argm) {
+			// nothing to invoke
+		}
+
+		@Override
+		public void processRequest() {
+			// nothing to process
+		}
+	}
+
+	/**
+	 * The number of users assigned and unassigned.
+	 */
+	private static final int USERS = 64;
+
+	/**
+	 * The number of changes made by the writer.
+	 */
+	private static final int CHANGES = 4000;
+
+	/**
+	 * The number of reader threads.
+	 */
+	private static final int READERS = 3;
+
+	/**
+	 * Runs readers checking memberships, making requests, iterating the
+	 * members of the role and pinning versions while a writer assigns and
+	 * unassigns random users.
+	 *
+	 * @throws Exception if a thread fails
+	 */
+	@Test
+	public void testReadersAgainstWriter() throws Exception {
+		Role role = Roles.createRole("concurrent_role");
+		Service service = new NoopService();
+		Services.registerService(service);
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < ConcurrentReadTest.USERS; i++)
+			users.add(Users.createUser("concurrent_user" + i));
+		Authorizations.authorizeRole(role.getId(), service.getId(), Right.INVOKE);
+		ExecutorService threads = Executors.newFixedThreadPool(ConcurrentReadTest.READERS + 1);
+		Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		CountDownLatch writing = new CountDownLatch(1);
+		try {
+			List<Future<?>> readers = new ArrayList<>();
+			for (int r = 0; r < ConcurrentReadTest.READERS; r++) {
+				long seed = r;
+				readers.add(threads.submit(() -> {
+					Random random = new Random(seed);
+					try {
+						while (writing.getCount() > 0) {
+							User user = users.get(random.nextInt(users.size()));
+							Members.isMemberOf(user.getId(), role.getId());
+							SecRelSystem.makeRequest(user.getId(), service.getId());
+							for (User member : Members.getMembers(role.getId()))
+								Assert.assertTrue(member.getId() >= 0);
+							ConcurrentReadTest.checkVersion(SecRelSystem.policy(), users, role.getId());
+						}
+					}
+					catch (Throwable e) {
+						failures.add(e);
+					}
+				}));
+			}
+			Future<?> writer = threads.submit(() -> {
+				Random random = new Random(42);
+				try {
+					for (int i = 0; i < ConcurrentReadTest.CHANGES; i++) {
+						User user = users.get(random.nextInt(users.size()));
+						if (Members.isMemberOf(user.getId(), role.getId()))
+							Members.unassignRole(user.getId(), role.getId());
+						else
+							Members.assignRole(user.getId(), role.getId());
+					}
+				}
+				catch (Throwable e) {
+					failures.add(e);
+				}
+				finally {
+					writing.countDown();
+				}
+			});
+			writer.get(60, TimeUnit.SECONDS);
+			for (Future<?> reader : readers)
+				reader.get(60, TimeUnit.SECONDS);
+			if (!failures.isEmpty())
+				throw new AssertionError("A thread failed: " + failures.peek(), failures.peek());
+			SecRelSystemDebuggingUtil.verify();
+		}
+		finally {
+			threads.shutdownNow();
+			Roles.removeRole(role);
+			Services.removeService(service.getId());
+			for (User user : users)
+				Users.removeUser(user);
+		}
+	}
+
+	/**
+	 * Checks that the forward rows, the backward rows, the bitmap indexes and
+	 * the permission matrix of a version agree on the members of the role.
+	 *
+	 * @param policy the pinned version
+	 * @param users the users
+	 * @param roleId the id of the role
+	 */
+	private static void checkVersion(PolicyVersion policy, List<User> users, int roleId) {
+		int members = 0;
+		for (User user : users) {
+			int userId = user.getId();
+			boolean forward = policy.memberForwardMap.contains(SecRelSystem.memberForwardRow(userId, roleId));
+			Assert.assertEquals("Torn read of user " + userId, forward,
+					policy.memberBackwardMap.contains(SecRelSystem.memberBackwardRow(userId, roleId)));
+			Assert.assertEquals(forward, policy.roleMembers.get(roleId).contains(userId));
+			Assert.assertEquals(forward, policy.userRoles.get(userId).contains(roleId));
+			if (forward)
+				members++;
+		}
+		Assert.assertEquals(members, policy.roleMembers.get(roleId).cardinality());
+	}
+
+}
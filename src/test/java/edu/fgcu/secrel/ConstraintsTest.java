@@ -0,0 +1,178 @@
+/*
+ * This file defines the tests of the separation of duty constraints.
+ */
+package edu.fgcu.secrel;
+
+import org.junit.*;
+
+/**
+ * The ConstraintsTest class tests that static constraints refuse conflicting
+ * assignments and that the conflict masks follow constraint and role changes.
+ *
+ * @author lngibson
+ *
+ */
+public class ConstraintsTest {
+
+	/**
+	 * Creates a static constraint and checks that a user cannot be assigned
+	 * to two of its roles.
+	 */
+	@Test
+	public void testStaticConstraint() {
+		Role initiator = Roles.createRole("sod_initiator");
+		Role approver = Roles.createRole("sod_approver");
+		Role auditor = Roles.createRole("sod_auditor");
+		User user = Users.createUser("sod_user");
+		try {
+			Members.assignRole(user.getId(), initiator.getId());
+			Constraints.createStaticConstraint("payments", initiator.getId(), approver.getId(), auditor.getId());
+			Assert.assertTrue(Constraints.hasConstraint("payments"));
+			Assert.assertEquals(2, Constraints.getStaticConflicts(approver.getId()).cardinality());
+			try {
+				Members.assignRole(user.getId(), approver.getId());
+				Assert.fail("A conflicting assignment was allowed");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertEquals(Status.CONFLICT, Members.tryAssignRole(user.getId(), auditor.getId()));
+			Assert.assertFalse(Members.isMemberOf(user.getId(), approver.getId()));
+			Members.unassignRole(user.getId(), initiator.getId());
+			Members.assignRole(user.getId(), approver.getId());
+			try {
+				Constraints.createStaticConstraint("payments", initiator.getId(), approver.getId());
+				Assert.fail("A duplicate name was allowed");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Constraints.removeConstraint("payments");
+			Assert.assertFalse(Constraints.hasConstraint("payments"));
+			Members.assignRole(user.getId(), initiator.getId());
+			try {
+				Constraints.createStaticConstraint("payments", initiator.getId(), approver.getId());
+				Assert.fail("A constraint violated by an existing user was created");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			// dynamic constraints allow the assignments
+			Constraints.createDynamicConstraint("payments", initiator.getId(), approver.getId());
+			Assert.assertTrue(Constraints.getDynamicConstraints().contains("payments"));
+			Assert.assertTrue(Constraints.getStaticConflicts(approver.getId()).isEmpty());
+		}
+		finally {
+			Roles.removeRole("sod_initiator");
+			Roles.removeRole("sod_approver");
+			Roles.removeRole("sod_auditor");
+			Users.removeUser("sod_user");
+		}
+		Assert.assertFalse(Constraints.hasConstraint("payments"));
+	}
+
+	/**
+	 * Checks that static constraints apply to the roles a user holds through
+	 * the hierarchy: assigning a role inheriting a conflicting role, adding an
+	 * edge that would give a member a conflicting role and creating a
+	 * constraint already violated through inheritance are refused.
+	 */
+	@Test
+	public void testInheritedRoles() {
+		Role initiator = Roles.createRole("sod_h_initiator");
+		Role approver = Roles.createRole("sod_h_approver");
+		Role manager = Roles.createRole("sod_h_manager");
+		Role director = Roles.createRole("sod_h_director");
+		User user = Users.createUser("sod_h_user");
+		try {
+			Constraints.createStaticConstraint("sod_h_payments", initiator.getId(), approver.getId());
+			Roles.addInheritance(manager.getId(), approver.getId());
+			Members.assignRole(user.getId(), initiator.getId());
+			// the assigned role inherits a conflicting role
+			try {
+				Members.assignRole(user.getId(), manager.getId());
+				Assert.fail("A role inheriting a conflicting role was assigned");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertEquals(Status.CONFLICT, Members.tryAssignRole(user.getId(), manager.getId()));
+			// a new edge would give a member of the senior role a conflicting role
+			Members.assignRole(user.getId(), director.getId());
+			try {
+				Roles.addInheritance(director.getId(), manager.getId());
+				Assert.fail("An edge giving a member conflicting roles was added");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertFalse(Roles.inherits(director.getId(), manager.getId()));
+			// the assigned role conflicts with a role the user inherits
+			Members.unassignRole(user.getId(), initiator.getId());
+			Roles.addInheritance(director.getId(), manager.getId());
+			try {
+				Members.assignRole(user.getId(), initiator.getId());
+				Assert.fail("A role conflicting with an inherited role was assigned");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			// an inherited role violates a new constraint
+			Role auditor = Roles.createRole("sod_h_auditor");
+			Members.assignRole(user.getId(), auditor.getId());
+			try {
+				Constraints.createStaticConstraint("sod_h_audit", auditor.getId(), approver.getId());
+				Assert.fail("A constraint violated through inheritance was created");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			SecRelSystemDebuggingUtil.verify();
+		}
+		finally {
+			for (String name : new String[] { "sod_h_initiator", "sod_h_approver", "sod_h_manager", "sod_h_director",
+					"sod_h_auditor" })
+				if (Roles.hasRole(name))
+					Roles.removeRole(name);
+			Users.removeUser("sod_h_user");
+		}
+		Assert.assertFalse(Constraints.hasConstraint("sod_h_payments"));
+	}
+
+	/**
+	 * Removes a role of a constraint and checks that the constraint keeps its
+	 * other roles and is dropped when a single role is left.
+	 */
+	@Test
+	public void testRemoveRole() {
+		Role a = Roles.createRole("sod_a");
+		Role b = Roles.createRole("sod_b");
+		Role c = Roles.createRole("sod_c");
+		Constraints.createStaticConstraint("sod_abc", a.getId(), b.getId(), c.getId());
+		try {
+			Roles.removeRole("sod_c");
+			Assert.assertArrayEquals(new int[] { Math.min(a.getId(), b.getId()), Math.max(a.getId(), b.getId()) },
+					Constraints.getConstraintRoles("sod_abc"));
+			Role reused = Roles.createRole("sod_reused");
+			Assert.assertTrue(Constraints.getStaticConflicts(reused.getId()).isEmpty());
+			Roles.removeRole("sod_reused");
+			Roles.removeRole("sod_b");
+			Assert.assertFalse(Constraints.hasConstraint("sod_abc"));
+			try {
+				Constraints.createStaticConstraint("sod_single", a.getId(), a.getId());
+				Assert.fail("A constraint with one role was created");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			for (String name : new String[] { "sod_a", "sod_b", "sod_c" })
+				if (Roles.hasRole(name))
+					Roles.removeRole(name);
+			if (Constraints.hasConstraint("sod_abc"))
+				Constraints.removeConstraint("sod_abc");
+		}
+	}
+
+}
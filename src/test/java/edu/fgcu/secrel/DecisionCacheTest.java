@@ -0,0 +1,85 @@
+/*
+ * This file defines the tests of the DecisionCache class.
+ */
+package edu.fgcu.secrel;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The DecisionCacheTest class tests that cached decisions are reused and that
+ * changes to the policy are never served stale.
+ *
+ * @author lngibson
+ *
+ */
+public class DecisionCacheTest {
+
+	/**
+	 * Checks that a repeated check is a hit and that revoking a membership or
+	 * an authorization invalidates the cached decision.
+	 */
+	@Test
+	public void testRevocation() {
+		DecisionCache cache = SecRelSystem.getDecisionCache();
+		User user = Users.createUser("cached_user");
+		Role role = Roles.createRole("cached_role");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			Authorizations.authorizeRole(role, service, Right.INVOKE);
+			Members.assignRole(user, role);
+			Assert.assertTrue(service.monitor(user.getId()).checkRights());
+			long hits = cache.getHitCount();
+			Assert.assertTrue(service.monitor(user.getId()).checkRights());
+			Assert.assertEquals(hits + 1, cache.getHitCount());
+			long invalidations = cache.getInvalidationCount();
+			Members.unassignRole(user, role);
+			Assert.assertFalse(service.monitor(user.getId()).checkRights());
+			Assert.assertEquals(invalidations + 1, cache.getInvalidationCount());
+			Members.assignRole(user, role);
+			Assert.assertTrue(service.monitor(user.getId()).checkRights());
+			Roles.removeRole(role);
+			Assert.assertFalse(service.monitor(user.getId()).checkRights());
+		}
+		finally {
+			if (Roles.hasRole(role))
+				Roles.removeRole(role);
+			Services.removeService(service.getId());
+			Users.removeUser(user);
+		}
+	}
+
+	/**
+	 * Checks the statistics of a cache with colliding pairs.
+	 */
+	@Test
+	public void testStatistics() {
+		DecisionCache cache = new DecisionCache(1);
+		int[] computed = new int[1];
+		DecisionCache.Decider decider = (userId, serviceId) -> {
+			computed[0]++;
+			return userId == serviceId;
+		};
+		Assert.assertTrue(cache.isPermitted(1, 1, decider));
+		Assert.assertTrue(cache.isPermitted(1, 1, decider));
+		Assert.assertFalse(cache.isPermitted(1, 2, decider));
+		Assert.assertTrue(cache.isPermitted(1, 1, decider));
+		Assert.assertEquals(3, computed[0]);
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(3, cache.getMissCount());
+		Assert.assertEquals(2, cache.getEvictionCount());
+		cache.invalidateUser(1);
+		Assert.assertTrue(cache.isPermitted(1, 1, decider));
+		cache.publish();
+		Assert.assertTrue(cache.isPermitted(1, 1, decider));
+		Assert.assertEquals(1, cache.getInvalidationCount());
+		cache.invalidateAll();
+		cache.publish();
+		Assert.assertTrue(cache.isPermitted(1, 1, decider));
+		Assert.assertEquals(2, cache.getInvalidationCount());
+		Assert.assertEquals(2.0 / 7, cache.getHitRatio(), 1e-9);
+	}
+
+}
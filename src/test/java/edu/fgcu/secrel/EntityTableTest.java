@@ -0,0 +1,76 @@
+/*
+ * This file defines the tests of the EntityTable class.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+/**
+ * The EntityTableTest class tests id allocation, recycling and the map view
+ * of the EntityTable.
+ *
+ * @author lngibson
+ *
+ */
+public class EntityTableTest {
+
+	/**
+	 * Checks that removed ids are recycled and that ids stored explicitly are
+	 * never allocated.
+	 */
+	@Test
+	public void testRecycling() {
+		EntityTable<String> table = new EntityTable<>();
+		for (int i = 0; i < 10; i++)
+			Assert.assertNull(table.put(table.allocate(), "entity" + i));
+		Assert.assertEquals(10, table.size());
+		Assert.assertEquals("entity3", table.remove(3));
+		Assert.assertEquals("entity7", table.remove(7));
+		Assert.assertFalse(table.containsKey(3));
+		Assert.assertEquals(7, table.allocate());
+		table.put(3, "explicit");
+		Assert.assertEquals(10, table.allocate());
+		table.release(10);
+		Assert.assertEquals(10, table.allocate());
+		Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 8, 9), new ArrayList<>(table.keySet()));
+		Assert.assertEquals("explicit", table.get(3));
+	}
+
+	/**
+	 * Checks that concurrent allocations never return the same id.
+	 *
+	 * @throws Exception if an allocating thread fails
+	 */
+	@Test
+	public void testConcurrentAllocation() throws Exception {
+		EntityTable<Integer> table = new EntityTable<>();
+		for (int i = 0; i < 1000; i++)
+			table.put(table.allocate(), i);
+		for (int i = 0; i < 1000; i += 2)
+			table.remove(i);
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<int[]>> results = new ArrayList<>();
+			for (int t = 0; t < 4; t++)
+				results.add(threads.submit(() -> {
+					int[] ids = new int[5000];
+					for (int i = 0; i < ids.length; i++)
+						ids[i] = table.allocate();
+					return ids;
+				}));
+			Set<Integer> seen = new HashSet<>();
+			for (Future<int[]> result : results)
+				for (int id : result.get())
+					Assert.assertTrue("Id allocated twice: " + id, seen.add(id));
+			for (int i = 0; i < 1000; i += 2)
+				Assert.assertTrue("Id not recycled: " + i, seen.contains(i));
+		}
+		finally {
+			threads.shutdown();
+		}
+	}
+
+}
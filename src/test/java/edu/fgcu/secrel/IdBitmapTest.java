@@ -0,0 +1,144 @@
+/*
+ * This file defines the tests of the IdBitmap class.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.stream.StreamSupport;
+
+import org.junit.*;
+
+/**
+ * The IdBitmapTest class tests the IdBitmap set operations against BitSet.
+ *
+ * @author lngibson
+ *
+ */
+public class IdBitmapTest {
+
+	/**
+	 * Builds a bitmap and a BitSet holding the same random ids. Dense and
+	 * sparse chunks are mixed so that both chunk representations are used.
+	 *
+	 * @param random the random source
+	 * @param expected the BitSet to fill
+	 * @return the bitmap
+	 */
+	private static IdBitmap random(Random random, BitSet expected) {
+		IdBitmap bitmap = new IdBitmap();
+		for (int chunk = 0; chunk < 6; chunk++) {
+			int n = random.nextBoolean() ? 10000 : 300;
+			for (int i = 0; i < n; i++) {
+				int id = chunk << 16 | random.nextInt(1 << 16);
+				Assert.assertEquals(!expected.get(id), bitmap.add(id));
+				expected.set(id);
+			}
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Compares a bitmap to a BitSet.
+	 *
+	 * @param expected the BitSet
+	 * @param actual the bitmap
+	 */
+	private static void assertSameIds(BitSet expected, IdBitmap actual) {
+		Assert.assertEquals("The bitmap has the wrong cardinality", expected.cardinality(), actual.cardinality());
+		Assert.assertArrayEquals("The bitmap has the wrong ids", expected.stream().toArray(), actual.toArray());
+	}
+
+	/**
+	 * Checks the set operations and their cardinality variants.
+	 */
+	@Test
+	public void testSetOperations() {
+		Random random = new Random(7);
+		for (int round = 0; round < 5; round++) {
+			BitSet x = new BitSet(), y = new BitSet();
+			IdBitmap a = IdBitmapTest.random(random, x), b = IdBitmapTest.random(random, y);
+			BitSet and = (BitSet) x.clone(), or = (BitSet) x.clone(), andNot = (BitSet) x.clone();
+			and.and(y);
+			or.or(y);
+			andNot.andNot(y);
+			IdBitmapTest.assertSameIds(and, IdBitmap.and(a, b));
+			IdBitmapTest.assertSameIds(or, IdBitmap.or(a, b));
+			IdBitmapTest.assertSameIds(andNot, IdBitmap.andNot(a, b));
+			Assert.assertEquals(and.cardinality(), IdBitmap.andCardinality(a, b));
+			Assert.assertEquals(or.cardinality(), IdBitmap.orCardinality(a, b));
+			Assert.assertEquals(andNot.cardinality(), IdBitmap.andNotCardinality(a, b));
+			Assert.assertEquals(!and.isEmpty(), IdBitmap.intersects(a, b));
+			Assert.assertFalse(IdBitmap.intersects(IdBitmap.andNot(a, b), b));
+			IdBitmapTest.assertSameIds(x, a);
+		}
+	}
+
+	/**
+	 * Removes ids until dense chunks turn back into sparse chunks.
+	 */
+	@Test
+	public void testRemove() {
+		Random random = new Random(11);
+		BitSet expected = new BitSet();
+		IdBitmap bitmap = IdBitmapTest.random(random, expected);
+		for (int i = 0; i < 200000; i++) {
+			int id = random.nextInt(6 << 16);
+			Assert.assertEquals(expected.get(id), bitmap.remove(id));
+			expected.clear(id);
+		}
+		IdBitmapTest.assertSameIds(expected, bitmap);
+		for (int id = expected.nextSetBit(0); id >= 0; id = expected.nextSetBit(id + 1)) {
+			Assert.assertTrue(bitmap.contains(id));
+			Assert.assertEquals(id, bitmap.nextId(id));
+		}
+	}
+
+	/**
+	 * Compares the next and previous ids of random positions to BitSet.
+	 */
+	@Test
+	public void testNavigation() {
+		Random random = new Random(13);
+		BitSet expected = new BitSet();
+		IdBitmap bitmap = IdBitmapTest.random(random, expected);
+		for (int i = 0; i < 100000; i++) {
+			int id = random.nextInt(7 << 16);
+			Assert.assertEquals(expected.nextSetBit(id), bitmap.nextId(id));
+			Assert.assertEquals(expected.previousSetBit(id), bitmap.prevId(id));
+		}
+		Assert.assertEquals(-1, bitmap.prevId(-1));
+		Assert.assertEquals(expected.length() - 1, bitmap.prevId(Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Splits the spliterator of a bitmap and checks that the parts report
+	 * their exact sizes and together hold every id once, in order.
+	 */
+	@Test
+	public void testSpliterator() {
+		Random random = new Random(17);
+		BitSet expected = new BitSet();
+		IdBitmap bitmap = IdBitmapTest.random(random, expected);
+		Spliterator.OfInt suffix = bitmap.spliterator();
+		Assert.assertEquals(expected.cardinality(), suffix.estimateSize());
+		suffix.tryAdvance((int id) -> Assert.assertEquals(expected.nextSetBit(0), id));
+		List<Spliterator.OfInt> parts = new ArrayList<>();
+		for (Spliterator.OfInt prefix; (prefix = suffix.trySplit()) != null;)
+			parts.add(prefix);
+		parts.add(suffix);
+		Assert.assertTrue("The bitmap was not split", parts.size() > 1);
+		int next = expected.nextSetBit(expected.nextSetBit(0) + 1);
+		for (Spliterator.OfInt part : parts) {
+			long size = part.estimateSize();
+			int[] ids = StreamSupport.intStream(part, false).toArray();
+			Assert.assertEquals(size, ids.length);
+			for (int id : ids) {
+				Assert.assertEquals(next, id);
+				next = expected.nextSetBit(id + 1);
+			}
+		}
+		Assert.assertEquals(-1, next);
+		Assert.assertEquals(expected.stream().asLongStream().sum(), bitmap.stream().parallel().asLongStream().sum());
+	}
+
+}
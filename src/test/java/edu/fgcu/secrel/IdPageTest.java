@@ -0,0 +1,75 @@
+/*
+ * This file defines the tests of the paged and streamed relation queries.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * The IdPageTest class tests that paging through a relation returns every id
+ * once, even when the relation changes between pages, and that the streams
+ * return the same ids.
+ *
+ * @author lngibson
+ *
+ */
+public class IdPageTest {
+
+	/**
+	 * Pages through the members of a role while removing members and checks
+	 * that no remaining member is repeated or skipped.
+	 */
+	@Test
+	public void testPages() {
+		Role role = Roles.createRole("page_role");
+		List<User> users = new ArrayList<>();
+		try {
+			for (int i = 0; i < 1000; i++) {
+				User user = Users.createUser("page_user" + i);
+				users.add(user);
+				Members.assignRole(user, role);
+			}
+			int[] all = Members.streamMembers(role.getId()).toArray();
+			Assert.assertEquals(1000, all.length);
+			Assert.assertEquals(1000, Members.streamMembers(role.getId()).parallel().count());
+			List<Integer> seen = new ArrayList<>();
+			IdPage page = Members.getMemberPage(role.getId(), IdPage.FIRST, 64);
+			for (int n = 0;; n++) {
+				Assert.assertTrue(page.getIds().length <= 64);
+				for (int id : page.getIds())
+					seen.add(id);
+				// remove a member ahead of the cursor and one behind it
+				if (n == 2) {
+					Members.unassignRole(all[999], role.getId());
+					Members.unassignRole(all[0], role.getId());
+				}
+				if (!page.hasMore())
+					break;
+				page = Members.getMemberPage(role.getId(), page.getCursor(), 64);
+			}
+			Assert.assertEquals(999, seen.size());
+			for (int i = 0; i < 999; i++)
+				Assert.assertEquals(all[i], seen.get(i).intValue());
+			Assert.assertFalse(Members.getMemberPage(role.getId(), all[998], 10).hasMore());
+			Assert.assertEquals(0, Members.getMemberPage(role.getId(), all[998], 10).getIds().length);
+			Assert.assertArrayEquals(new int[] { role.getId() },
+					Members.getRolePage(users.get(1).getId(), IdPage.FIRST, 10).getIds());
+			Assert.assertArrayEquals(new int[] { role.getId() }, Members.streamRoles(users.get(1).getId()).toArray());
+			try {
+				Members.getMemberPage(role.getId(), IdPage.FIRST, 0);
+				Assert.fail("An empty page size was accepted");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("page_role");
+			for (User user : users)
+				Users.removeUser(user.getName());
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * This file defines the tests of the LongBTree class.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * The LongBTreeTest class tests the LongBTree against a TreeMap holding the
+ * same rows.
+ *
+ * @author lngibson
+ *
+ */
+public class LongBTreeTest {
+
+	/**
+	 * Compares every row of the tree to the reference map.
+	 *
+	 * @param expected the reference map
+	 * @param tree the tree
+	 */
+	private static void assertSameRows(NavigableMap<Long, Integer> expected, LongBTree tree) {
+		Assert.assertEquals("The tree reports the wrong size", expected.size(), tree.size());
+		Iterator<Map.Entry<Long, Integer>> it = expected.entrySet().iterator();
+		for (LongBTree.Cursor c = tree.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			Assert.assertTrue("The tree contains more rows than expected", it.hasNext());
+			Map.Entry<Long, Integer> e = it.next();
+			Assert.assertEquals("The tree returned rows out of order", e.getKey().longValue(), c.key());
+			Assert.assertEquals("The tree returned the wrong value", e.getValue().intValue(), c.value());
+		}
+		Assert.assertFalse("The tree contains fewer rows than expected", it.hasNext());
+	}
+
+	/**
+	 * Inserts and removes random rows and compares the tree to a TreeMap after
+	 * each phase.
+	 */
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		LongBTree tree = new LongBTree(true);
+		NavigableMap<Long, Integer> expected = new TreeMap<>();
+		for (int round = 0; round < 4; round++) {
+			for (int i = 0; i < 20000; i++) {
+				long key = (long) random.nextInt(64) << 32 | random.nextInt(2000);
+				int value = random.nextInt();
+				Assert.assertEquals("The tree disagrees on the insertion of " + key, !expected.containsKey(key),
+						tree.add(key, value));
+				expected.putIfAbsent(key, value);
+			}
+			assertSameRows(expected, tree);
+			for (int i = 0; i < 30000; i++) {
+				long key = (long) random.nextInt(64) << 32 | random.nextInt(2000);
+				Assert.assertEquals("The tree disagrees on the removal of " + key, expected.remove(key) != null,
+						tree.remove(key));
+			}
+			assertSameRows(expected, tree);
+		}
+		for (Long key : new ArrayList<>(expected.keySet()))
+			Assert.assertTrue(tree.remove(key));
+		Assert.assertTrue("The tree should be empty", tree.isEmpty());
+	}
+
+	/**
+	 * Builds trees of several sizes from sorted rows, then modifies them and
+	 * compares them to a TreeMap.
+	 */
+	@Test
+	public void testBuild() {
+		Random random = new Random(11);
+		for (int size : new int[] { 0, 1, 64, 65, 4096, 4097, 300000 }) {
+			NavigableMap<Long, Integer> expected = new TreeMap<>();
+			while (expected.size() < size)
+				expected.put(random.nextLong(), random.nextInt());
+			long[] keys = new long[size];
+			int[] values = new int[size];
+			int n = 0;
+			for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+				keys[n] = e.getKey();
+				values[n++] = e.getValue();
+			}
+			LongBTree tree = LongBTree.build(keys, values, size, true);
+			assertSameRows(expected, tree);
+			for (int i = 0; i < 2000; i++) {
+				long key = i % 2 == 0 || size == 0 ? random.nextLong() : keys[random.nextInt(size)];
+				Assert.assertEquals(expected.remove(key) != null, tree.remove(key));
+				key = random.nextLong();
+				Assert.assertEquals(!expected.containsKey(key), tree.add(key, i));
+				expected.putIfAbsent(key, i);
+			}
+			assertSameRows(expected, tree);
+		}
+		try {
+			LongBTree.build(new long[] { 2, 1 }, null, 2, false);
+			Assert.fail("Unsorted keys should be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Extracts the low halves of a range of rows.
+	 */
+	@Test
+	public void testLow() {
+		LongBTree tree = new LongBTree(false);
+		for (int user = 0; user < 100; user++)
+			for (int role = user % 7; role < 300; role += 7)
+				tree.add((long) user << 32 | role);
+		int[] roles = tree.low(5L << 32, 6L << 32);
+		Assert.assertEquals(43, roles.length);
+		for (int i = 0; i < roles.length; i++)
+			Assert.assertEquals(5 + 7 * i, roles[i]);
+		Assert.assertEquals(0, tree.low(100L << 32, 101L << 32).length);
+		Assert.assertTrue(tree.contains(5L << 32 | 299));
+		Assert.assertFalse(tree.contains(5L << 32 | 298));
+	}
+
+	/**
+	 * Removes random ranges of rows, from single leaves to most of the tree,
+	 * and checks the tree, a snapshot taken before and later insertions.
+	 */
+	@Test
+	public void testRemoveRange() {
+		Random random = new Random(3);
+		for (int round = 0; round < 20; round++) {
+			LongBTree tree = new LongBTree(true);
+			NavigableMap<Long, Integer> expected = new TreeMap<>();
+			for (int i = 0; i < 50000; i++) {
+				long key = (long) random.nextInt(16) << 32 | random.nextInt(100000);
+				if (tree.add(key, i))
+					expected.put(key, i);
+			}
+			NavigableMap<Long, Integer> before = new TreeMap<>(expected);
+			LongBTree snapshot = tree.snapshot();
+			for (int i = 0; i < 50; i++) {
+				long from = (long) random.nextInt(16) << 32 | random.nextInt(100000);
+				long to = from + (random.nextBoolean() ? random.nextInt(200) : (long) random.nextInt(3) << 32);
+				Assert.assertEquals(expected.subMap(from, to).size(), tree.removeRange(from, to));
+				expected.subMap(from, to).clear();
+			}
+			assertSameRows(expected, tree);
+			for (int i = 0; i < 5000; i++) {
+				long key = (long) random.nextInt(16) << 32 | random.nextInt(100000);
+				Assert.assertEquals(!expected.containsKey(key), tree.add(key, i));
+				expected.putIfAbsent(key, i);
+				key = (long) random.nextInt(16) << 32 | random.nextInt(100000);
+				Assert.assertEquals(expected.remove(key) != null, tree.remove(key));
+			}
+			assertSameRows(expected, tree);
+			assertSameRows(before, snapshot);
+		}
+		LongBTree tree = new LongBTree(false);
+		for (long key = 0; key < 10000; key++)
+			tree.add(key);
+		Assert.assertEquals(0, tree.removeRange(5, 5));
+		Assert.assertEquals(10000, tree.removeRange(Long.MIN_VALUE, Long.MAX_VALUE));
+		Assert.assertTrue(tree.isEmpty());
+		Assert.assertTrue(tree.add(3));
+	}
+
+	/**
+	 * Replaces the value of existing rows.
+	 */
+	@Test
+	public void testSet() {
+		LongBTree tree = new LongBTree(true);
+		tree.add(7L, 1);
+		Assert.assertTrue(tree.set(7L, 3));
+		Assert.assertFalse(tree.set(8L, 3));
+		Assert.assertEquals(3, tree.get(7L, -1));
+		Assert.assertEquals(-1, tree.get(8L, -1));
+	}
+
+	/**
+	 * Modifies the tree after taking snapshots and checks that every snapshot
+	 * keeps the rows it was taken with.
+	 */
+	@Test
+	public void testSnapshot() {
+		Random random = new Random(7);
+		LongBTree tree = new LongBTree(true);
+		NavigableMap<Long, Integer> expected = new TreeMap<>();
+		List<LongBTree> snapshots = new ArrayList<>();
+		List<NavigableMap<Long, Integer>> versions = new ArrayList<>();
+		for (int round = 0; round < 8; round++) {
+			for (int i = 0; i < 5000; i++) {
+				long key = random.nextInt(20000);
+				if (random.nextBoolean()) {
+					if (tree.add(key, i))
+						expected.put(key, i);
+				}
+				else if (random.nextBoolean()) {
+					if (tree.set(key, -i))
+						expected.put(key, -i);
+				}
+				else if (tree.remove(key))
+					expected.remove(key);
+			}
+			snapshots.add(tree.snapshot());
+			versions.add(new TreeMap<>(expected));
+		}
+		assertSameRows(expected, tree);
+		for (int i = 0; i < snapshots.size(); i++)
+			assertSameRows(versions.get(i), snapshots.get(i));
+		try {
+			snapshots.get(0).add(-1L, 0);
+			Assert.fail("A snapshot should not be modifiable");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+}
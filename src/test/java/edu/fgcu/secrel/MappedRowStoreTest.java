@@ -0,0 +1,295 @@
+/*
+ * This file defines the tests of the MappedRowStore class.
+ */
+package edu.fgcu.secrel;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The MappedRowStoreTest class tests the MappedRowStore against a TreeMap
+ * holding the same rows, across snapshots and reopened files.
+ *
+ * @author lngibson
+ *
+ */
+public class MappedRowStoreTest {
+
+	/**
+	 * Compares every row of the store to the reference map.
+	 *
+	 * @param expected the reference map
+	 * @param store the store
+	 */
+	private static void assertSameRows(NavigableMap<Long, Integer> expected, RowStore store) {
+		Assert.assertEquals("The store reports the wrong size", expected.size(), store.size());
+		Iterator<Map.Entry<Long, Integer>> it = expected.entrySet().iterator();
+		for (RowStore.Cursor c = store.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			Assert.assertTrue("The store contains more rows than expected", it.hasNext());
+			Map.Entry<Long, Integer> e = it.next();
+			Assert.assertEquals("The store returned rows out of order", e.getKey().longValue(), c.key());
+			Assert.assertEquals("The store returned the wrong value", e.getValue().intValue(), c.value());
+		}
+		Assert.assertFalse("The store contains fewer rows than expected", it.hasNext());
+	}
+
+	/**
+	 * The file of the test.
+	 */
+	private Path path;
+
+	/**
+	 * Creates the file.
+	 *
+	 * @throws IOException if the file cannot be created
+	 */
+	@Before
+	public void setUp() throws IOException {
+		path = Files.createTempFile("secrel", ".pages");
+	}
+
+	/**
+	 * Deletes the file.
+	 *
+	 * @throws IOException if the file cannot be deleted
+	 */
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	/**
+	 * Modifies the store after taking snapshots, checks every snapshot and
+	 * reopens the file.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Test
+	public void testRandomOperations() throws IOException {
+		Random random = new Random(11);
+		NavigableMap<Long, Integer> expected = new TreeMap<>();
+		List<RowStore> snapshots = new ArrayList<>();
+		List<NavigableMap<Long, Integer>> versions = new ArrayList<>();
+		PageFile file = new PageFile(path, true);
+		RowStore store = file.relation(0);
+		for (int round = 0; round < 6; round++) {
+			for (int i = 0; i < 20000; i++) {
+				long key = (long) random.nextInt(16) << 32 | random.nextInt(5000);
+				if (random.nextInt(3) > 0) {
+					if (store.add(key, i))
+						expected.put(key, i);
+				}
+				else if (random.nextBoolean()) {
+					if (store.set(key, -i))
+						expected.put(key, -i);
+				}
+				else if (store.remove(key))
+					expected.remove(key);
+			}
+			snapshots.add(store.snapshot());
+			versions.add(new TreeMap<>(expected));
+		}
+		MappedRowStoreTest.assertSameRows(expected, store);
+		for (int i = 0; i < snapshots.size(); i++)
+			MappedRowStoreTest.assertSameRows(versions.get(i), snapshots.get(i));
+		Assert.assertArrayEquals(
+				expected.subMap(3L << 32, 4L << 32).keySet().stream().mapToInt(Long::intValue).toArray(),
+				store.low(3L << 32, 4L << 32));
+		file.close();
+		file = new PageFile(path, true);
+		MappedRowStoreTest.assertSameRows(expected, file.relation(0));
+		file.close();
+	}
+
+	/**
+	 * Removes ranges of rows spanning several pages and checks the store and
+	 * a snapshot taken before.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Test
+	public void testRemoveRange() throws IOException {
+		Random random = new Random(5);
+		NavigableMap<Long, Integer> expected = new TreeMap<>();
+		PageFile file = new PageFile(path, true);
+		RowStore store = file.relation(0);
+		for (int i = 0; i < 30000; i++) {
+			long key = (long) random.nextInt(8) << 32 | random.nextInt(20000);
+			if (store.add(key, i))
+				expected.put(key, i);
+		}
+		NavigableMap<Long, Integer> before = new TreeMap<>(expected);
+		RowStore snapshot = store.snapshot();
+		Assert.assertEquals(expected.subMap(2L << 32, 3L << 32).size(), store.removeRange(2L << 32, 3L << 32));
+		expected.subMap(2L << 32, 3L << 32).clear();
+		MappedRowStoreTest.assertSameRows(expected, store);
+		for (int i = 0; i < 200; i++) {
+			long from = (long) random.nextInt(8) << 32 | random.nextInt(20000);
+			long to = from + random.nextInt(3000);
+			Assert.assertEquals(expected.subMap(from, to).size(), store.removeRange(from, to));
+			expected.subMap(from, to).clear();
+		}
+		MappedRowStoreTest.assertSameRows(expected, store);
+		MappedRowStoreTest.assertSameRows(before, snapshot);
+		Assert.assertEquals(expected.size(), store.removeRange(Long.MIN_VALUE, Long.MAX_VALUE));
+		Assert.assertTrue(store.isEmpty());
+		Assert.assertTrue(store.add(5L, 1));
+		file.close();
+	}
+
+	/**
+	 * Moves the rows of the system to a store, reopens it and checks that the
+	 * assignments are restored.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Test
+	public void testRelationStore() throws IOException {
+		User user = Users.createUser("mapped_user");
+		Role role = Roles.createRole("mapped_role");
+		Files.delete(path);
+		SecRelSystem.openRelationStore(path);
+		try {
+			Members.assignRole(user, role);
+			SecRelSystemDebuggingUtil.verify();
+			SecRelSystem.checkpointRelationStore();
+		}
+		finally {
+			SecRelSystem.closeRelationStore();
+		}
+		Assert.assertTrue(Members.isMemberOf(user, role));
+		Members.unassignRole(user, role);
+		SecRelSystem.openRelationStore(path);
+		try {
+			Assert.assertTrue(Members.isMemberOf(user, role));
+			Assert.assertTrue(Queries.members(role.getId()).contains(user.getId()));
+			SecRelSystemDebuggingUtil.verify();
+			Members.unassignRole(user, role);
+		}
+		finally {
+			SecRelSystem.closeRelationStore();
+		}
+		Roles.removeRole(role);
+		Users.removeUser(user);
+	}
+
+	/**
+	 * Checkpoints an expiring assignment and authorization, reopens the store
+	 * and checks that their expiries are scheduled again.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Test
+	public void testRelationStoreExpiries() throws IOException {
+		User user = Users.createUser("mapped_temp_user");
+		Role role = Roles.createRole("mapped_temp_role");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		long expiresAt = System.currentTimeMillis() + 3_600_000;
+		Files.delete(path);
+		SecRelSystem.openRelationStore(path);
+		try {
+			Members.assignRole(user.getId(), role.getId(), expiresAt);
+			Authorizations.authorizeRole(role.getId(), service.getId(), Right.INVOKE, expiresAt);
+			SecRelSystem.checkpointRelationStore();
+		}
+		finally {
+			SecRelSystem.closeRelationStore();
+		}
+		long memberExpiry = Members.getExpiry(user.getId(), role.getId());
+		long serviceExpiry = Authorizations.getExpiry(role.getId(), service.getId());
+		Assert.assertTrue(memberExpiry >= expiresAt);
+		// removing the rows cancels their expiries
+		Members.unassignRole(user, role);
+		SecRelSystem.removeAuthorization(role.getId(), service.getId());
+		Assert.assertEquals(-1, SecRelSystem.getMembershipExpiry(user.getId(), role.getId()));
+		SecRelSystem.openRelationStore(path);
+		try {
+			Assert.assertTrue(Members.isMemberOf(user, role));
+			Assert.assertEquals(memberExpiry, Members.getExpiry(user.getId(), role.getId()));
+			Assert.assertEquals(serviceExpiry, Authorizations.getExpiry(role.getId(), service.getId()));
+			Members.unassignRole(user, role);
+			SecRelSystem.removeAuthorization(role.getId(), service.getId());
+		}
+		finally {
+			SecRelSystem.closeRelationStore();
+			Services.removeService(service);
+			Roles.removeRole(role);
+			Users.removeUser(user);
+		}
+	}
+
+	/**
+	 * Checkpoints assignments, then tightens the member limit and the static
+	 * constraints and checks that the store is refused until they are
+	 * restored.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Test
+	public void testRelationStoreChecks() throws IOException {
+		User first = Users.createUser("mapped_first");
+		User second = Users.createUser("mapped_second");
+		Role clerk = Roles.createRole("mapped_clerk");
+		Role auditor = Roles.createRole("mapped_auditor");
+		Files.delete(path);
+		SecRelSystem.openRelationStore(path);
+		try {
+			Members.assignRole(first, clerk);
+			Members.assignRole(second, clerk);
+			Members.assignRole(first, auditor);
+			SecRelSystem.checkpointRelationStore();
+		}
+		finally {
+			SecRelSystem.closeRelationStore();
+		}
+		Members.unassignRole(first, clerk);
+		Members.unassignRole(second, clerk);
+		Members.unassignRole(first, auditor);
+		try {
+			// a limit lowered since the checkpoint
+			Roles.setMaxMembers(clerk.getId(), 1);
+			try {
+				SecRelSystem.openRelationStore(path);
+				Assert.fail("A store exceeding a member limit was opened");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Roles.setMaxMembers(clerk.getId(), 0);
+			// a constraint created since the checkpoint
+			Constraints.createStaticConstraint("mapped_sod", clerk.getId(), auditor.getId());
+			try {
+				SecRelSystem.openRelationStore(path);
+				Assert.fail("A store breaking a static constraint was opened");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertFalse(Members.isMemberOf(first, clerk));
+			Constraints.removeConstraint("mapped_sod");
+			SecRelSystem.openRelationStore(path);
+			try {
+				Assert.assertTrue(Members.isMemberOf(first, auditor));
+				Members.unassignRole(first, clerk);
+				Members.unassignRole(second, clerk);
+				Members.unassignRole(first, auditor);
+			}
+			finally {
+				SecRelSystem.closeRelationStore();
+			}
+		}
+		finally {
+			Roles.removeRole(clerk);
+			Roles.removeRole(auditor);
+			Users.removeUser(first);
+			Users.removeUser(second);
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * This file defines the tests of the MutationPipeline class.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+/**
+ * The MutationPipelineTest class tests that queued changes are applied in
+ * order, visible once their futures complete and fail independently.
+ *
+ * @author lngibson
+ *
+ */
+public class MutationPipelineTest {
+
+	/**
+	 * The number of users created by each producer.
+	 */
+	private static final int USERS_PER_THREAD = 500;
+
+	/**
+	 * The number of producer threads.
+	 */
+	private static final int THREADS = 4;
+
+	/**
+	 * Chains a change to the future of another and checks that the chained
+	 * change is enqueued from the callback and applied.
+	 *
+	 * @throws Exception if a future fails
+	 */
+	@Test
+	public void testChainedFutures() throws Exception {
+		Role role = MutationPipeline.createRole("pipeline_chained_role").get();
+		CompletableFuture<User> user = MutationPipeline.createUser("pipeline_chained_user");
+		user.thenCompose(u -> MutationPipeline.assignRole(u.getId(), role.getId())).get(30, TimeUnit.SECONDS);
+		Assert.assertTrue(Members.isMemberOf(user.get(), role));
+		// a callback may also wait for the change it enqueues
+		user.thenApply(u -> MutationPipeline.unassignRole(u.getId(), role.getId()).join()).get(30,
+				TimeUnit.SECONDS);
+		Assert.assertFalse(Members.isMemberOf(user.get(), role));
+		MutationPipeline.removeUser(user.get().getId()).get();
+		MutationPipeline.removeRole(role.getId()).get();
+	}
+
+	/**
+	 * Creates users from several threads, assigns them through the pipeline
+	 * and checks the assignments once the futures complete.
+	 *
+	 * @throws Exception if a producer fails
+	 */
+	@Test
+	public void testConcurrentProducers() throws Exception {
+		Role role = MutationPipeline.createRole("pipeline_role").get();
+		ExecutorService producers = Executors.newFixedThreadPool(MutationPipelineTest.THREADS);
+		try {
+			List<Future<List<User>>> results = new ArrayList<>();
+			for (int t = 0; t < MutationPipelineTest.THREADS; t++) {
+				int thread = t;
+				results.add(producers.submit(() -> {
+					List<CompletableFuture<User>> users = new ArrayList<>();
+					for (int i = 0; i < MutationPipelineTest.USERS_PER_THREAD; i++)
+						users.add(MutationPipeline.createUser(String.format("pipeline_user_%d_%d", thread, i)));
+					List<CompletableFuture<Void>> assignments = new ArrayList<>();
+					List<User> out = new ArrayList<>();
+					for (CompletableFuture<User> user : users) {
+						out.add(user.get());
+						assignments.add(MutationPipeline.assignRole(user.get().getId(), role.getId()));
+					}
+					CompletableFuture.allOf(assignments.toArray(new CompletableFuture<?>[0])).get();
+					return out;
+				}));
+			}
+			List<User> users = new ArrayList<>();
+			for (Future<List<User>> result : results)
+				users.addAll(result.get());
+			Assert.assertEquals(MutationPipelineTest.THREADS * MutationPipelineTest.USERS_PER_THREAD,
+					Queries.members(role.getId()).cardinality());
+			for (User user : users)
+				Assert.assertTrue(Members.isMemberOf(user, role));
+			SecRelSystemDebuggingUtil.verify();
+			List<CompletableFuture<Void>> removals = new ArrayList<>();
+			for (User user : users)
+				removals.add(MutationPipeline.removeUser(user.getId()));
+			removals.add(MutationPipeline.removeRole(role.getId()));
+			CompletableFuture.allOf(removals.toArray(new CompletableFuture<?>[0])).get();
+			Assert.assertFalse(Roles.hasRole(role));
+		}
+		finally {
+			producers.shutdown();
+		}
+	}
+
+	/**
+	 * Checks that a failed change completes its future exceptionally and
+	 * does not prevent the changes queued with it.
+	 *
+	 * @throws Exception if a future fails unexpectedly
+	 */
+	@Test
+	public void testFailureIsIsolated() throws Exception {
+		CompletableFuture<User> first = MutationPipeline.createUser("pipeline_twice");
+		CompletableFuture<User> second = MutationPipeline.createUser("pipeline_twice");
+		CompletableFuture<Role> role = MutationPipeline.createRole("pipeline_other");
+		User user = first.get();
+		try {
+			second.get();
+			Assert.fail("The duplicate user should not be created");
+		}
+		catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		Assert.assertTrue(Roles.hasRole(role.get()));
+		MutationPipeline.removeRole(role.get().getId()).get();
+		MutationPipeline.removeUser(user.getId()).get();
+		Assert.assertFalse(Users.hasUser(user));
+	}
+
+}
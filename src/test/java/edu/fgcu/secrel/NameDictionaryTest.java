@@ -0,0 +1,79 @@
+/*
+ * This file defines the tests of the NameDictionary class.
+ */
+package edu.fgcu.secrel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * The NameDictionaryTest class tests the NameDictionary against a TreeMap
+ * holding the same names, across rebuilds of the arena.
+ *
+ * @author lngibson
+ *
+ */
+public class NameDictionaryTest {
+
+	/**
+	 * Adds and removes random names and compares lookups, ordered iteration
+	 * and prefix scans to the reference map.
+	 */
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(5);
+		NameDictionary names = new NameDictionary();
+		NavigableMap<String, Integer> expected = new TreeMap<>(NameDictionary::compare);
+		String[] prefixes = { "alice", "bob", "café", "😀", "Ａ", "" };
+		int nextId = 0;
+		for (int i = 0; i < 20000; i++) {
+			String name = prefixes[random.nextInt(prefixes.length)] + random.nextInt(3000);
+			if (random.nextInt(3) > 0) {
+				if (!expected.containsKey(name)) {
+					names.put(name, nextId);
+					expected.put(name, nextId++);
+				}
+			}
+			else
+				Assert.assertEquals(expected.remove(name), names.remove(name));
+		}
+		Assert.assertEquals(expected.size(), names.size());
+		Assert.assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(names.entrySet()));
+		for (Map.Entry<String, Integer> e : expected.entrySet()) {
+			Assert.assertEquals(e.getValue(), names.get(e.getKey()));
+			Assert.assertEquals(e.getKey(), names.name(e.getValue()));
+		}
+		Assert.assertNull(names.get("carol1"));
+		Assert.assertNull(names.name(nextId));
+		for (String prefix : new String[] { "bob1", "caf", "😀1", "alice29", "zed" }) {
+			List<String> scan = new ArrayList<>(names.prefixed(prefix).keySet());
+			List<String> reference = new ArrayList<>();
+			for (String name : expected.tailMap(prefix).keySet())
+				if (name.startsWith(prefix))
+					reference.add(name);
+			Assert.assertEquals("Wrong names with prefix " + prefix, reference, scan);
+		}
+	}
+
+	/**
+	 * Checks that names sharing a long prefix are stored in a fraction of
+	 * their UTF-8 size.
+	 */
+	@Test
+	public void testFrontCoding() {
+		NameDictionary names = new NameDictionary();
+		long bytes = 0;
+		for (int i = 0; i < 10000; i++) {
+			String name = "edu.fgcu.secrel.toy.AccumulatorService" + i;
+			names.put(name, i);
+			bytes += name.getBytes(StandardCharsets.UTF_8).length;
+		}
+		for (int i = 0; i < 10000; i += 7)
+			Assert.assertEquals(Integer.valueOf(i), names.get("edu.fgcu.secrel.toy.AccumulatorService" + i));
+		Assert.assertTrue("The arena is not compact: " + names.arenaSize() + " of " + bytes + " bytes",
+				names.arenaSize() * 3 < bytes);
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This file defines the tests of the PermissionMatrix class.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The PermissionMatrixTest class tests that the permission matrix follows
+ * role assignments, authorizations and removals.
+ *
+ * @author lngibson
+ *
+ */
+public class PermissionMatrixTest {
+
+	/**
+	 * The user assigned to both roles.
+	 */
+	private User user;
+
+	/**
+	 * The first role authorized to invoke the service.
+	 */
+	private Role reader;
+
+	/**
+	 * The second role authorized to invoke the service.
+	 */
+	private Role writer;
+
+	/**
+	 * The accumulator service.
+	 */
+	private Service service;
+
+	/**
+	 * Creates the user, roles and service, authorizes both roles and assigns
+	 * the user to both roles.
+	 */
+	@Before
+	public void setUp() {
+		user = Users.createUser("matrix_user");
+		reader = Roles.createRole("matrix_reader");
+		writer = Roles.createRole("matrix_writer");
+		service = new AccumulatorService();
+		Services.registerService(service);
+		Authorizations.authorizeRole(reader, service, Right.INVOKE);
+		Members.assignRole(user, reader);
+		Members.assignRole(user, writer);
+		Authorizations.authorizeRole(writer, service, Right.INVOKE);
+		SecRelSystemDebuggingUtil.verify();
+	}
+
+	/**
+	 * Removes whatever the test left of the user, roles and service.
+	 */
+	@After
+	public void tearDown() {
+		SecRelSystemDebuggingUtil.verify();
+		if (Services.hasService(service.getId()))
+			Services.removeService(service.getId());
+		if (Roles.hasRole(reader))
+			Roles.removeRole(reader);
+		if (Roles.hasRole(writer))
+			Roles.removeRole(writer);
+		Users.removeUser(user);
+	}
+
+	/**
+	 * Checks that batch checks agree with single checks, including batches
+	 * large enough to be answered in parallel.
+	 */
+	@Test
+	public void testBatch() {
+		int serviceId = service.getId(), userId = user.getId();
+		BitSet bits = Queries.permitted(userId, serviceId + 1, serviceId, -1, serviceId);
+		Assert.assertEquals(BitSet.valueOf(new long[] { 0b1010 }), bits);
+		Random random = new Random(3);
+		int[] userIds = new int[50000], serviceIds = new int[50000];
+		for (int i = 0; i < userIds.length; i++) {
+			userIds[i] = userId + random.nextInt(3) - 1;
+			serviceIds[i] = serviceId + random.nextInt(3) - 1;
+		}
+		Members.unassignRole(user, reader);
+		bits = Queries.permitted(userIds, serviceIds);
+		for (int i = 0; i < userIds.length; i++)
+			Assert.assertEquals(userIds[i] == userId && serviceIds[i] == serviceId, bits.get(i));
+		bits = Queries.permitted(userId, serviceIds);
+		for (int i = 0; i < serviceIds.length; i++)
+			Assert.assertEquals(serviceIds[i] == serviceId, bits.get(i));
+	}
+
+	/**
+	 * Checks that a permission granted by two roles survives the removal of
+	 * one of them.
+	 */
+	@Test
+	public void testUnassignRole() {
+		Assert.assertTrue(SecRelSystem.isPermitted(user.getId(), service.getId()));
+		Members.unassignRole(user, reader);
+		Assert.assertTrue(SecRelSystem.isPermitted(user.getId(), service.getId()));
+		Assert.assertTrue(Queries.permittedUsers(service.getId()).contains(user.getId()));
+		Members.unassignRole(user, writer);
+		Assert.assertFalse(SecRelSystem.isPermitted(user.getId(), service.getId()));
+		Assert.assertTrue(Queries.permittedUsers(service.getId()).isEmpty());
+	}
+
+	/**
+	 * Checks that removing the roles revokes the permission.
+	 */
+	@Test
+	public void testRemoveRole() {
+		Roles.removeRole(reader);
+		Assert.assertTrue(SecRelSystem.isPermitted(user.getId(), service.getId()));
+		Roles.removeRole(writer);
+		Assert.assertFalse(SecRelSystem.isPermitted(user.getId(), service.getId()));
+		Assert.assertTrue(Queries.permittedServices(user.getId()).isEmpty());
+	}
+
+	/**
+	 * Checks that removing the service revokes the permission and its
+	 * authorizations.
+	 */
+	@Test
+	public void testRemoveService() {
+		Services.removeService(service.getId());
+		Assert.assertFalse(SecRelSystem.isPermitted(user.getId(), service.getId()));
+		Assert.assertTrue(Queries.services(reader.getId()).isEmpty());
+		Assert.assertTrue(Queries.services(writer.getId()).isEmpty());
+	}
+
+}
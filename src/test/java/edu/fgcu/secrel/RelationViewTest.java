@@ -0,0 +1,131 @@
+/*
+ * This file defines the tests of the RelationView class.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * The RelationViewTest class tests the live views of the related entities
+ * against TreeSets holding the same entities.
+ *
+ * @author lngibson
+ *
+ */
+public class RelationViewTest {
+
+	/**
+	 * Compares the navigation methods of a view to a TreeSet.
+	 *
+	 * @param expected the reference set
+	 * @param view the view
+	 * @param probes the users to navigate from
+	 */
+	private static void assertSameNavigation(NavigableSet<User> expected, NavigableSet<User> view, List<User> probes) {
+		Assert.assertEquals(expected.size(), view.size());
+		Assert.assertEquals(expected.isEmpty(), view.isEmpty());
+		Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(view));
+		Assert.assertEquals(new ArrayList<>(expected.descendingSet()), new ArrayList<>(view.descendingSet()));
+		if (!expected.isEmpty()) {
+			Assert.assertEquals(expected.first(), view.first());
+			Assert.assertEquals(expected.last(), view.last());
+		}
+		for (User probe : probes) {
+			Assert.assertEquals(expected.contains(probe), view.contains(probe));
+			Assert.assertEquals(expected.ceiling(probe), view.ceiling(probe));
+			Assert.assertEquals(expected.floor(probe), view.floor(probe));
+			Assert.assertEquals(expected.higher(probe), view.higher(probe));
+			Assert.assertEquals(expected.lower(probe), view.lower(probe));
+		}
+	}
+
+	/**
+	 * Assigns every third user to a role and compares the view of its
+	 * members and several sub-views to TreeSets.
+	 */
+	@Test
+	public void testNavigation() {
+		Role role = Roles.createRole("view_role");
+		List<User> users = new ArrayList<>();
+		try {
+			NavigableSet<User> view = role.getUsers();
+			NavigableSet<User> expected = new TreeSet<>();
+			for (int i = 0; i < 300; i++)
+				users.add(Users.createUser("view_user" + i));
+			Assert.assertTrue(view.isEmpty());
+			for (int i = 0; i < users.size(); i += 3) {
+				Members.assignRole(users.get(i), role);
+				expected.add(users.get(i));
+			}
+			// the view follows the assignments made after it was created
+			RelationViewTest.assertSameNavigation(expected, view, users);
+			List<User> sorted = new ArrayList<>(users);
+			Collections.sort(sorted);
+			User a = sorted.get(40), b = sorted.get(200);
+			RelationViewTest.assertSameNavigation(expected.subSet(a, true, b, false), view.subSet(a, true, b, false),
+					users);
+			RelationViewTest.assertSameNavigation(expected.subSet(a, false, b, true), view.subSet(a, false, b, true),
+					users);
+			RelationViewTest.assertSameNavigation(expected.headSet(a, false), view.headSet(a, false), users);
+			RelationViewTest.assertSameNavigation(expected.tailSet(b, true), view.tailSet(b, true), users);
+			RelationViewTest.assertSameNavigation(expected.descendingSet().subSet(b, true, a, true),
+					view.descendingSet().subSet(b, true, a, true), users);
+			RelationViewTest.assertSameNavigation(expected.descendingSet().headSet(b, false),
+					view.descendingSet().headSet(b, false), users);
+			Assert.assertTrue(view.equals(expected));
+			Assert.assertTrue(Members.getRoles(users.get(3).getId()).contains(role));
+			Assert.assertTrue(users.get(3).getRoles().contains(role));
+			Assert.assertFalse(users.get(4).getRoles().contains(role));
+			try {
+				view.add(users.get(1));
+				Assert.fail("A view should be read only");
+			}
+			catch (UnsupportedOperationException e) {
+				// expected
+			}
+			try {
+				view.subSet(b, a);
+				Assert.fail("Bounds out of order should be rejected");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("view_role");
+			for (User user : users)
+				Users.removeUser(user.getName());
+		}
+	}
+
+	/**
+	 * Checks that an iterator keeps reading the version it was created with
+	 * while the relation changes.
+	 */
+	@Test
+	public void testIteratorVersion() {
+		Role role = Roles.createRole("view_pinned");
+		User x = Users.createUser("view_x");
+		User y = Users.createUser("view_y");
+		try {
+			Members.assignRole(x, role);
+			Members.assignRole(y, role);
+			Iterator<User> it = role.getUsers().iterator();
+			Members.unassignRole(y, role);
+			Set<User> seen = new TreeSet<>();
+			seen.add(it.next());
+			seen.add(it.next());
+			Assert.assertFalse(it.hasNext());
+			Assert.assertEquals(new TreeSet<>(Arrays.asList(x, y)), seen);
+			Assert.assertEquals(1, role.getUsers().size());
+		}
+		finally {
+			Roles.removeRole("view_pinned");
+			Users.removeUser("view_x");
+			Users.removeUser("view_y");
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * This file defines the tests of the cascading removal of entities.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The RemovalCascadeTest class tests that removing a user, role or service
+ * removes every assignment and authorization that refers to it.
+ *
+ * @author lngibson
+ *
+ */
+public class RemovalCascadeTest {
+
+	/**
+	 * Removes a role with many members and an authorized service and checks
+	 * that no row, index entry or permission refers to it afterwards.
+	 */
+	@Test
+	public void testRemoveRole() {
+		Role role = Roles.createRole("cascade_role");
+		Role other = Roles.createRole("cascade_other");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		List<User> users = new ArrayList<>();
+		try {
+			for (int u = 0; u < 20000; u++) {
+				User user = Users.createUser("cascade_user" + u);
+				users.add(user);
+				Members.assignRole(user.getId(), role.getId());
+			}
+			Members.assignRole(users.get(0).getId(), other.getId());
+			Authorizations.authorizeRole(role.getId(), service.getId(), Right.INVOKE);
+			Authorizations.authorizeRole(other.getId(), service.getId(), Right.INVOKE);
+			Assert.assertTrue(Authorizations.isPermitted(users.get(1).getId(), service.getId()));
+			Roles.removeRole("cascade_role");
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertFalse(SecRelSystem.policy().memberBackwardMap
+					.cursor(SecRelSystem.memberBackwardRow(0, role.getId()),
+							SecRelSystem.memberBackwardRow(0, role.getId() + 1))
+					.next());
+			Assert.assertTrue(Authorizations.isPermitted(users.get(0).getId(), service.getId()));
+			Assert.assertFalse(Authorizations.isPermitted(users.get(1).getId(), service.getId()));
+			Assert.assertTrue(Members.isMemberOf(users.get(0).getId(), other.getId()));
+		}
+		finally {
+			if (Roles.hasRole("cascade_role"))
+				Roles.removeRole("cascade_role");
+			Roles.removeRole("cascade_other");
+			for (User user : users)
+				Users.removeUser(user.getName());
+			Services.removeService(service);
+		}
+		SecRelSystemDebuggingUtil.verify();
+	}
+
+	/**
+	 * Removes a service and a user and checks that their rows and
+	 * permissions are removed.
+	 */
+	@Test
+	public void testRemoveServiceAndUser() {
+		User user = Users.createUser("cascade_member");
+		Role role = Roles.createRole("cascade_group");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			Members.assignRole(user.getId(), role.getId());
+			Authorizations.authorizeRole(role.getId(), service.getId(), Right.INVOKE);
+			int serviceId = service.getId();
+			Services.removeService(service);
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertFalse(SecRelSystem.policy().serviceForwardMap
+					.contains(SecRelSystem.serviceForwardRow(role.getId(), serviceId)));
+			Assert.assertFalse(SecRelSystem.isPermitted(user.getId(), serviceId));
+			Users.removeUser("cascade_member");
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertTrue(Members.getMembers(role.getId()).isEmpty());
+		}
+		finally {
+			if (Users.hasUser("cascade_member"))
+				Users.removeUser("cascade_member");
+			Roles.removeRole("cascade_group");
+		}
+	}
+
+}
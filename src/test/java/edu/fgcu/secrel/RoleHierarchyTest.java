@@ -0,0 +1,141 @@
+/*
+ * This file defines the tests of role inheritance.
+ */
+package edu.fgcu.secrel;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The RoleHierarchyTest class tests that senior roles inherit the
+ * authorizations of their junior roles through any path and that the
+ * permission matrix follows changes to the hierarchy.
+ *
+ * @author lngibson
+ *
+ */
+public class RoleHierarchyTest {
+
+	/**
+	 * Builds a chain of roles, checks that members of the top role are
+	 * permitted the services of the bottom role and that cutting the chain
+	 * revokes them.
+	 */
+	@Test
+	public void testChain() {
+		Role engineer = Roles.createRole("rh_engineer");
+		Role senior = Roles.createRole("rh_senior");
+		Role staff = Roles.createRole("rh_staff");
+		User user = Users.createUser("rh_user");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			Authorizations.authorizeRole(engineer.getId(), service.getId(), Right.INVOKE);
+			Members.assignRole(user.getId(), staff.getId());
+			Assert.assertFalse(Authorizations.isPermitted(user.getId(), service.getId()));
+			Roles.addInheritance(senior.getId(), engineer.getId());
+			Roles.addInheritance(staff.getId(), senior.getId());
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertTrue(Roles.inherits(staff.getId(), engineer.getId()));
+			Assert.assertFalse(Roles.inherits(engineer.getId(), staff.getId()));
+			Assert.assertTrue(Authorizations.isPermitted(user.getId(), service.getId()));
+			Assert.assertEquals(2, Queries.juniorRoles(staff.getId()).cardinality());
+			Assert.assertEquals(2, Queries.seniorRoles(engineer.getId()).cardinality());
+			// a second path keeps the permission when the first is cut
+			Roles.addInheritance(staff.getId(), engineer.getId());
+			Roles.removeInheritance(senior.getId(), engineer.getId());
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertTrue(Authorizations.isPermitted(user.getId(), service.getId()));
+			Assert.assertFalse(Roles.inherits(senior.getId(), engineer.getId()));
+			Roles.removeInheritance(staff.getId(), engineer.getId());
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertFalse(Authorizations.isPermitted(user.getId(), service.getId()));
+			// membership changes follow the hierarchy as well
+			Roles.addInheritance(senior.getId(), engineer.getId());
+			Assert.assertTrue(Authorizations.isPermitted(user.getId(), service.getId()));
+			Members.unassignRole(user.getId(), staff.getId());
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertFalse(Authorizations.isPermitted(user.getId(), service.getId()));
+			Members.assignRole(user.getId(), staff.getId());
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertTrue(Authorizations.isPermitted(user.getId(), service.getId()));
+		}
+		finally {
+			Roles.removeRole("rh_staff");
+			Roles.removeRole("rh_senior");
+			Roles.removeRole("rh_engineer");
+			Users.removeUser("rh_user");
+			Services.removeService(service);
+		}
+		SecRelSystemDebuggingUtil.verify();
+	}
+
+	/**
+	 * Checks that edges closing a cycle or repeating an edge are refused.
+	 */
+	@Test
+	public void testCycle() {
+		Role a = Roles.createRole("rh_a");
+		Role b = Roles.createRole("rh_b");
+		Role c = Roles.createRole("rh_c");
+		try {
+			Roles.addInheritance(a.getId(), b.getId());
+			Roles.addInheritance(b.getId(), c.getId());
+			for (int[] edge : new int[][] { { c.getId(), a.getId() }, { a.getId(), a.getId() },
+					{ a.getId(), b.getId() } })
+				try {
+					Roles.addInheritance(edge[0], edge[1]);
+					Assert.fail("The edge should be refused");
+				}
+				catch (IllegalStateException e) {
+					// expected
+				}
+			try {
+				Roles.removeInheritance(a.getId(), c.getId());
+				Assert.fail("An indirect edge was removed");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("rh_a");
+			Roles.removeRole("rh_b");
+			Roles.removeRole("rh_c");
+		}
+	}
+
+	/**
+	 * Removes the middle role of a chain and checks that its edges are
+	 * removed with it.
+	 */
+	@Test
+	public void testRemoveRole() {
+		Role top = Roles.createRole("rh_top");
+		Role middle = Roles.createRole("rh_middle");
+		Role bottom = Roles.createRole("rh_bottom");
+		User user = Users.createUser("rh_member");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			Authorizations.authorizeRole(bottom.getId(), service.getId(), Right.INVOKE);
+			Members.assignRole(user.getId(), top.getId());
+			Roles.addInheritance(top.getId(), middle.getId());
+			Roles.addInheritance(middle.getId(), bottom.getId());
+			Assert.assertTrue(Authorizations.isPermitted(user.getId(), service.getId()));
+			Roles.removeRole("rh_middle");
+			SecRelSystemDebuggingUtil.verify();
+			Assert.assertFalse(Authorizations.isPermitted(user.getId(), service.getId()));
+			Assert.assertTrue(Queries.juniorRoles(top.getId()).isEmpty());
+			Assert.assertTrue(Queries.seniorRoles(bottom.getId()).isEmpty());
+		}
+		finally {
+			Roles.removeRole("rh_top");
+			Roles.removeRole("rh_bottom");
+			Users.removeUser("rh_member");
+			Services.removeService(service);
+		}
+	}
+
+}
@@ -46,7 +46,7 @@ public class SecRelSystemDebuggingUtil {
 				: a instanceof String ? SecRelSystem.userNames.get(a) : (Integer) a;
 				Integer bi = b instanceof Role ? ((Role) b).getId()
 						: b instanceof String ? SecRelSystem.roleNames.get(b) : (Integer) b;
-						return SecRelSystem.memberBackwardMap.contains(SecRelSystem.memberBackwardRow(ai, bi));
+						return SecRelSystem.policy().memberBackwardMap.contains(SecRelSystem.memberBackwardRow(ai, bi));
 	}
 
 	/**
@@ -77,7 +77,7 @@ public class SecRelSystemDebuggingUtil {
 				: a instanceof String ? SecRelSystem.userNames.get(a) : (Integer) a;
 				Integer bi = b instanceof Role ? ((Role) b).getId()
 						: b instanceof String ? SecRelSystem.roleNames.get(b) : (Integer) b;
-						return SecRelSystem.memberForwardMap.contains(SecRelSystem.memberForwardRow(ai, bi));
+						return SecRelSystem.policy().memberForwardMap.contains(SecRelSystem.memberForwardRow(ai, bi));
 	}
 
 	/**
@@ -109,7 +109,7 @@ public class SecRelSystemDebuggingUtil {
 				: a instanceof String ? SecRelSystem.roleNames.get(a) : (Integer) a;
 				Integer bi = b instanceof Service ? ((Service) b).getId()
 						: b instanceof String ? SecRelSystem.serviceNames.get(b) : (Integer) b;
-						return SecRelSystem.serviceBackwardMap.containsKey(SecRelSystem.serviceBackwardRow(ai, bi));
+						return SecRelSystem.policy().serviceBackwardMap.contains(SecRelSystem.serviceBackwardRow(ai, bi));
 	}
 
 	/**
@@ -141,7 +141,7 @@ public class SecRelSystemDebuggingUtil {
 				: a instanceof String ? SecRelSystem.roleNames.get(a) : (Integer) a;
 				Integer bi = b instanceof Service ? ((Service) b).getId()
 						: b instanceof String ? SecRelSystem.serviceNames.get(b) : (Integer) b;
-						return SecRelSystem.serviceForwardMap.containsKey(SecRelSystem.serviceForwardRow(ai, bi));
+						return SecRelSystem.policy().serviceForwardMap.contains(SecRelSystem.serviceForwardRow(ai, bi));
 	}
 
 	/**
@@ -150,8 +150,8 @@ public class SecRelSystemDebuggingUtil {
 	 * exception if it is not.
 	 * </p>
 	 * <p>
-	 * This method will verify the inverse map pairs for users and roles and the
-	 * composite map pair for services. It will also check the backward and
+	 * This method will verify the name dictionaries and the composite map pairs
+	 * for users, roles and services. It will also check the backward and
 	 * forward maps for role assignments and authorizations.
 	 * </p>
 	 *
@@ -159,14 +159,40 @@ public class SecRelSystemDebuggingUtil {
 	 *             or inconsistent state
 	 */
 	protected static void verify() throws IllegalStateException {
-		SecRelSystemDebuggingUtil.verifyInverseMap("User", SecRelSystem.userIds, SecRelSystem.userNames);
-		SecRelSystemDebuggingUtil.verifyInverseMap("Role", SecRelSystem.roleIds, SecRelSystem.roleNames);
+		SecRelSystemDebuggingUtil.verifyInverseMap("User", SecRelSystem.userNames.byId(), SecRelSystem.userNames);
+		SecRelSystemDebuggingUtil.verifyCompositeMap("User", SecRelSystem.userNames, SecRelSystem.userIds);
+		SecRelSystemDebuggingUtil.verifyInverseMap("Role", SecRelSystem.roleNames.byId(), SecRelSystem.roleNames);
+		SecRelSystemDebuggingUtil.verifyCompositeMap("Role", SecRelSystem.roleNames, SecRelSystem.roleIds);
 		SecRelSystemDebuggingUtil.verifyCompositeMap("Service", SecRelSystem.serviceNames, SecRelSystem.serviceIds);
-		SecRelSystemDebuggingUtil.verifyInverseRelation("Role Assignment", SecRelSystem.memberForwardMap,
-				SecRelSystem.memberBackwardMap, SecRelSystem.userIds.keySet(), SecRelSystem.roleIds.keySet());
-		SecRelSystemDebuggingUtil.verifyInverseRelation("Role Authorization", SecRelSystem.serviceForwardMap.keySet(),
-				SecRelSystem.serviceBackwardMap.keySet(), SecRelSystem.roleIds.keySet(),
-				SecRelSystem.serviceIds.keySet());
+		PolicyVersion policy = SecRelSystem.policy();
+		SecRelSystemDebuggingUtil.verifyInverseRelation("Role Assignment", policy.memberForwardMap,
+				policy.memberBackwardMap, SecRelSystem.userIds.keySet(), SecRelSystem.roleIds.keySet());
+		SecRelSystemDebuggingUtil.verifyInverseRelation("Role Authorization", policy.serviceForwardMap,
+				policy.serviceBackwardMap, SecRelSystem.roleIds.keySet(), SecRelSystem.serviceIds.keySet());
+		SecRelSystemDebuggingUtil.verifyBitmapIndex("Role Assignment", policy.memberForwardMap, policy.userRoles,
+				policy.roleMembers);
+		SecRelSystemDebuggingUtil.verifyBitmapIndex("Role Authorization", policy.serviceForwardMap,
+				policy.roleServices, policy.serviceRoles);
+		SecRelSystemDebuggingUtil.verifyPermissionMatrix(policy);
+	}
+
+	/**
+	 * Throws an exception if a bitmap index pair does not contain every row of
+	 * the forward relation it mirrors.
+	 *
+	 * @param type the name of the relation to use in the exception's message
+	 * @param forward the relation from A to B
+	 * @param forwardIndex the bitmaps of B ids indexed by A id
+	 * @param backwardIndex the bitmaps of A ids indexed by B id
+	 */
+	protected static void verifyBitmapIndex(String type, RowStore forward, BitmapIndex forwardIndex,
+			BitmapIndex backwardIndex) {
+		for (RowStore.Cursor c = forward.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			int a = (int) (c.key() >> 32), b = (int) c.key();
+			if (!forwardIndex.get(a).contains(b) || !backwardIndex.get(b).contains(a))
+				throw new IllegalStateException(
+						String.format("%s relation contains row (%d,%d) but the bitmap index does not", type, a, b));
+		}
 	}
 
 	/**
@@ -279,14 +305,15 @@ public class SecRelSystemDebuggingUtil {
 	 * @param B the set of the second element of forward and the first element
 	 *            of backward
 	 */
-	protected static void verifyInverseRelation(String type, Set<Long> forward, Set<Long> backward, Set<Integer> A,
+	protected static void verifyInverseRelation(String type, RowStore forward, RowStore backward, Set<Integer> A,
 			Set<Integer> B) {
 		// check if forward and backward have equal sizes
 		if (forward.size() != backward.size())
 			throw new IllegalStateException(
 					String.format("%s forward relation and %s backward relation have different sizes: %d <> %d", type,
 							type, forward.size(), backward.size()));
-		for (Long row : forward) {
+		for (RowStore.Cursor c = forward.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			long row = c.key();
 			Integer a = (int) (row >> 32), b = (int) (row & 0xffffffff);
 			// check if a is contained in A
 			if (!A.contains(a))
@@ -297,13 +324,14 @@ public class SecRelSystemDebuggingUtil {
 				throw new IllegalStateException(
 						String.format("%s forward relation contains an second coordinate not in range: %d", type, b));
 			// check if inverse is in backward
-			Long brow = b.longValue() << 32 | a;
+			long brow = b.longValue() << 32 | a;
 			if (!backward.contains(brow))
 				throw new IllegalStateException(String.format(
 						"%s forward relation contains row (%d,%d) but %s backward relation does not contain inverse: %d",
 						type, a, b, type));
 		}
-		for (Long row : backward) {
+		for (RowStore.Cursor c = backward.cursor(Long.MIN_VALUE, Long.MAX_VALUE); c.next();) {
+			long row = c.key();
 			Integer b = (int) (row >> 32), a = (int) (row & 0xffffffff);
 			// check if a is contained in A
 			if (!A.contains(a))
@@ -313,13 +341,54 @@ public class SecRelSystemDebuggingUtil {
 			if (!B.contains(b))
 				throw new IllegalStateException(
 						String.format("%s backward relation contains an second coordinate not in range: %d", type, b));
-			// check if inverse is in backward
-			Long brow = b.longValue() << 32 | a;
-			if (!backward.contains(brow))
+			// check if inverse is in forward
+			long frow = a.longValue() << 32 | b;
+			if (!forward.contains(frow))
 				throw new IllegalStateException(String.format(
 						"%s backward relation contains row (%d,%d) but %s forward relation does not contain inverse: %d",
 						type, b, a, type));
 		}
 	}
 
+	/**
+	 * Throws an exception if the permission matrix differs from the
+	 * composition of the role assignments and authorizations.
+	 *
+	 * @param policy the version of the relations to verify
+	 */
+	protected static void verifyPermissionMatrix(PolicyVersion policy) {
+		for (Integer userId : SecRelSystem.userIds.keySet()) {
+			IdBitmap expected = new IdBitmap();
+			Map<Integer, Integer> modes = new HashMap<>();
+			for (int roleId : policy.userRoles.get(userId).toArray()) {
+				expected = IdBitmap.or(expected, policy.roleServices.get(roleId));
+				for (int serviceId : policy.roleServices.get(roleId).toArray())
+					modes.merge(serviceId, policy.serviceForwardMap.get(SecRelSystem.serviceForwardRow(roleId, serviceId), 0),
+							(a, b) -> a | b);
+				for (int juniorId : policy.hierarchy.juniors(roleId).toArray()) {
+					expected = IdBitmap.or(expected, policy.roleServices.get(juniorId));
+					for (int serviceId : policy.roleServices.get(juniorId).toArray())
+						modes.merge(serviceId,
+								policy.serviceForwardMap.get(SecRelSystem.serviceForwardRow(juniorId, serviceId), 0),
+								(a, b) -> a | b);
+				}
+			}
+			if (!Arrays.equals(expected.toArray(), policy.permissions.services(userId).toArray()))
+				throw new IllegalStateException(
+						String.format("Permission matrix has the wrong services for user %d: %s <> %s", userId,
+								expected, policy.permissions.services(userId)));
+			for (int serviceId : expected.toArray())
+				if (!policy.permissions.users(serviceId).contains(userId))
+					throw new IllegalStateException(String
+							.format("Permission matrix grants service %d to user %d in one direction only",
+									serviceId, userId));
+			for (Map.Entry<Integer, Integer> mode : modes.entrySet())
+				if (policy.permissions.modes(userId, mode.getKey()) != mode.getValue())
+					throw new IllegalStateException(
+							String.format("Permission matrix has the wrong modes of service %d for user %d: %d <> %d",
+									mode.getKey(), userId, mode.getValue(),
+									policy.permissions.modes(userId, mode.getKey())));
+		}
+	}
+
 }
\ No newline at end of file
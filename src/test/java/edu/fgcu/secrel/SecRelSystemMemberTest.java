@@ -369,6 +369,25 @@ public class SecRelSystemMemberTest {
 		Assert.assertFalse("System denies membership of the lngibson user in its role", ai.hasNext());
 	}
 	
+	/**
+	 * Combines the members of the administrator and assistant roles with the
+	 * set operations of the bitmap index.
+	 */
+	@Test
+	public void testGetMembersBitmap() {
+		int administrator = SecRelSystemMemberTest.Administrator.getId();
+		int assistant = SecRelSystemMemberTest.Assistant.getId();
+		Assert.assertArrayEquals("System returned the wrong members of the administrator and assistant roles",
+				new int[] { SecRelSystemMemberTest.lngibson.getId() },
+				Queries.membersOfAll(administrator, assistant).toArray());
+		Assert.assertEquals("System returned the wrong members of the administrator but not the assistant role", 2,
+				IdBitmap.andNotCardinality(Queries.members(administrator), Queries.members(assistant)));
+		Assert.assertEquals("System returned the wrong members of the administrator or assistant role", 3,
+				Queries.membersOfAny(administrator, assistant).cardinality());
+		Assert.assertTrue("System returned the wrong roles for the lngibson user",
+				Queries.roles(SecRelSystemMemberTest.lngibson.getId()).contains(assistant));
+	}
+	
 	/**
 	 * Queries the roles of the lngibson user.
 	 */
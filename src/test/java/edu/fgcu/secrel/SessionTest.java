@@ -0,0 +1,247 @@
+/*
+ * This file defines the tests of sessions.
+ */
+package edu.fgcu.secrel;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The SessionTest class tests that requests made through a session are
+ * checked against its active roles and that sessions follow changes to the
+ * assignments of their user.
+ *
+ * @author lngibson
+ *
+ */
+public class SessionTest {
+
+	/**
+	 * Activates and deactivates roles and checks the permissions of the
+	 * session after each change.
+	 */
+	@Test
+	public void testActiveRoles() {
+		Role teller = Roles.createRole("session_teller");
+		Role manager = Roles.createRole("session_manager");
+		User user = Users.createUser("session_user");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			Authorizations.authorizeRole(manager.getId(), service.getId(), Right.INVOKE);
+			Members.assignRole(user.getId(), teller.getId());
+			Members.assignRole(user.getId(), manager.getId());
+			Session session = Sessions.createSession(user.getId(), teller.getId());
+			Assert.assertTrue(Authorizations.isPermitted(user.getId(), service.getId()));
+			Assert.assertFalse(Sessions.isPermitted(session, service.getId()));
+			Assert.assertNull(SecRelSystem.makeRequest(session, service.getId()));
+			Sessions.activateRole(session, manager.getId());
+			Assert.assertTrue(Sessions.isPermitted(session, service.getId()));
+			Sessions.deactivateRole(session, manager.getId());
+			Assert.assertFalse(Sessions.isPermitted(session, service.getId()));
+			Assert.assertEquals(1, Sessions.getSessions(user.getId()).size());
+			Sessions.closeSession(session);
+			Assert.assertFalse(session.isOpen());
+			Assert.assertTrue(Sessions.getSessions(user.getId()).isEmpty());
+			try {
+				SecRelSystem.makeRequest(session, service.getId());
+				Assert.fail("A closed session made a request");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("session_teller");
+			Roles.removeRole("session_manager");
+			Users.removeUser("session_user");
+			Services.removeService(service);
+		}
+	}
+
+	/**
+	 * Checks that roles the user does not hold and roles sharing a dynamic
+	 * constraint with an active role cannot be activated.
+	 */
+	@Test
+	public void testActivationChecks() {
+		Role initiator = Roles.createRole("session_initiator");
+		Role approver = Roles.createRole("session_approver");
+		Role other = Roles.createRole("session_other");
+		User user = Users.createUser("session_checked");
+		try {
+			Members.assignRole(user.getId(), initiator.getId());
+			Members.assignRole(user.getId(), approver.getId());
+			Constraints.createDynamicConstraint("session_payments", initiator.getId(), approver.getId());
+			Session session = Sessions.createSession(user.getId(), initiator.getId());
+			for (int roleId : new int[] { approver.getId(), other.getId(), initiator.getId() })
+				try {
+					Sessions.activateRole(session, roleId);
+					Assert.fail("Role " + roleId + " was activated");
+				}
+				catch (IllegalStateException e) {
+					// expected
+				}
+			try {
+				Sessions.createSession(user.getId(), initiator.getId(), approver.getId());
+				Assert.fail("Conflicting roles were activated together");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertEquals(1, Sessions.getSessions(user.getId()).size());
+			Sessions.deactivateRole(session, initiator.getId());
+			Sessions.activateRole(session, approver.getId());
+		}
+		finally {
+			Roles.removeRole("session_initiator");
+			Roles.removeRole("session_approver");
+			Roles.removeRole("session_other");
+			Users.removeUser("session_checked");
+		}
+	}
+
+	/**
+	 * Checks that a dynamic constraint applies to the roles inherited by the
+	 * active roles: a senior role inheriting a role conflicting with an
+	 * active role cannot be activated, and neither can a conflicting role
+	 * while such a senior role is active.
+	 */
+	@Test
+	public void testInheritedActivationChecks() {
+		Role initiator = Roles.createRole("session_d_init");
+		Role approver = Roles.createRole("session_d_appr");
+		Role manager = Roles.createRole("session_d_mgr");
+		User user = Users.createUser("session_d_user");
+		try {
+			Roles.addInheritance(manager.getId(), approver.getId());
+			Members.assignRole(user.getId(), initiator.getId());
+			Members.assignRole(user.getId(), manager.getId());
+			Constraints.createDynamicConstraint("session_d_payments", initiator.getId(), approver.getId());
+			Session session = Sessions.createSession(user.getId(), initiator.getId());
+			try {
+				Sessions.activateRole(session, manager.getId());
+				Assert.fail("A role inheriting a conflicting role was activated");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertFalse(session.getActiveRoles().contains(manager.getId()));
+			Sessions.deactivateRole(session, initiator.getId());
+			Sessions.activateRole(session, manager.getId());
+			try {
+				Sessions.activateRole(session, initiator.getId());
+				Assert.fail("A role conflicting with an inherited role was activated");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			try {
+				Sessions.createSession(user.getId(), manager.getId(), initiator.getId());
+				Assert.fail("Conflicting roles were activated together");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("session_d_init");
+			Roles.removeRole("session_d_appr");
+			Roles.removeRole("session_d_mgr");
+			Users.removeUser("session_d_user");
+		}
+	}
+
+	/**
+	 * Checks that an inheritance edge or a dynamic constraint that would give
+	 * an open session two active roles of a constraint is refused, and is
+	 * accepted once no session holds the roles.
+	 */
+	@Test
+	public void testOpenSessionChecks() {
+		Role clerk = Roles.createRole("session_o_clerk");
+		Role initiator = Roles.createRole("session_o_init");
+		Role approver = Roles.createRole("session_o_appr");
+		User user = Users.createUser("session_o_user");
+		try {
+			Members.assignRole(user.getId(), clerk.getId());
+			Members.assignRole(user.getId(), initiator.getId());
+			Constraints.createDynamicConstraint("session_o_payments", initiator.getId(), approver.getId());
+			Session session = Sessions.createSession(user.getId(), clerk.getId(), initiator.getId());
+			// the clerk would inherit the approver while the initiator is active
+			try {
+				Roles.addInheritance(clerk.getId(), approver.getId());
+				Assert.fail("An inheritance giving a session conflicting roles was added");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertFalse(Roles.inherits(clerk.getId(), approver.getId()));
+			Sessions.deactivateRole(session, initiator.getId());
+			Roles.addInheritance(clerk.getId(), approver.getId());
+			Assert.assertTrue(session.getEffectiveRoles().contains(approver.getId()));
+			// the clerk and the approver are both active in the session
+			try {
+				Constraints.createDynamicConstraint("session_o_review", clerk.getId(), approver.getId());
+				Assert.fail("A constraint already broken by a session was created");
+			}
+			catch (IllegalStateException e) {
+				// expected
+			}
+			Assert.assertFalse(Constraints.hasConstraint("session_o_review"));
+			Sessions.closeSession(session);
+			Constraints.createDynamicConstraint("session_o_review", clerk.getId(), approver.getId());
+			Assert.assertTrue(Constraints.hasConstraint("session_o_review"));
+		}
+		finally {
+			Roles.removeRole("session_o_clerk");
+			Roles.removeRole("session_o_init");
+			Roles.removeRole("session_o_appr");
+			Users.removeUser("session_o_user");
+		}
+	}
+
+	/**
+	 * Unassigns roles, changes the hierarchy and removes the user and checks
+	 * that the sessions of the user follow.
+	 */
+	@Test
+	public void testInvalidation() {
+		Role engineer = Roles.createRole("session_engineer");
+		Role lead = Roles.createRole("session_lead");
+		User user = Users.createUser("session_invalidated");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			Authorizations.authorizeRole(engineer.getId(), service.getId(), Right.INVOKE);
+			Members.assignRole(user.getId(), lead.getId());
+			Roles.addInheritance(lead.getId(), engineer.getId());
+			Session session = Sessions.createSession(user.getId(), lead.getId());
+			Session junior = Sessions.createSession(user.getId(), engineer.getId());
+			Assert.assertTrue(Sessions.isPermitted(session, service.getId()));
+			Assert.assertTrue(Sessions.isPermitted(junior, service.getId()));
+			Roles.removeInheritance(lead.getId(), engineer.getId());
+			Assert.assertFalse(Sessions.isPermitted(session, service.getId()));
+			Assert.assertTrue(junior.getActiveRoles().isEmpty());
+			Roles.addInheritance(lead.getId(), engineer.getId());
+			Assert.assertTrue(Sessions.isPermitted(session, service.getId()));
+			Members.unassignRole(user.getId(), lead.getId());
+			Assert.assertTrue(session.getActiveRoles().isEmpty());
+			Assert.assertFalse(Sessions.isPermitted(session, service.getId()));
+			Members.assignRole(user.getId(), lead.getId());
+			Sessions.activateRole(session, lead.getId());
+			Users.removeUser("session_invalidated");
+			Assert.assertFalse(session.isOpen());
+			Assert.assertFalse(junior.isOpen());
+		}
+		finally {
+			Roles.removeRole("session_engineer");
+			Roles.removeRole("session_lead");
+			if (Users.hasUser("session_invalidated"))
+				Users.removeUser("session_invalidated");
+			Services.removeService(service);
+		}
+	}
+
+}
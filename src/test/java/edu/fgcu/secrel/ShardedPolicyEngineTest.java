@@ -0,0 +1,216 @@
+/*
+ * This file defines the tests of the ShardedPolicyEngine class.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.*;
+
+/**
+ * The ShardedPolicyEngineTest class tests that the sharded engine answers like
+ * the SecRelSystem and follows the changes published after it started.
+ *
+ * @author lngibson
+ *
+ */
+public class ShardedPolicyEngineTest {
+
+	/**
+	 * A service doing nothing.
+	 *
+	 * @author lngibson
+	 *
+	 */
+	private static final class NoopService extends Service {
+
+		@Override
+		public String getName() {
+			return "edu.fgcu.secrel.ShardedPolicyEngineTest.Noop";
+		}
+
+		@Override
+		protected void invokeServiceInner(Handle handle, String[] argv, Map<String, String> argm) {
+			// nothing to invoke
+		}
+
+		@Override
+		public void processRequest() {
+			// nothing to process
+		}
+	}
+
+	/**
+	 * The number of users created.
+	 */
+	private static final int USERS = 50;
+
+	/**
+	 * The engine under test.
+	 */
+	private ShardedPolicyEngine engine;
+
+	/**
+	 * The users, every third of which is assigned to the role.
+	 */
+	private List<User> users;
+
+	/**
+	 * The role authorized to invoke the service.
+	 */
+	private Role role;
+
+	/**
+	 * The service the role may invoke.
+	 */
+	private Service service;
+
+	/**
+	 * Creates the engine, the users, the role and the service.
+	 */
+	@Before
+	public void setUp() {
+		engine = new ShardedPolicyEngine(3);
+		role = Roles.createRole("sharded_role");
+		service = new NoopService();
+		Services.registerService(service);
+		Authorizations.authorizeRole(role, service, Right.INVOKE);
+		users = new ArrayList<>();
+		for (int i = 0; i < ShardedPolicyEngineTest.USERS; i++) {
+			User user = Users.createUser("sharded_user_" + i);
+			users.add(user);
+			if (i % 3 == 0)
+				Members.assignRole(user, role);
+		}
+	}
+
+	/**
+	 * Removes the users, the role and the service and stops the engine.
+	 */
+	@After
+	public void tearDown() {
+		engine.close();
+		for (User user : users)
+			Users.removeUser(user);
+		Services.removeService(service.getId());
+		Roles.removeRole(role);
+	}
+
+	/**
+	 * Checks that the decisions of the shards match the SecRelSystem.
+	 *
+	 * @throws Exception if a shard fails
+	 */
+	@Test
+	public void testIsPermitted() throws Exception {
+		check();
+		for (User user : users)
+			Assert.assertEquals(SecRelSystem.isPermitted(user.getId(), service.getId(), Right.INVOKE),
+					engine.isPermitted(user.getId(), service.getId(), Right.INVOKE).get());
+		Assert.assertFalse(engine.isPermitted(users.get(0).getId(), service.getId(), Right.ADMINISTER).get());
+	}
+
+	/**
+	 * Checks that an engine cannot be started in the middle of a change and
+	 * that a closed engine no longer receives versions.
+	 */
+	@Test
+	public void testLifecycle() {
+		SecRelSystem.beginWrite();
+		try {
+			new ShardedPolicyEngine(2);
+			Assert.fail("An engine was started during a change");
+		}
+		catch (IllegalStateException e) {
+			// expected
+		}
+		finally {
+			SecRelSystem.endWrite();
+		}
+		ShardedPolicyEngine closed = new ShardedPolicyEngine(2);
+		closed.close();
+		Members.unassignRole(users.get(0), role);
+		Members.assignRole(users.get(0), role);
+	}
+
+	/**
+	 * Checks that a request of a user is decided by the shard owning it and
+	 * that missing ids fail the future.
+	 *
+	 * @throws Exception if a shard fails
+	 */
+	@Test
+	public void testMakeRequest() throws Exception {
+		Assert.assertNotNull(engine.makeRequest(users.get(0).getId(), service.getId(), new String[0],
+				new HashMap<String, String>()).get());
+		Assert.assertNull(engine.makeRequest(users.get(1).getId(), service.getId(), new String[0],
+				new HashMap<String, String>()).get());
+		try {
+			engine.makeRequest(null, service.getId(), new String[0], new HashMap<String, String>()).get();
+			Assert.fail("A null user id was accepted");
+		}
+		catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof NullPointerException);
+		}
+	}
+
+	/**
+	 * Changes the assignments, the hierarchy and the users after the engine
+	 * started and checks that the shards follow every change.
+	 *
+	 * @throws Exception if a shard fails
+	 */
+	@Test
+	public void testFollowsChanges() throws Exception {
+		Role senior = Roles.createRole("sharded_senior");
+		try {
+			Members.unassignRole(users.get(0), role);
+			Members.assignRole(users.get(1), role);
+			Members.assignRole(users.get(2), senior);
+			Roles.addInheritance(senior.getId(), role.getId());
+			Users.removeUser(users.remove(3));
+			check();
+			Assert.assertTrue(engine.isPermitted(users.get(2).getId(), service.getId()).get());
+			Assert.assertTrue(engine.members(senior.getId()).get().contains(users.get(2).getId()));
+			// a removed role leaves no members on the shards
+			Roles.removeRole(senior);
+			check();
+			Assert.assertFalse(engine.isPermitted(users.get(2).getId(), service.getId()).get());
+		}
+		finally {
+			if (Roles.hasRole(senior))
+				Roles.removeRole(senior);
+		}
+	}
+
+	/**
+	 * Checks that the gathered members and permitted users match the
+	 * unsharded queries.
+	 *
+	 * @throws Exception if a shard fails
+	 */
+	@Test
+	public void testScatterGather() throws Exception {
+		Assert.assertArrayEquals(Queries.members(role.getId()).toArray(), engine.members(role.getId()).get().toArray());
+		Assert.assertArrayEquals(Queries.permittedUsers(service.getId()).toArray(),
+				engine.permittedUsers(service.getId()).get().toArray());
+		Assert.assertEquals((ShardedPolicyEngineTest.USERS + 2) / 3, engine.members(role.getId()).get().cardinality());
+	}
+
+	/**
+	 * Checks that the decisions and the gathered members of the engine match
+	 * the unsharded system.
+	 *
+	 * @throws Exception if a shard fails
+	 */
+	private void check() throws Exception {
+		for (User user : users)
+			Assert.assertEquals(SecRelSystem.isPermitted(user.getId(), service.getId()),
+					engine.isPermitted(user.getId(), service.getId()).get());
+		Assert.assertArrayEquals(Queries.members(role.getId()).toArray(), engine.members(role.getId()).get().toArray());
+		Assert.assertArrayEquals(Queries.permittedUsers(service.getId()).toArray(),
+				engine.permittedUsers(service.getId()).get().toArray());
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * This file defines the tests of the non-throwing mutation methods.
+ */
+package edu.fgcu.secrel;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The StatusTest class tests that the tryX mutation methods make the same
+ * changes as the throwing methods and report expected failures with a
+ * status.
+ *
+ * @author lngibson
+ *
+ */
+public class StatusTest {
+
+	/**
+	 * Checks the statuses of creating users and roles.
+	 */
+	@Test
+	public void testCreate() {
+		Assert.assertEquals(Status.OK, Users.tryCreateUser("status_user"));
+		Assert.assertEquals(Status.OK, Roles.tryCreateRole("status_role"));
+		try {
+			Assert.assertTrue(Users.hasUser("status_user"));
+			Assert.assertTrue(Roles.hasRole("status_role"));
+			Assert.assertEquals(Status.DUPLICATE_NAME, Users.tryCreateUser("status_user"));
+			Assert.assertEquals(Status.DUPLICATE_NAME, Roles.tryCreateRole("status_role"));
+		}
+		finally {
+			Users.removeUser("status_user");
+			Roles.removeRole("status_role");
+		}
+	}
+
+	/**
+	 * Checks the statuses of assigning and authorizing.
+	 */
+	@Test
+	public void testAssignAndAuthorize() {
+		User user = Users.createUser("status_member");
+		Role role = Roles.createRole("status_group");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			int u = user.getId(), r = role.getId(), s = service.getId();
+			Assert.assertEquals(Status.NOT_FOUND, Members.tryUnassignRole(u, r));
+			Assert.assertEquals(Status.OK, Members.tryAssignRole(u, r));
+			Assert.assertTrue(Members.isMemberOf(u, r));
+			Assert.assertEquals(Status.ALREADY_EXISTS, Members.tryAssignRole(u, r));
+			Assert.assertEquals(Status.NO_SUCH_USER, Members.tryAssignRole(-1, r));
+			Assert.assertEquals(Status.NO_SUCH_ROLE, Members.tryAssignRole(u, Integer.MAX_VALUE));
+			Assert.assertEquals(Status.OK, Authorizations.tryAuthorizeRole(r, s, Right.INVOKE));
+			Assert.assertTrue(Authorizations.isPermitted(u, s));
+			Assert.assertEquals(Status.ALREADY_EXISTS, Authorizations.tryAuthorizeRole(r, s, Right.INVOKE));
+			Assert.assertEquals(Status.NO_SUCH_SERVICE, Authorizations.tryAuthorizeRole(r, -1, Right.INVOKE));
+			Assert.assertEquals(Status.OK, Members.tryUnassignRole(u, r));
+			Assert.assertFalse(Authorizations.isPermitted(u, s));
+			Assert.assertTrue(Status.OK.isOk());
+			Assert.assertFalse(Status.NOT_FOUND.isOk());
+		}
+		finally {
+			Services.removeService(service.getId());
+			Roles.removeRole(role);
+			Users.removeUser(user);
+		}
+	}
+
+}
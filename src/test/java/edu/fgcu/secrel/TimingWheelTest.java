@@ -0,0 +1,202 @@
+/*
+ * This file defines the tests of the TimingWheel class and of expiring
+ * assignments.
+ */
+package edu.fgcu.secrel;
+
+import java.util.*;
+
+import org.junit.*;
+
+import edu.fgcu.secrel.toy.AccumulatorService;
+
+/**
+ * The TimingWheelTest class tests the TimingWheel against a map of
+ * deadlines and checks that expiring assignments and authorizations are
+ * removed from the system.
+ *
+ * @author lngibson
+ *
+ */
+public class TimingWheelTest {
+
+	/**
+	 * Schedules, reschedules and cancels random rows across every level of
+	 * the wheel and beyond it, and checks that each row fires exactly once, on
+	 * its tick.
+	 */
+	@Test
+	public void testRandomSchedule() {
+		Random random = new Random(5);
+		TimingWheel wheel = new TimingWheel(0, 1);
+		Map<Long, Long> expected = new HashMap<>();
+		long now = 0;
+		for (int round = 0; round < 200; round++) {
+			for (int i = 0; i < 500; i++) {
+				long row = random.nextInt(20000);
+				if (random.nextInt(10) == 0) {
+					Assert.assertEquals(expected.remove(row) != null, wheel.cancel(row));
+					continue;
+				}
+				int span = 1 << 6 * random.nextInt(5);
+				long deadline = now + 1 + random.nextInt(span) + (random.nextInt(50) == 0 ? 1L << 24 : 0);
+				wheel.schedule(row, deadline);
+				expected.put(row, deadline);
+			}
+			Assert.assertEquals(expected.size(), wheel.size());
+			long to = now + random.nextInt(1 << 14);
+			long[] last = { now };
+			long until = to;
+			wheel.advance(to, row -> {
+				Long deadline = expected.remove(row);
+				Assert.assertNotNull("Row " + row + " fired but was not pending", deadline);
+				Assert.assertTrue("Row " + row + " fired late or early", deadline <= until && deadline >= last[0]);
+				last[0] = deadline;
+			});
+			now = to;
+			for (long deadline : expected.values())
+				Assert.assertTrue("A row was not fired", deadline > now);
+		}
+		now += 1L << 25;
+		wheel.advance(now, expected::remove);
+		Assert.assertTrue("Rows were never fired: " + expected.size(), expected.isEmpty());
+		Assert.assertTrue(wheel.isEmpty());
+	}
+
+	/**
+	 * Sets, extends and clears the expiries of an assignment and of an
+	 * authorization, and checks that the expiring overloads reject null ids
+	 * before checking the time.
+	 *
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	@Test
+	public void testChangeExpiry() throws InterruptedException {
+		Role role = Roles.createRole("expiry_change_role");
+		User user = Users.createUser("expiry_change_user");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			int userId = user.getId();
+			int roleId = role.getId();
+			int serviceId = service.getId();
+			Assert.assertEquals(Status.OK, Members.tryAssignRole(userId, roleId, System.currentTimeMillis() + 100));
+			Assert.assertEquals(Status.ALREADY_EXISTS,
+					Members.tryAssignRole(userId, roleId, System.currentTimeMillis() + 100));
+			Assert.assertEquals(Status.OK,
+					Authorizations.tryAuthorizeRole(roleId, serviceId, Right.INVOKE, System.currentTimeMillis() + 100));
+			// extending the expiries keeps both past the first time
+			long extended = System.currentTimeMillis() + 60000;
+			Members.setExpiry(userId, roleId, extended);
+			Authorizations.setExpiry(roleId, serviceId, extended);
+			Assert.assertTrue(Members.getExpiry(userId, roleId) >= extended);
+			Assert.assertTrue(Authorizations.getExpiry(roleId, serviceId) >= extended);
+			Thread.sleep(400);
+			Assert.assertTrue(Members.isMemberOf(userId, roleId));
+			Assert.assertTrue(Authorizations.isAuthorizedFor(roleId, serviceId));
+			// clearing the expiries makes both permanent
+			Members.clearExpiry(userId, roleId);
+			Authorizations.clearExpiry(roleId, serviceId);
+			Assert.assertEquals(-1, Members.getExpiry(userId, roleId));
+			Assert.assertEquals(-1, Authorizations.getExpiry(roleId, serviceId));
+			// shortening the expiry of a permanent assignment removes it
+			Members.setExpiry(userId, roleId, System.currentTimeMillis() + 100);
+			long deadline = System.currentTimeMillis() + 5000;
+			while (Members.isMemberOf(userId, roleId) && System.currentTimeMillis() < deadline)
+				Thread.sleep(20);
+			Assert.assertFalse("The assignment did not expire", Members.isMemberOf(userId, roleId));
+			Assert.assertTrue(Authorizations.isAuthorizedFor(roleId, serviceId));
+			SecRelSystemDebuggingUtil.verify();
+			try {
+				Members.setExpiry(userId, roleId, System.currentTimeMillis() + 100);
+				Assert.fail("The expiry of a missing assignment was set");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+			try {
+				Authorizations.setExpiry(roleId, serviceId, System.currentTimeMillis() - 1);
+				Assert.fail("An expiry in the past was accepted");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+			try {
+				Members.assignRole(null, roleId, System.currentTimeMillis() - 1);
+				Assert.fail("A null user id was accepted");
+			}
+			catch (NullPointerException e) {
+				// expected
+			}
+			try {
+				Authorizations.authorizeRole(roleId, null, Right.INVOKE, System.currentTimeMillis() - 1);
+				Assert.fail("A null service id was accepted");
+			}
+			catch (NullPointerException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("expiry_change_role");
+			Users.removeUser("expiry_change_user");
+			Services.removeService(service);
+		}
+	}
+
+	/**
+	 * Assigns a role and authorizes a service until shortly and waits for both
+	 * to be removed.
+	 *
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	@Test
+	public void testExpiry() throws InterruptedException {
+		Role oncall = Roles.createRole("expiry_oncall");
+		Role permanent = Roles.createRole("expiry_permanent");
+		User user = Users.createUser("expiry_user");
+		Service service = new AccumulatorService();
+		Services.registerService(service);
+		try {
+			long expiresAt = System.currentTimeMillis() + 200;
+			Members.assignRole(user.getId(), oncall.getId(), expiresAt);
+			Members.assignRole(user.getId(), permanent.getId());
+			Authorizations.authorizeRole(oncall.getId(), service.getId(), Right.INVOKE);
+			Authorizations.authorizeRole(permanent.getId(), service.getId(), Right.INVOKE, expiresAt);
+			Assert.assertTrue(Members.getExpiry(user.getId(), oncall.getId()) >= expiresAt);
+			Assert.assertEquals(-1, Members.getExpiry(user.getId(), permanent.getId()));
+			Assert.assertTrue(Authorizations.isPermitted(user.getId(), service.getId()));
+			long deadline = System.currentTimeMillis() + 5000;
+			while (Members.isMemberOf(user.getId(), oncall.getId()) && System.currentTimeMillis() < deadline)
+				Thread.sleep(20);
+			Assert.assertFalse("The assignment did not expire", Members.isMemberOf(user.getId(), oncall.getId()));
+			while (Authorizations.isAuthorizedFor(permanent.getId(), service.getId())
+					&& System.currentTimeMillis() < deadline)
+				Thread.sleep(20);
+			Assert.assertFalse("The authorization did not expire",
+					Authorizations.isAuthorizedFor(permanent.getId(), service.getId()));
+			Assert.assertFalse(Authorizations.isPermitted(user.getId(), service.getId()));
+			Assert.assertTrue(Members.isMemberOf(user.getId(), permanent.getId()));
+			// reassigning permanently after an early unassignment cancels the expiry
+			Members.assignRole(user.getId(), oncall.getId(), System.currentTimeMillis() + 100);
+			Members.unassignRole(user.getId(), oncall.getId());
+			Members.assignRole(user.getId(), oncall.getId());
+			Thread.sleep(400);
+			Assert.assertTrue(Members.isMemberOf(user.getId(), oncall.getId()));
+			SecRelSystemDebuggingUtil.verify();
+			try {
+				Members.assignRole(user.getId(), permanent.getId(), System.currentTimeMillis() - 1);
+				Assert.fail("An expiry in the past was accepted");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		finally {
+			Roles.removeRole("expiry_oncall");
+			Roles.removeRole("expiry_permanent");
+			Users.removeUser("expiry_user");
+			Services.removeService(service);
+		}
+	}
+
+}
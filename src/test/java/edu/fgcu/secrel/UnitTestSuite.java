@@ -16,7 +16,14 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-	SecRelSystemUnitTestSuite.class
+	SecRelSystemUnitTestSuite.class, LongBTreeTest.class, IdBitmapTest.class,
+	PermissionMatrixTest.class, MutationPipelineTest.class,
+	MappedRowStoreTest.class, EntityTableTest.class, NameDictionaryTest.class,
+	DecisionCacheTest.class, AsyncRequestTest.class, AllocationFreeCheckTest.class,
+	StatusTest.class, BulkLoaderTest.class, RemovalCascadeTest.class, CardinalityTest.class,
+	RelationViewTest.class, IdPageTest.class, RoleHierarchyTest.class,
+	ConstraintsTest.class, SessionTest.class, TimingWheelTest.class, AccessModeTest.class,
+	ConcurrentReadTest.class, ShardedPolicyEngineTest.class
 })
 public class UnitTestSuite {
 	// Test suite requires no body